@@ -19,6 +19,8 @@ import io.yupiik.bundlebee.core.cli.Args;
 import io.yupiik.bundlebee.core.command.Executable;
 import io.yupiik.bundlebee.core.command.impl.HelpCommand;
 import io.yupiik.bundlebee.core.configuration.ConfigurableConfigSource;
+import io.yupiik.bundlebee.core.jfr.JfrRecorder;
+import io.yupiik.bundlebee.lang.spi.Tracer;
 import lombok.extern.java.Log;
 import org.eclipse.microprofile.config.Config;
 
@@ -34,6 +36,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Spliterator;
 import java.util.Spliterators;
@@ -86,7 +89,9 @@ public final class BundleBee {
                         .findFirst()
                         .orElseThrow(() -> new IllegalArgumentException("No command " + cmd));
                 foundCommand = true;
-                command.execute().toCompletableFuture().get();
+                container.select(JfrRecorder.class).get().start();
+                final var tracer = container.select(Tracer.class).get();
+                tracer.trace("command", Map.of("name", cmd), command::execute).toCompletableFuture().get();
             } catch (final RuntimeException re) {
                 if (foundCommand) {
                     throw re;
@@ -25,6 +25,10 @@ import static java.util.Map.entry;
 import static java.util.stream.Collectors.toMap;
 
 public final class Args {
+    // global options which are not command specific so "bundlebee.<command>." prefix logic does not apply
+    private static final Map<String, String> ALIASES = Map.of(
+            "trace-output", "bundlebee.trace.output");
+
     private Args() {
         // no-op
     }
@@ -63,6 +67,8 @@ public final class Args {
         // the configuration convention for commands is "bundlebee.<command name>.<property>" so we enable
         // to only use "--property" on the CLI by prefixing the properties not starting with "bundlebee"
         return directMapping.entrySet().stream()
+                .flatMap(it -> !ALIASES.containsKey(it.getKey()) ?
+                        Stream.of(it) : Stream.of(it, entry(ALIASES.get(it.getKey()), it.getValue())))
                 .flatMap(it -> it.getKey().startsWith("bundlebee.") ?
                         Stream.of(it) : Stream.of(it, entry("bundlebee." + cmd + "." + it.getKey(), it.getValue())))
                 .flatMap(it -> !it.getKey().contains("-") ?
@@ -286,7 +286,7 @@ public class ApplyCommand extends BaseLabelEnricherCommand implements Completing
                 "Deploying", it.getManifest(), it.getAlveolus(), null,
                 (ctx, desc) -> kube
                         .forDescriptorWithOriginal(
-                                "Applying", desc.getContent(), desc.getExtension(),
+                                "Applying", desc,
                                 item -> {
                                     if (state != null) {
                                         final var json = item.getPrepared();
@@ -224,7 +224,7 @@ public class DeleteCommand implements CompletingExecutable {
                 .thenCompose(descs -> chain(
                         descs.stream()
                                 .map(desc -> (Supplier<CompletionStage<?>>) () -> kube.delete(
-                                                desc.getContent(), desc.getExtension(),
+                                                desc,
                                                 UNSET.equals(gracePeriodSeconds) ? -1 : Integer.parseInt(gracePeriodSeconds))
                                         .thenApply(ignored -> desc))
                                 .collect(toList())
@@ -241,7 +241,7 @@ public class DeleteCommand implements CompletingExecutable {
     private CompletionStage<Boolean> testIfDeletedOrAwait(final List<AlveolusHandler.LoadedDescriptor> descriptors, final Instant end) {
         return all(
                 descriptors.stream()
-                        .map(it -> kube.exists(it.getContent(), it.getExtension()))
+                        .map(it -> kube.exists(it))
                         .collect(toList()),
                 toList(),
                 true)
@@ -17,6 +17,7 @@ package io.yupiik.bundlebee.core.command.impl;
 
 import io.yupiik.bundlebee.core.configuration.Description;
 import io.yupiik.bundlebee.core.descriptor.Manifest;
+import io.yupiik.bundlebee.core.json.StructuralJsonDiff;
 import io.yupiik.bundlebee.core.kube.HttpKubeClient;
 import io.yupiik.bundlebee.core.kube.KubeClient;
 import io.yupiik.bundlebee.core.qualifier.BundleBee;
@@ -29,9 +30,7 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 import javax.json.JsonArray;
-import javax.json.JsonException;
 import javax.json.JsonObject;
-import javax.json.JsonPointer;
 import javax.json.JsonString;
 import javax.json.JsonStructure;
 import javax.json.JsonValue;
@@ -41,39 +40,35 @@ import javax.json.spi.JsonProvider;
 import javax.json.stream.JsonGenerator;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static io.yupiik.bundlebee.core.command.impl.DiffCommand.ActualStatus.EXISTS;
 import static io.yupiik.bundlebee.core.command.impl.DiffCommand.ActualStatus.MISSING;
 import static io.yupiik.bundlebee.core.command.impl.DiffCommand.DiffType.AUTO;
 import static io.yupiik.bundlebee.core.command.impl.DiffCommand.DiffType.JSON_PATCH;
-import static java.util.Collections.emptyMap;
 import static java.util.Map.entry;
 import static java.util.Optional.ofNullable;
 import static java.util.concurrent.CompletableFuture.allOf;
 import static java.util.concurrent.CompletableFuture.completedFuture;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static javax.json.JsonValue.EMPTY_JSON_OBJECT;
 
 @Log
@@ -113,23 +108,7 @@ public class DiffCommand extends VisitorCommand {
     @Description("" +
             "A list (comma separated values) of JSON-Pointer to ignore in the comparison of client/configured state and actual cluster state. " +
             "Note that these ones will also affect `ignoreEmptyJsonObjectRemovals` since they are dropped before testing the value.")
-    @ConfigProperty(name = "bundlebee.diff.ignoredPointers", defaultValue = "" +
-            // todo: refine this one, it can contain anything so hard to make it right
-            "/metadata/annotations," +
-            // read-only or server related properties (k8s)
-            "/metadata/creationTimestamp," +
-            "/metadata/deletionGracePeriodSeconds," +
-            "/metadata/generation," +
-            "/metadata/managedFields," +
-            "/metadata/ownerReferences," +
-            "/metadata/resourceVersion," +
-            "/metadata/selfLink," +
-            "/metadata/uid," +
-            "/status," +
-            // bundlebee, we know it does not impact the state
-            "/metadata/labels/bundlebee.root.alveolus.name," +
-            "/metadata/labels/bundlebee.root.alveolus.version," +
-            "/metadata/labels/bundlebee.timestamp")
+    @ConfigProperty(name = "bundlebee.diff.ignoredPointers", defaultValue = KubeClient.DEFAULT_IGNORED_POINTERS)
     private List<String> ignoredPointers;
 
     @Inject
@@ -152,6 +131,20 @@ public class DiffCommand extends VisitorCommand {
     @ConfigProperty(name = "bundlebee.diff.customIgnorableAttributes", defaultValue = UNSET)
     private List<String> customIgnorableAttributes;
 
+    @Inject
+    @Description("" +
+            "A list (comma separated values) of attributes used to match array items (containers, env, ports...) instead of their index. " +
+            "The first attribute all items of both arrays have with unique values is used, if none the array is compared by index.")
+    @ConfigProperty(name = "bundlebee.diff.arrayKeys", defaultValue = "name,containerPort")
+    private List<String> arrayKeys;
+
+    @Inject
+    @Description("" +
+            "A list (comma separated values) of array attribute names always compared by index even if `arrayKeys` match their items. " +
+            "Defaults to `env` since environment variables can reference the previous ones (`$(VAR)`) so reordering them is a difference.")
+    @ConfigProperty(name = "bundlebee.diff.orderedArrays", defaultValue = "env")
+    private List<String> orderedArrays;
+
     @Inject
     @Description("Should a diff where the `op` is `remove` or `replace` and the associated `value` an empty JSON-Object/JSON-Array be ignored.")
     @ConfigProperty(name = "bundlebee.diff.ignoreEmptyRemovals", defaultValue = "true")
@@ -187,7 +180,9 @@ public class DiffCommand extends VisitorCommand {
     private DiffType diffType;
 
     @Inject
-    @Description("How to dump the diff, by default (`LOG`) it will print it but `FILE` will store it in a local file (using `dumpLocation`).")
+    @Description("How to dump the diff, by default (`LOG`) it will print it but `FILE` will store it in a local file (using `dumpLocation`). " +
+            "Diffs are written as soon as they are computed so `LOG` emits a `Diff:` record then one record per descriptor " +
+            "(except with `JSON` diff type which is logged as a single document at the end).")
     @ConfigProperty(name = "bundlebee.diff.outputType", defaultValue = "LOG")
     private OutputType outputType;
 
@@ -210,15 +205,16 @@ public class DiffCommand extends VisitorCommand {
     @Inject
     private HttpKubeClient httpK8s;
 
-    private Collection<JsonPointer> pointersToStrip;
+    private Set<String> pointersToStrip;
+    private StructuralJsonDiff differ;
 
     @PostConstruct
     private void init() {
         pointersToStrip = Stream.of(ignoredPointers, customIgnoredPointers)
                 .filter(it -> !List.of(UNSET).equals(it))
                 .flatMap(Collection::stream)
-                .map(json::createPointer)
-                .collect(toList());
+                .collect(toSet());
+        differ = new StructuralJsonDiff(json.createBuilderFactory(Map.of()), pointersToStrip, arrayKeys, orderedArrays);
     }
 
     @Override
@@ -241,107 +237,57 @@ public class DiffCommand extends VisitorCommand {
 
     @Override
     public CompletionStage<?> execute() {
-        return doExecute().thenAccept(data -> {
-            if (data.isEmpty()) {
+        return loadItems().thenCompose(items -> {
+            if (items.isEmpty()) {
                 log.warning(() -> "No data to diff, check your setup");
-                return;
+                return completedFuture(null);
             }
 
-            final var writerFactory = formatted ?
-                    json.createWriterFactory(Map.of(JsonGenerator.PRETTY_PRINTING, true)) :
-                    null;
-            final var diffCache = new ConcurrentHashMap<Item, JsonArray>();
-            switch (diffType) {
-                case JSON:
-                    doWrite(() -> {
-                        final var diff = json.createObjectBuilder();
-                        data.entrySet().stream()
-                                .collect(groupingBy(i -> i.getKey().getAlveolus().getName()))
-                                .forEach((alveolusName, items) -> diff.add(
-                                        alveolusName,
-                                        json.createArrayBuilder(items.stream()
-                                                .map(it -> doJsonDiff(it, diffCache))
-                                                .filter(Objects::nonNull)
-                                                .collect(toList()))));
-                        final var json = diff.build();
-                        return writerFactory != null ? format(json, writerFactory) : json.toString();
+            final var report = new StreamingReport(items, Math.max(concurrency, 1));
+            return fetchAll(report)
+                    .whenComplete((ok, ko) -> report.close())
+                    .thenRun(() -> {
+                        if (report.isLimitExceeded()) {
+                            throw new IllegalStateException("Too much differences: " + report.differences.get() + " (maxDifferences=" + maxDifferences + ")");
+                        }
                     });
-                    break;
-                default:
-                    doWrite(() -> "Diff:\n" + data.entrySet().stream()
-                            .sorted(Comparator.<Map.Entry<Item, ActualState>, String>comparing(i -> i.getKey().getAlveolus().getName())
-                                    .thenComparing(i -> i.getKey().getKind())
-                                    .thenComparing(i -> i.getKey().getName()))
-                            .map(it -> doLogDiff(it.getKey(), it.getValue(), writerFactory, diffCache))
-                            .filter(Predicate.not(String::isBlank))
-                            .collect(joining("\n")));
-            }
-
-            if (maxDifferences > 0) {
-                final long diff = data.entrySet().stream()
-                        .mapToLong(i -> doDiff(i.getKey(), i.getValue(), diffCache).size())
-                        .sum();
-                if (diff > maxDifferences) {
-                    throw new IllegalStateException("Too much differences: " + diff + " (maxDifferences=" + maxDifferences + ")");
-                }
-            }
         });
     }
 
-    private void doWrite(final Supplier<String> contentProvider) {
-        switch (outputType) {
-            case FILE:
-                final var out = Path.of(dumpLocation);
-                try {
-                    if (out.getParent() != null) {
-                        Files.createDirectories(out.getParent());
-                    }
-                    Files.writeString(out, contentProvider.get());
-                } catch (final IOException ioe) {
-                    throw new IllegalStateException(ioe);
-                }
-                break;
-            default:
-                log.info(contentProvider);
-        }
-    }
-
-    protected CompletionStage<Map<Item, ActualState>> doExecute() {
+    // items are sorted to get a deterministic report (and contiguous alveoli for JSON output) even if diffs are streamed
+    protected CompletionStage<List<Item>> loadItems() {
         return super
                 .doExecute(from, manifest, alveolus, descriptor, null)
-                .thenCompose(collected -> {
-                    // 1. load all descriptor to get the resource type
-                    final var resources = collected.getDescriptors().entrySet().stream()
-                            .flatMap(it -> it.getValue().stream().map(d -> entry(it.getKey(), d)))
-                            // here we allow ourselves to call get() cause we know it is synchronous like
-                            .flatMap(desc -> {
-                                try {
-                                    return loadItemsForDescriptor(collected, desc);
-                                } catch (final InterruptedException e) {
-                                    Thread.currentThread().interrupt();
-                                    throw new IllegalStateException(e);
-                                } catch (final ExecutionException e) {
-                                    throw new IllegalStateException(e.getCause());
-                                }
-                            })
-                            .collect(toList());
-
-                    // 2. call all resources to check it exists and their current model
-                    return fetchAll(resources.iterator());
-                });
+                .thenApply(collected -> collected.getDescriptors().entrySet().stream()
+                        .flatMap(it -> it.getValue().stream().map(d -> entry(it.getKey(), d)))
+                        // here we allow ourselves to call get() cause we know it is synchronous like
+                        .flatMap(desc -> {
+                            try {
+                                return loadItemsForDescriptor(collected, desc);
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new IllegalStateException(e);
+                            } catch (final ExecutionException e) {
+                                throw new IllegalStateException(e.getCause());
+                            }
+                        })
+                        .distinct()
+                        .sorted(Comparator.<Item, String>comparing(i -> i.getAlveolus().getName())
+                                .thenComparing(Item::getKind)
+                                .thenComparing(Item::getName))
+                        .collect(toList()));
     }
 
-    private JsonValue doJsonDiff(final Map.Entry<Item, ActualState> it, final Map<Item, JsonArray> cache) {
-        final var diff = doDiff(it.getKey(), it.getValue(), cache);
+    private JsonValue doJsonDiff(final Item expected, final ActualState actual, final JsonArray diff) {
         if (diff.isEmpty()) {
             return null;
         }
         return json.createObjectBuilder()
-                .add("resource", it.getKey().getSource().getResource())
-                .add("uri", it.getKey().getSource().getUri())
-                .add("remote", it.getValue().getUrl())
-                .add("expected", it.getKey().getExpected())
-                .add("actual", it.getValue().getActual())
+                .add("resource", expected.getSource().getResource())
+                .add("uri", expected.getSource().getUri())
+                .add("remote", actual.getUrl())
+                .add("expected", expected.getExpected())
+                .add("actual", actual.getActual())
                 .add("diff", json.createObjectBuilder()
                         // not a diff between expected and actual but the sanitized version we did
                         .add("clean", diff))
@@ -349,8 +295,7 @@ public class DiffCommand extends VisitorCommand {
     }
 
     private String doLogDiff(final Item expected, final ActualState actual,
-                             final JsonWriterFactory writerFactory, final Map<Item, JsonArray> cache) {
-        final var diff = doDiff(expected, actual, cache);
+                             final JsonWriterFactory writerFactory, final JsonArray diff) {
         if (diff.isEmpty() && ignoreNoDiffEntries) {
             return "";
         }
@@ -363,16 +308,8 @@ public class DiffCommand extends VisitorCommand {
                 (diffType == AUTO && diff.isEmpty() ? "" : ((writerFactory != null ? format(data, writerFactory) : data.toString()).trim()));
     }
 
-    private JsonArray doDiff(final Item expected, final ActualState actual, final Map<Item, JsonArray> cache) {
-        return cache.computeIfAbsent(expected, e -> {
-            final var preparedExpected = prepare(expected.getExpected());
-            final var preparedActual = prepare(actual.getActual());
-            return json.createArrayBuilder(doDiff(preparedActual, preparedExpected).stream()
-                            .map(JsonValue::asJsonObject)
-                            .filter(it -> isImportantDiff(it, p -> json.createPointer(p).getValue(actual.getActual())))
-                            .collect(toList()))
-                    .build();
-        });
+    private JsonArray doDiff(final Item expected, final ActualState actual) {
+        return differ.diff(actual.getActual(), expected.getExpected(), (op, source) -> isImportantDiff(op, p -> source));
     }
 
     protected boolean isImportantDiff(final JsonObject op, final Function<String, JsonValue> accessor) {
@@ -384,7 +321,7 @@ public class DiffCommand extends VisitorCommand {
         final var path = op.getString("path", "");
         if (ignoreEmptyRemovals) {
             final var value = accessor.apply(path);
-            if ((value.getValueType() == JsonValue.ValueType.OBJECT && prepare(value.asJsonObject()).isEmpty()) ||
+            if ((value.getValueType() == JsonValue.ValueType.OBJECT && isEmptyOnceCleaned(value.asJsonObject())) ||
                     (value.getValueType() == JsonValue.ValueType.ARRAY && (value.asJsonArray().isEmpty() || isIgnorableArray(value.asJsonArray())))) {
                 return false;
             }
@@ -405,10 +342,6 @@ public class DiffCommand extends VisitorCommand {
         return "kubernetes.io/pv-protection".equals(value) || "kubernetes.io/pvc-protection".equals(value);
     }
 
-    private JsonArray doDiff(final JsonObject preparedExpected, final JsonObject preparedActual) {
-        return json.createDiff(preparedExpected, preparedActual).toJsonArray();
-    }
-
     private String format(final JsonStructure value, final JsonWriterFactory writerFactory) {
         final var pretty = new StringWriter();
         try (final var writer = writerFactory.createWriter(pretty)) {
@@ -417,40 +350,15 @@ public class DiffCommand extends VisitorCommand {
         return pretty.toString();
     }
 
-    private JsonObject prepare(final JsonObject value) {
-        var current = value;
-        for (final var ptr : pointersToStrip) {
-            try {
-                current = ptr.remove(current);
-            } catch (final JsonException je) {
-                // no-op, not there so just ignore
-            }
-        }
-        return sortObjects(current).asJsonObject();
-    }
-
-    private JsonValue sortObjects(final JsonValue value) {
-        switch (value.getValueType()) {
-            case OBJECT:
-                final Map<String, Object> sortedMap = value.asJsonObject().entrySet().stream()
-                        // strip null to ensure we don't have to compare JsonValue.NULL and null
-                        .filter(Predicate.not(it -> JsonValue.NULL.equals(it.getValue())))
-                        .sorted(Map.Entry.comparingByKey())
-                        .collect(toMap(Map.Entry::getKey, e -> sortObjects(e.getValue()), (a, b) -> a, LinkedHashMap::new));
-                return json.createObjectBuilder(sortedMap).build();
-            case ARRAY: // don't sort the array for now, order means something there
-                final var array = value.asJsonArray().stream()
-                        .map(this::sortObjects)
-                        .collect(toList());
-                return json.createArrayBuilder(array).build();
-            default:
-                return value;
-        }
+    // same as checking the value is empty once ignored pointers and nulls are dropped without rebuilding it
+    private boolean isEmptyOnceCleaned(final JsonObject value) {
+        return value.entrySet().stream().allMatch(it -> JsonValue.NULL.equals(it.getValue()) ||
+                pointersToStrip.contains('/' + it.getKey().replace("~", "~0").replace("/", "~1")));
     }
 
     private Stream<Item> loadItemsForDescriptor(final Collected collected, final Map.Entry<String, AlveolusHandler.LoadedDescriptor> desc) throws InterruptedException, ExecutionException {
         return k8s.forDescriptorWithOriginal(
-                        "Parsing", desc.getValue().getContent(), desc.getValue().getExtension(),
+                        "Parsing", desc.getValue(),
                         item -> completedFuture(item.getPrepared()))
                 .toCompletableFuture().get().stream()
                 .map(obj -> {
@@ -464,52 +372,253 @@ public class DiffCommand extends VisitorCommand {
                 });
     }
 
-    private CompletionStage<Map<Item, ActualState>> fetchAll(final Iterator<Item> iterator) {
-        if (!iterator.hasNext()) {
-            return completedFuture(emptyMap());
-        }
-
-        final var cache = new ConcurrentHashMap<JsonObject, ActualState>();
-        final var collector = new ConcurrentHashMap<Item, ActualState>();
-        final var lock = new ReentrantLock();
-
+    private CompletionStage<?> fetchAll(final StreamingReport report) {
         // seed the concurrency
         final var seeds = new ArrayList<CompletableFuture<?>>();
         for (int i = 0; i < Math.max(concurrency, 1); i++) {
-            seeds.add(fetchNext(lock, iterator, collector, cache));
+            seeds.add(fetchNext(report));
         }
-
-        return allOf(seeds.toArray(new CompletableFuture<?>[0]))
-                .thenApply(ok -> collector);
+        return allOf(seeds.toArray(new CompletableFuture<?>[0]));
     }
 
-    private CompletableFuture<?> fetchNext(final ReentrantLock lock, final Iterator<Item> iterator,
-                                           final Map<Item, ActualState> collector, final Map<JsonObject, ActualState> cache) {
-        final Item item;
-        lock.lock();
-        try {
-            if (!iterator.hasNext()) {
+    private CompletableFuture<?> fetchNext(final StreamingReport report) {
+        return report.nextIndex().thenCompose(index -> {
+            if (index < 0) {
                 return completedFuture(null);
             }
-            item = iterator.next();
-        } finally {
-            lock.unlock();
+            final var item = report.items.get(index);
+            return k8s.getResource(item.getExpected())
+                    .thenCompose(res -> {
+                        final var status = res.statusCode() >= 200 && res.statusCode() <= 299 ? EXISTS : MISSING;
+                        report.onActualState(index, new ActualState(
+                                status,
+                                status == EXISTS ? jsonb.fromJson(res.body(), JsonObject.class) : EMPTY_JSON_OBJECT,
+                                res.request().uri().toASCIIString(), res.statusCode(), res.body()));
+                        return fetchNext(report);
+                    })
+                    .whenComplete((ok, ko) -> {
+                        if (ko != null) { // don't let parked fetchers wait for an index which will never be written
+                            report.stop();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Diffs are computed as soon as the actual state is fetched and written in items order (out of order results are
+     * kept until previous ones are written), it avoids to keep all the states and the full report in memory.
+     * Fetchers can't go further than {@code window} items after the next one to write, if they do they are parked until
+     * it is written so a slow resource does not lead to buffer all the following ones.
+     */
+    private class StreamingReport implements AutoCloseable {
+        private final List<Item> items;
+        private final int window;
+        private final Diffed[] pending; // ring buffer of window size
+        private final Deque<CompletableFuture<Integer>> waiting = new ArrayDeque<>();
+        private final AtomicLong differences = new AtomicLong();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final JsonWriterFactory writerFactory = formatted ?
+                json.createWriterFactory(Map.of(JsonGenerator.PRETTY_PRINTING, true)) :
+                null;
+        private volatile boolean limitExceeded;
+        private boolean stopped;
+        private int nextToFetch;
+        private int nextToWrite;
+        private boolean started;
+        private Writer writer;
+        private JsonGenerator generator;
+        private String currentAlveolus;
+
+        private StreamingReport(final List<Item> items, final int window) {
+            this.items = items;
+            this.window = window;
+            this.pending = new Diffed[Math.min(window, items.size())];
         }
 
-        final var cached = cache.get(item.getExpected());
-        return cached != null ?
-                completedFuture(cached)
-                        .thenCompose(ok -> fetchNext(lock, iterator, collector, cache)) :
-                k8s.getResource(item.getExpected())
-                        .thenCompose(res -> {
-                            final var status = res.statusCode() >= 200 && res.statusCode() <= 299 ? EXISTS : MISSING;
-                            collector.put(item, new ActualState(
-                                    status,
-                                    status == EXISTS ? jsonb.fromJson(res.body(), JsonObject.class) : EMPTY_JSON_OBJECT,
-                                    res.request().uri().toASCIIString(), res.statusCode(), res.body()));
-                            return fetchNext(lock, iterator, collector, cache);
-                        })
-                        .toCompletableFuture();
+        private boolean isLimitExceeded() {
+            return limitExceeded;
+        }
+
+        private CompletableFuture<Integer> nextIndex() {
+            lock.lock();
+            try {
+                final int index = tryNextIndex();
+                if (index == Integer.MAX_VALUE) {
+                    final var waiter = new CompletableFuture<Integer>();
+                    waiting.add(waiter);
+                    return waiter;
+                }
+                return completedFuture(index);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // -1 when done, Integer.MAX_VALUE when the window is full, must be called under lock
+        private int tryNextIndex() {
+            if (limitExceeded || stopped || nextToFetch >= items.size()) { // stop fetching
+                return -1;
+            }
+            if (nextToFetch >= nextToWrite + window) {
+                return Integer.MAX_VALUE;
+            }
+            return nextToFetch++;
+        }
+
+        // resumed outside the lock since the waiter continuation directly fetches the next resource
+        private void resume(final List<CompletableFuture<Integer>> resumed, final List<Integer> indices) {
+            for (int i = 0; i < resumed.size(); i++) {
+                resumed.get(i).complete(indices.get(i));
+            }
+        }
+
+        // must be called under lock
+        private void dequeueWaiting(final List<CompletableFuture<Integer>> resumed, final List<Integer> indices) {
+            while (!waiting.isEmpty()) {
+                final int index = tryNextIndex();
+                if (index == Integer.MAX_VALUE) {
+                    break;
+                }
+                resumed.add(waiting.poll());
+                indices.add(index);
+            }
+        }
+
+        private void stop() {
+            final var resumed = new ArrayList<CompletableFuture<Integer>>();
+            final var indices = new ArrayList<Integer>();
+            lock.lock();
+            try {
+                stopped = true;
+                dequeueWaiting(resumed, indices);
+            } finally {
+                lock.unlock();
+            }
+            resume(resumed, indices);
+        }
+
+        private void onActualState(final int index, final ActualState actual) {
+            final var diff = doDiff(items.get(index), actual);
+            if (maxDifferences > 0 && differences.addAndGet(diff.size()) > maxDifferences) {
+                limitExceeded = true;
+            }
+
+            final var resumed = new ArrayList<CompletableFuture<Integer>>();
+            final var indices = new ArrayList<Integer>();
+            lock.lock();
+            try {
+                pending[index % pending.length] = new Diffed(actual, diff);
+                while (nextToWrite < items.size() && pending[nextToWrite % pending.length] != null) {
+                    final int slot = nextToWrite % pending.length;
+                    write(items.get(nextToWrite++), pending[slot]);
+                    pending[slot] = null; // release it
+                }
+                dequeueWaiting(resumed, indices);
+            } finally {
+                lock.unlock();
+            }
+            resume(resumed, indices);
+        }
+
+        private void write(final Item item, final Diffed diffed) {
+            if (!started) {
+                start();
+            }
+            if (diffType == DiffType.JSON) {
+                final var name = item.getAlveolus().getName();
+                if (!name.equals(currentAlveolus)) {
+                    if (currentAlveolus != null) {
+                        generator.writeEnd();
+                    }
+                    generator.writeStartArray(name);
+                    currentAlveolus = name;
+                }
+                final var value = doJsonDiff(item, diffed.actual, diffed.diff);
+                if (value != null) {
+                    generator.write(value);
+                }
+                return;
+            }
+
+            final var entry = doLogDiff(item, diffed.actual, writerFactory, diffed.diff);
+            if (entry.isBlank()) {
+                return;
+            }
+            if (writer == null) {
+                log.info(() -> entry);
+            } else {
+                try {
+                    writer.write('\n');
+                    writer.write(entry);
+                } catch (final IOException ioe) {
+                    throw new IllegalStateException(ioe);
+                }
+            }
+        }
+
+        private void start() {
+            started = true;
+            if (outputType == OutputType.FILE) {
+                final var out = Path.of(dumpLocation);
+                try {
+                    if (out.getParent() != null) {
+                        Files.createDirectories(out.getParent());
+                    }
+                    writer = Files.newBufferedWriter(out);
+                } catch (final IOException ioe) {
+                    throw new IllegalStateException(ioe);
+                }
+            } else if (diffType == DiffType.JSON) { // a JSON document can't be split in log records
+                writer = new StringWriter();
+            }
+
+            if (diffType == DiffType.JSON) {
+                generator = json.createGeneratorFactory(formatted ? Map.of(JsonGenerator.PRETTY_PRINTING, true) : Map.of())
+                        .createGenerator(writer);
+                generator.writeStartObject();
+            } else if (writer == null) {
+                log.info("Diff:");
+            } else {
+                try {
+                    writer.write("Diff:");
+                } catch (final IOException ioe) {
+                    throw new IllegalStateException(ioe);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (!started) { // nothing was fetched (error)
+                    return;
+                }
+                if (generator != null) {
+                    if (currentAlveolus != null) {
+                        generator.writeEnd();
+                    }
+                    generator.writeEnd();
+                    generator.close();
+                    if (outputType != OutputType.FILE) {
+                        final var content = writer.toString();
+                        log.info(() -> content);
+                    }
+                } else if (writer != null) {
+                    writer.close();
+                }
+            } catch (final IOException ioe) {
+                throw new IllegalStateException(ioe);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Data
+    private static class Diffed {
+        private final ActualState actual;
+        private final JsonArray diff;
     }
 
     public enum ActualStatus {
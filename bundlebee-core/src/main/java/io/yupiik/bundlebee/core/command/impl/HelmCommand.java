@@ -343,7 +343,7 @@ public class HelmCommand extends BaseLabelEnricherCommand implements CompletingE
         it.getAlveolus().setChainDependencies(true); // forced to ensure we process everything - including placeholders - synchronously
         return visitor.executeOnceOnAlveolus(
                 "Visiting", it.getManifest(), it.getAlveolus(), null,
-                (ctx, desc) -> kube.forDescriptor("Visiting", desc.getContent(), desc.getExtension(), CompletableFuture::completedFuture),
+                (ctx, desc) -> kube.forDescriptor("Visiting", desc, CompletableFuture::completedFuture),
                 cache, desc -> {
                     spyCollector.getIgnoredKeys().clear();
                     return completedFuture(null);
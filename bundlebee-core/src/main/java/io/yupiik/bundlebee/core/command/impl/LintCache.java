@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.command.impl;
+
+import io.yupiik.bundlebee.core.command.impl.lint.ContextualLintError;
+import io.yupiik.bundlebee.core.command.impl.lint.LintError;
+import io.yupiik.bundlebee.core.command.impl.lint.LintingCheck;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.java.Log;
+
+import javax.json.bind.Jsonb;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Persists linting results between executions.
+ * <p>
+ * Descriptor validations are keyed by the descriptor content digest, the check (name, class and version - or class bytecode
+ * digest when the check is not packaged with a version) and the lint command configuration. Contextual validations ({@link LintingCheck#afterAll()}) are keyed by the digests
+ * of all the descriptors the check visited so any change in one of these descriptors invalidates them.
+ * <p>
+ * Only the entries used by an execution are saved, it avoids the file to grow forever.
+ */
+@Log
+class LintCache {
+    private static final int VERSION = 1;
+    private final Path location;
+    private final Jsonb jsonb;
+    private final String configuration;
+    private final Map<String, List<CachedError>> previous;
+    private final Map<String, List<CachedError>> current = new ConcurrentHashMap<>();
+    private final Map<LintingCheck, String> checkKeys = new ConcurrentHashMap<>();
+    private final Map<LintingCheck, Set<String>> visited = new ConcurrentHashMap<>();
+
+    LintCache(final Path location, final Jsonb jsonb, final String configuration) {
+        this.location = location;
+        this.jsonb = jsonb;
+        this.configuration = configuration;
+        this.previous = load();
+    }
+
+    String digest(final LintingCheck.LintableDescriptor descriptor) { // names are used by contextual errors
+        return hash(descriptor.getAlveolus() + '\n' + descriptor.getName() + '\n' + descriptor.getDescriptor());
+    }
+
+    /**
+     * Registers the descriptor as a dependency of the check for its {@link LintingCheck#afterAll()} validations.
+     *
+     * @param check  the check visiting the descriptor.
+     * @param digest the descriptor digest.
+     */
+    void visit(final LintingCheck check, final String digest) {
+        visited.computeIfAbsent(check, k -> ConcurrentHashMap.newKeySet()).add(digest);
+    }
+
+    List<LintError> findErrors(final LintingCheck check, final String digest) {
+        return ofNullable(find(key(check, digest)))
+                .map(errors -> errors.stream()
+                        .map(it -> new LintError(it.getLevel(), it.getMessage()))
+                        .collect(toList()))
+                .orElse(null);
+    }
+
+    void putErrors(final LintingCheck check, final String digest, final Collection<LintError> errors) {
+        current.put(key(check, digest), errors.stream()
+                .map(it -> new CachedError(it.getLevel(), it.getMessage(), null, null))
+                .collect(toList()));
+    }
+
+    List<ContextualLintError> findContextualErrors(final LintingCheck check) {
+        return ofNullable(find(contextualKey(check)))
+                .map(errors -> errors.stream()
+                        .map(it -> new ContextualLintError(it.getLevel(), it.getMessage(), it.getAlveolus(), it.getDescriptor()))
+                        .collect(toList()))
+                .orElse(null);
+    }
+
+    void putContextualErrors(final LintingCheck check, final Collection<ContextualLintError> errors) {
+        current.put(contextualKey(check), errors.stream()
+                .map(it -> new CachedError(it.getLevel(), it.getMessage(), it.getAlveolus(), it.getDescriptor()))
+                .collect(toList()));
+    }
+
+    void save() {
+        try {
+            if (location.getParent() != null) {
+                Files.createDirectories(location.getParent());
+            }
+            Files.writeString(location, jsonb.toJson(new Model(VERSION, new TreeMap<>(current))));
+        } catch (final IOException | RuntimeException e) { // a cache must not fail the linting
+            log.warning(() -> "Can't save lint cache '" + location + "': " + e.getMessage());
+        }
+    }
+
+    private List<CachedError> find(final String key) {
+        final var errors = previous.get(key);
+        if (errors != null) {
+            current.put(key, errors); // keep it for next run
+        }
+        return errors;
+    }
+
+    private String key(final LintingCheck check, final String digest) {
+        return checkKey(check) + ':' + digest;
+    }
+
+    private String contextualKey(final LintingCheck check) {
+        return checkKey(check) + ":afterAll:" + hash(ofNullable(visited.get(check))
+                .map(digests -> digests.stream().sorted().collect(joining(",")))
+                .orElse(""));
+    }
+
+    private String checkKey(final LintingCheck check) {
+        return checkKeys.computeIfAbsent(check, c -> {
+            Class<?> type = c.getClass();
+            while (type.getName().contains("$$") && type.getSuperclass() != null) { // container proxies
+                type = type.getSuperclass();
+            }
+            final var implementationVersion = type.getPackage() == null ? null : type.getPackage().getImplementationVersion();
+            return hash(configuration + '\n' +
+                    c.name() + '\n' +
+                    type.getName() + '\n' +
+                    (implementationVersion != null ? implementationVersion : bytecodeVersion(type)));
+        });
+    }
+
+    // custom checks are often not packaged with a version, an edited check must not reuse the previous results
+    private String bytecodeVersion(final Class<?> type) {
+        final var loader = type.getClassLoader() == null ? ClassLoader.getSystemClassLoader() : type.getClassLoader();
+        try (final var stream = loader.getResourceAsStream(type.getName().replace('.', '/') + ".class")) {
+            if (stream == null) {
+                return "dev";
+            }
+            return hash(stream.readAllBytes());
+        } catch (final IOException e) {
+            log.finest(() -> "Can't read '" + type.getName() + "' bytecode: " + e.getMessage());
+            return "dev";
+        }
+    }
+
+    private Map<String, List<CachedError>> load() {
+        if (!Files.exists(location)) {
+            return Map.of();
+        }
+        try {
+            final var loaded = jsonb.fromJson(Files.readString(location), Model.class);
+            if (loaded == null || loaded.getVersion() != VERSION || loaded.getEntries() == null) {
+                return Map.of();
+            }
+            return loaded.getEntries();
+        } catch (final IOException | RuntimeException e) { // corrupted or old format, ignore it
+            log.warning(() -> "Can't read lint cache '" + location + "', ignoring it: " + e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private static String hash(final String value) {
+        return hash(value.getBytes(UTF_8));
+    }
+
+    private static String hash(final byte[] value) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MessageDigest.getInstance("SHA-256").digest(value));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor(access = PRIVATE)
+    public static class Model {
+        private int version;
+        private Map<String, List<CachedError>> entries;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor(access = PRIVATE)
+    public static class CachedError {
+        private LintError.LintLevel level;
+        private String message;
+        private String alveolus;
+        private String descriptor;
+    }
+}
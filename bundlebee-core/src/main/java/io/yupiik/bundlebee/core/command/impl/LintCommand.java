@@ -16,6 +16,7 @@
 package io.yupiik.bundlebee.core.command.impl;
 
 import io.yupiik.bundlebee.core.command.CompletingExecutable;
+import io.yupiik.bundlebee.core.command.impl.lint.ContextualLintError;
 import io.yupiik.bundlebee.core.command.impl.lint.LintError;
 import io.yupiik.bundlebee.core.command.impl.lint.LintingCheck;
 import io.yupiik.bundlebee.core.command.model.sarif.Artifact;
@@ -55,6 +56,11 @@ import java.util.Objects;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.stream.Collector;
 import java.util.stream.IntStream;
@@ -63,9 +69,13 @@ import java.util.stream.Stream;
 import static io.yupiik.bundlebee.lang.CompletionFutures.all;
 import static java.util.Comparator.comparing;
 import static java.util.Optional.ofNullable;
+import static java.util.Map.entry;
 import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static javax.json.JsonValue.EMPTY_JSON_ARRAY;
@@ -126,6 +136,17 @@ public class LintCommand implements CompletingExecutable {
     @ConfigProperty(name = "bundlebee.lint.output", defaultValue = "false")
     private String output;
 
+    @Inject
+    @Description("If not `false`, the file used to cache linting results between executions (unchanged descriptors are not validated again). " +
+            "`auto` uses `$HOME/.bundlebee/lint-cache.json`, a build directory (`target/bundlebee-lint-cache.json` for example) is a good option on CI.")
+    @ConfigProperty(name = "bundlebee.lint.cache", defaultValue = "false")
+    private String cache;
+
+    @Inject
+    @Description("Number of threads used to lint descriptors, if negative or zero the number of available processors is used.")
+    @ConfigProperty(name = "bundlebee.lint.threads", defaultValue = "-1")
+    private int threads;
+
     @Inject
     private AlveolusHandler visitor;
 
@@ -189,11 +210,45 @@ public class LintCommand implements CompletingExecutable {
                 .filter(it -> (forcedRules.size() == 1 && "all".equals(forcedRules.get(0))) || forcedRules.contains(it.name()))
                 .collect(toList());
         final var artifacts = new ConcurrentHashMap<String, Artifact>();
-        return visit(result, checks, artifacts)
+        final var executor = newExecutor();
+        final var lintCache = newCache();
+        return visit(result, checks, new ChecksIndex(checks), executor, lintCache, artifacts)
+                .whenComplete((ok, ko) -> executor.shutdownNow())
+                .thenRun(() -> {
+                    if (lintCache != null) {
+                        lintCache.save();
+                    }
+                })
                 .thenRun(() -> handleOutput(result, checks, artifacts))
                 .thenRun(() -> postProcess(result));
     }
 
+    private LintCache newCache() {
+        if ("false".equals(cache)) {
+            return null;
+        }
+        return new LintCache(
+                "auto".equals(cache) ? Path.of(System.getProperty("user.home"), ".bundlebee", "lint-cache.json") : Path.of(cache),
+                jsonb,
+                // rules selection is part of the key to be conservative
+                "ignoredRules=" + ignoredRules.stream().sorted().collect(joining(",")) + '\n' +
+                        "forcedRules=" + forcedRules.stream().sorted().collect(joining(",")));
+    }
+
+    private ExecutorService newExecutor() {
+        return Executors.newFixedThreadPool(threads <= 0 ? Runtime.getRuntime().availableProcessors() : threads, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final var thread = new Thread(r, LintCommand.class.getName() + "-" + counter.incrementAndGet());
+                thread.setContextClassLoader(LintCommand.class.getClassLoader());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     private void handleOutput(final LintErrors result, final List<LintingCheck> checks, final ConcurrentHashMap<String, Artifact> artifacts) {
         if ("false".equals(output)) {
             return;
@@ -260,7 +315,8 @@ public class LintCommand implements CompletingExecutable {
     private CompletionStage<List<DecoratedLintError>> doLint(final AlveolusHandler.AlveolusContext ctx,
                                                              final String descriptor,
                                                              final JsonObject desc,
-                                                             final List<LintingCheck> checks,
+                                                             final ChecksIndex checks,
+                                                             final LintCache cache,
                                                              final Manifest manifest) {
         if (ignoredAlveoli.contains(ctx.getAlveolus().getName()) || ignoredDescriptors.contains(descriptor)) {
             log.finest(() -> "Ignoring '" + descriptor + "' from alveolus '" + ctx.getAlveolus().getName() + "'");
@@ -271,7 +327,8 @@ public class LintCommand implements CompletingExecutable {
 
         log.finest(() -> "Linting " + ctx.getAlveolus().getName() + ": " + desc);
         final var ld = new LintingCheck.LintableDescriptor(ctx.getAlveolus().getName(), descriptor, desc);
-        return all(checks.stream()
+        final var digest = cache == null ? null : cache.digest(ld);
+        return all(checks.forKind(ld.kind()).stream()
                         // excluded validations from the manifest
                         .filter(c -> manifest.getIgnoredLintingRules() == null || manifest.getIgnoredLintingRules().stream()
                                 .noneMatch(r -> Objects.equals(r.getName(), c.name())))
@@ -280,8 +337,13 @@ public class LintCommand implements CompletingExecutable {
                                 .filter(it -> it.getValueType() == JsonValue.ValueType.STRING)
                                 .map(it -> ((JsonString) it).getString())
                                 .noneMatch(excluded -> Objects.equals(excluded, c.name())))
-                        .filter(c -> c.accept(ld))
-                        .map(c -> c.validate(ld)
+                        .filter(c -> {
+                            if (cache != null) {
+                                cache.visit(c, digest);
+                            }
+                            return c.accept(ld);
+                        })
+                        .map(c -> validate(c, ld, cache, digest)
                                 .thenApply(errors -> errors
                                         .map(it -> new DecoratedLintError(it, ctx.getAlveolus().getName(), descriptor, c.remediation(), c.name()))
                                         .collect(toList())))
@@ -290,6 +352,37 @@ public class LintCommand implements CompletingExecutable {
                 true);
     }
 
+    private CompletionStage<Stream<LintError>> validate(final LintingCheck check, final LintingCheck.LintableDescriptor descriptor,
+                                                         final LintCache cache, final String digest) {
+        if (cache == null) {
+            return check.validate(descriptor);
+        }
+        final var cached = cache.findErrors(check, digest);
+        if (cached != null) {
+            return completedFuture(cached.stream());
+        }
+        return check.validate(descriptor).thenApply(errors -> {
+            final var list = errors.collect(toList());
+            cache.putErrors(check, digest, list);
+            return list.stream();
+        });
+    }
+
+    private CompletionStage<Stream<ContextualLintError>> afterAll(final LintingCheck check, final LintCache cache) {
+        if (cache == null) {
+            return check.afterAll();
+        }
+        final var cached = cache.findContextualErrors(check);
+        if (cached != null) {
+            return completedFuture(cached.stream());
+        }
+        return check.afterAll().thenApply(errors -> {
+            final var list = errors.collect(toList());
+            cache.putContextualErrors(check, list);
+            return list.stream();
+        });
+    }
+
     private Collector<List<DecoratedLintError>, List<DecoratedLintError>, List<DecoratedLintError>> mergeLists() {
         return Collector.of(
                 ArrayList::new,
@@ -335,6 +428,7 @@ public class LintCommand implements CompletingExecutable {
     }
 
     private CompletionStage<List<DecoratedLintError>> visit(final LintErrors result, final List<LintingCheck> checks,
+                                                            final ChecksIndex index, final Executor executor, final LintCache lintCache,
                                                             final Map<String, Artifact> artifacts) {
         if (forcedRules.contains("none")) {
             return completedFuture(List.of());
@@ -357,12 +451,13 @@ public class LintCommand implements CompletingExecutable {
                                             (ctx, desc) -> {
                                                 artifacts.put(desc.getConfiguration().getName(), new Artifact(new Location(desc.getUri())));
                                                 return k8s.forDescriptor(
-                                                        "Linting", desc.getContent(), desc.getExtension(),
+                                                        "Linting", desc,
                                                         json -> {
-                                                            final var promise = doLint(
-                                                                    ctx, desc.getConfiguration().getName(), json, checks, it.getManifest());
-                                                            allLints.add(promise);
-                                                            return promise;
+                                                            // don't let the visitor wait for the lint, it is awaited with allLints
+                                                            allLints.add(supplyAsync(() -> doLint(
+                                                                    ctx, desc.getConfiguration().getName(), json, index, lintCache, it.getManifest()), executor)
+                                                                    .thenCompose(identity()));
+                                                            return completedFuture(List.<DecoratedLintError>of());
                                                         });
                                             },
                                             cache, null, "inspected", null)
@@ -375,7 +470,7 @@ public class LintCommand implements CompletingExecutable {
                     result.errors.addAll(errors);
                     return all(
                             checks.stream()
-                                    .map(c -> c.afterAll().thenApply(afterAllErrors -> afterAllErrors
+                                    .map(c -> afterAll(c, lintCache).thenApply(afterAllErrors -> afterAllErrors
                                             .map(e -> new DecoratedLintError(e, e.getAlveolus(), e.getDescriptor(), c.remediation(), c.name()))
                                             .collect(toList())))
                                     .collect(toList()),
@@ -384,10 +479,44 @@ public class LintCommand implements CompletingExecutable {
                 })
                 .thenApply(errors -> {
                     result.errors.addAll(errors);
+                    // lint is parallel so ensure the output (SARIF in particular) is deterministic
+                    result.errors.sort(comparing(DecoratedLintError::getAveolus)
+                            .thenComparing(DecoratedLintError::getDescriptor)
+                            .thenComparing(DecoratedLintError::getRuleName)
+                            .thenComparing(e -> e.getError().getMessage()));
                     return result.errors;
                 });
     }
 
+    /**
+     * Avoids to call all checks for all descriptors, checks without {@link LintingCheck#supportedKinds()} are always called.
+     */
+    static class ChecksIndex {
+        private final List<LintingCheck> anyKind;
+        private final Map<String, List<LintingCheck>> byKind;
+        private final Map<String, List<LintingCheck>> resolved = new ConcurrentHashMap<>();
+
+        ChecksIndex(final List<LintingCheck> checks) {
+            this.anyKind = checks.stream()
+                    .filter(it -> it.supportedKinds() == null)
+                    .collect(toList());
+            this.byKind = checks.stream()
+                    .filter(it -> it.supportedKinds() != null)
+                    .flatMap(check -> check.supportedKinds().stream().map(kind -> entry(kind, check)))
+                    .collect(groupingBy(Map.Entry::getKey, mapping(Map.Entry::getValue, toList())));
+        }
+
+        List<LintingCheck> forKind(final String kind) {
+            return resolved.computeIfAbsent(kind, k -> {
+                final var specific = byKind.get(k);
+                if (specific == null) {
+                    return anyKind;
+                }
+                return Stream.concat(anyKind.stream(), specific.stream()).collect(toList());
+            });
+        }
+    }
+
     private static class LintErrors extends RuntimeException {
         private final List<DecoratedLintError> errors = new ArrayList<>();
 
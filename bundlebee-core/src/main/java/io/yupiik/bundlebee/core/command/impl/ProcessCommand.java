@@ -208,7 +208,7 @@ public class ProcessCommand extends BaseLabelEnricherCommand implements Completi
         final var labels = createLabels(it.getAlveolus(), injectTimestamp, injectBundleBeeMetadata);
         return visitor.executeOnceOnAlveolus(
                 "Processing", it.getManifest(), it.getAlveolus(), null,
-                (ctx, desc) -> kube.forDescriptor("Processing", desc.getContent(), desc.getExtension(), json -> {
+                (ctx, desc) -> kube.forDescriptor("Processing", desc, json -> {
                     final var processed = labels.isEmpty() ? json : kube.injectMetadata(json, labels);
                     onDescriptor.accept(desc.getConfiguration().getName(), processed);
                     return completedFuture(processed);
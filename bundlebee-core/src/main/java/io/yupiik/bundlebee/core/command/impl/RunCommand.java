@@ -164,7 +164,7 @@ public class RunCommand extends BaseLabelEnricherCommand implements CompletingEx
                                         final List<JsonObject> collector) {
         return visitor.executeOnceOnAlveolus(
                 "Running", it.getManifest(), it.getAlveolus(), null,
-                (ctx, desc) -> kube.forDescriptor("Running", desc.getContent(), desc.getExtension(), json -> {
+                (ctx, desc) -> kube.forDescriptor("Running", desc, json -> {
                     synchronized (collector) {
                         collector.add(json);
                     }
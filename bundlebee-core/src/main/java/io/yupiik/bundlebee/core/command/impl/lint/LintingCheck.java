@@ -20,6 +20,7 @@ import lombok.RequiredArgsConstructor;
 
 import javax.json.JsonObject;
 import javax.json.JsonValue;
+import java.util.Set;
 import java.util.concurrent.CompletionStage;
 import java.util.stream.Stream;
 
@@ -35,6 +36,16 @@ public interface LintingCheck {
 
     boolean accept(LintableDescriptor descriptor);
 
+    /**
+     * Enables the lint command to only call {@link #accept(LintableDescriptor)} for the descriptors it can handle.
+     * If a check uses {@link #accept(LintableDescriptor)} as a visitor, the visited kinds must be part of this set.
+     *
+     * @return the kinds this check can accept or {@code null} if it must see all descriptors.
+     */
+    default Set<String> supportedKinds() {
+        return null;
+    }
+
     CompletionStage<Stream<LintError>> validate(LintableDescriptor descriptor);
 
     /**
@@ -38,6 +38,7 @@ import static javax.json.JsonValue.ValueType.STRING;
 
 public abstract class AccessToResources extends CheckByKind {
     protected static final Tuple2<List<String>, List<String>> EMPTY_TUPLE2 = new Tuple2<>(List.of(), List.of());
+    private static final Set<String> VISITED_KINDS = Set.of("Role", "ClusterRole", "RoleBinding", "ClusterRoleBinding");
 
     private final Set<String> resources;
     private final Set<String> verb;
@@ -54,6 +55,11 @@ public abstract class AccessToResources extends CheckByKind {
         this.verb = verb;
     }
 
+    @Override
+    public Set<String> supportedKinds() {
+        return VISITED_KINDS;
+    }
+
     @Override
     public boolean accept(final LintableDescriptor descriptor) { // capture role related descriptors
         try {
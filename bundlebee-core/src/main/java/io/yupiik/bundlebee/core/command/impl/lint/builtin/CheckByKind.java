@@ -27,6 +27,11 @@ import static lombok.AccessLevel.PROTECTED;
 public abstract class CheckByKind implements SynchronousLintingCheck {
     private final Set<String> supportedKinds;
 
+    @Override
+    public Set<String> supportedKinds() {
+        return supportedKinds;
+    }
+
     @Override
     public boolean accept(final LintableDescriptor descriptor) {
         try {
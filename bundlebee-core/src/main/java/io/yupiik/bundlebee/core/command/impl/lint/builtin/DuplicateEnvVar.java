@@ -36,11 +36,13 @@ import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.counting;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 @Dependent
 public class DuplicateEnvVar extends CheckValue {
     private final Map<String, LintableDescriptor> configMaps = new ConcurrentHashMap<>();
     private final Collection<LintableDescriptor> descriptors = new CopyOnWriteArraySet<>();
+    private final Set<String> visitedKinds;
 
     public DuplicateEnvVar() {
         super(
@@ -52,6 +54,12 @@ public class DuplicateEnvVar extends CheckValue {
                         "Job", "/spec/template/spec/containers",
                         "Pod", "/spec/containers"),
                 true);
+        this.visitedKinds = Stream.concat(Stream.of("ConfigMap"), pointers.keySet().stream()).collect(toSet());
+    }
+
+    @Override
+    public Set<String> supportedKinds() {
+        return visitedKinds;
     }
 
     @Override
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.configuration;
+
+import org.eclipse.microprofile.config.spi.ConfigSource;
+
+/**
+ * A configuration source with values bound to the current thread.
+ * Enables to run a task on another thread (asynchronous lookups for example) with the same values.
+ */
+public interface ThreadBoundConfigSource extends ConfigSource {
+    /**
+     * @param task the task to run on another thread.
+     * @return a task running the original one with the values of the calling thread.
+     */
+    Runnable propagate(Runnable task);
+}
@@ -16,14 +16,13 @@
 package io.yupiik.bundlebee.core.configuration;
 
 import io.yupiik.bundlebee.core.service.AlveolusHandler;
-import org.eclipse.microprofile.config.spi.ConfigSource;
 
 import javax.enterprise.inject.Vetoed;
 import java.util.Map;
 import java.util.function.Supplier;
 
 @Vetoed
-public class ThreadLocalConfigSource implements ConfigSource {
+public class ThreadLocalConfigSource implements ThreadBoundConfigSource {
     private final ThreadLocal<Map<String, String>> threadLocal = new ThreadLocal<>();
 
     @Override
@@ -59,4 +58,16 @@ public class ThreadLocalConfigSource implements ConfigSource {
             }
         }
     }
+
+    @Override
+    public Runnable propagate(final Runnable task) {
+        final var current = threadLocal.get();
+        if (current == null) {
+            return task;
+        }
+        return () -> withContext(current, () -> {
+            task.run();
+            return null;
+        });
+    }
 }
@@ -19,24 +19,46 @@ import io.yupiik.bundlebee.core.descriptor.Manifest;
 import io.yupiik.bundlebee.core.service.AlveolusHandler;
 import io.yupiik.fusion.framework.handlebars.HandlebarsCompiler;
 import io.yupiik.fusion.framework.handlebars.compiler.accessor.MapAccessor;
+import io.yupiik.fusion.framework.handlebars.spi.Template;
 
 import javax.enterprise.inject.Vetoed;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toMap;
 
+/**
+ * Renders handlebars descriptors, compiled templates are cached by content digest so an instance should be reused
+ * (the {@link io.yupiik.bundlebee.core.lang.Substitutor} does it), alveolus/descriptor/execution id are only passed at render time.
+ */
 @Vetoed
 public class HandlebarsInterpolator {
+    private final int cacheSize = Integer.getInteger("bundlebee.handlebars.cache-size", 256);
+
+    private final BiFunction<String, String, String> defaultLookup;
+    private final Map<String, Function<Object, String>> helpers;
+    private final HandlebarsCompiler compiler;
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+    // render time state, templates are rendered synchronously so it is the only state helpers and accessor can see
+    private final ThreadLocal<RenderContext> context = new ThreadLocal<>();
+
+    // backward compatibility (single render usage)
     private final Manifest.Alveolus alveolus;
     private final AlveolusHandler.LoadedDescriptor descriptor;
     private final String id;
-    private final Map<String, Function<Object, String>> helpers;
-    private final BiFunction<String, String, String> defaultLookup;
+
+    public HandlebarsInterpolator(final Map<String, Function<Object, String>> customHelpers,
+                                  final BiFunction<String, String, String> defaultLookup) {
+        this(null, null, null, customHelpers, defaultLookup);
+    }
 
     public HandlebarsInterpolator(final Manifest.Alveolus alveolus,
                                   final AlveolusHandler.LoadedDescriptor descriptor,
@@ -46,51 +68,100 @@ public class HandlebarsInterpolator {
         this.alveolus = alveolus;
         this.descriptor = descriptor;
         this.id = id;
-        this.helpers = customHelpers;
         this.defaultLookup = defaultLookup;
-    }
 
-    public String apply(final String template) {
-        final Map<String, Function<Object, String>> specificHelpers = helpers.entrySet().stream()
+        final Map<String, Function<Object, String>> specificHelpers = customHelpers.entrySet().stream()
                 .collect(toMap(
                         Map.Entry::getKey,
                         // inject the id as last param
-                        p -> o -> p.getValue().apply(new Object[]{o, id})));
+                        p -> o -> p.getValue().apply(new Object[]{o, context.get().getId()})));
         specificHelpers.put("base64", a -> Base64.getEncoder().encodeToString(a.toString().getBytes(UTF_8)));
         specificHelpers.put("base64url", a -> Base64.getUrlEncoder().withoutPadding().encodeToString(a.toString().getBytes(UTF_8)));
+        this.helpers = Map.copyOf(specificHelpers);
+
+        this.compiler = new HandlebarsCompiler(new MapAccessor() {
+            @Override
+            public Object find(final Object data, final String name) {
+                if (data instanceof String) { // standard placeholder?
+                    return doDefaultLookup(data + "." + name);
+                }
+
+                final var found = super.find(data, name);
+                if (found == null) {
+                    return doDefaultLookup(name);
+                }
+
+                if (found instanceof Manifest.Alveolus) {
+                    return asMap((Manifest.Alveolus) found);
+                }
+                if (found instanceof AlveolusHandler.LoadedDescriptor) {
+                    return asMap((AlveolusHandler.LoadedDescriptor) found);
+                }
+                return found;
+            }
+        });
+    }
+
+    public String apply(final String template) {
+        return apply(alveolus, descriptor, id, template);
+    }
 
-        final var rootData = Map.of(
-                "alveolus", alveolus,
-                "descriptor", descriptor,
-                "executionId", id == null ? "" : id);
-        return new HandlebarsCompiler(
-                new MapAccessor() {
-                    @Override
-                    public Object find(final Object data, final String name) {
-                        if (data instanceof String) { // standard placeholder?
-                            return doDefaultLookup(data + "." + name);
-                        }
-
-                        final var found = super.find(data, name);
-                        if (found == null) {
-                            return doDefaultLookup(name);
-                        }
-
-                        if (found instanceof Manifest.Alveolus) {
-                            return asMap((Manifest.Alveolus) found);
-                        }
-                        if (found instanceof AlveolusHandler.LoadedDescriptor) {
-                            return asMap((AlveolusHandler.LoadedDescriptor) found);
-                        }
-                        return found;
-                    }
-                })
-                .compile(new HandlebarsCompiler.CompilationContext(new HandlebarsCompiler.Settings().helpers(specificHelpers), template))
-                .render(rootData);
+    public String apply(final Manifest.Alveolus alveolus, final AlveolusHandler.LoadedDescriptor descriptor,
+                        final String id, final String template) {
+        final var rootData = new HashMap<String, Object>();
+        if (alveolus != null) {
+            rootData.put("alveolus", alveolus);
+        }
+        if (descriptor != null) {
+            rootData.put("descriptor", descriptor);
+        }
+        rootData.put("executionId", id == null ? "" : id);
+
+        final var compiled = compile(template);
+        final var previous = context.get();
+        context.set(new RenderContext(id));
+        try {
+            return compiled.render(rootData);
+        } finally {
+            if (previous == null) {
+                context.remove();
+            } else {
+                context.set(previous);
+            }
+        }
+    }
+
+    private Template compile(final String template) {
+        if (cacheSize <= 0) {
+            return doCompile(template);
+        }
+        final var key = digest(template);
+        final var cached = templates.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final var compiled = doCompile(template);
+        if (templates.size() >= cacheSize) {
+            templates.clear();
+        }
+        templates.putIfAbsent(key, compiled);
+        return compiled;
+    }
+
+    private Template doCompile(final String template) {
+        return compiler.compile(new HandlebarsCompiler.CompilationContext(new HandlebarsCompiler.Settings().helpers(helpers), template));
+    }
+
+    private String digest(final String template) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(template.getBytes(UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     private String doDefaultLookup(final String name) {
-        final var value = defaultLookup.apply("{{" + name + "}}", id);
+        final var value = defaultLookup.apply("{{" + name + "}}", context.get().getId());
         if (value == null || "null".equals(value)) {
             return name;
         }
@@ -120,4 +191,16 @@ public class HandlebarsInterpolator {
         }
         return map;
     }
+
+    private static class RenderContext {
+        private final String id;
+
+        private RenderContext(final String id) {
+            this.id = id;
+        }
+
+        private String getId() {
+            return id;
+        }
+    }
 }
@@ -15,11 +15,14 @@
  */
 package io.yupiik.bundlebee.core.http;
 
+import io.yupiik.bundlebee.lang.spi.Tracer;
+
 import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.OffsetDateTime;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -37,12 +40,32 @@ public class RateLimitedClient extends DelegatingClient {
     private final ReentrantLock lock = new ReentrantLock();
 
     private final RateLimiter clientRateLimiter;
+    private final Tracer tracer;
+    private final Listener listener;
     private volatile ScheduledExecutorService scheduler;
     private volatile boolean stopped = false;
 
     public RateLimitedClient(final HttpClient delegate, final RateLimiter clientRateLimiter) {
+        this(delegate, clientRateLimiter, Tracer.NOOP);
+    }
+
+    public RateLimitedClient(final HttpClient delegate, final RateLimiter clientRateLimiter, final Tracer tracer) {
+        this(delegate, clientRateLimiter, tracer, new Listener() {
+        });
+    }
+
+    /**
+     * @param delegate          the actual client.
+     * @param clientRateLimiter the client side rate limiter.
+     * @param tracer            tracer used to record the waits.
+     * @param listener          callback notified of the pauses and rate limited (HTTP 429) responses.
+     */
+    public RateLimitedClient(final HttpClient delegate, final RateLimiter clientRateLimiter, final Tracer tracer,
+                             final Listener listener) {
         super(delegate);
         this.clientRateLimiter = clientRateLimiter;
+        this.tracer = tracer;
+        this.listener = listener;
     }
 
     @Override
@@ -51,12 +74,17 @@ public class RateLimitedClient extends DelegatingClient {
         try {
             if (pause > 0) {
                 log(request, pause);
-                Thread.sleep(pause);
+                try (final var span = waitSpan(request, pause, "client")) {
+                    Thread.sleep(pause);
+                }
                 return send(request, responseBodyHandler);
             }
             final var res = super.send(request, responseBodyHandler);
-            if (isRateLimited(res)) {
-                Thread.sleep(findPause(res));
+            if (isRateLimited(request, res)) {
+                final var serverPause = findPause(res);
+                try (final var span = waitSpan(request, serverPause, "server")) {
+                    Thread.sleep(serverPause);
+                }
                 return send(request, responseBodyHandler);
             }
             return res;
@@ -81,13 +109,22 @@ public class RateLimitedClient extends DelegatingClient {
         logger.warning(() -> "Rate limiting (client side) " + request.method() + " " + request.uri() + " for " + pause + "ms");
     }
 
+    private Tracer.Span waitSpan(final HttpRequest request, final long pause, final String source) {
+        listener.onPause(request, pause);
+        return tracer.start("kube.ratelimit.wait", Map.of(
+                "method", request.method(),
+                "uri", request.uri().toASCIIString(),
+                "pause", Long.toString(pause),
+                "source", source));
+    }
+
     private <T> CompletableFuture<HttpResponse<T>> wrap(final long pause, final HttpRequest request,
                                                         final Supplier<CompletableFuture<HttpResponse<T>>> promise) {
         if (pause == 0) {
             return promise.get()
                     .whenComplete((ok, ko) -> clientRateLimiter.after())
                     .thenCompose(ok -> {
-                        if (isRateLimited(ok)) {
+                        if (isRateLimited(request, ok)) {
                             final long newPause = findPause(ok);
                             return wrap(newPause, request, promise);
                         }
@@ -96,24 +133,28 @@ public class RateLimitedClient extends DelegatingClient {
         }
 
         log(request, pause);
+        final var span = waitSpan(request, pause, "client");
         final var scheduler = scheduledExecutorService();
         final var facade = new CompletableFuture<HttpResponse<T>>();
-        scheduler.schedule(() -> wrap(clientRateLimiter.before(), request, () -> promise.get().whenComplete((ok, ko) -> {
-            try {
-                if (isRateLimited(ok)) {
-                    final long newPause = findPause(ok);
-                    wrap(newPause, request, promise);
-                    return;
+        scheduler.schedule(() -> {
+            span.close();
+            return wrap(clientRateLimiter.before(), request, () -> promise.get().whenComplete((ok, ko) -> {
+                try {
+                    if (isRateLimited(request, ok)) {
+                        final long newPause = findPause(ok);
+                        wrap(newPause, request, promise);
+                        return;
+                    }
+                    if (ko != null) {
+                        facade.completeExceptionally(ko);
+                    } else {
+                        facade.complete(ok);
+                    }
+                } finally {
+                    clientRateLimiter.after();
                 }
-                if (ko != null) {
-                    facade.completeExceptionally(ko);
-                } else {
-                    facade.complete(ok);
-                }
-            } finally {
-                clientRateLimiter.after();
-            }
-        })), pause, MILLISECONDS);
+            }));
+        }, pause, MILLISECONDS);
         clientRateLimiter.after();
         return facade;
     }
@@ -132,8 +173,12 @@ public class RateLimitedClient extends DelegatingClient {
                 .orElseGet(() -> (long) clientRateLimiter.getWindow());
     }
 
-    private <T> boolean isRateLimited(final HttpResponse<T> ok) {
-        return ok.statusCode() == 429;
+    private <T> boolean isRateLimited(final HttpRequest request, final HttpResponse<T> response) {
+        if (response != null && response.statusCode() == 429) {
+            listener.onRateLimited(request);
+            return true;
+        }
+        return false;
     }
 
     private ScheduledExecutorService scheduledExecutorService() { // lazy to avoid to create it if never needed
@@ -163,4 +208,25 @@ public class RateLimitedClient extends DelegatingClient {
         }
         super.close();
     }
+
+    public interface Listener {
+        /**
+         * Called each time a request is delayed.
+         *
+         * @param request the delayed request.
+         * @param pause   the pause duration in milliseconds.
+         */
+        default void onPause(final HttpRequest request, final long pause) {
+            // no-op
+        }
+
+        /**
+         * Called when the server responded with a HTTP 429, the request will be retried.
+         *
+         * @param request the rate limited request.
+         */
+        default void onRateLimited(final HttpRequest request) {
+            // no-op
+        }
+    }
 }
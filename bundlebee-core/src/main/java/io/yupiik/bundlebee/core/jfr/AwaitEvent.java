@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("io.yupiik.bundlebee.Await")
+@Label("Await")
+@Category("BundleBee")
+@Description("Wait loop on a resource state (conditions, existence or deletion).")
+@StackTrace(false)
+public class AwaitEvent extends jdk.jfr.Event {
+    @Label("Command")
+    public String command;
+
+    @Label("Descriptor")
+    public String descriptor;
+
+    @Label("Type")
+    @Description("What is awaited: 'conditions' or 'deletion'.")
+    public String type;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("io.yupiik.bundlebee.DescriptorPrepare")
+@Label("Descriptor Preparation")
+@Category("BundleBee")
+@Description("Patching and interpolation of a descriptor before it is used by a command.")
+@StackTrace(false)
+public class DescriptorPrepareEvent extends jdk.jfr.Event {
+    @Label("Alveolus")
+    public String alveolus;
+
+    @Label("Descriptor")
+    public String descriptor;
+
+    @Label("Size")
+    @Description("Prepared descriptor length (characters).")
+    public int size;
+}
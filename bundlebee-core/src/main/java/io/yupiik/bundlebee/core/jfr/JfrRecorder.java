@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.jfr;
+
+import io.yupiik.bundlebee.core.configuration.Description;
+import io.yupiik.bundlebee.core.lang.ConfigHolder;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.java.Log;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import static java.util.logging.Level.SEVERE;
+
+@Log
+@ApplicationScoped
+public class JfrRecorder implements ConfigHolder {
+    @Inject
+    @Description("" +
+            "If `true`, a JDK Flight Recorder recording is started with the command and dumped when it ends. " +
+            "BundleBee events (`io.yupiik.bundlebee.*`: descriptor preparation, substitution, helm rendering, " +
+            "Kubernetes requests and awaits) are recorded with the JVM ones so the dump can be analysed with JDK Mission Control.")
+    @ConfigProperty(name = "bundlebee.jfr.enabled", defaultValue = "false")
+    private boolean enabled;
+
+    @Inject
+    @Description("Where to dump the recording when `bundlebee.jfr.enabled` is `true`.")
+    @ConfigProperty(name = "bundlebee.jfr.output", defaultValue = "bundlebee.jfr")
+    private String output;
+
+    @Inject
+    @Description("JFR settings to use for the recording, `default` (low overhead) or `profile` for built-in ones, else a `.jfc` file path.")
+    @ConfigProperty(name = "bundlebee.jfr.settings", defaultValue = "default")
+    private String settings;
+
+    private volatile Recording recording;
+
+    /**
+     * Starts the recording if enabled, it is called once the command configuration is known.
+     */
+    public synchronized void start() {
+        if (!enabled || recording != null) {
+            return;
+        }
+        try {
+            final var configuration = "default".equals(settings) || "profile".equals(settings) ?
+                    Configuration.getConfiguration(settings) :
+                    Configuration.create(Path.of(settings));
+            final var newRecording = new Recording(configuration);
+            newRecording.setName("bundlebee");
+            newRecording.enable("io.yupiik.bundlebee.DescriptorPrepare");
+            newRecording.enable("io.yupiik.bundlebee.Substitution");
+            newRecording.enable("io.yupiik.bundlebee.HelmRender");
+            newRecording.enable("io.yupiik.bundlebee.KubeRequest");
+            newRecording.enable("io.yupiik.bundlebee.Await");
+            newRecording.start();
+            recording = newRecording;
+            log.finest(() -> "Started JFR recording");
+        } catch (final IOException | ParseException | RuntimeException e) {
+            log.log(SEVERE, e, () -> "Can't start JFR recording: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    private synchronized void stop() {
+        final var current = recording;
+        if (current == null) {
+            return;
+        }
+        recording = null;
+        try (current) {
+            current.stop();
+            final var location = Path.of(output);
+            if (location.getParent() != null) {
+                Files.createDirectories(location.getParent());
+            }
+            current.dump(location);
+            log.info(() -> "Dumped JFR recording to '" + location + "'");
+        } catch (final IOException | RuntimeException e) {
+            log.log(SEVERE, e, () -> "Can't dump JFR recording to '" + output + "': " + e.getMessage());
+        }
+    }
+}
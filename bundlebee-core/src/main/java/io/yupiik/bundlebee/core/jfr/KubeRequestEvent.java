@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("io.yupiik.bundlebee.KubeRequest")
+@Label("Kubernetes Request")
+@Category("BundleBee")
+@Description("HTTP request to the Kubernetes API server, duration includes the client side rate limiting.")
+@StackTrace(false)
+public class KubeRequestEvent extends jdk.jfr.Event {
+    @Label("Verb")
+    public String verb;
+
+    @Label("Kind")
+    @Description("Lowercased plural resource name (kind) extracted from the request path.")
+    public String kind;
+
+    @Label("URI")
+    public String uri;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Request Size")
+    @Description("Request payload size in bytes, -1 if unknown.")
+    public long requestSize;
+
+    @Label("Response Size")
+    @Description("Response payload size in bytes (UTF-8 encoded body).")
+    public long responseSize;
+
+    @Label("Rate Limit Wait")
+    @Timespan(Timespan.MILLISECONDS)
+    public long rateLimitWait;
+}
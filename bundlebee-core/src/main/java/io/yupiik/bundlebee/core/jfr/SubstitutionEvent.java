@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("io.yupiik.bundlebee.Substitution")
+@Label("Substitution")
+@Category("BundleBee")
+@Description("Placeholder (or handlebars) interpolation of a content.")
+@StackTrace(false)
+public class SubstitutionEvent extends jdk.jfr.Event {
+    @Label("Descriptor")
+    @Description("Descriptor name if the substitution is bound to a descriptor.")
+    public String descriptor;
+
+    @Label("Handlebars")
+    public boolean handlebars;
+
+    @Label("Input Size")
+    @Description("Input length (characters).")
+    public int inputSize;
+
+    @Label("Output Size")
+    @Description("Output length (characters).")
+    public int outputSize;
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.json;
+
+import javax.json.JsonException;
+import javax.json.JsonValue;
+
+/**
+ * A JSON Pointer (RFC 6901) parsed once, {@link javax.json.JsonPointer} implementations generally re-parse it on each call
+ * and handle writes we don't need in read only evaluations (await conditions for example).
+ */
+public final class CompiledJsonPointer {
+    private final String pointer;
+    private final String[] tokens;
+
+    private CompiledJsonPointer(final String pointer, final String[] tokens) {
+        this.pointer = pointer;
+        this.tokens = tokens;
+    }
+
+    public static CompiledJsonPointer of(final String pointer) {
+        if (pointer == null) {
+            throw new JsonException("Null JSON pointer");
+        }
+        if (pointer.isEmpty()) {
+            return new CompiledJsonPointer(pointer, new String[0]);
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new JsonException("A JSON pointer must start with '/': '" + pointer + "'");
+        }
+        final var tokens = pointer.substring(1).split("/", -1);
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].indexOf('~') >= 0) {
+                tokens[i] = tokens[i].replace("~1", "/").replace("~0", "~");
+            }
+        }
+        return new CompiledJsonPointer(pointer, tokens);
+    }
+
+    /**
+     * @param root the structure to read.
+     * @return the value or {@code null} if it does not exist.
+     */
+    public JsonValue find(final JsonValue root) {
+        var current = root;
+        for (final var token : tokens) {
+            if (current == null) {
+                return null;
+            }
+            switch (current.getValueType()) {
+                case OBJECT:
+                    current = current.asJsonObject().get(token);
+                    break;
+                case ARRAY:
+                    final var array = current.asJsonArray();
+                    final int index = toIndex(token);
+                    current = index < 0 || index >= array.size() ? null : array.get(index);
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param root the structure to read.
+     * @return the value, it fails if it does not exist as {@link javax.json.JsonPointer#getValue(javax.json.JsonStructure)}.
+     */
+    public JsonValue getValue(final JsonValue root) {
+        final var value = find(root);
+        if (value == null) {
+            throw new JsonException("No value at '" + pointer + "'");
+        }
+        return value;
+    }
+
+    String[] tokens() {
+        return tokens.clone();
+    }
+
+    @Override
+    public String toString() {
+        return pointer;
+    }
+
+    private int toIndex(final String token) {
+        if (token.isEmpty() || (token.length() > 1 && token.charAt(0) == '0')) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < token.length(); i++) {
+            final char c = token.charAt(i);
+            if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.json;
+
+import javax.json.JsonArray;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * A set of JSON-Pointer addressed operations compiled in a tree and applied in a single walk of a JSON structure.
+ * Only the branches an operation touches are rebuilt, others are shared with the input,
+ * and a transformation which changes nothing returns the input instance.
+ * <p>
+ * A {@code *} token matches all the items of an array (or all the members of an object).
+ * Operations of a node are applied after its children ones (deepest first) in registration order,
+ * a {@code null} operation result removes the value.
+ */
+public final class JsonTransformation {
+    private static final String WILDCARD = "*";
+
+    private final JsonBuilderFactory jsonBuilderFactory;
+    private final Node root;
+
+    private JsonTransformation(final JsonBuilderFactory jsonBuilderFactory, final Node root) {
+        this.jsonBuilderFactory = jsonBuilderFactory;
+        this.root = root;
+    }
+
+    public static Builder builder(final JsonBuilderFactory jsonBuilderFactory) {
+        return new Builder(jsonBuilderFactory);
+    }
+
+    public boolean isEmpty() {
+        return root.isEmpty();
+    }
+
+    /**
+     * Fuses this transformation with another one, the result still walks the structure once.
+     * Note that it is only equivalent to applying them sequentially if they don't touch
+     * the same path or an ancestor of each other's paths.
+     *
+     * @param next the transformation to fuse with this one.
+     * @return a new transformation executing both.
+     */
+    public JsonTransformation andThen(final JsonTransformation next) {
+        if (next.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return next;
+        }
+        final var merged = new Node();
+        merged.merge(root);
+        merged.merge(next.root);
+        return new JsonTransformation(jsonBuilderFactory, merged);
+    }
+
+    public JsonObject apply(final JsonObject source) {
+        if (source == null || isEmpty()) {
+            return source;
+        }
+        final var out = visit(source, root);
+        if (out == null || out.getValueType() != JsonValue.ValueType.OBJECT) {
+            throw new IllegalStateException("Transformation didn't produce an object: " + out);
+        }
+        return out.asJsonObject();
+    }
+
+    private JsonValue visit(final JsonValue value, final Node node) {
+        var current = value;
+        if (!node.children.isEmpty()) {
+            switch (current.getValueType()) {
+                case OBJECT:
+                    current = visitObject(current.asJsonObject(), node);
+                    break;
+                case ARRAY:
+                    current = visitArray(current.asJsonArray(), node);
+                    break;
+                default:
+                    // no child to visit
+            }
+        }
+        for (final var operation : node.operations) {
+            if (current == null) {
+                break;
+            }
+            current = operation.apply(current);
+        }
+        return current;
+    }
+
+    private JsonValue visitObject(final JsonObject object, final Node node) {
+        Map<String, JsonValue> changes = null;
+        final var wildcard = node.children.get(WILDCARD);
+        if (wildcard != null) {
+            for (final var entry : object.entrySet()) {
+                final var changed = visit(entry.getValue(), wildcard);
+                if (changed != entry.getValue()) {
+                    if (changes == null) {
+                        changes = new LinkedHashMap<>();
+                    }
+                    changes.put(entry.getKey(), changed);
+                }
+            }
+        }
+        for (final var child : node.children.entrySet()) {
+            if (WILDCARD.equals(child.getKey())) {
+                continue;
+            }
+            final var key = child.getKey();
+            final var value = changes != null && changes.containsKey(key) ? changes.get(key) : object.get(key);
+            if (value == null) {
+                continue;
+            }
+            final var changed = visit(value, child.getValue());
+            if (changed != value) {
+                if (changes == null) {
+                    changes = new LinkedHashMap<>();
+                }
+                changes.put(key, changed);
+            }
+        }
+        if (changes == null) {
+            return object;
+        }
+
+        final var builder = jsonBuilderFactory.createObjectBuilder(object);
+        for (final var change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                builder.remove(change.getKey());
+            } else {
+                builder.add(change.getKey(), change.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    private JsonValue visitArray(final JsonArray array, final Node node) {
+        final var wildcard = node.children.get(WILDCARD);
+        List<JsonValue> items = null;
+        for (int i = 0; i < array.size(); i++) {
+            final var original = array.get(i);
+            var value = original;
+            if (wildcard != null) {
+                value = visit(value, wildcard);
+            }
+            final var indexed = node.children.get(Integer.toString(i));
+            if (indexed != null && value != null) {
+                value = visit(value, indexed);
+            }
+            if (value != original && items == null) {
+                items = new ArrayList<>(array.subList(0, i));
+            }
+            if (items != null && value != null) {
+                items.add(value);
+            }
+        }
+        if (items == null) {
+            return array;
+        }
+        final var builder = jsonBuilderFactory.createArrayBuilder();
+        items.forEach(builder::add);
+        return builder.build();
+    }
+
+    public static final class Builder {
+        private final JsonBuilderFactory jsonBuilderFactory;
+        private final Node root = new Node();
+
+        private Builder(final JsonBuilderFactory jsonBuilderFactory) {
+            this.jsonBuilderFactory = jsonBuilderFactory;
+        }
+
+        /**
+         * @param pointer the JSON-Pointer of the attribute to remove, ignored if missing.
+         * @return this builder.
+         */
+        public Builder remove(final String pointer) {
+            if (pointer.isEmpty()) {
+                throw new IllegalArgumentException("Can't remove the root of the structure");
+            }
+            return map(pointer, it -> null);
+        }
+
+        /**
+         * @param pointer   the JSON-Pointer of the value to transform, ignored if missing.
+         * @param operation the transformation, it must return its input if it does not change anything.
+         * @return this builder.
+         */
+        public Builder map(final String pointer, final UnaryOperator<JsonValue> operation) {
+            var node = root;
+            for (final var token : CompiledJsonPointer.of(pointer).tokens()) {
+                node = node.children.computeIfAbsent(token, k -> new Node());
+            }
+            node.operations.add(operation);
+            return this;
+        }
+
+        public JsonTransformation build() {
+            final var copy = new Node();
+            copy.merge(root);
+            return new JsonTransformation(jsonBuilderFactory, copy);
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        private final List<UnaryOperator<JsonValue>> operations = new ArrayList<>();
+
+        private boolean isEmpty() {
+            return children.isEmpty() && operations.isEmpty();
+        }
+
+        private void merge(final Node other) {
+            operations.addAll(other.operations);
+            other.children.forEach((key, child) -> children.computeIfAbsent(key, k -> new Node()).merge(child));
+        }
+    }
+}
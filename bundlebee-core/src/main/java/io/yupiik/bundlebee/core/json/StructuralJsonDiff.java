@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.json;
+
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * JSON-Patch diff of two JSON documents tuned for Kubernetes descriptors:
+ * <ul>
+ *     <li>{@code null} values are considered as missing and ignored pointers are skipped during the traversal
+ *     (the compared documents are not rebuilt),</li>
+ *     <li>subtrees are hashed once (order independent for objects) so equal subtrees are skipped without visiting them again,</li>
+ *     <li>arrays of objects all having a unique key attribute (containers, env, ports, volumes...) are matched by key
+ *     and not by index, reordering such an array is not a difference,</li>
+ *     <li>ordered arrays (matched by their attribute name, {@code env} in general since a variable can reference
+ *     the previous ones with {@code $(VAR)}) are always compared by index even if their items have a key.</li>
+ * </ul>
+ * Operations are emitted in source order (removals and nested differences) then target order (additions),
+ * objects keys being visited in natural order, added/replaced values are sorted and cleaned the same way.
+ * Note that equality relies on a 64 bits hash of the subtrees, collisions are ignored.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class StructuralJsonDiff {
+    private static final long NULL_HASH = 0x9E3779B97F4A7C15L;
+    private static final long TRUE_HASH = 0xC2B2AE3D27D4EB4FL;
+    private static final long FALSE_HASH = 0x165667B19E3779F9L;
+
+    private final JsonBuilderFactory jsonBuilderFactory;
+    private final Set<String> ignoredPointers;
+    private final Set<String> ignoredPointersParents;
+    private final List<String> arrayKeys;
+    private final Set<String> orderedArrays;
+
+    /**
+     * @param jsonBuilderFactory the factory used to build the operations and cleaned values.
+     * @param ignoredPointers    the pointers to skip (on both sides).
+     * @param arrayKeys          the attributes usable to match array items, first one all items have wins.
+     * @param orderedArrays      the attribute names of the arrays where order matters, compared by index.
+     */
+    public StructuralJsonDiff(final JsonBuilderFactory jsonBuilderFactory,
+                              final Collection<String> ignoredPointers,
+                              final List<String> arrayKeys,
+                              final Collection<String> orderedArrays) {
+        this.jsonBuilderFactory = jsonBuilderFactory;
+        this.ignoredPointers = Set.copyOf(ignoredPointers);
+        this.arrayKeys = List.copyOf(arrayKeys);
+        this.orderedArrays = Set.copyOf(orderedArrays);
+        this.ignoredPointersParents = new HashSet<>();
+        for (final var pointer : this.ignoredPointers) {
+            int end = pointer.lastIndexOf('/');
+            while (end >= 0) {
+                ignoredPointersParents.add(pointer.substring(0, end));
+                end = pointer.lastIndexOf('/', end - 1);
+            }
+        }
+    }
+
+    /**
+     * @param source the initial state (actual one for a diff against a cluster).
+     * @param target the desired state.
+     * @param filter enables to drop an operation, it gets the operation and the source value it applies to
+     *               ({@code null} for additions).
+     * @return the JSON-Patch to go from source to target.
+     */
+    public JsonArray diff(final JsonObject source, final JsonObject target, final BiPredicate<JsonObject, JsonValue> filter) {
+        final var context = new Context(filter);
+        diff(context, "", source, target);
+        return context.operations.build();
+    }
+
+    private void diff(final Context context, final String path, final JsonValue source, final JsonValue target) {
+        if (source == target) {
+            return;
+        }
+        final var sourceType = source.getValueType();
+        final var targetType = target.getValueType();
+        if (sourceType == JsonValue.ValueType.OBJECT && targetType == JsonValue.ValueType.OBJECT) {
+            if (hash(context.sourceHashes, path, source) != hash(context.targetHashes, path, target)) {
+                diffObjects(context, path, source.asJsonObject(), target.asJsonObject());
+            }
+        } else if (sourceType == JsonValue.ValueType.ARRAY && targetType == JsonValue.ValueType.ARRAY) {
+            if (hash(context.sourceHashes, path, source) != hash(context.targetHashes, path, target)) {
+                diffArrays(context, path, source.asJsonArray(), target.asJsonArray());
+            }
+        } else if (sourceType != targetType || !source.equals(target)) {
+            context.emit("replace", path, target, source);
+        }
+    }
+
+    private void diffObjects(final Context context, final String path, final JsonObject source, final JsonObject target) {
+        final var sourceKeys = source.keySet().stream().sorted().collect(toList());
+        for (final var key : sourceKeys) {
+            final var value = source.get(key);
+            if (value.getValueType() == JsonValue.ValueType.NULL) {
+                continue;
+            }
+            final var childPath = path + '/' + escape(key);
+            if (ignoredPointers.contains(childPath)) {
+                continue;
+            }
+            final var targetValue = target.get(key);
+            if (targetValue == null || targetValue.getValueType() == JsonValue.ValueType.NULL) {
+                context.emit("remove", childPath, null, value);
+            } else {
+                diff(context, childPath, value, targetValue);
+            }
+        }
+        target.keySet().stream().sorted().forEach(key -> {
+            final var value = target.get(key);
+            if (value.getValueType() == JsonValue.ValueType.NULL) {
+                return;
+            }
+            final var sourceValue = source.get(key);
+            if (sourceValue != null && sourceValue.getValueType() != JsonValue.ValueType.NULL) {
+                return;
+            }
+            final var childPath = path + '/' + escape(key);
+            if (!ignoredPointers.contains(childPath)) {
+                context.emit("add", childPath, value, null);
+            }
+        });
+    }
+
+    private void diffArrays(final Context context, final String path, final JsonArray source, final JsonArray target) {
+        final var key = orderedArrays.contains(path.substring(path.lastIndexOf('/') + 1)) ? null : findArrayKey(source, target);
+        if (key == null) { // by index
+            final int common = Math.min(source.size(), target.size());
+            for (int i = 0; i < common; i++) {
+                diff(context, path + '/' + i, source.get(i), target.get(i));
+            }
+            for (int i = source.size() - 1; i >= common; i--) {
+                context.emit("remove", path + '/' + i, null, source.get(i));
+            }
+            for (int i = common; i < target.size(); i++) {
+                context.emit("add", path + "/-", target.get(i), null);
+            }
+            return;
+        }
+
+        final var targetIndex = new HashMap<JsonValue, Integer>();
+        for (int i = 0; i < target.size(); i++) {
+            targetIndex.put(target.get(i).asJsonObject().get(key), i);
+        }
+        final var matched = new boolean[target.size()];
+        final var removed = new ArrayList<Integer>();
+        for (int i = 0; i < source.size(); i++) {
+            final var item = source.get(i);
+            final var index = targetIndex.get(item.asJsonObject().get(key));
+            if (index == null) {
+                removed.add(i);
+            } else {
+                matched[index] = true;
+                diff(context, path + '/' + i, item, target.get(index));
+            }
+        }
+        for (int i = removed.size() - 1; i >= 0; i--) {
+            context.emit("remove", path + '/' + removed.get(i), null, source.get(removed.get(i)));
+        }
+        for (int i = 0; i < target.size(); i++) {
+            if (!matched[i]) {
+                context.emit("add", path + "/-", target.get(i), null);
+            }
+        }
+    }
+
+    // a key is usable if all items of both arrays are objects with a unique value for it
+    private String findArrayKey(final JsonArray source, final JsonArray target) {
+        if (source.isEmpty() || target.isEmpty()) {
+            return null;
+        }
+        for (final var key : arrayKeys) {
+            if (isUniqueKey(source, key) && isUniqueKey(target, key)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private boolean isUniqueKey(final JsonArray array, final String key) {
+        final var values = new HashSet<JsonValue>();
+        for (final var item : array) {
+            if (item.getValueType() != JsonValue.ValueType.OBJECT) {
+                return false;
+            }
+            final var value = item.asJsonObject().get(key);
+            if (value == null || value.getValueType() == JsonValue.ValueType.NULL || !values.add(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long hash(final Map<JsonValue, Long> cache, final String path, final JsonValue value) {
+        // only subtrees without ignored pointers can be cached by identity, the others depend on the path
+        final boolean cacheable = !ignoredPointersParents.contains(path);
+        if (cacheable) {
+            final var cached = cache.get(value);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final long hash;
+        switch (value.getValueType()) {
+            case OBJECT:
+                long objectHash = 0x27D4EB2F165667C5L;
+                for (final var entry : value.asJsonObject().entrySet()) {
+                    if (entry.getValue().getValueType() == JsonValue.ValueType.NULL) {
+                        continue;
+                    }
+                    final var childPath = cacheable ? null : path + '/' + escape(entry.getKey());
+                    if (childPath != null && ignoredPointers.contains(childPath)) {
+                        continue;
+                    }
+                    // sum is order independent
+                    objectHash += mix(hash(entry.getKey()) * 31 + (childPath == null ?
+                            hash(cache, "\0", entry.getValue()) : hash(cache, childPath, entry.getValue())));
+                }
+                hash = objectHash;
+                break;
+            case ARRAY:
+                long arrayHash = 0x85EBCA77C2B2AE63L;
+                for (final var item : value.asJsonArray()) {
+                    arrayHash = arrayHash * 31 + hash(cache, "\0", item);
+                }
+                hash = mix(arrayHash);
+                break;
+            case STRING:
+                hash = mix(hash(JsonString.class.cast(value).getString()));
+                break;
+            case NUMBER:
+                hash = mix(hash(value.toString()) ^ 0xFF51AFD7ED558CCDL);
+                break;
+            case TRUE:
+                hash = TRUE_HASH;
+                break;
+            case FALSE:
+                hash = FALSE_HASH;
+                break;
+            default:
+                hash = NULL_HASH;
+        }
+        if (cacheable) {
+            cache.put(value, hash);
+        }
+        return hash;
+    }
+
+    private long hash(final String value) { // FNV-1a
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private long mix(final long value) { // murmur3 finalizer
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // sorted keys, no null and no ignored pointer as the diff sees it
+    private JsonValue clean(final String path, final JsonValue value) {
+        switch (value.getValueType()) {
+            case OBJECT:
+                final var builder = jsonBuilderFactory.createObjectBuilder();
+                value.asJsonObject().entrySet().stream()
+                        .filter(it -> it.getValue().getValueType() != JsonValue.ValueType.NULL)
+                        .sorted(Map.Entry.comparingByKey())
+                        .forEach(it -> {
+                            final var childPath = path + '/' + escape(it.getKey());
+                            if (!ignoredPointers.contains(childPath)) {
+                                builder.add(it.getKey(), clean(childPath, it.getValue()));
+                            }
+                        });
+                return builder.build();
+            case ARRAY:
+                final var array = jsonBuilderFactory.createArrayBuilder();
+                value.asJsonArray().forEach(it -> array.add(clean("\0", it)));
+                return array.build();
+            default:
+                return value;
+        }
+    }
+
+    private static String escape(final String key) {
+        if (key.indexOf('~') < 0 && key.indexOf('/') < 0) {
+            return key;
+        }
+        return key.replace("~", "~0").replace("/", "~1");
+    }
+
+    private class Context {
+        private final BiPredicate<JsonObject, JsonValue> filter;
+        private final JsonArrayBuilder operations = jsonBuilderFactory.createArrayBuilder();
+        private final Map<JsonValue, Long> sourceHashes = new IdentityHashMap<>();
+        private final Map<JsonValue, Long> targetHashes = new IdentityHashMap<>();
+
+        private Context(final BiPredicate<JsonObject, JsonValue> filter) {
+            this.filter = filter;
+        }
+
+        private void emit(final String op, final String path, final JsonValue value, final JsonValue source) {
+            final var builder = jsonBuilderFactory.createObjectBuilder()
+                    .add("op", op)
+                    .add("path", path);
+            if (value != null) {
+                // array items paths ("/-" or indices) don't match ignored pointers so "\0" is fine there
+                builder.add("value", clean(path.endsWith("/-") ? "\0" : path, value));
+            }
+            final var operation = builder.build();
+            if (filter == null || filter.test(operation, source)) {
+                operations.add(operation);
+            }
+        }
+    }
+}
@@ -22,9 +22,12 @@ import io.yupiik.bundlebee.core.http.DryRunClient;
 import io.yupiik.bundlebee.core.http.LoggingClient;
 import io.yupiik.bundlebee.core.http.RateLimitedClient;
 import io.yupiik.bundlebee.core.http.RateLimiter;
+import io.yupiik.bundlebee.core.jfr.KubeRequestEvent;
 import io.yupiik.bundlebee.core.lang.ConfigHolder;
 import io.yupiik.bundlebee.core.qualifier.BundleBee;
 import io.yupiik.bundlebee.core.yaml.Yaml2JsonConverter;
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import io.yupiik.bundlebee.lang.spi.Tracer;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
@@ -85,12 +88,14 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -103,6 +108,7 @@ import static java.net.Authenticator.RequestorType.PROXY;
 import static java.net.Proxy.Type.HTTP;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.Clock.systemUTC;
+import static java.util.Collections.synchronizedMap;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.of;
 import static java.util.Optional.ofNullable;
@@ -232,6 +238,12 @@ public class DefaultHttpKubeClient implements HttpKubeClient, ConfigHolder {
     @Inject
     private Event<OnKubeRequest> onKubeRequestEvent;
 
+    @Inject
+    private Tracer tracer;
+
+    @Inject
+    private MetricRegistry metrics;
+
     private Function<HttpRequest.Builder, HttpRequest.Builder> setAuth;
 
     @Getter
@@ -240,6 +252,9 @@ public class DefaultHttpKubeClient implements HttpKubeClient, ConfigHolder {
     @Getter
     private KubeConfig loadedKubeConfig;
 
+    // enables the rate limiter to report its pauses on the pending JFR event
+    private final Map<HttpRequest, KubeRequestEvent> pendingRequestEvents = synchronizedMap(new IdentityHashMap<>());
+
     private Map<String, String> resourceMapping;
     private List<String> kindsToSkipUpdateIfPossible;
     private Duration timeoutDuration;
@@ -288,7 +303,18 @@ public class DefaultHttpKubeClient implements HttpKubeClient, ConfigHolder {
         }
 
         if (rateLimiterEnabled) {
-            client = new RateLimitedClient(client, new RateLimiter(rateLimiterPermits, rateLimiterWindow, systemUTC()));
+            client = new RateLimitedClient(client, new RateLimiter(rateLimiterPermits, rateLimiterWindow, systemUTC()), tracer, new RateLimitedClient.Listener() {
+                @Override
+                public void onPause(final HttpRequest request, final long pause) {
+                    onRateLimitingPause(request, pause);
+                }
+
+                @Override
+                public void onRateLimited(final HttpRequest request) {
+                    metrics.counter("bundlebee_kube_rate_limited_total", "Number of HTTP 429 responses.", "verb", request.method()).increment();
+                    metrics.counter("bundlebee_kube_retries_total", "Number of retried kube requests.", "reason", "rate_limit").increment();
+                }
+            });
         }
 
         if (loadedKubeConfig == null || loadedKubeConfig.getClusters() == null || loadedKubeConfig.getClusters().isEmpty()) {
@@ -311,9 +337,68 @@ public class DefaultHttpKubeClient implements HttpKubeClient, ConfigHolder {
 
     @Override
     public CompletionStage<HttpResponse<String>> execute(final HttpRequest.Builder builder, final String urlOrPath) {
-        return client.sendAsync(
-                prepareRequest(builder, urlOrPath),
-                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        final var request = prepareRequest(builder, urlOrPath);
+        final var start = System.nanoTime();
+        final var event = new KubeRequestEvent();
+        final var recordEvent = event.isEnabled();
+        if (recordEvent) {
+            event.begin();
+            pendingRequestEvents.put(request, event);
+        }
+        final var response = tracer.traceSpan("kube.request", Map.of("method", request.method(), "uri", request.uri().toASCIIString()), span -> client
+                .sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(res -> {
+                    span.tag("status", Integer.toString(res.statusCode()));
+                    return res;
+                }));
+        return response.whenComplete((res, error) -> {
+            final var kind = extractKind(request.uri().getPath());
+            metrics.histogram(
+                            "bundlebee_kube_request_duration_microseconds", "Kube request latency (including rate limiting pauses).",
+                            "verb", request.method(), "kind", kind)
+                    .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            metrics.counter(
+                            "bundlebee_kube_requests_total", "Number of kube requests.",
+                            "verb", request.method(), "kind", kind, "status", res == null ? "error" : Integer.toString(res.statusCode()))
+                    .increment();
+            if (!recordEvent) {
+                return;
+            }
+            pendingRequestEvents.remove(request);
+            event.end();
+            if (event.shouldCommit()) {
+                event.verb = request.method();
+                event.uri = request.uri().toASCIIString();
+                event.kind = kind;
+                event.requestSize = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+                if (res != null) {
+                    event.status = res.statusCode();
+                    event.responseSize = res.body() == null ? 0 : res.body().getBytes(StandardCharsets.UTF_8).length; // only when recorded
+                }
+                event.commit();
+            }
+        });
+    }
+
+    private void onRateLimitingPause(final HttpRequest request, final long pause) {
+        metrics.counter("bundlebee_kube_rate_limit_wait_milliseconds_total", "Cumulated client side rate limiting pauses.").add(pause);
+        final var event = pendingRequestEvents.get(request);
+        if (event != null) {
+            event.rateLimitWait += pause;
+        }
+    }
+
+    // /api/v1/<kind>, /api/v1/namespaces/<ns>/<kind>/<name>, /apis/<group>/<version>/<kind>, ...
+    private String extractKind(final String path) {
+        if (path == null) {
+            return "";
+        }
+        final var segments = path.split("/");
+        var index = segments.length > 1 && "api".equals(segments[1]) ? 3 : 4;
+        if (segments.length > index + 2 && "namespaces".equals(segments[index])) {
+            index += 2;
+        }
+        return segments.length > index ? segments[index] : "";
     }
 
     @Override
@@ -15,17 +15,25 @@
  */
 package io.yupiik.bundlebee.core.kube;
 
+import io.yupiik.bundlebee.core.command.Executable;
 import io.yupiik.bundlebee.core.configuration.Description;
 import io.yupiik.bundlebee.core.http.JsonHttpResponse;
+import io.yupiik.bundlebee.core.jfr.AwaitEvent;
+import io.yupiik.bundlebee.core.json.JsonTransformation;
 import io.yupiik.bundlebee.core.lang.ConfigHolder;
 import io.yupiik.bundlebee.core.qualifier.BundleBee;
+import io.yupiik.bundlebee.core.service.AlveolusHandler;
 import io.yupiik.bundlebee.core.service.ContainerSanitizer;
 import io.yupiik.bundlebee.core.yaml.Yaml2JsonConverter;
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import io.yupiik.bundlebee.lang.spi.Tracer;
 import lombok.Data;
 import lombok.extern.java.Log;
+import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.json.JsonArray;
@@ -36,11 +44,13 @@ import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonPatch;
 import javax.json.JsonString;
+import javax.json.JsonStructure;
 import javax.json.JsonValue;
 import javax.json.bind.Jsonb;
 import javax.json.bind.JsonbException;
 import javax.json.spi.JsonProvider;
 import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -49,23 +59,31 @@ import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.stream.Collector;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static io.yupiik.bundlebee.lang.CompletionFutures.all;
+import static io.yupiik.bundlebee.lang.CompletionFutures.bounded;
 import static java.util.Locale.ROOT;
 import static java.util.Optional.empty;
 import static java.util.Optional.ofNullable;
@@ -75,10 +93,30 @@ import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 
 @Log
 @ApplicationScoped
 public class KubeClient implements ConfigHolder {
+    // server managed attributes, shared by diff command and minimal patches
+    public static final String DEFAULT_IGNORED_POINTERS = "" +
+            // todo: refine this one, it can contain anything so hard to make it right
+            "/metadata/annotations," +
+            // read-only or server related properties (k8s)
+            "/metadata/creationTimestamp," +
+            "/metadata/deletionGracePeriodSeconds," +
+            "/metadata/generation," +
+            "/metadata/managedFields," +
+            "/metadata/ownerReferences," +
+            "/metadata/resourceVersion," +
+            "/metadata/selfLink," +
+            "/metadata/uid," +
+            "/status," +
+            // bundlebee, we know it does not impact the state
+            "/metadata/labels/bundlebee.root.alveolus.name," +
+            "/metadata/labels/bundlebee.root.alveolus.version," +
+            "/metadata/labels/bundlebee.timestamp";
+
     @Inject
     private Yaml2JsonConverter yaml2json;
 
@@ -91,6 +129,12 @@ public class KubeClient implements ConfigHolder {
     @Inject
     private HttpKubeClient api;
 
+    @Inject
+    private Tracer tracer;
+
+    @Inject
+    private MetricRegistry metrics;
+
     @Inject
     @BundleBee
     private Jsonb jsonb;
@@ -153,6 +197,17 @@ public class KubeClient implements ConfigHolder {
     @ConfigProperty(name = "bundlebee.kube.force", defaultValue = "false")
     private boolean force;
 
+    @Inject
+    @Description("" +
+            "If `true`, `PATCH` updates only send the attributes of the descriptor which differ from the live object " +
+            "instead of the full descriptor (as the full patch, it never removes attributes). " +
+            "It only applies to `application/merge-patch+json` and `application/strategic-merge-patch+json` patch content types, " +
+            "other ones (`patchContentType` option or annotation) always get the full descriptor. " +
+            "`diff` command `ignoredPointers` and `customIgnoredPointers` are not compared and always sent when in the descriptor. " +
+            "The saved bytes are logged at the end of the execution.")
+    @ConfigProperty(name = "bundlebee.kube.minimalPatch", defaultValue = "false")
+    private boolean minimalPatch;
+
     @Inject
     @Description("Default value for deletions of `propagationPolicy`. Values can be `Orphan`, `Foreground` and `Background`.")
     @ConfigProperty(name = "bundlebee.kube.defaultPropagationPolicy", defaultValue = "Foreground")
@@ -172,16 +227,40 @@ public class KubeClient implements ConfigHolder {
     @ConfigProperty(name = "bundlebee.kube.patchContentType", defaultValue = "application/strategic-merge-patch+json")
     private String patchContentType;
 
+    @Inject
+    @Description("" +
+            "Descriptors bigger than this size (in characters) are parsed and handled one document at a time " +
+            "(multi-document YAML or JSON array), it bounds the memory used by the parsed descriptors to the biggest documents " +
+            "instead of the whole file (useful for CRD bundles). " +
+            "The descriptor is parsed twice in this mode: a first pass validates all its documents so an invalid one " +
+            "fails the descriptor before any document is handled (no partial apply). A negative value disables the streaming mode.")
+    @ConfigProperty(name = "bundlebee.kube.streaming.threshold", defaultValue = "1048576")
+    private int streamingThreshold;
+
+    @Inject
+    @Description("In streaming mode (see `bundlebee.kube.streaming.threshold`), how many documents of a descriptor are handled concurrently.")
+    @ConfigProperty(name = "bundlebee.kube.streaming.concurrency", defaultValue = "16")
+    private int streamingConcurrency;
+
     @Inject
     @BundleBee
     private ScheduledExecutorService scheduledExecutorService;
 
+    @Inject
+    private Config config;
+
     private Map<String, String> resourceMapping;
     private List<String> kindsToSkipUpdateIfPossible;
-    private List<JsonPatch> implicitlyDrops;
+    private JsonTransformation implicitlyDrops;
+    private List<JsonPatch> implicitlyDropPatches;
+    private MinimalMergePatch minimalMergePatch;
+    private final LongAdder minimalPatchSavedBytes = new LongAdder();
+    private final LongAdder minimalPatchUpdates = new LongAdder();
+    private boolean legacyApplyOverride;
 
     @PostConstruct
     private void init() {
+        legacyApplyOverride = overridesLegacyApply(getClass());
         kindsToSkipUpdateIfPossible = Stream.of(skipUpdateForKinds.split(",")).filter(it -> !it.isBlank()).collect(toList());
 
         final var tmpResourceMapping = new Properties();
@@ -197,18 +276,35 @@ public class KubeClient implements ConfigHolder {
             resourceMapping = Map.of();
         }
 
-        this.implicitlyDrops = "implicitlyDroppedAttributes".equals("none") ?
-                List.of() :
-                Stream.of(implicitlyDroppedAttributes.split("\\|"))
-                        .map(it -> jsonProvider.createPatch(
-                                it.startsWith("[") ?
-                                        jsonb.fromJson(it, JsonArray.class) :
-                                        jsonBuilderFactory.createArrayBuilder()
-                                                .add(jsonBuilderFactory.createObjectBuilder()
-                                                        .add("op", JsonPatch.Operation.REMOVE.operationName())
-                                                        .add("path", it))
-                                                .build()))
-                        .collect(toList());
+        // plain pointers are compiled in a single tree walk, only custom JSON-Patch are applied one by one
+        final var drops = "none".equals(implicitlyDroppedAttributes) ?
+                List.<String>of() :
+                Stream.of(implicitlyDroppedAttributes.split("\\|")).filter(it -> !it.isBlank()).collect(toList());
+        final var dropsBuilder = JsonTransformation.builder(jsonBuilderFactory);
+        drops.stream().filter(it -> !it.startsWith("[")).forEach(dropsBuilder::remove);
+        this.implicitlyDrops = dropsBuilder.build();
+        this.implicitlyDropPatches = drops.stream()
+                .filter(it -> it.startsWith("["))
+                .map(it -> jsonProvider.createPatch(jsonb.fromJson(it, JsonArray.class)))
+                .collect(toList());
+
+        if (minimalPatch) { // reuse diff command configuration to not compare server managed attributes
+            this.minimalMergePatch = new MinimalMergePatch(jsonBuilderFactory, Stream.of(
+                            config.getOptionalValue("bundlebee.diff.ignoredPointers", String.class).orElse(DEFAULT_IGNORED_POINTERS),
+                            config.getOptionalValue("bundlebee.diff.customIgnoredPointers", String.class).orElse(""))
+                    .flatMap(it -> Stream.of(it.split(",")))
+                    .map(String::strip)
+                    .filter(it -> !it.isBlank() && !Executable.UNSET.equals(it))
+                    .collect(toSet()));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        final long updates = minimalPatchUpdates.sum();
+        if (updates > 0) {
+            log.info(() -> "Minimal patches saved " + minimalPatchSavedBytes.sum() + " bytes on " + updates + " updates");
+        }
     }
 
     // for backward compatibility
@@ -309,7 +405,77 @@ public class KubeClient implements ConfigHolder {
         if (api.isVerbose()) {
             log.info(() -> prefixLog + " descriptor\n" + descriptorContent);
         }
-        final var json = toJson(descriptorContent, ext);
+        if (streamingThreshold >= 0 && descriptorContent.length() > streamingThreshold) {
+            return forDescriptorStreaming(descriptorContent, ext, descHandler);
+        }
+        return forJson(toJson(descriptorContent, ext), descHandler);
+    }
+
+    /**
+     * Same as {@link #forDescriptorWithOriginal(String, String, String, Function)} but the descriptor is parsed only once,
+     * the parsed JSON is kept in the descriptor for next calls (await polling, deletion, diff for example).
+     *
+     * @param prefixLog   the log prefix in verbose mode.
+     * @param descriptor  the descriptor.
+     * @param descHandler the callback for each object of the descriptor.
+     * @param <T>         the callback result type.
+     * @return the callback results.
+     */
+    public <T> CompletionStage<List<T>> forDescriptorWithOriginal(final String prefixLog, final AlveolusHandler.LoadedDescriptor descriptor,
+                                                                  final Function<DescriptorItem, CompletionStage<T>> descHandler) {
+        if (api.isVerbose()) {
+            log.info(() -> prefixLog + " descriptor\n" + descriptor.getContent());
+        }
+        if (descriptor.getJson() == null && streamingThreshold >= 0 && descriptor.getContent().length() > streamingThreshold) {
+            return forDescriptorStreaming(descriptor.getContent(), descriptor.getExtension(), descHandler);
+        }
+        return forJson(toJson(descriptor), descHandler);
+    }
+
+    public <T> CompletionStage<List<T>> forDescriptor(final String prefixLog, final AlveolusHandler.LoadedDescriptor descriptor,
+                                                      final Function<JsonObject, CompletionStage<T>> descHandler) {
+        return forDescriptorWithOriginal(prefixLog, descriptor, item -> descHandler.apply(item.getPrepared()));
+    }
+
+    public CompletionStage<?> apply(final AlveolusHandler.LoadedDescriptor descriptor,
+                                    final Map<String, String> customLabels, final boolean skipGet) {
+        return forDescriptorWithOriginal("Applying", descriptor, item -> doApply(item.getRaw(), item.getPrepared(), customLabels, skipGet));
+    }
+
+    public CompletionStage<?> delete(final AlveolusHandler.LoadedDescriptor descriptor, final int gracePeriod) {
+        return forDescriptor("Deleting", descriptor, json -> doDelete(json, gracePeriod));
+    }
+
+    public CompletionStage<Boolean> exists(final AlveolusHandler.LoadedDescriptor descriptor) {
+        final var result = new AtomicBoolean(true);
+        return forDescriptor(null, descriptor, desc -> doExists(result, desc))
+                .thenApply(ignored -> result.get());
+    }
+
+    public CompletionStage<List<HttpResponse<JsonObject>>> getResources(final AlveolusHandler.LoadedDescriptor descriptor) {
+        return forDescriptor(null, descriptor, this::getResource)
+                .thenApply(responses -> responses.stream()
+                        .map(it -> new JsonHttpResponse(jsonb, it))
+                        .collect(toList()));
+    }
+
+    /**
+     * @param descriptor the descriptor to parse.
+     * @return the parsed descriptor, it is parsed only once and then kept in the descriptor.
+     */
+    public JsonValue toJson(final AlveolusHandler.LoadedDescriptor descriptor) {
+        final var cached = descriptor.getJson();
+        if (cached != null) {
+            return cached;
+        }
+        final var json = toJson(descriptor.getContent(), descriptor.getExtension());
+        if (json instanceof JsonStructure) {
+            descriptor.setJson(JsonStructure.class.cast(json));
+        }
+        return json;
+    }
+
+    private <T> CompletionStage<List<T>> forJson(final JsonValue json, final Function<DescriptorItem, CompletionStage<T>> descHandler) {
         if (api.isVerbose()) {
             log.info(() -> "Loaded descriptor(s)\n" + json);
         }
@@ -333,12 +499,89 @@ public class KubeClient implements ConfigHolder {
         }
     }
 
-    private JsonObject sanitizeJson(final JsonObject json) {
-        if (implicitlyDrops.isEmpty()) {
-            return json;
+    private <T> CompletionStage<List<T>> forDescriptorStreaming(final String descriptorContent, final String ext,
+                                                                final Function<DescriptorItem, CompletionStage<T>> descHandler) {
+        // parse it all once before dispatching anything to not partially apply a descriptor with an error at its end,
+        // documents are dropped as soon as they are read so the memory stays bounded to the biggest one
+        try (final var validation = streamDescriptors(descriptorContent, ext)) {
+            validation.forEach(it -> {
+            });
         }
-        var out = json;
-        for (final var patch : implicitlyDrops) {
+
+        final var descriptors = streamDescriptors(descriptorContent, ext).iterator();
+        return bounded(new Iterator<Supplier<CompletionStage<T>>>() {
+            @Override
+            public boolean hasNext() {
+                return descriptors.hasNext();
+            }
+
+            @Override
+            public Supplier<CompletionStage<T>> next() {
+                final var json = descriptors.next();
+                if (api.isVerbose()) {
+                    log.info(() -> "Loaded descriptor\n" + json);
+                }
+                return () -> descHandler.apply(new DescriptorItem(json, sanitizeJson(json)));
+            }
+        }, streamingConcurrency, toList(), true);
+    }
+
+    private Stream<JsonObject> streamDescriptors(final String descriptorContent, final String ext) {
+        return ("json".equals(ext) ? streamJson(descriptorContent) : yaml2json.stream(descriptorContent.trim()))
+                .filter(it -> it.getValueType() != JsonValue.ValueType.NULL) // empty documents
+                .flatMap(it -> it.getValueType() == JsonValue.ValueType.ARRAY ? it.asJsonArray().stream() : Stream.of(it))
+                .map(it -> {
+                    if (it.getValueType() != JsonValue.ValueType.OBJECT) {
+                        throw new IllegalArgumentException("Unsupported json type for apply: " + it);
+                    }
+                    return it.asJsonObject();
+                });
+    }
+
+    // a top level array is read item per item, anything else is a single document
+    private Stream<JsonValue> streamJson(final String descriptorContent) {
+        final var parser = jsonProvider.createParser(new StringReader(descriptorContent));
+        if (!parser.hasNext()) {
+            parser.close();
+            return Stream.empty();
+        }
+        if (parser.next() != JsonParser.Event.START_ARRAY) {
+            try (parser) {
+                return Stream.of(parser.getValue());
+            }
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Iterator<JsonValue>() {
+            private JsonValue next;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !done) {
+                    if (parser.next() == JsonParser.Event.END_ARRAY) {
+                        done = true;
+                        parser.close();
+                    } else {
+                        next = parser.getValue();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public JsonValue next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final var value = next;
+                next = null;
+                return value;
+            }
+        }, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(parser::close);
+    }
+
+    private JsonObject sanitizeJson(final JsonObject json) {
+        var out = implicitlyDrops.apply(json);
+        for (final var patch : implicitlyDropPatches) {
             try {
                 out = patch.apply(out);
             } catch (final JsonException je) {
@@ -363,8 +606,12 @@ public class KubeClient implements ConfigHolder {
 
     private CompletionStage<?> doDelete(final JsonObject desc, final int gracePeriod) {
         final var kindLowerCased = desc.getString("kind").toLowerCase(ROOT) + 's';
-        return apiPreloader.ensureResourceSpec(desc, kindLowerCased)
-                .thenCompose(ignored -> doDelete(desc, gracePeriod, kindLowerCased));
+        return tracer.traceSpan("kube.delete", spanTags(desc), span -> apiPreloader.ensureResourceSpec(desc, kindLowerCased)
+                .thenCompose(ignored -> tracer.withSpan(span, () -> doDelete(desc, gracePeriod, kindLowerCased)))
+                .thenApply(it -> {
+                    metrics.counter("bundlebee_descriptors_deleted_total", "Number of deleted descriptors.", "kind", desc.getString("kind", "")).increment();
+                    return it;
+                }));
     }
 
     private CompletionStage<?> doDelete(final JsonObject desc, final int gracePeriod, final String kindLowerCased) {
@@ -421,13 +668,85 @@ public class KubeClient implements ConfigHolder {
         //          'https://192.168.49.2:8443/api/v1/namespaces/<namespace>/<lowercase(kind)>?fieldManager=kubectl-client-side-apply'
         //          <descriptor>
         // end
-        final var desc = customLabels.isEmpty() ? rawDesc : injectMetadata(rawDesc, customLabels);
-        final var kindLowerCased = desc.getString("kind").toLowerCase(ROOT) + 's';
-        return apiPreloader.ensureResourceSpec(desc, kindLowerCased)
-                .thenCompose(ignored -> doApply(originalDontUseDesc, desc, kindLowerCased, 1, skipGet));
+        //
+        // labels injection is not done there but fused with the create/update specific transformations
+        // to walk the descriptor once before sending it
+        final var labels = customLabels.isEmpty() ? JsonTransformation.builder(jsonBuilderFactory).build() : metadataInjection(customLabels);
+        final var kindLowerCased = rawDesc.getString("kind").toLowerCase(ROOT) + 's';
+        return tracer.traceSpan("kube.apply", spanTags(rawDesc), span -> apiPreloader.ensureResourceSpec(rawDesc, kindLowerCased)
+                .thenCompose(ignored -> tracer.withSpan(span, () -> dispatchApply(originalDontUseDesc, rawDesc, labels, kindLowerCased, 1, skipGet)))
+                .thenApply(it -> {
+                    metrics.counter("bundlebee_descriptors_applied_total", "Number of applied descriptors.", "kind", rawDesc.getString("kind", "")).increment();
+                    return it;
+                }));
+    }
+
+    private void countRetry(final String reason) {
+        metrics.counter("bundlebee_kube_retries_total", "Number of retried kube requests.", "reason", reason).increment();
+    }
+
+    private Map<String, String> spanTags(final JsonObject desc) {
+        if (!tracer.isEnabled()) {
+            return Map.of();
+        }
+        final var metadata = desc.getJsonObject("metadata");
+        return Map.of(
+                "kind", desc.getString("kind", ""),
+                "name", metadata == null ? "" : metadata.getString("name", ""));
+    }
+
+    // subclasses overriding the historical extension point are still called, pending transformation is then applied eagerly
+    private CompletionStage<HttpResponse<String>> dispatchApply(final JsonObject rawDesc, final JsonObject preparedDesc,
+                                                                final JsonTransformation pendingTransformation,
+                                                                final String kindLowerCased, final int retry,
+                                                                final boolean skipGet) {
+        if (legacyApplyOverride) {
+            return doApply(rawDesc, pendingTransformation.apply(preparedDesc), kindLowerCased, retry, skipGet);
+        }
+        return doApply(rawDesc, preparedDesc, pendingTransformation, kindLowerCased, retry, skipGet);
+    }
+
+    static boolean overridesLegacyApply(final Class<?> type) {
+        for (Class<?> current = type; current != null && current != KubeClient.class; current = current.getSuperclass()) {
+            if (current.isSynthetic() || current.getName().contains("$$")) { // container proxies
+                continue;
+            }
+            try {
+                current.getDeclaredMethod("doApply", JsonObject.class, JsonObject.class, String.class, int.class, boolean.class);
+                return true;
+            } catch (final NoSuchMethodException e) {
+                // check parent
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @deprecated override the flavor taking the pending transformation.
+     * If a subclass overrides this method it is still called by the apply logic (instead of the pending transformation flavor)
+     * but custom labels are then injected in the descriptor before the call, without being fused with the create/update transformations.
+     */
+    @Deprecated
+    protected CompletionStage<HttpResponse<String>> doApply(final JsonObject rawDesc, final JsonObject preparedDesc,
+                                                          final String kindLowerCased, final int retry,
+                                                          final boolean skipGet) {
+        return doApply(rawDesc, preparedDesc, JsonTransformation.builder(jsonBuilderFactory).build(), kindLowerCased, retry, skipGet);
     }
 
+    /**
+     * Creates or updates a descriptor.
+     *
+     * @param rawDesc               the descriptor before its preparation.
+     * @param preparedDesc          the descriptor to apply.
+     * @param pendingTransformation transformation (custom labels for ex) not yet applied to {@code preparedDesc},
+     *                              it is fused with the create or update specific transformations.
+     * @param kindLowerCased        the plural lowercased kind of the descriptor.
+     * @param retry                 number of allowed retries on conflicts.
+     * @param skipGet               if {@code true} the descriptor is created without checking it exists.
+     * @return the response of the create/update request.
+     */
     protected CompletionStage<HttpResponse<String>> doApply(final JsonObject rawDesc, final JsonObject preparedDesc,
+                                                          final JsonTransformation pendingTransformation,
                                                           final String kindLowerCased, final int retry,
                                                           final boolean skipGet) {
         final var metadata = preparedDesc.getJsonObject("metadata");
@@ -445,15 +764,16 @@ public class KubeClient implements ConfigHolder {
 
         if (skipGet) {
             return doApplyOnMissingDescriptor(
-                    rawDesc, preparedDesc, kindLowerCased, retry, name, baseUri, fieldManager,
+                    rawDesc, preparedDesc, pendingTransformation, kindLowerCased, retry, name, baseUri, fieldManager,
                     true);
         }
 
+        final var span = tracer.current(); // rebind it in the continuation to keep the update in the same trace
         return api.execute(HttpRequest.newBuilder()
                                 .GET()
                                 .header("Accept", "application/json"),
                         baseUri + "/" + name)
-                .thenCompose(findResponse -> {
+                .thenCompose(findResponse -> tracer.withSpan(span, () -> {
                     if (api.isVerbose()) {
                         log.info(findResponse::toString);
                     }
@@ -475,9 +795,12 @@ public class KubeClient implements ConfigHolder {
                             // no-op
                         }
 
-                        final var desc = filterForApply("@" + kindLowerCased + "/" + namespace + '/' + name, preparedDesc, kindLowerCased);
+                        final var desc = pendingTransformation
+                                .andThen(updateTransformation("@" + kindLowerCased + "/" + namespace + '/' + name, kindLowerCased))
+                                .apply(preparedDesc);
                         if (obj == null || !kindsToSkipUpdateIfPossible.contains(kind) || needsUpdate(obj, desc)) {
-                            return doUpdate(rawDesc, desc, name, fieldManager, baseUri)
+                            final var live = obj;
+                            return doUpdate(rawDesc, live, desc, name, fieldManager, baseUri)
                                     .thenCompose(response -> {
                                         if (api.isVerbose()) {
                                             log.info(response::toString);
@@ -487,8 +810,9 @@ public class KubeClient implements ConfigHolder {
                                                 "Can't update " + name + " (" + kindLowerCased + "): " + response + "\n" +
                                                 tryFormat(response.body());
                                         if (response.statusCode() == 422) { // try to get then update to forward the existing id
+                                            countRetry("resource_version");
                                             return injectResourceVersionInDescriptor(desc, name, baseUri, errorMessage)
-                                                    .thenCompose(descWithResourceVersion -> doUpdate(rawDesc, descWithResourceVersion, name, fieldManager, baseUri)
+                                                    .thenCompose(descWithResourceVersion -> doUpdate(rawDesc, live, descWithResourceVersion, name, fieldManager, baseUri)
                                                             .thenApply(recoverResponse -> {
                                                                 if (api.isVerbose()) {
                                                                     log.info(recoverResponse::toString);
@@ -510,23 +834,22 @@ public class KubeClient implements ConfigHolder {
                     }
 
                     return doApplyOnMissingDescriptor(
-                            rawDesc, preparedDesc, kindLowerCased, retry, name, baseUri, fieldManager,
+                            rawDesc, preparedDesc, pendingTransformation, kindLowerCased, retry, name, baseUri, fieldManager,
                             findResponse.statusCode() == 404);
-                });
+                }));
     }
 
     private CompletionStage<HttpResponse<String>> doApplyOnMissingDescriptor(
             final JsonObject rawDesc, final JsonObject preparedDesc,
+            final JsonTransformation pendingTransformation,
             final String kindLowerCased, final int retry,
             final String name,
             final String baseUri, final String fieldManager,
             final boolean sanitize) {
-        final JsonObject preparedAndFilteredDescriptor;
-        if (sanitize && containerSanitizer.canSanitizeCpuResource(kindLowerCased)) {
-            preparedAndFilteredDescriptor = containerSanitizer.dropCpuResources(kindLowerCased, preparedDesc);
-        } else {
-            preparedAndFilteredDescriptor = preparedDesc;
-        }
+        final var preparedAndFilteredDescriptor = (sanitize && containerSanitizer.canSanitizeCpuResource(kindLowerCased) ?
+                pendingTransformation.andThen(containerSanitizer.cpuResourcesSanitization(kindLowerCased)) :
+                pendingTransformation)
+                .apply(preparedDesc);
         log.finest(() -> name + " (" + kindLowerCased + ") does not exist, creating it");
         return api.execute(HttpRequest.newBuilder()
                                 .POST(HttpRequest.BodyPublishers.ofString(preparedAndFilteredDescriptor.toString()))
@@ -546,7 +869,8 @@ public class KubeClient implements ConfigHolder {
                                     ofNullable(payload.getJsonObject("details"))
                                             .map(o -> "serviceaccounts".equals(o.getString("kind", "")))
                                             .orElse(false)) {
-                                return doApply(rawDesc, preparedDesc, kindLowerCased, retry - 1, false);
+                                countRetry("conflict");
+                                return dispatchApply(rawDesc, preparedDesc, pendingTransformation, kindLowerCased, retry - 1, false);
                             }
                         } catch (final RuntimeException re) {
                             // let it fail
@@ -580,30 +904,32 @@ public class KubeClient implements ConfigHolder {
         return body;
     }
 
-    private JsonObject filterForApply(final String ref, final JsonObject desc, final String kind) {
+    private JsonTransformation updateTransformation(final String ref, final String kind) {
+        final var builder = JsonTransformation.builder(jsonBuilderFactory);
         switch (kind) {
             case "statefulsets":
-                return filterSpec(ref, desc, statefulsetSpecAllowedAttributes);
+                builder.map("/spec", spec -> filterSpec(ref, spec, statefulsetSpecAllowedAttributes));
+                break;
             default: // for now other descriptors are passthrough
-                return desc;
         }
+        return builder.build();
     }
 
-    private JsonObject filterSpec(final String ref, final JsonObject desc, final Collection<String> allowed) {
-        final var spec = desc.getJsonObject("spec");
-        if (spec == null || allowed.containsAll(spec.keySet())) {
-            return desc;
+    private JsonValue filterSpec(final String ref, final JsonValue specValue, final Collection<String> allowed) {
+        if (specValue.getValueType() != JsonValue.ValueType.OBJECT) {
+            return specValue;
+        }
+        final var spec = specValue.asJsonObject();
+        if (allowed.containsAll(spec.keySet())) {
+            return spec;
         }
         // drop spec forbidden fields for updates
         log.info(() -> "Important: filtering descriptor spec attributes (" + ref + ") for update (" +
                 spec.keySet().stream().filter(it -> !allowed.contains(it)).collect(joining(", ")) +
                 " update is not supported)");
-        return jsonBuilderFactory.createObjectBuilder(desc.entrySet().stream()
-                        .filter(it -> !"spec".equals(it.getKey()))
-                        .collect(toMap(Map.Entry::getKey, Map.Entry::getValue)))
-                .add("spec", jsonBuilderFactory.createObjectBuilder(spec.entrySet().stream()
+        return jsonBuilderFactory.createObjectBuilder(spec.entrySet().stream()
                         .filter(it -> allowed.contains(it.getKey()))
-                        .collect(toMap(Map.Entry::getKey, Map.Entry::getValue))))
+                        .collect(toMap(Map.Entry::getKey, Map.Entry::getValue)))
                 .build();
     }
 
@@ -648,6 +974,7 @@ public class KubeClient implements ConfigHolder {
     }
 
     private CompletableFuture<HttpResponse<String>> doUpdate(final JsonObject raw,
+                                                             final JsonObject live,
                                                              final JsonObject desc,
                                                              final String name,
                                                              final String fieldManager,
@@ -680,17 +1007,19 @@ public class KubeClient implements ConfigHolder {
         }
 
         final var type = customPatchContentType(raw).orElse(patchContentType);
+        final var payload = toPatchPayload(live, desc, name, type);
         return api.execute(
                         HttpRequest.newBuilder()
-                                .method("PATCH", HttpRequest.BodyPublishers.ofString(desc.toString()))
+                                .method("PATCH", HttpRequest.BodyPublishers.ofString(payload))
                                 .header("Content-Type", type)
                                 .header("Accept", "application/json"),
                         urlOrPath)
                 .thenCompose(res -> {
                     if (res.statusCode() == 415 && !"application/merge-patch+json".equals(type)) { // try application/merge-patch+json (CRD typically)
+                        countRetry("content_type");
                         return api.execute(
                                 HttpRequest.newBuilder()
-                                        .method("PATCH", HttpRequest.BodyPublishers.ofString(desc.toString()))
+                                        .method("PATCH", HttpRequest.BodyPublishers.ofString(payload))
                                         .header("Content-Type", "application/merge-patch+json")
                                         .header("Accept", "application/json"),
                                 urlOrPath);
@@ -700,6 +1029,25 @@ public class KubeClient implements ConfigHolder {
                 .toCompletableFuture();
     }
 
+    private String toPatchPayload(final JsonObject live, final JsonObject desc, final String name, final String contentType) {
+        final var full = desc.toString();
+        if (minimalMergePatch == null || live == null || !isMergePatch(contentType)) {
+            return full;
+        }
+        final var patch = minimalMergePatch.compute(live, desc).toString();
+        final long saved = full.getBytes(StandardCharsets.UTF_8).length - patch.getBytes(StandardCharsets.UTF_8).length;
+        minimalPatchUpdates.increment();
+        minimalPatchSavedBytes.add(saved);
+        metrics.counter("bundlebee_kube_patch_saved_bytes_total", "Number of bytes not sent thanks to minimal patches.").add(saved);
+        log.finest(() -> "Minimal patch for '" + name + "' saved " + saved + " bytes: " + patch);
+        return patch;
+    }
+
+    // other types (application/json patch, apply-patch+yaml...) do not accept a partial merge document
+    private boolean isMergePatch(final String contentType) {
+        return "application/merge-patch+json".equals(contentType) || "application/strategic-merge-patch+json".equals(contentType);
+    }
+
     private CompletionStage<?> awaitDeletion(final JsonObject desc) {
         final var promise = new CompletableFuture<Void>();
         final var result = new AtomicBoolean();
@@ -721,7 +1069,21 @@ public class KubeClient implements ConfigHolder {
                         promise.completeExceptionally(new IllegalArgumentException("Resource was not deleted in 30s: " + desc.get("metadata")));
                     }
                 }), 0, delay, MILLISECONDS);
-        return promise;
+        final var event = new AwaitEvent();
+        if (!event.isEnabled()) {
+            return promise;
+        }
+        event.begin();
+        return promise.whenComplete((ok, ko) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = "delete";
+                event.descriptor = desc.getJsonObject("metadata").getString("name", null);
+                event.type = "deletion";
+                event.success = ko == null;
+                event.commit();
+            }
+        });
     }
 
     // if all user entries are the same in existing one we consider we don't need an update
@@ -835,33 +1197,12 @@ public class KubeClient implements ConfigHolder {
     }
 
     public JsonObject injectMetadata(final JsonObject rawDesc, final Map<String, String> customLabels) {
+        final var labelsJson = toLabels(customLabels);
         return rawDesc.entrySet().stream()
                 .sorted(Map.Entry.comparingByKey())
-                .flatMap(entry -> {
-                    if ("metadata".equals(entry.getKey())) {
-                        final JsonObject labelsJson = customLabels.entrySet().stream()
-                                .sorted(Map.Entry.comparingByKey())
-                                .collect(Collector.of(
-                                        jsonBuilderFactory::createObjectBuilder,
-                                        (builder, kv) -> builder.add(kv.getKey(), kv.getValue()),
-                                        JsonObjectBuilder::addAll,
-                                        JsonObjectBuilder::build));
-
-                        final var metadata = entry.getValue().asJsonObject();
-                        if (metadata.containsKey(customMetadataInjectionPoint)) {
-                            return mergeLabels(entry, metadata, labelsJson);
-                        }
-                        return Stream.of(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), Stream.concat(
-                                        metadata.entrySet().stream().sorted(Map.Entry.comparingByKey()),
-                                        Stream.of(new AbstractMap.SimpleImmutableEntry<>(customMetadataInjectionPoint, labelsJson)))
-                                .collect(Collector.of(
-                                        jsonBuilderFactory::createObjectBuilder,
-                                        (builder, kv) -> builder.add(kv.getKey(), kv.getValue()),
-                                        JsonObjectBuilder::addAll,
-                                        JsonObjectBuilder::build))));
-                    }
-                    return Stream.of(entry);
-                })
+                .map(entry -> "metadata".equals(entry.getKey()) ?
+                        new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), injectMetadata(entry.getValue().asJsonObject(), labelsJson)) :
+                        entry)
                 .collect(Collector.of(
                         jsonBuilderFactory::createObjectBuilder,
                         (builder, kv) -> builder.add(kv.getKey(), kv.getValue()),
@@ -869,35 +1210,58 @@ public class KubeClient implements ConfigHolder {
                         JsonObjectBuilder::build));
     }
 
-    private Stream<Map.Entry<String, JsonValue>> mergeLabels(final Map.Entry<String, JsonValue> entry,
-                                                             final JsonObject metadata,
-                                                             final JsonObject customLabels) {
-        return Stream.of(new AbstractMap.SimpleImmutableEntry<>(
-                entry.getKey(),
-                metadata.entrySet().stream()
+    // same as injectMetadata(JsonObject, Map) but only rebuilds the metadata branch and can be fused with other transformations
+    private JsonTransformation metadataInjection(final Map<String, String> customLabels) {
+        final var labelsJson = toLabels(customLabels);
+        return JsonTransformation.builder(jsonBuilderFactory)
+                .map("/metadata", metadata -> injectMetadata(metadata.asJsonObject(), labelsJson))
+                // keep the injectMetadata(JsonObject, Map) ordering, it is a shallow copy of the root
+                .map("", root -> root.asJsonObject().entrySet().stream()
                         .sorted(Map.Entry.comparingByKey())
-                        .flatMap(metadataEntry -> {
-                            if (customMetadataInjectionPoint.equals(metadataEntry.getKey())) {
-                                return Stream.of(new AbstractMap.SimpleImmutableEntry<>(
-                                        metadataEntry.getKey(),
-                                        Stream.concat(
-                                                        metadataEntry.getValue().asJsonObject().entrySet().stream()
-                                                                .sorted(Map.Entry.comparingByKey())
-                                                                .filter(e -> !customLabels.containsKey(e.getKey())),
-                                                        customLabels.entrySet().stream())
-                                                .collect(Collector.of(
-                                                        jsonBuilderFactory::createObjectBuilder,
-                                                        (builder, kv) -> builder.add(kv.getKey(), kv.getValue()),
-                                                        JsonObjectBuilder::addAll,
-                                                        JsonObjectBuilder::build))));
-                            }
-                            return Stream.of(metadataEntry);
-                        })
                         .collect(Collector.of(
                                 jsonBuilderFactory::createObjectBuilder,
                                 (builder, kv) -> builder.add(kv.getKey(), kv.getValue()),
                                 JsonObjectBuilder::addAll,
-                                JsonObjectBuilder::build))));
+                                JsonObjectBuilder::build)))
+                .build();
+    }
+
+    private JsonObject toLabels(final Map<String, String> customLabels) {
+        return customLabels.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .collect(Collector.of(
+                        jsonBuilderFactory::createObjectBuilder,
+                        (builder, kv) -> builder.add(kv.getKey(), kv.getValue()),
+                        JsonObjectBuilder::addAll,
+                        JsonObjectBuilder::build));
+    }
+
+    private JsonObject injectMetadata(final JsonObject metadata, final JsonObject customLabels) {
+        final var sorted = metadata.entrySet().stream().sorted(Map.Entry.comparingByKey());
+        final Stream<Map.Entry<String, JsonValue>> entries;
+        if (metadata.containsKey(customMetadataInjectionPoint)) {
+            entries = sorted.map(metadataEntry -> customMetadataInjectionPoint.equals(metadataEntry.getKey()) ?
+                    new AbstractMap.SimpleImmutableEntry<>(
+                            metadataEntry.getKey(),
+                            Stream.concat(
+                                            metadataEntry.getValue().asJsonObject().entrySet().stream()
+                                                    .sorted(Map.Entry.comparingByKey())
+                                                    .filter(e -> !customLabels.containsKey(e.getKey())),
+                                            customLabels.entrySet().stream())
+                                    .collect(Collector.of(
+                                            jsonBuilderFactory::createObjectBuilder,
+                                            (builder, kv) -> builder.add(kv.getKey(), kv.getValue()),
+                                            JsonObjectBuilder::addAll,
+                                            JsonObjectBuilder::build))) :
+                    metadataEntry);
+        } else {
+            entries = Stream.concat(sorted, Stream.of(new AbstractMap.SimpleImmutableEntry<>(customMetadataInjectionPoint, customLabels)));
+        }
+        return entries.collect(Collector.of(
+                jsonBuilderFactory::createObjectBuilder,
+                (builder, kv) -> builder.add(kv.getKey(), kv.getValue()),
+                JsonObjectBuilder::addAll,
+                JsonObjectBuilder::build));
     }
 
     @Data
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.kube;
+
+import lombok.RequiredArgsConstructor;
+
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import java.util.Collection;
+
+/**
+ * Computes the part of a desired descriptor which differs from the live object (a JSON merge patch subset).
+ * Like the full descriptor patch it replaces, it only contains additions and changes: it never removes attributes
+ * the server (or another manager) added. Arrays are compared and sent as a whole.
+ * <p>
+ * Ignored pointers (diff command ones) are not compared: if the desired state defines them they are always sent.
+ */
+@RequiredArgsConstructor
+class MinimalMergePatch {
+    private final JsonBuilderFactory jsonBuilderFactory;
+    private final Collection<String> ignoredPointers;
+
+    JsonObject compute(final JsonObject live, final JsonObject desired) {
+        return diff(live, desired, "");
+    }
+
+    private JsonObject diff(final JsonObject live, final JsonObject desired, final String pointer) {
+        final var patch = jsonBuilderFactory.createObjectBuilder();
+        for (final var entry : desired.entrySet()) {
+            final var childPointer = pointer + '/' + entry.getKey().replace("~", "~0").replace("/", "~1");
+            final var value = entry.getValue();
+            final var liveValue = live.get(entry.getKey());
+            if (ignoredPointers.contains(childPointer)) {
+                patch.add(entry.getKey(), value);
+            } else if (liveValue == null) {
+                if (value.getValueType() != JsonValue.ValueType.NULL) { // null would be a no-op removal
+                    patch.add(entry.getKey(), value);
+                }
+            } else if (liveValue.getValueType() == JsonValue.ValueType.OBJECT && value.getValueType() == JsonValue.ValueType.OBJECT) {
+                final var nested = diff(liveValue.asJsonObject(), value.asJsonObject(), childPointer);
+                if (!nested.isEmpty()) {
+                    patch.add(entry.getKey(), nested);
+                }
+            } else if (!same(liveValue, value)) {
+                patch.add(entry.getKey(), value);
+            }
+        }
+        return patch.build();
+    }
+
+    private boolean same(final JsonValue live, final JsonValue desired) {
+        if (live.getValueType() == JsonValue.ValueType.NUMBER && desired.getValueType() == JsonValue.ValueType.NUMBER) {
+            return JsonNumber.class.cast(live).bigDecimalValue().compareTo(JsonNumber.class.cast(desired).bigDecimalValue()) == 0;
+        }
+        return live.equals(desired);
+    }
+}
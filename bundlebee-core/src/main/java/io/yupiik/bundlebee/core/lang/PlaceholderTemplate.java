@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.lang;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * A source tokenized once in literal and placeholder segments.
+ * Rendering is linear and only resolves placeholders, it does not rescan the output
+ * (recursive resolution of looked up values is up to the resolver).
+ * Escaped prefixes ({@code \{{}) are kept as is in the output, caller is responsible to unescape them.
+ */
+final class PlaceholderTemplate {
+    private static final char ESCAPE = '\\';
+    private static final String PREFIX = "{{";
+    private static final String SUFFIX = "}}";
+    private static final String VALUE_DELIMITER = ":-";
+
+    private final Segment[] segments;
+    private final int estimatedSize;
+
+    private PlaceholderTemplate(final List<Segment> segments) {
+        this.segments = segments.toArray(new Segment[0]);
+        this.estimatedSize = segments.stream()
+                .mapToInt(it -> it instanceof Literal ? Literal.class.cast(it).value.length() : 16)
+                .sum();
+    }
+
+    static PlaceholderTemplate compile(final String source) {
+        return new PlaceholderTemplate(new Parser(source).segments(false));
+    }
+
+    /**
+     * @return the placeholder keys which can be known without resolving anything (nested placeholders of dynamic keys included).
+     */
+    Collection<String> keys() {
+        final var keys = new LinkedHashSet<String>();
+        collectKeys(keys);
+        return keys;
+    }
+
+    private void collectKeys(final Collection<String> keys) {
+        for (final var segment : segments) {
+            if (segment instanceof Placeholder) {
+                final var placeholder = Placeholder.class.cast(segment);
+                if (placeholder.dynamicKey == null) {
+                    keys.add(placeholder.key);
+                } else {
+                    placeholder.dynamicKey.collectKeys(keys);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param resolver takes the key and the default value (can be null) and returns the value to use.
+     * @return the rendered source.
+     */
+    String render(final BiFunction<String, String, String> resolver) {
+        if (segments.length == 1 && segments[0] instanceof Literal) {
+            return Literal.class.cast(segments[0]).value;
+        }
+        final var out = new StringBuilder(estimatedSize);
+        for (final var segment : segments) {
+            segment.render(out, resolver);
+        }
+        return out.toString();
+    }
+
+    private interface Segment {
+        void render(StringBuilder out, BiFunction<String, String, String> resolver);
+    }
+
+    private static final class Literal implements Segment {
+        private final String value;
+
+        private Literal(final String value) {
+            this.value = value;
+        }
+
+        @Override
+        public void render(final StringBuilder out, final BiFunction<String, String, String> resolver) {
+            out.append(value);
+        }
+    }
+
+    private static final class Placeholder implements Segment {
+        private final PlaceholderTemplate dynamicKey; // when key contains nested placeholders
+        private final String key;
+        private final String defaultValue;
+
+        private Placeholder(final List<Segment> key) {
+            if (key.isEmpty() || (key.size() == 1 && key.get(0) instanceof Literal)) {
+                final var raw = key.isEmpty() ? "" : Literal.class.cast(key.get(0)).value;
+                final int sep = raw.indexOf(VALUE_DELIMITER);
+                this.dynamicKey = null;
+                this.key = sep > 0 ? raw.substring(0, sep) : raw;
+                this.defaultValue = sep > 0 ? raw.substring(sep + VALUE_DELIMITER.length()) : null;
+            } else {
+                this.dynamicKey = new PlaceholderTemplate(key);
+                this.key = null;
+                this.defaultValue = null;
+            }
+        }
+
+        @Override
+        public void render(final StringBuilder out, final BiFunction<String, String, String> resolver) {
+            if (dynamicKey == null) {
+                out.append(resolver.apply(key, defaultValue));
+                return;
+            }
+
+            // nested placeholders are resolved first, then the key/default split is done on the resolved value
+            final var raw = dynamicKey.render(resolver);
+            final int sep = raw.indexOf(VALUE_DELIMITER);
+            if (sep > 0) {
+                out.append(resolver.apply(raw.substring(0, sep), raw.substring(sep + VALUE_DELIMITER.length())));
+            } else {
+                out.append(resolver.apply(raw, null));
+            }
+        }
+    }
+
+    private static final class Parser {
+        private final String source;
+        private int position;
+        private boolean closed;
+
+        private Parser(final String source) {
+            this.source = source;
+        }
+
+        // a placeholder ends at the first suffix (as the historical substitutor did), unclosed ones are kept as literals
+        private List<Segment> segments(final boolean inPlaceholder) {
+            final var segments = new ArrayList<Segment>();
+            int literalStart = position;
+            while (position < source.length()) {
+                if (source.startsWith(PREFIX, position)) {
+                    if (position > 0 && source.charAt(position - 1) == ESCAPE) {
+                        position += PREFIX.length();
+                        continue;
+                    }
+
+                    addLiteral(segments, source.substring(literalStart, position));
+                    position += PREFIX.length();
+                    final var key = segments(true);
+                    if (closed) {
+                        segments.add(new Placeholder(key));
+                    } else {
+                        addLiteral(segments, PREFIX);
+                        key.forEach(it -> {
+                            if (it instanceof Literal) {
+                                addLiteral(segments, Literal.class.cast(it).value);
+                            } else {
+                                segments.add(it);
+                            }
+                        });
+                    }
+                    literalStart = position;
+                    continue;
+                }
+                if (inPlaceholder && source.startsWith(SUFFIX, position)) {
+                    addLiteral(segments, source.substring(literalStart, position));
+                    position += SUFFIX.length();
+                    closed = true;
+                    return segments;
+                }
+                position++;
+            }
+            addLiteral(segments, source.substring(literalStart));
+            closed = false;
+            return segments;
+        }
+
+        private void addLiteral(final List<Segment> segments, final String value) {
+            if (value.isEmpty()) {
+                return;
+            }
+            final int last = segments.size() - 1;
+            if (last >= 0 && segments.get(last) instanceof Literal) {
+                segments.set(last, new Literal(Literal.class.cast(segments.get(last)).value + value));
+            } else {
+                segments.add(new Literal(value));
+            }
+        }
+    }
+}
@@ -17,24 +17,34 @@ package io.yupiik.bundlebee.core.lang;
 
 import io.yupiik.bundlebee.core.descriptor.Manifest;
 import io.yupiik.bundlebee.core.handlebars.HandlebarsInterpolator;
+import io.yupiik.bundlebee.core.jfr.SubstitutionEvent;
 import io.yupiik.bundlebee.core.service.AlveolusHandler;
 
 import javax.enterprise.inject.Vetoed;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import static java.util.Optional.ofNullable;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 
 // forked from commons-text but no need to bring a dep only for < 200 LOC
 @Vetoed
 public class Substitutor {
     private static final char ESCAPE = '\\';
     private static final String PREFIX = "{{";
-    private static final String SUFFIX = "}}";
-    private static final String VALUE_DELIMITER = ":-";
 
     private final int maxIterations = Integer.getInteger("bundlebee.substitutor.max-iterations", 100);
+    private final int cacheSize = Integer.getInteger("bundlebee.substitutor.cache-size", 256);
+
+    // compiled sources (descriptor contents), enables to not re-tokenize them for each execution/alveolus
+    private final Map<String, PlaceholderTemplate> templates = new ConcurrentHashMap<>();
+
+    private volatile HandlebarsInterpolator handlebars;
 
     private final BiFunction<String, String, String> lookup;
 
@@ -57,55 +67,68 @@ public class Substitutor {
     public String replace(final Manifest.Alveolus alveolus,
                           final AlveolusHandler.LoadedDescriptor desc,
                           final String source, final String id) {
-        return doReplace(alveolus, desc, source, id);
+        final var event = new SubstitutionEvent();
+        if (!event.isEnabled() || source == null) {
+            return doReplace(alveolus, desc, source, id);
+        }
+        event.begin();
+        final var result = doReplace(alveolus, desc, source, id);
+        event.end();
+        if (event.shouldCommit()) {
+            event.descriptor = desc == null || desc.getConfiguration() == null ? null : desc.getConfiguration().getName();
+            event.handlebars = isHandlebars(desc);
+            event.inputSize = source.length();
+            event.outputSize = result == null ? 0 : result.length();
+            event.commit();
+        }
+        return result;
     }
 
     public String replace(final String source, final String id) {
         return replace(null, null, source, id);
     }
 
-    private String substitute(final Manifest.Alveolus alveolus, AlveolusHandler.LoadedDescriptor descriptor,
-                              final String input, int iteration, final String id) {
-        if (iteration > maxIterations) {
-            return input;
-        }
-
-        int from = 0;
-        int start = -1;
-        while (from < input.length()) {
-            start = input.indexOf(PREFIX, from);
-            if (start < 0) {
-                return input;
-            }
-            if (start == 0 || input.charAt(start - 1) != ESCAPE) {
-                break;
-            }
-            from = start + 1;
-        }
+    /**
+     * Same as {@link #replace(Manifest.Alveolus, AlveolusHandler.LoadedDescriptor, String, String)} but placeholders
+     * supporting it are resolved concurrently before rendering the source.
+     */
+    public CompletionStage<String> replaceAsync(final Manifest.Alveolus alveolus,
+                                                final AlveolusHandler.LoadedDescriptor desc,
+                                                final String source, final String id) {
+        return prefetch(desc, source, id).thenApply(ignored -> replace(alveolus, desc, source, id));
+    }
 
-        final var keyStart = start + PREFIX.length();
-        final var end = input.indexOf(SUFFIX, keyStart);
-        if (end < 0) {
-            return input;
-        }
-        final var key = input.substring(start + PREFIX.length(), end);
-        final var nested = key.indexOf(PREFIX);
-        if (nested >= 0 && !(nested > 0 && key.charAt(nested - 1) == ESCAPE)) {
-            final var nestedPlaceholder = key + SUFFIX;
-            final var newKey = substitute(alveolus, descriptor, nestedPlaceholder, iteration + 1, id);
-            return input.replace(nestedPlaceholder, newKey);
+    /**
+     * Resolves concurrently the placeholders of the source which support an asynchronous resolution (remote lookups),
+     * a later {@code replace} call will not block on them.
+     *
+     * @param desc   the descriptor the source comes from (handlebars ones are ignored), can be null.
+     * @param source the source to extract placeholders from.
+     * @param id     the execution id.
+     * @return a stage completed when all asynchronous lookups are done, it never fails, errors are reported by {@code replace}.
+     */
+    public CompletionStage<Void> prefetch(final AlveolusHandler.LoadedDescriptor desc, final String source, final String id) {
+        if (source == null || isHandlebars(desc) || !source.contains(PREFIX)) {
+            return completedFuture(null);
         }
+        final var stages = compile(source).keys().stream()
+                .map(key -> resolveAsync(key, id))
+                .filter(Objects::nonNull)
+                .map(CompletionStage::toCompletableFuture)
+                .toArray(CompletableFuture<?>[]::new);
+        return stages.length == 0 ? completedFuture(null) : CompletableFuture.allOf(stages);
+    }
 
-        final var startOfString = input.substring(0, start);
-        final var endOfString = input.substring(end + SUFFIX.length());
-
-        final int sep = key.indexOf(VALUE_DELIMITER);
-        if (sep > 0) {
-            final var actualKey = key.substring(0, sep);
-            final var fallback = key.substring(sep + VALUE_DELIMITER.length());
-            return startOfString + doGetOrDefault(alveolus, descriptor, actualKey, fallback, id) + endOfString;
-        }
-        return startOfString + doGetOrDefault(alveolus, descriptor, key, null, id) + endOfString;
+    /**
+     * Enables to resolve a placeholder asynchronously, the resolved value must then be available synchronously
+     * to {@link #getOrDefault(String, String, String)}.
+     *
+     * @param varName the placeholder key.
+     * @param id      the execution id.
+     * @return {@code null} if the placeholder is resolved synchronously else a stage completed when it is resolved.
+     */
+    protected CompletionStage<?> resolveAsync(final String varName, final String id) {
+        return null;
     }
 
     protected Map<String, Function<Object, String>> handlebarsHelpers() {
@@ -114,7 +137,10 @@ public class Substitutor {
 
     private String handlebars(final Manifest.Alveolus alveolus, final AlveolusHandler.LoadedDescriptor desc,
                               final String source, final String id) {
-        return new HandlebarsInterpolator(alveolus, desc, id, handlebarsHelpers(), this::replace).apply(source);
+        if (handlebars == null) { // lazy since helpers can be registered after the instantiation
+            handlebars = new HandlebarsInterpolator(handlebarsHelpers(), this::replace);
+        }
+        return handlebars.apply(alveolus, desc, id, source);
     }
 
     private String doReplace(final Manifest.Alveolus alveolus, final AlveolusHandler.LoadedDescriptor desc, final String source, final String id) {
@@ -122,18 +148,47 @@ public class Substitutor {
             return null;
         }
 
-        if (desc != null && desc.getExtension() != null && ("hb".equals(desc.getExtension()) || "handlebars".equals(desc.getExtension()))) {
+        if (isHandlebars(desc)) {
             return handlebars(alveolus, desc, source, id);
         }
 
-        String current = source;
-        do {
-            final var previous = current;
-            current = substitute(alveolus, desc, current, 0, id);
-            if (previous.equals(current)) {
-                return previous.replace(ESCAPE + PREFIX, PREFIX);
+        if (!source.contains(PREFIX)) {
+            return source;
+        }
+        return render(compile(source), alveolus, desc, id, 0).replace(ESCAPE + PREFIX, PREFIX);
+    }
+
+    private boolean isHandlebars(final AlveolusHandler.LoadedDescriptor desc) {
+        return desc != null && desc.getExtension() != null && ("hb".equals(desc.getExtension()) || "handlebars".equals(desc.getExtension()));
+    }
+
+    private PlaceholderTemplate compile(final String source) {
+        if (cacheSize <= 0) {
+            return PlaceholderTemplate.compile(source);
+        }
+        final var cached = templates.get(source);
+        if (cached != null) {
+            return cached;
+        }
+        final var template = PlaceholderTemplate.compile(source);
+        if (templates.size() >= cacheSize) { // simple bound, sources are quite stable during an execution
+            templates.clear();
+        }
+        templates.putIfAbsent(source, template);
+        return template;
+    }
+
+    private String render(final PlaceholderTemplate template,
+                          final Manifest.Alveolus alveolus, final AlveolusHandler.LoadedDescriptor desc,
+                          final String id, final int iteration) {
+        return template.render((key, defaultValue) -> {
+            final var value = doGetOrDefault(alveolus, desc, key, defaultValue, id);
+            if (value == null || iteration >= maxIterations || !value.contains(PREFIX)) {
+                return value;
             }
-        } while (true);
+            // values can contain placeholders too
+            return render(PlaceholderTemplate.compile(value), alveolus, desc, id, iteration + 1);
+        });
     }
 
     @Deprecated
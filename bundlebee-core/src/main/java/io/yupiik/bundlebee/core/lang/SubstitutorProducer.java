@@ -15,6 +15,7 @@
  */
 package io.yupiik.bundlebee.core.lang;
 
+import io.yupiik.bundlebee.core.configuration.ThreadBoundConfigSource;
 import io.yupiik.bundlebee.core.event.OnPlaceholder;
 import io.yupiik.bundlebee.core.kube.HttpKubeClient;
 import io.yupiik.bundlebee.core.kube.KubeClient;
@@ -22,10 +23,12 @@ import io.yupiik.bundlebee.core.qualifier.BundleBee;
 import io.yupiik.bundlebee.core.service.Maven;
 import io.yupiik.tools.codec.simple.SimpleCodec;
 import io.yupiik.tools.codec.simple.SimpleCodecConfiguration;
+import lombok.Data;
 import lombok.Getter;
 import lombok.extern.java.Log;
 import org.eclipse.microprofile.config.Config;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.enterprise.inject.Produces;
@@ -36,6 +39,13 @@ import javax.json.JsonBuilderFactory;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
 import javax.json.spi.JsonProvider;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
@@ -43,22 +53,33 @@ import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Collector;
 import java.util.stream.IntStream;
@@ -68,6 +89,7 @@ import static java.util.Comparator.comparing;
 import static java.util.Locale.ROOT;
 import static java.util.Optional.ofNullable;
 import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.runAsync;
 import static java.util.logging.Level.SEVERE;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
@@ -105,6 +127,17 @@ public class SubstitutorProducer {
     @Getter
     private final Map<String, Map<String, String>> byIdContextualPlaceholders = new ConcurrentHashMap<>();
 
+    // same scoping than byIdContextualPlaceholders (execution id, "" when there is none), cleared when a command ends
+    private final Map<String, Map<String, Memo>> memoizedPlaceholders = new ConcurrentHashMap<>();
+
+    // files read by the placeholder being resolved, enables to invalidate memoized values when they are modified
+    private final ThreadLocal<List<FileStamp>> resolutionFiles = new ThreadLocal<>();
+
+    private final Scripts scripts = new Scripts();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile ExecutorService asyncLookups;
+
     @Produces
     public Substitutor substitutor(final Config config) {
         final var self = new AtomicReference<Substitutor>();
@@ -115,6 +148,7 @@ public class SubstitutorProducer {
                 () -> getClass().getDeclaredMethod("doSubstitute", AtomicReference.class, Config.class, String.class).getDeclaringClass() != SubstitutorProducer.class);
         idHolder = hasOldOnPlaceholderExtensionPoint || hasOldSubstitute ? new ThreadLocal<>() : null;
 
+        final boolean memoize = config.getOptionalValue("bundlebee.substitutor.memoize", Boolean.class).orElse(true);
         final var helpers = new HashMap<String, Function<Object, String>>();
         final var ref = new Substitutor(it -> doSubstitute(self, config, it, null)) {
             @Override
@@ -122,6 +156,35 @@ public class SubstitutorProducer {
                 return helpers;
             }
 
+            @Override
+            protected CompletionStage<?> resolveAsync(final String varName, final String id) {
+                if (!memoize || !isRemote(varName)) {
+                    return null;
+                }
+                // warms the memoized values, synchronous resolution will reuse it
+                Runnable task = () -> {
+                    if (hasOldSubstitute) {
+                        idHolder.set(id);
+                    }
+                    try {
+                        memoized(varName, id, () -> doSubstitute(self, config, varName, id));
+                    } catch (final RuntimeException re) { // will be handled (default value) or reported by the synchronous resolution
+                        log.finest(() -> "Can't resolve '" + varName + "' asynchronously: " + re.getMessage());
+                    } finally {
+                        if (idHolder != null) {
+                            idHolder.remove();
+                        }
+                    }
+                };
+                // lookups must see the same configuration than the calling thread (contextual placeholders, operator resources)
+                for (final var source : config.getConfigSources()) {
+                    if (source instanceof ThreadBoundConfigSource) {
+                        task = ThreadBoundConfigSource.class.cast(source).propagate(task);
+                    }
+                }
+                return runAsync(task, asyncLookups());
+            }
+
             @Override // mainly handle backward compat and id propagation, could be ~2-3 lines without that
             protected String getOrDefault(final String varName, final String varDefaultValue, final String id) {
                 String value;
@@ -132,7 +195,10 @@ public class SubstitutorProducer {
                 }
                 try {
                     try {
-                        value = ofNullable(doSubstitute(self, config, varName, id)).orElse(varDefaultValue);
+                        value = ofNullable(memoize ?
+                                memoized(varName, id, () -> doSubstitute(self, config, varName, id)) :
+                                doSubstitute(self, config, varName, id))
+                                .orElse(varDefaultValue);
                     } catch (final RuntimeException re) {
                         if (varDefaultValue != null) {
                             value = varDefaultValue;
@@ -171,6 +237,108 @@ public class SubstitutorProducer {
         return ref;
     }
 
+    /**
+     * Drops the placeholder values memoized during the previous executions, must be called when a command ends
+     * in long running processes (operator for example).
+     */
+    public void clearMemoizedPlaceholders() {
+        memoizedPlaceholders.clear();
+    }
+
+    @PreDestroy
+    private void destroy() {
+        final var executor = asyncLookups;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private ExecutorService asyncLookups() { // lazy to avoid to create it if never needed
+        if (asyncLookups == null) {
+            lock.lock();
+            try {
+                if (asyncLookups == null) {
+                    final var counter = new AtomicInteger();
+                    asyncLookups = Executors.newFixedThreadPool(Integer.getInteger("bundlebee.substitutor.async-threads", 8), r -> {
+                        final var thread = new Thread(r, SubstitutorProducer.class.getName() + "-" + counter.incrementAndGet());
+                        thread.setContextClassLoader(SubstitutorProducer.class.getClassLoader());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return asyncLookups;
+    }
+
+    // placeholders blocking on a remote system (cluster, maven settings/servers) which can be resolved concurrently
+    private boolean isRemote(final String placeholder) {
+        return placeholder.startsWith("bundlebee-maven-server-") ||
+                ((placeholder.startsWith("kubernetes.") || placeholder.startsWith("kubernetes/")) && placeholder.contains("serviceaccount"));
+    }
+
+    private String memoized(final String placeholder, final String id, final Supplier<String> resolver) {
+        if (!isMemoizable(placeholder)) {
+            return resolver.get();
+        }
+
+        final var memos = memoizedPlaceholders.computeIfAbsent(id == null ? "" : id, k -> new ConcurrentHashMap<>());
+        final var parentFiles = resolutionFiles.get();
+        final var existing = memos.get(placeholder);
+        if (existing != null && existing.isValid()) {
+            if (parentFiles != null) {
+                parentFiles.addAll(existing.getFiles());
+            }
+            return existing.getValue();
+        }
+
+        // no computeIfAbsent since resolution can be recursive (bundlebee-json-inline-file for ex)
+        final var files = new ArrayList<FileStamp>();
+        resolutionFiles.set(files);
+        try {
+            final var value = resolver.get();
+            if (value != null) {
+                memos.put(placeholder, new Memo(value, files));
+            }
+            return value;
+        } finally {
+            if (parentFiles == null) {
+                resolutionFiles.remove();
+            } else {
+                parentFiles.addAll(files);
+                resolutionFiles.set(parentFiles);
+            }
+        }
+    }
+
+    // only placeholders which are costly (I/O, crypto, scripts, cluster) and deterministic for an execution,
+    // timestamp/now/date are excluded, pure string functions (indent, strip, case, base64...) and
+    // plain configuration or in memory lookups are cheaper than a memo and can be contextual
+    private boolean isMemoizable(final String placeholder) {
+        return placeholder.startsWith("bundlebee-directory-json-key-value-pairs") ||
+                placeholder.startsWith("bundlebee-inline-file:") ||
+                placeholder.startsWith("bundlebee-inlined-file:") ||
+                placeholder.startsWith("bundlebee-base64-file:") ||
+                placeholder.startsWith("bundlebee-base64-decode-file:") ||
+                placeholder.startsWith("bundlebee-quote-escaped-inline-file:") ||
+                placeholder.startsWith("bundlebee-json-inline-file:") ||
+                placeholder.startsWith("bundlebee-digest:") ||
+                placeholder.startsWith("bundlebee-decipher:") ||
+                placeholder.startsWith("bundlebee-maven-server-") ||
+                placeholder.startsWith("jsr223:") ||
+                placeholder.startsWith("kubernetes.") ||
+                placeholder.startsWith("kubernetes/");
+    }
+
+    private void track(final Path path) throws IOException {
+        final var files = resolutionFiles.get();
+        if (files != null) {
+            files.add(new FileStamp(path, Files.getLastModifiedTime(path)));
+        }
+    }
+
     private boolean has(final ThrowingBooleanSupplier test) {
         try {
             return test.get();
@@ -218,9 +386,11 @@ public class SubstitutorProducer {
                 final var directory = placeholder.substring("bundlebee-directory-json-key-value-pairs:".length());
                 // we support the pattern "/my/dir" and will take all subfiles or "/my/dir/*.ext" and will filter files by a glob pattern
                 final int lastSep = directory.lastIndexOf("/*");
+                final var dirPath = Path.of(lastSep < 0 ? directory : directory.substring(0, lastSep));
+                track(dirPath);
                 try (final var dir = lastSep < 0 ?
-                        Files.newDirectoryStream(Path.of(directory)) :
-                        Files.newDirectoryStream(Path.of(directory.substring(0, lastSep)), directory.substring(lastSep + 1));
+                        Files.newDirectoryStream(dirPath) :
+                        Files.newDirectoryStream(dirPath, directory.substring(lastSep + 1));
                      final var stream = stream(Spliterators.spliteratorUnknownSize(dir.iterator(), Spliterator.DISTINCT), false)) {
                     return stream
                             .sorted(comparing(Path::getFileName))
@@ -228,6 +398,7 @@ public class SubstitutorProducer {
                                     jsonBuilderFactory::createObjectBuilder,
                                     (builder, path) -> {
                                         try {
+                                            track(path);
                                             builder.add(
                                                     path.getFileName().toString().replace("____", "/"),
                                                     Files.readString(path));
@@ -381,7 +552,7 @@ public class SubstitutorProducer {
                 final var script = ofNullable(resourceContent)
                         .map(c -> new String(c, StandardCharsets.UTF_8))
                         .orElseGet(() -> placeholder.substring("jsr223:".length()));
-                return Scripts.execute(
+                return scripts.execute(
                         script,
                         resourceContent == null ? null : placeholder.substring(placeholder.lastIndexOf('.') + 1),
                         beanManager);
@@ -430,6 +601,7 @@ public class SubstitutorProducer {
         final var name = text.substring(prefix.length());
         final var path = Path.of(name);
         if (Files.exists(path)) {
+            track(path);
             return Files.readAllBytes(path);
         }
         try (final var stream = Thread.currentThread().getContextClassLoader()
@@ -549,53 +721,131 @@ public class SubstitutorProducer {
         throw new IllegalStateException(error);
     }
 
+    // engines are costly to create (service loading, bootstrap), they are pooled per language and scripts are compiled once
     private static final class Scripts {
-        private Scripts() {
-            // no-op
-        }
+        private final int poolSize = Integer.getInteger("bundlebee.jsr223.pool-size", 4);
+        private final int cacheSize = Integer.getInteger("bundlebee.jsr223.cache-size", 128);
+        private final Map<String, EnginePool> pools = new ConcurrentHashMap<>();
+        private volatile ScriptEngineManager manager;
 
-        private static String execute(final String content, final String lang, final BeanManager beanManager) {
+        private String execute(final String content, final String lang, final BeanManager beanManager) {
             final var lg = ofNullable(lang).orElseGet(() -> guessLang(content));
-            final var manager = new javax.script.ScriptEngineManager();
-            var engine = manager.getEngineByExtension(lg);
+            final var pool = pools.computeIfAbsent(lg, this::newPool);
+            final var engine = pool.acquire();
+            try {
+                final var bindings = engine.getEngine().createBindings(); // fresh bindings per call, no leak between scripts
+                bindings.put("lookupByName", (Function<String, Object>) name -> {
+                    final Bean<?> bean = beanManager.resolve(beanManager.getBeans(name));
+                    if (bean == null) {
+                        throw new IllegalArgumentException("No bean '" + name + "' found.");
+                    }
+                    // important: on dependent beans it will leak the creation context, accepted cause it is a script and rare but not recommended
+                    return beanManager.getReference(bean, bean.getBeanClass(), beanManager.createCreationalContext(null));
+                });
+                bindings.put("lookupByType", (Function<Class<?>, Object>) type -> {
+                    final Bean<?> bean = beanManager.resolve(beanManager.getBeans(type));
+                    if (bean == null) {
+                        throw new IllegalArgumentException("No bean " + type + " found.");
+                    }
+                    // important: on dependent beans it will leak the creation context, accepted cause it is a script and rare but not recommended
+                    return beanManager.getReference(bean, bean.getBeanClass(), beanManager.createCreationalContext(null));
+                });
+                return ofNullable(engine.eval(content, bindings)).map(String::valueOf).orElse(null);
+            } catch (final ScriptException e) {
+                Logger.getLogger(Scripts.class.getName()).log(SEVERE, e, e::getMessage);
+                throw new IllegalStateException(e);
+            } finally {
+                pool.release(engine);
+            }
+        }
+
+        private EnginePool newPool(final String lang) {
+            if (manager == null) {
+                manager = new ScriptEngineManager();
+            }
+            var engine = manager.getEngineByExtension(lang);
             if (engine == null) {
-                engine = manager.getEngineByName(lg);
+                engine = manager.getEngineByName(lang);
                 if (engine == null) {
-                    engine = manager.getEngineByMimeType(lg);
+                    engine = manager.getEngineByMimeType(lang);
                     if (engine == null) {
                         throw new IllegalStateException("" +
-                                "No engine matching lang: '" + lg + "', " +
+                                "No engine matching lang: '" + lang + "', " +
                                 "add a comment line with `bundlebee.language: <lang>` to refine the language or " +
                                 "ensure your JSR223 implementation is in the classpath.");
                     }
                 }
             }
-            final var bindings = engine.createBindings();
-            bindings.put("lookupByName", (Function<String, Object>) name -> {
-                final Bean<?> bean = beanManager.resolve(beanManager.getBeans(name));
-                if (bean == null) {
-                    throw new IllegalArgumentException("No bean '" + name + "' found.");
+            return new EnginePool(engine);
+        }
+
+        private final class EnginePool {
+            private final ScriptEngineFactory factory;
+            private final PooledEngine shared; // when the engine is thread safe
+            private final Queue<PooledEngine> idle = new ConcurrentLinkedQueue<>();
+
+            private EnginePool(final ScriptEngine first) {
+                this.factory = first.getFactory();
+                // null means not thread safe, other values (MULTITHREADED, THREAD-ISOLATED, STATELESS) enable concurrent evaluations
+                if (factory.getParameter("THREADING") != null) {
+                    this.shared = new PooledEngine(first);
+                } else {
+                    this.shared = null;
+                    this.idle.add(new PooledEngine(first));
                 }
-                // important: on dependent beans it will leak the creation context, accepted cause it is a script and rare but not recommended
-                return beanManager.getReference(bean, bean.getBeanClass(), beanManager.createCreationalContext(null));
-            });
-            bindings.put("lookupByType", (Function<Class<?>, Object>) type -> {
-                final Bean<?> bean = beanManager.resolve(beanManager.getBeans(type));
-                if (bean == null) {
-                    throw new IllegalArgumentException("No bean " + type + " found.");
+            }
+
+            private PooledEngine acquire() {
+                if (shared != null) {
+                    return shared;
+                }
+                final var engine = idle.poll();
+                // don't block when the pool is empty (a script can trigger another jsr223 placeholder), just create an engine
+                return engine != null ? engine : new PooledEngine(factory.getScriptEngine());
+            }
+
+            private void release(final PooledEngine engine) {
+                if (engine != shared && idle.size() < poolSize) {
+                    idle.add(engine);
                 }
-                // important: on dependent beans it will leak the creation context, accepted cause it is a script and rare but not recommended
-                return beanManager.getReference(bean, bean.getBeanClass(), beanManager.createCreationalContext(null));
-            });
-            try {
-                return ofNullable(engine.eval(content, bindings)).map(String::valueOf).orElse(null);
-            } catch (final javax.script.ScriptException e) {
-                Logger.getLogger(Scripts.class.getName()).log(SEVERE, e, e::getMessage);
-                throw new IllegalStateException(e);
             }
         }
 
-        private static String guessLang(final String content) {
+        @Getter
+        private final class PooledEngine {
+            private final ScriptEngine engine;
+            private final Map<String, CompiledScript> compiled = new ConcurrentHashMap<>();
+
+            private PooledEngine(final ScriptEngine engine) {
+                this.engine = engine;
+            }
+
+            private Object eval(final String content, final Bindings bindings) throws ScriptException {
+                if (!(engine instanceof Compilable) || cacheSize <= 0) {
+                    return engine.eval(content, bindings);
+                }
+                final var key = digest(content);
+                var script = compiled.get(key);
+                if (script == null) {
+                    script = Compilable.class.cast(engine).compile(content);
+                    if (compiled.size() >= cacheSize) {
+                        compiled.clear();
+                    }
+                    compiled.putIfAbsent(key, script);
+                }
+                return script.eval(bindings);
+            }
+
+            private String digest(final String content) {
+                try {
+                    return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+                } catch (final NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        private String guessLang(final String content) {
             final var marker = "bundlebee.language:";
             return Stream.of(content.split("\n"))
                     .map(String::trim)
@@ -606,6 +856,30 @@ public class SubstitutorProducer {
         }
     }
 
+    @Data
+    private static class Memo {
+        private final String value;
+        private final List<FileStamp> files;
+
+        private boolean isValid() {
+            return files.stream().allMatch(FileStamp::isValid);
+        }
+    }
+
+    @Data
+    private static class FileStamp {
+        private final Path path;
+        private final FileTime lastModified;
+
+        private boolean isValid() {
+            try {
+                return lastModified.equals(Files.getLastModifiedTime(path));
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+    }
+
     private interface ThrowingBooleanSupplier {
         boolean get() throws Throwable;
     }
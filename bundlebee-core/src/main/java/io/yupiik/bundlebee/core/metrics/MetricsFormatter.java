@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.metrics;
+
+import io.yupiik.bundlebee.lang.metrics.Counter;
+import io.yupiik.bundlebee.lang.metrics.Gauge;
+import io.yupiik.bundlebee.lang.metrics.Histogram;
+import io.yupiik.bundlebee.lang.metrics.Metric;
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import lombok.RequiredArgsConstructor;
+
+import javax.json.spi.JsonProvider;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Serializes a {@link MetricRegistry} in prometheus text format or JSON.
+ */
+@RequiredArgsConstructor
+public class MetricsFormatter {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final JsonProvider jsonProvider;
+
+    public void writePrometheus(final MetricRegistry registry, final Writer writer) {
+        final var headers = new HashSet<String>();
+        try {
+            for (final var metric : registry.metrics()) {
+                if (headers.add(metric.name())) {
+                    if (metric.help() != null && !metric.help().isBlank()) {
+                        writer.write("# HELP " + metric.name() + ' ' + metric.help().replace("\\", "\\\\").replace("\n", "\\n") + '\n');
+                    }
+                    writer.write("# TYPE " + metric.name() + ' ' + prometheusType(metric) + '\n');
+                }
+                switch (metric.type()) {
+                    case COUNTER:
+                        writer.write(metric.name() + labels(metric.labels(), null) + ' ' + ((Counter) metric).get() + '\n');
+                        break;
+                    case GAUGE:
+                        writer.write(metric.name() + labels(metric.labels(), null) + ' ' + format(((Gauge) metric).get()) + '\n');
+                        break;
+                    case HISTOGRAM:
+                        final var histogram = (Histogram) metric;
+                        for (final double quantile : QUANTILES) {
+                            writer.write(metric.name() + labels(metric.labels(), Double.toString(quantile)) + ' ' + histogram.quantile(quantile) + '\n');
+                        }
+                        writer.write(metric.name() + "_sum" + labels(metric.labels(), null) + ' ' + histogram.sum() + '\n');
+                        writer.write(metric.name() + "_count" + labels(metric.labels(), null) + ' ' + histogram.count() + '\n');
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported metric: " + metric);
+                }
+            }
+            writer.flush();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeJson(final MetricRegistry registry, final Writer writer) {
+        try (final var generator = jsonProvider.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStartArray("metrics");
+            for (final var metric : registry.metrics()) {
+                generator.writeStartObject();
+                generator.write("name", metric.name());
+                generator.write("type", metric.type().name().toLowerCase(Locale.ROOT));
+                if (!metric.labels().isEmpty()) {
+                    generator.writeStartObject("labels");
+                    metric.labels().forEach(generator::write);
+                    generator.writeEnd();
+                }
+                switch (metric.type()) {
+                    case COUNTER:
+                        generator.write("value", ((Counter) metric).get());
+                        break;
+                    case GAUGE:
+                        generator.write("value", ((Gauge) metric).get());
+                        break;
+                    case HISTOGRAM:
+                        final var histogram = (Histogram) metric;
+                        generator.write("count", histogram.count());
+                        generator.write("sum", histogram.sum());
+                        generator.write("max", histogram.max());
+                        for (final double quantile : QUANTILES) {
+                            generator.write("p" + Math.round(quantile * 100), histogram.quantile(quantile));
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported metric: " + metric);
+                }
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+            generator.writeEnd();
+        }
+    }
+
+    private String prometheusType(final Metric metric) {
+        switch (metric.type()) {
+            case COUNTER:
+                return "counter";
+            case GAUGE:
+                return "gauge";
+            default: // we export quantiles
+                return "summary";
+        }
+    }
+
+    private String labels(final Map<String, String> labels, final String quantile) {
+        if (labels.isEmpty() && quantile == null) {
+            return "";
+        }
+        final var values = labels.entrySet().stream()
+                .map(e -> e.getKey() + "=\"" + escape(e.getValue()) + '"')
+                .collect(Collectors.joining(","));
+        if (quantile == null) {
+            return '{' + values + '}';
+        }
+        return '{' + values + (values.isEmpty() ? "" : ",") + "quantile=\"" + quantile + "\"}";
+    }
+
+    private String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private String format(final double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.metrics;
+
+import io.yupiik.bundlebee.core.configuration.Description;
+import io.yupiik.bundlebee.core.lang.ConfigHolder;
+import io.yupiik.bundlebee.core.qualifier.BundleBee;
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import lombok.extern.java.Log;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Disposes;
+import javax.enterprise.inject.Produces;
+import javax.inject.Inject;
+import javax.json.spi.JsonProvider;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import static java.util.logging.Level.SEVERE;
+
+@Log
+@ApplicationScoped
+public class MetricsProducer implements ConfigHolder {
+    @Inject
+    @Description("If not `none`, metrics (kube requests, rate limiting, awaits, caches, descriptors) are written in prometheus text format in this file at the end of the command.")
+    @ConfigProperty(name = "bundlebee.metrics.prometheus.output", defaultValue = "none")
+    private String prometheusOutput;
+
+    @Inject
+    @Description("If not `none`, metrics are written as JSON in this file at the end of the command.")
+    @ConfigProperty(name = "bundlebee.metrics.json.output", defaultValue = "none")
+    private String jsonOutput;
+
+    @Inject
+    @BundleBee
+    private JsonProvider jsonProvider;
+
+    @Produces
+    @ApplicationScoped
+    public MetricRegistry registry() {
+        return new MetricRegistry();
+    }
+
+    public void release(@Disposes final MetricRegistry registry) {
+        final var formatter = new MetricsFormatter(jsonProvider);
+        export(prometheusOutput, writer -> formatter.writePrometheus(registry, writer));
+        export(jsonOutput, writer -> formatter.writeJson(registry, writer));
+    }
+
+    private void export(final String output, final Consumer<Writer> exporter) {
+        if ("none".equals(output)) {
+            return;
+        }
+        try {
+            final var location = Path.of(output);
+            if (location.getParent() != null) {
+                Files.createDirectories(location.getParent());
+            }
+            try (final var writer = Files.newBufferedWriter(location)) {
+                exporter.accept(writer);
+            }
+            log.info(() -> "Wrote metrics to '" + location + "'");
+        } catch (final IOException | RuntimeException e) {
+            log.log(SEVERE, e, () -> "Can't write metrics to '" + output + "': " + e.getMessage());
+        }
+    }
+}
@@ -15,15 +15,22 @@
  */
 package io.yupiik.bundlebee.core.service;
 
+import io.yupiik.bundlebee.core.configuration.ThreadBoundConfigSource;
 import io.yupiik.bundlebee.core.configuration.ThreadLocalConfigSource;
 import io.yupiik.bundlebee.core.descriptor.Manifest;
 import io.yupiik.bundlebee.core.event.OnPrepareDescriptor;
-import io.yupiik.bundlebee.helm.HelmChartDownloader;
-import io.yupiik.bundlebee.helm.HelmRenderer;
+import io.yupiik.bundlebee.core.jfr.DescriptorPrepareEvent;
 import io.yupiik.bundlebee.core.lang.Substitutor;
 import io.yupiik.bundlebee.core.qualifier.BundleBee;
 import io.yupiik.bundlebee.core.yaml.Yaml2JsonConverter;
+import io.yupiik.bundlebee.helm.HelmChartDownloader;
+import io.yupiik.bundlebee.helm.HelmRenderer;
+import io.yupiik.bundlebee.lang.spi.Tracer;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.java.Log;
 import org.eclipse.microprofile.config.Config;
 
@@ -45,10 +52,14 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -72,11 +83,13 @@ import static java.util.Objects.requireNonNull;
 import static java.util.Optional.of;
 import static java.util.Optional.ofNullable;
 import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.counting;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static java.util.stream.StreamSupport.stream;
+import static lombok.AccessLevel.NONE;
 
 @Log
 @ApplicationScoped
@@ -119,10 +132,18 @@ public class AlveolusHandler {
     @Inject
     private Event<OnPrepareDescriptor> onPrepareDescriptorEvent;
 
+    @Inject
+    private Tracer tracer;
+
     private ThreadLocalConfigSource threadLocalConfigSource;
+    private List<ThreadBoundConfigSource> threadBoundConfigSources;
 
     @PostConstruct
     private void init() {
+        threadBoundConfigSources = stream(config.getConfigSources().spliterator(), false)
+                .filter(ThreadBoundConfigSource.class::isInstance)
+                .map(ThreadBoundConfigSource.class::cast)
+                .collect(toList());
         threadLocalConfigSource = stream(config.getConfigSources().spliterator(), false)
                 .filter(ThreadLocalConfigSource.class::isInstance)
                 .map(ThreadLocalConfigSource.class::cast)
@@ -212,7 +233,7 @@ public class AlveolusHandler {
                                                     final String alreadyHandledMarker, final String id) {
         final var alreadyDone = new HashSet<String>();
         return executeOnAlveolus(prefixOnVisitLog, manifest, alveolus, onAlveolusUser, (ctx, desc) -> {
-            if (!alreadyDone.add(desc.getConfiguration().getName() + '|' + desc.getContent())) {
+            if (!alreadyDone.add(desc.getConfiguration().getName() + '|' + desc.getDigest())) {
                 log.info(() -> desc.getConfiguration().getName() + " already " + alreadyHandledMarker + ", skipping");
                 return completedFuture(false);
             }
@@ -323,6 +344,20 @@ public class AlveolusHandler {
                                           final Function<LoadedDescriptor, CompletionStage<Void>> awaiter,
                                           final Map<String, String> placeholders,
                                           final String id) {
+        return tracer.traceSpan("alveolus", Map.of("name", String.valueOf(from.getName())), span -> doOnAlveolus(
+                prefixOnVisitLog, manifest, from, patches, excludes, cache, onAlveolus, onDescriptor, awaiter, placeholders, id, span));
+    }
+
+    private CompletionStage<?> doOnAlveolus(final String prefixOnVisitLog, final Manifest manifest, final Manifest.Alveolus from,
+                                            final Map<Predicate<String>, Manifest.Patch> patches,
+                                            final Collection<Manifest.DescriptorRef> excludes,
+                                            final ArchiveReader.Cache cache,
+                                            final Function<AlveolusContext, CompletionStage<?>> onAlveolus,
+                                            final BiFunction<AlveolusContext, LoadedDescriptor, CompletionStage<?>> onDescriptor,
+                                            final Function<LoadedDescriptor, CompletionStage<Void>> awaiter,
+                                            final Map<String, String> placeholders,
+                                            final String id,
+                                            final Tracer.Span span) {
         if (prefixOnVisitLog != null) {
             log.info(() -> prefixOnVisitLog + " '" + from.getName() + "'");
         }
@@ -351,27 +386,27 @@ public class AlveolusHandler {
                                     .findFirst()
                                     .orElse(null);
                             if (found != null) {
-                                return (Supplier<CompletionStage<?>>) () -> onAlveolus.apply(new AlveolusContext(
-                                        manifest, found, currentPatches, currentPlaceholders, currentExcludes, cache, id));
+                                return (Supplier<CompletionStage<?>>) () -> tracer.withSpan(span, () -> onAlveolus.apply(new AlveolusContext(
+                                        manifest, found, currentPatches, currentPlaceholders, currentExcludes, cache, id)));
                             }
                         }
                         final var alveolus = findAlveolusInClasspath(it.getName(), id);
-                        return (Supplier<CompletionStage<?>>) () -> onAlveolus.apply(new AlveolusContext(
-                                alveolus.getManifest(), alveolus.getAlveolus(), currentPatches, currentPlaceholders, currentExcludes, cache, id));
+                        return (Supplier<CompletionStage<?>>) () -> tracer.withSpan(span, () -> onAlveolus.apply(new AlveolusContext(
+                                alveolus.getManifest(), alveolus.getAlveolus(), currentPatches, currentPlaceholders, currentExcludes, cache, id)));
                     }
                     return (Supplier<CompletionStage<?>>) () -> findAlveolus(it.getLocation(), it.getName(), cache, id)
-                            .thenCompose(alveolus -> onAlveolus.apply(new AlveolusContext(
-                                    manifest, alveolus.getAlveolus(), currentPatches, currentPlaceholders, currentExcludes, cache, id)));
+                            .thenCompose(alveolus -> tracer.withSpan(span, () -> onAlveolus.apply(new AlveolusContext(
+                                    manifest, alveolus.getAlveolus(), currentPatches, currentPlaceholders, currentExcludes, cache, id))));
                 });
         if (from.isChainDependencies()) {
             return chain(dependenciesTasks.iterator(), true)
                     .thenCompose(ready -> all(
                             selectDescriptors(from, excludes)
-                                    .map(desc -> findDescriptor(desc, cache, id))
+                                    .map(desc -> tracer.withSpan(span, () -> findDescriptor(desc, cache, id)))
                                     .collect(toList()), toList(), true)
-                            .thenCompose(descriptors -> afterDependencies(
+                            .thenCompose(descriptors -> tracer.withSpan(span, () -> afterDependencies(
                                     manifest, from, patches, excludes, cache, onDescriptor,
-                                    awaiter, currentPlaceholders, currentPatches, descriptors, id)));
+                                    awaiter, currentPlaceholders, currentPatches, descriptors, id))));
         }
         return all(
                 dependenciesTasks
@@ -381,11 +416,11 @@ public class AlveolusHandler {
                 counting(), true)
                 .thenCompose(ready -> all(
                         selectDescriptors(from, excludes)
-                                .map(desc -> findDescriptor(desc, cache, id))
+                                .map(desc -> tracer.withSpan(span, () -> findDescriptor(desc, cache, id)))
                                 .collect(toList()), toList(), true)
-                        .thenCompose(descriptors -> afterDependencies(
+                        .thenCompose(descriptors -> tracer.withSpan(span, () -> afterDependencies(
                                 manifest, from, patches, excludes, cache, onDescriptor,
-                                awaiter, currentPlaceholders, currentPatches, descriptors, id)));
+                                awaiter, currentPlaceholders, currentPatches, descriptors, id))));
     }
 
     private CompletionStage<?> afterDependencies(final Manifest manifest, final Manifest.Alveolus from,
@@ -399,13 +434,17 @@ public class AlveolusHandler {
                                                  final List<LoadedDescriptor> descriptors,
                                                  final String id) {
         log.finest(() -> "Applying " + descriptors);
+        final var patchPlan = new PatchPlan(currentPatches, patch -> jsonProvider.createPatch(patch.isInterpolate() ?
+                // interpolate patch too, if not desired the patch can be split in 2
+                jsonb.fromJson(substitutor.replace(patch.getPatch().toString(), id), JsonArray.class) :
+                patch.getPatch()));
         final Collection<Collection<LoadedDescriptor>> rankedDescriptors = rankDescriptors(descriptors);
         CompletionStage<?> promise = completedFuture(true);
         for (final var next : rankedDescriptors.stream()
                 .map(descs -> {
                     if (awaiter == null) {
                         return prepareDescriptors(
-                                manifest, from, patches, placeholders, excludes, cache, onDescriptor, currentPatches, descs, id);
+                                manifest, from, patches, placeholders, excludes, cache, onDescriptor, patchPlan, descs, id);
                     }
 
                     final var filteredDescs = new ArrayList<LoadedDescriptor>();
@@ -417,7 +456,7 @@ public class AlveolusHandler {
                                 }
                                 return onDescriptor.apply(ctx, desc);
                             },
-                            currentPatches, descs, id);
+                            patchPlan, descs, id);
                     return descriptorApply.thenCompose(result -> {
                         final Collection<CompletionStage<Void>> awaiters = filteredDescs.stream()
                                 .map(awaiter)
@@ -453,17 +492,49 @@ public class AlveolusHandler {
                                                      final Collection<Manifest.DescriptorRef> excludes,
                                                      final ArchiveReader.Cache cache,
                                                      final BiFunction<AlveolusContext, LoadedDescriptor, CompletionStage<?>> onDescriptor,
-                                                     final Map<Predicate<String>, Manifest.Patch> currentPatches,
+                                                     final PatchPlan currentPatches,
                                                      final Collection<LoadedDescriptor> descs,
                                                      final String id) {
+        // remote placeholders (secrets for ex) of all descriptors are resolved concurrently (with the descriptor context),
+        // the preparation is chained to it and can run on the lookup thread so the calling thread context is propagated
+        final var prefetches = descs.stream()
+                .collect(toMap(identity(), it -> it.getConfiguration().getInterpolate() ?
+                        threadLocalConfigSource.withContext(placeholders, () -> substitutor.prefetch(it, it.getContent(), id)) :
+                        completedFuture(null), (a, b) -> a, IdentityHashMap::new));
         return all(
                 descs.stream()
-                        .peek(it -> onPrepareDescriptorEvent.fire(new OnPrepareDescriptor(id, from.getName(), it.getConfiguration().getName(), it.getContent(), placeholders)))
-                        .map(it -> prepare(from, it, currentPatches, placeholders, id))
-                        .map(it -> onDescriptor.apply(new AlveolusContext(manifest, from, patches, placeholders, excludes, cache, id), it))
+                        .map(it -> tracer.traceSpan("descriptor", Map.of("name", it.getConfiguration().getName()), span -> {
+                            onPrepareDescriptorEvent.fire(new OnPrepareDescriptor(id, from.getName(), it.getConfiguration().getName(), it.getContent(), placeholders));
+                            final var result = new CompletableFuture<Object>();
+                            prefetches.get(it).thenRun(propagate(() -> { // prefetch never fails
+                                try {
+                                    final var prepared = prepare(from, it, currentPatches, placeholders, id);
+                                    onDescriptor.apply(new AlveolusContext(manifest, from, patches, placeholders, excludes, cache, id), prepared)
+                                            .whenComplete((ok, ko) -> {
+                                                if (ko != null) {
+                                                    result.completeExceptionally(ko);
+                                                } else {
+                                                    result.complete(ok);
+                                                }
+                                            });
+                                } catch (final RuntimeException re) {
+                                    result.completeExceptionally(re);
+                                }
+                            }));
+                            return result;
+                        }))
                         .collect(toList()), counting(), true);
     }
 
+    // captures the configuration context of the calling thread (contextual placeholders, operator resources)
+    private Runnable propagate(final Runnable task) {
+        var propagated = task;
+        for (final var source : threadBoundConfigSources) {
+            propagated = source.propagate(propagated);
+        }
+        return propagated;
+    }
+
     private Stream<Manifest.Descriptor> selectDescriptors(final Manifest.Alveolus from, final Collection<Manifest.DescriptorRef> excludes) {
         return ofNullable(from.getDescriptors()).orElseGet(List::of).stream()
                 .filter(desc -> conditionEvaluator.test(desc.getIncludeIf()) && excludes.stream()
@@ -500,6 +571,12 @@ public class AlveolusHandler {
     private CompletionStage<LoadedDescriptor> findDescriptor(final Manifest.Descriptor desc,
                                                               final ArchiveReader.Cache cache,
                                                               final String id) {
+        return tracer.trace("descriptor.load", Map.of("name", desc.getName()), () -> doFindDescriptor(desc, cache, id));
+    }
+
+    private CompletionStage<LoadedDescriptor> doFindDescriptor(final Manifest.Descriptor desc,
+                                                                final ArchiveReader.Cache cache,
+                                                                final String id) {
         final var type = ofNullable(desc.getType()).orElse("kubernetes");
         if ("helm".equals(type)) {
             return handleHelmDescriptor(desc, id);
@@ -576,7 +653,7 @@ public class AlveolusHandler {
 
     private Map<Predicate<String>, Manifest.Patch> mergePatches(final Map<Predicate<String>, Manifest.Patch> patches,
                                                                  final List<Manifest.Patch> newPatches) {
-        final var result = new HashMap<>(patches);
+        final var result = new LinkedHashMap<>(patches); // keep declaration order
         newPatches.forEach(p -> result.put(toPredicate(p.getDescriptorName()), p));
         return result;
     }
@@ -604,25 +681,35 @@ public class AlveolusHandler {
 
     private LoadedDescriptor prepare(final Manifest.Alveolus alveolus,
                                      final LoadedDescriptor desc,
-                                     final Map<Predicate<String>, Manifest.Patch> patches,
+                                     final PatchPlan patches,
                                      final Map<String, String> placeholders,
                                      final String id) {
-        return threadLocalConfigSource.withContext(placeholders, () -> doPrepare(alveolus, desc, patches, id));
+        final var event = new DescriptorPrepareEvent();
+        event.begin();
+        try (final var span = tracer.start("descriptor.prepare", Map.of("name", desc.getConfiguration().getName()))) {
+            final var prepared = threadLocalConfigSource.withContext(placeholders, () -> tracer.withSpan(span, () -> doPrepare(alveolus, desc, patches, id)));
+            event.end();
+            if (event.shouldCommit()) {
+                event.alveolus = alveolus.getName();
+                event.descriptor = desc.getConfiguration().getName();
+                event.size = prepared.getContent() == null ? 0 : prepared.getContent().length();
+                event.commit();
+            }
+            return prepared;
+        }
     }
 
     private LoadedDescriptor doPrepare(final Manifest.Alveolus alveolus, final LoadedDescriptor desc,
-                                       final Map<Predicate<String>, Manifest.Patch> patches, final String id) {
+                                       final PatchPlan patches, final String id) {
         var content = desc.getContent();
+        JsonStructure patched = null;
+        String patchedContent = null;
 
-        final var descPatches = patches.entrySet().stream()
-                .filter(e -> e.getKey().test(desc.configuration.getName()) ||
-                        // extensions can be implicit so ensure we support both
-                        e.getKey().test(desc.configuration.getName() + "." + desc.extension))
-                .map(Map.Entry::getValue)
-                .collect(toList());
+        final var descPatches = patches.select(desc.configuration.getName(), desc.extension);
         boolean alreadyInterpolated = false;
         if (!descPatches.isEmpty()) {
-            for (final Manifest.Patch patch : descPatches) {
+            for (final var entry : descPatches) {
+                final var patch = entry.getPatch();
                 if (patch.isInterpolate()) {
                     content = substitutor.replace(alveolus, desc, content, id);
                 }
@@ -636,16 +723,11 @@ public class AlveolusHandler {
                     continue;
                 }
 
-                final JsonArray array;
-                if (patch.isInterpolate()) { // interpolate patch too, if not desired the patch can be split in 2
-                    array = jsonb.fromJson(substitutor.replace(patch.getPatch().toString(), id), JsonArray.class);
-                } else {
-                    array = patch.getPatch();
-                }
-                final var jsonPatch = jsonProvider.createPatch(array);
+                final var jsonPatch = entry.getJsonPatch();
                 try {
                     final var structure = loadJsonStructure(desc, content);
-                    content = jsonPatch.apply(structure).toString();
+                    patched = jsonPatch.apply(structure);
+                    content = patchedContent = patched.toString();
                 } catch (final JsonException je) {
                     if (!desc.getConfiguration().getInterpolate()) {
                         throw new IllegalStateException("Can't patch '" + desc.getConfiguration().getName() + "': " + je.getMessage(), je);
@@ -655,14 +737,20 @@ public class AlveolusHandler {
                             desc.getConfiguration().getName() + "'");
                     content = substitutor.replace(alveolus, desc, content, id);
                     alreadyInterpolated = true;
-                    content = jsonPatch.apply(loadJsonStructure(desc, content)).toString();
+                    patched = jsonPatch.apply(loadJsonStructure(desc, content));
+                    content = patchedContent = patched.toString();
                 }
             }
         }
         if (!alreadyInterpolated && desc.getConfiguration().getInterpolate()) {
             content = substitutor.replace(alveolus, desc, content, id);
         }
-        return new LoadedDescriptor(desc.getConfiguration(), content, desc.getExtension(), desc.getUri(), desc.getResource());
+        // the patched structure is reused only if it is still the content and for json descriptors,
+        // yaml ones are re-read as yaml which drops null values
+        final boolean reusable = patched != null && "json".equals(desc.getExtension()) && content.equals(patchedContent);
+        return new LoadedDescriptor(
+                desc.getConfiguration(), content, desc.getExtension(), desc.getUri(), desc.getResource(),
+                reusable ? patched : null);
     }
 
     private JsonStructure loadJsonStructure(final LoadedDescriptor desc, final String content) {
@@ -728,6 +816,51 @@ public class AlveolusHandler {
         private final String extension;
         private final String uri;
         private final String resource;
+
+        // parsed content (JSON-P values are immutable), set once parsed to not re-parse the content for each usage
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        private volatile JsonStructure json;
+
+        @Setter(NONE)
+        @Getter(NONE)
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        private volatile String digest;
+
+        public LoadedDescriptor(final Manifest.Descriptor configuration, final String content, final String extension,
+                                final String uri, final String resource) {
+            this(configuration, content, extension, uri, resource, null);
+        }
+
+        public LoadedDescriptor(final Manifest.Descriptor configuration, final String content, final String extension,
+                                final String uri, final String resource, final JsonStructure json) {
+            this.configuration = configuration;
+            this.content = content;
+            this.extension = extension;
+            this.uri = uri;
+            this.resource = resource;
+            this.json = json;
+        }
+
+        /**
+         * @return the SHA-256 (hex) of the content, computed on first call.
+         */
+        public String getDigest() {
+            if (digest == null) {
+                try {
+                    final var sha256 = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+                    final var out = new StringBuilder(sha256.length * 2);
+                    for (final byte b : sha256) {
+                        out.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+                    }
+                    digest = out.toString();
+                } catch (final NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return digest;
+        }
     }
 
     @Data
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.core.configuration.Description;
+import io.yupiik.bundlebee.core.lang.ConfigHolder;
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import lombok.extern.java.Log;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Process wide cache of indexed archives (zip files only), it avoids to re-read and unzip the same alveoli
+ * for long running instances (operator for example).
+ * Only the zip (lazily decoded entries) is cached since the manifest is interpolated with the current configuration when read.
+ * Entries are validated against the file last modified date and size and evicted (LRU) when the decoded content
+ * exceeds the configured size. Memory mapped (big) archives are never cached to not keep their mapping alive.
+ */
+@Log
+@ApplicationScoped
+public class ArchiveCache implements ConfigHolder {
+    @Inject
+    @Description("" +
+            "Max size (in bytes, estimated from the zip and its decoded entries) of the process wide archive cache. " +
+            "Least recently used archives are evicted when reached, a negative or zero value disables this cache.")
+    @ConfigProperty(name = "bundlebee.archive.cache.maxSize", defaultValue = "67108864")
+    private long maxSize;
+
+    @Inject
+    private MetricRegistry metrics;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, .75f, true);
+    private long size;
+
+    @PostConstruct
+    private void init() {
+        metrics.gauge("bundlebee_archive_global_cache_size_bytes", "Estimated size of the process wide archive cache.", this::currentSize);
+    }
+
+    /**
+     * @param location the archive location.
+     * @param loader   the archive reader used on cache miss.
+     * @return the cached zip if still up to date or the newly loaded one.
+     */
+    public LazyZip getOrLoad(final Path location, final Supplier<LazyZip> loader) {
+        if (maxSize <= 0) {
+            return loader.get();
+        }
+
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(location, BasicFileAttributes.class);
+        } catch (final IOException e) {
+            return loader.get();
+        }
+
+        final var key = location.toAbsolutePath().normalize().toString();
+        final var lastModified = attributes.lastModifiedTime().toMillis();
+        synchronized (entries) {
+            final var existing = entries.get(key);
+            if (existing != null) {
+                if (existing.lastModified == lastModified && existing.length == attributes.size()) {
+                    count("hit");
+                    return existing.content;
+                }
+                entries.remove(key);
+                size -= existing.weight;
+                count("stale");
+            } else {
+                count("miss");
+            }
+        }
+
+        // load outside the lock, concurrent loads of the same archive are deduplicated by the command cache
+        final var content = loader.get();
+        final var entry = new Entry(content, lastModified, attributes.size(), content.weight());
+        if (entry.weight > maxSize || content.isMapped()) {
+            log.finest(() -> "Archive '" + key + "' is too big to be cached (" + entry.weight + " bytes)");
+            return content;
+        }
+        synchronized (entries) {
+            final var previous = entries.put(key, entry);
+            if (previous != null) {
+                size -= previous.weight;
+            }
+            size += entry.weight;
+            evict();
+        }
+        return content;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    private void evict() {
+        final var iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final var eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue().weight;
+            metrics.counter("bundlebee_archive_global_cache_evictions_total", "Number of evicted archives.").increment();
+            log.finest(() -> "Evicted archive '" + eldest.getKey() + "' from cache");
+        }
+    }
+
+    private double currentSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    private void count(final String result) {
+        metrics.counter("bundlebee_archive_global_cache_requests_total", "Process wide archive cache lookups.", "result", result).increment();
+    }
+
+    private static class Entry {
+        private final LazyZip content;
+        private final long lastModified;
+        private final long length;
+        private final long weight;
+
+        private Entry(final LazyZip content, final long lastModified, final long length, final long weight) {
+            this.content = content;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.weight = weight;
+        }
+    }
+}
@@ -17,6 +17,8 @@ package io.yupiik.bundlebee.core.service;
 
 import io.yupiik.bundlebee.core.descriptor.Manifest;
 import io.yupiik.bundlebee.core.event.OnLoadArchive;
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import io.yupiik.bundlebee.lang.spi.Tracer;
 import lombok.Data;
 import lombok.extern.java.Log;
 
@@ -25,6 +27,7 @@ import javax.enterprise.event.Event;
 import javax.enterprise.inject.Vetoed;
 import javax.inject.Inject;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
@@ -38,13 +41,10 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static java.util.Collections.list;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toMap;
 
 @Log
 @ApplicationScoped
@@ -58,6 +58,15 @@ public class ArchiveReader {
     @Inject
     private Event<OnLoadArchive> onLoadArchiveEvent;
 
+    @Inject
+    private Tracer tracer;
+
+    @Inject
+    private MetricRegistry metrics;
+
+    @Inject
+    private ArchiveCache archiveCache;
+
     /**
      * @deprecated prefer the flavor with the explicit id as parameter.
      */
@@ -67,6 +76,12 @@ public class ArchiveReader {
     }
 
     public Archive read(final String coords, final Path zipLocation, final String id) {
+        try (final var span = tracer.start("archive.read", Map.of("location", zipLocation.toString()))) {
+            return tracer.withSpan(span, () -> doRead(coords, zipLocation, id));
+        }
+    }
+
+    private Archive doRead(final String coords, final Path zipLocation, final String id) {
         log.finest(() -> "Reading " + zipLocation);
         if (Files.isDirectory(zipLocation)) {
             final var manifest = zipLocation.resolve("bundlebee/manifest.json");
@@ -113,57 +128,30 @@ public class ArchiveReader {
             }
             throw new IllegalArgumentException("No '" + manifest + "' found");
         }
-        try (final var zip = new ZipFile(zipLocation.toFile())) {
-            final var manifestEntry = zip.getEntry("bundlebee/manifest.json");
-            if (manifestEntry == null) {
-                throw new IllegalStateException("No manifest.json in " + zipLocation);
-            }
-            final var manifest = manifestReader.readManifest(
-                    coords,
-                    () -> {
-                        try {
-                            return zip.getInputStream(manifestEntry);
-                        } catch (final IOException e) {
-                            throw new IllegalStateException(e);
-                        }
-                    }, name -> {
-                        final var ref = name.startsWith("/") ? name : "bundlebee/" + name;
-                        final var entry = zip.getEntry(ref);
-                        if (entry == null) {
-                            throw new IllegalStateException("No '" + ref + "' in " + zipLocation);
-                        }
-                        try {
-                            return zip.getInputStream(entry);
-                        } catch (final IOException e) {
-                            throw new IllegalStateException(e);
-                        }
-                    },
-                    id);
-            return new Archive(
-                    zipLocation,
-                    manifest,
-                    list(zip.entries()).stream()
-                            .filter(it -> !it.isDirectory() && it.getName().startsWith("bundlebee/kubernetes/"))
-                            .collect(toMap(ZipEntry::getName, entry -> readAll(zip, entry))));
-        } catch (final IOException e) {
-            throw new IllegalStateException(e);
+        final var zip = archiveCache.getOrLoad(zipLocation, () -> LazyZip.open(zipLocation, name -> name.startsWith("bundlebee/")));
+        if (!zip.contains("bundlebee/manifest.json")) {
+            throw new IllegalStateException("No manifest.json in " + zipLocation);
         }
+        final var manifest = manifestReader.readManifest(
+                coords,
+                () -> new ByteArrayInputStream(zip.bytes("bundlebee/manifest.json")),
+                name -> {
+                    final var ref = name.startsWith("/") ? name : "bundlebee/" + name;
+                    if (!zip.contains(ref)) {
+                        throw new IllegalStateException("No '" + ref + "' in " + zipLocation);
+                    }
+                    return new ByteArrayInputStream(zip.bytes(ref));
+                },
+                id);
+        // descriptors are decoded on first access, alveoli generally only use a few of them
+        return new Archive(zipLocation, manifest, zip.texts(name -> name.startsWith("bundlebee/kubernetes/")));
     }
 
-    // for now it is a per command storage but later on we can use a singleton at the condition of handling eviction
-    // for long running cli instances
+    // per command storage (deduplicates concurrent loads), indexed zips are kept in the process wide ArchiveCache
     public Cache newCache() {
         return new Cache();
     }
 
-    private String readAll(final ZipFile zip, final ZipEntry entry) {
-        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
-            return reader.lines().collect(joining("\n"));
-        } catch (final IOException e) {
-            throw new IllegalStateException(e);
-        }
-    }
-
     @Data
     @Vetoed
     public class Cache {
@@ -178,10 +166,16 @@ public class ArchiveReader {
         }
 
         public CompletionStage<Archive> loadArchive(final String coords, final String id) {
-            return cache.computeIfAbsent(coords, it -> doLoadArchive(it, id));
+            final var miss = new AtomicBoolean();
+            final var archive = cache.computeIfAbsent(coords, it -> {
+                miss.set(true);
+                return tracer.traceSpan("archive.load", Map.of("coordinates", it), span -> doLoadArchive(it, id, span));
+            });
+            metrics.counter("bundlebee_archive_cache_requests_total", "Archive cache lookups.", "result", miss.get() ? "miss" : "hit").increment();
+            return archive;
         }
 
-        private CompletionStage<Archive> doLoadArchive(final String coords, final String id) {
+        private CompletionStage<Archive> doLoadArchive(final String coords, final String id, final Tracer.Span span) {
             final var archive = new OnLoadArchive(coords);
             onLoadArchiveEvent.fire(archive);
             if (archive.getLoader() != null) {
@@ -192,7 +186,7 @@ public class ArchiveReader {
             if (Files.exists(local)) {
                 return completedFuture(read(coords, local, id));
             }
-            return mvn.findOrDownload(coords).thenApply(it -> read(coords, it, id));
+            return mvn.findOrDownload(coords).thenApply(it -> tracer.withSpan(span, () -> read(coords, it, id)));
         }
     }
 
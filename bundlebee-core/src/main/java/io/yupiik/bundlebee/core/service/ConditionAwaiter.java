@@ -17,7 +17,10 @@ package io.yupiik.bundlebee.core.service;
 
 import io.yupiik.bundlebee.core.configuration.Description;
 import io.yupiik.bundlebee.core.descriptor.Manifest;
+import io.yupiik.bundlebee.core.jfr.AwaitEvent;
 import io.yupiik.bundlebee.core.kube.KubeClient;
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import io.yupiik.bundlebee.lang.spi.Tracer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.java.Log;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -28,11 +31,13 @@ import javax.json.JsonObject;
 import java.net.http.HttpResponse;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -55,6 +60,12 @@ public class ConditionAwaiter {
     @Inject
     private ConditionJsonEvaluator jsonEvalutor;
 
+    @Inject
+    private Tracer tracer;
+
+    @Inject
+    private MetricRegistry metrics;
+
     @Inject
     @Description("" +
             "How often to retry for a descriptor condition. " +
@@ -80,11 +91,30 @@ public class ConditionAwaiter {
         }
 
         final var timeout = Instant.now().plusMillis(awaitTimeout);
-        if (descriptor.isAwait()) {
-            return exists(loadedDescriptor, scheduledExecutorService, timeout, !"delete".equals(command))
-                    .thenCompose(done -> await(awaitConditions, scheduledExecutorService, timeout, loadedDescriptor));
-        }
-        return await(awaitConditions, scheduledExecutorService, timeout, loadedDescriptor);
+        final var start = System.nanoTime();
+        final var event = new AwaitEvent();
+        event.begin();
+        return tracer.traceSpan("await", Map.of("descriptor", String.valueOf(descriptor.getName()), "command", String.valueOf(command)), span -> {
+                    if (descriptor.isAwait()) {
+                        return exists(loadedDescriptor, scheduledExecutorService, timeout, !"delete".equals(command))
+                                .thenCompose(done -> tracer.withSpan(span, () -> await(awaitConditions, scheduledExecutorService, timeout, loadedDescriptor)));
+                    }
+                    return await(awaitConditions, scheduledExecutorService, timeout, loadedDescriptor);
+                })
+                .whenComplete((ok, ko) -> {
+                    metrics.histogram(
+                                    "bundlebee_await_duration_microseconds", "Await (conditions) durations.",
+                                    "command", String.valueOf(command), "result", ko == null ? "success" : "failure")
+                            .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.command = command;
+                        event.descriptor = descriptor.getName();
+                        event.type = "conditions";
+                        event.success = ko == null;
+                        event.commit();
+                    }
+                });
     }
 
     private CompletionStage<Void> await(final List<Manifest.AwaitConditions> awaitConditions,
@@ -127,7 +157,7 @@ public class ConditionAwaiter {
                                           final AlveolusHandler.LoadedDescriptor loadedDescriptor) {
         return withRetry(
                 scheduledExecutorService, timeout, loadedDescriptor, condition::toString,
-                () -> kube.getResources(loadedDescriptor.getContent(), loadedDescriptor.getExtension())
+                () -> kube.getResources(loadedDescriptor)
                         .thenApply(it -> isDryRun(it) ||
                                 (it.stream().noneMatch(r -> r.statusCode() != 200) &&
                                         it.stream().anyMatch(r -> {
@@ -161,7 +191,7 @@ public class ConditionAwaiter {
         return withRetry(
                 scheduledExecutorService, timeout, loadedDescriptor,
                 () -> "resource exists",
-                () -> kube.exists(loadedDescriptor.getContent(), loadedDescriptor.getExtension())
+                () -> kube.exists(loadedDescriptor)
                         .thenApply(it -> expected == it));
     }
 
@@ -171,7 +201,8 @@ public class ConditionAwaiter {
                                                final Supplier<String> timeoutDescriptor,
                                                final Supplier<CompletionStage<Boolean>> evaluator) {
         final var result = new CancellableRetriableTask();
-        result.task = scheduledExecutorService.scheduleAtFixedRate(() -> evaluator.get().whenComplete((ok, ko) -> {
+        final var span = tracer.current(); // polling happens in the scheduler threads
+        result.task = scheduledExecutorService.scheduleAtFixedRate(() -> tracer.withSpan(span, evaluator).whenComplete((ok, ko) -> {
             if (ko != null) {
                 if (ko instanceof CompletionException && ko.getCause() instanceof AwaitingFailException) {
                     result.completeExceptionally(ko.getCause());
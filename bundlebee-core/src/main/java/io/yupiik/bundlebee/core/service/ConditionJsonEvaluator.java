@@ -16,70 +16,152 @@
 package io.yupiik.bundlebee.core.service;
 
 import io.yupiik.bundlebee.core.descriptor.Manifest;
-import io.yupiik.bundlebee.core.qualifier.BundleBee;
+import io.yupiik.bundlebee.core.json.CompiledJsonPointer;
 
 import javax.enterprise.context.ApplicationScoped;
-import javax.inject.Inject;
+import javax.json.JsonNumber;
 import javax.json.JsonObject;
 import javax.json.JsonString;
 import javax.json.JsonValue;
-import javax.json.spi.JsonProvider;
+import java.math.BigDecimal;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 @ApplicationScoped
 public class ConditionJsonEvaluator {
+    private static final CompiledJsonPointer STATUS_CONDITIONS = CompiledJsonPointer.of("/status/conditions");
+
     private final Logger logger = Logger.getLogger(getClass().getName());
 
-    @Inject
-    @BundleBee
-    private JsonProvider jsonProvider;
+    // awaits evaluate the same conditions a lot of times so compile them once
+    private final Map<Manifest.AwaitCondition, Predicate<JsonObject>> compiled = new ConcurrentHashMap<>();
 
     public boolean evaluate(final Manifest.AwaitCondition condition, final JsonObject body) {
+        return compile(condition).test(body);
+    }
+
+    /**
+     * @param condition the condition to compile.
+     * @return a reusable evaluator of this condition, it throws a {@link javax.json.JsonException} if the pointer does not match anything.
+     */
+    public Predicate<JsonObject> compile(final Manifest.AwaitCondition condition) {
+        final var existing = compiled.get(condition);
+        if (existing != null) {
+            return existing;
+        }
+        final var predicate = doCompile(condition);
+        if (compiled.size() > 1024) { // conditions are static, it is just a protection for long running instances
+            compiled.clear();
+        }
+        compiled.putIfAbsent(condition, predicate);
+        return predicate;
+    }
+
+    private Predicate<JsonObject> doCompile(final Manifest.AwaitCondition condition) {
         switch (condition.getType()) {
             case JSON_POINTER: { // todo: extend JSON Pointer spec to enable to traverse arrays (any item)?
-                final var conditionPointer = condition.getPointer();
-                final var pointer = jsonProvider.createPointer(conditionPointer);
-                final var json = pointer.getValue(body);
-                final var evaluated = stringify(json);
-                final var result = evaluate(condition.getOperatorType(), condition.getValue(), evaluated);
-                logger.finest(() -> condition + "=" + result + " from JSON=" + body + " and evaluation=" + json);
-                return result;
+                final var pointer = CompiledJsonPointer.of(condition.getPointer());
+                final var comparison = compile(condition.getOperatorType(), new ExpectedValue(condition.getValue()));
+                return body -> {
+                    final var json = pointer.getValue(body);
+                    final var result = comparison.test(json);
+                    logger.finest(() -> condition + "=" + result + " from JSON=" + body + " and evaluation=" + json);
+                    return result;
+                };
+            }
+            case STATUS_CONDITION: {
+                final var expected = new ExpectedValue(condition.getValue());
+                return body -> {
+                    final var result = STATUS_CONDITIONS.getValue(body).asJsonArray().stream()
+                            .map(JsonValue::asJsonObject)
+                            .anyMatch(it -> Objects.equals(it.getString("type"), condition.getConditionType()) &&
+                                    expected.matches(it.get("status")));
+                    logger.finest(() -> condition + "=" + result + " from JSON=" + body);
+                    return result;
+                };
             }
-            case STATUS_CONDITION:
-                final var result = jsonProvider.createPointer("/status/conditions").getValue(body).asJsonArray().stream()
-                        .map(JsonValue::asJsonObject)
-                        .anyMatch(it -> Objects.equals(it.getString("type"), condition.getConditionType()) &&
-                                Objects.equals(stringify(it.get("status")), condition.getValue()));
-                logger.finest(() -> condition + "=" + result + " from JSON=" + body);
-                return result;
             default:
                 throw new IllegalArgumentException("Unsupported type: " + condition);
         }
     }
 
-    private String stringify(final JsonValue json) {
-        return json == null ? null : json.getValueType() == JsonValue.ValueType.STRING ?
-                JsonString.class.cast(json).getString() :
-                String.valueOf(json);
-    }
-
-    private boolean evaluate(final Manifest.JsonPointerOperator type, final String value, final String evaluated) {
+    private Predicate<JsonValue> compile(final Manifest.JsonPointerOperator type, final ExpectedValue expected) {
         switch (type) {
             case EQUALS:
-                return Objects.equals(value, evaluated);
+                return expected::matches;
             case NOT_EQUALS:
-                return !Objects.equals(value, evaluated);
+                return expected.negate();
             case EQUALS_IGNORE_CASE:
-                return evaluated.equalsIgnoreCase(value);
+                return json -> stringify(json).equalsIgnoreCase(expected.raw);
             case NOT_EQUALS_IGNORE_CASE:
-                return !evaluated.equalsIgnoreCase(value);
+                return json -> !stringify(json).equalsIgnoreCase(expected.raw);
             case CONTAINS:
-                return evaluated.contains(value);
+                return json -> stringify(json).contains(expected.raw);
             case EXISTS:
-                return true;
+                return json -> true;
             default:
-                throw new IllegalArgumentException("Unsupported comparison type: " + type);
+                return json -> {
+                    throw new IllegalArgumentException("Unsupported comparison type: " + type);
+                };
+        }
+    }
+
+    private static String stringify(final JsonValue json) {
+        return json == null ? null : json.getValueType() == JsonValue.ValueType.STRING ?
+                JsonString.class.cast(json).getString() :
+                String.valueOf(json);
+    }
+
+    // expected value converted once to the JSON types it can match to avoid to stringify evaluated values
+    private static class ExpectedValue implements Predicate<JsonValue> {
+        private final String raw;
+        private final BigDecimal number;
+        private final JsonValue.ValueType literal;
+
+        private ExpectedValue(final String raw) {
+            this.raw = raw;
+            this.number = toNumber(raw);
+            this.literal = "true".equals(raw) ? JsonValue.ValueType.TRUE :
+                    "false".equals(raw) ? JsonValue.ValueType.FALSE :
+                            "null".equals(raw) ? JsonValue.ValueType.NULL :
+                                    null;
+        }
+
+        @Override
+        public boolean test(final JsonValue json) {
+            return matches(json);
+        }
+
+        private boolean matches(final JsonValue json) {
+            if (json == null) {
+                return raw == null;
+            }
+            switch (json.getValueType()) {
+                case STRING:
+                    return Objects.equals(raw, JsonString.class.cast(json).getString());
+                case NUMBER:
+                    return number != null && number.compareTo(JsonNumber.class.cast(json).bigDecimalValue()) == 0;
+                case TRUE:
+                case FALSE:
+                case NULL:
+                    return literal == json.getValueType();
+                default: // object/array, rare enough to keep the string comparison
+                    return Objects.equals(raw, json.toString());
+            }
+        }
+
+        private static BigDecimal toNumber(final String raw) {
+            if (raw == null || raw.isEmpty()) {
+                return null;
+            }
+            try {
+                return new BigDecimal(raw);
+            } catch (final NumberFormatException nfe) {
+                return null;
+            }
         }
     }
-}
\ No newline at end of file
+}
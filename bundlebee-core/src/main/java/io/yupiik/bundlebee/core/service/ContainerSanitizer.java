@@ -15,38 +15,26 @@
  */
 package io.yupiik.bundlebee.core.service;
 
+import io.yupiik.bundlebee.core.json.JsonTransformation;
 import io.yupiik.bundlebee.core.qualifier.BundleBee;
-import lombok.extern.java.Log;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonBuilderFactory;
-import javax.json.JsonException;
 import javax.json.JsonObject;
-import javax.json.JsonStructure;
 import javax.json.JsonValue;
-import javax.json.spi.JsonProvider;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
-import static java.util.logging.Level.FINEST;
-import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
-
-@Log
 @ApplicationScoped
 public class ContainerSanitizer {
-    @Inject
-    @BundleBee
-    private JsonProvider jsonProvider;
-
     @Inject
     @BundleBee
     private JsonBuilderFactory jsonBuilderFactory;
 
+    private final Map<String, JsonTransformation> cpuResourcesSanitizations = new ConcurrentHashMap<>();
+
     public boolean canSanitizeCpuResource(final String kindLowerCased) {
         return "cronjobs".equals(kindLowerCased) || "deployments".equals(kindLowerCased) ||
                 "daemonsets".equals(kindLowerCased) || "pods".equals(kindLowerCased) || "jobs".equals(kindLowerCased);
@@ -54,6 +42,19 @@ public class ContainerSanitizer {
 
     // for first installation if cpu value is null then it is considered as being 0 - merge patch are ok after
     public JsonObject dropCpuResources(final String kind, final JsonObject preparedDesc) {
+        return cpuResourcesSanitization(kind).apply(preparedDesc);
+    }
+
+    /**
+     * @param kind the lowercased plural kind of the descriptor.
+     * @return the transformation dropping null cpu resources and null args/command of the containers,
+     * it enables to fuse it with other descriptor transformations.
+     */
+    public JsonTransformation cpuResourcesSanitization(final String kind) {
+        return cpuResourcesSanitizations.computeIfAbsent(kind, this::createCpuResourcesSanitization);
+    }
+
+    private JsonTransformation createCpuResourcesSanitization(final String kind) {
         final String containersParentPointer;
         switch (kind) {
             case "deployments":
@@ -68,102 +69,32 @@ public class ContainerSanitizer {
                 containersParentPointer = "/spec";
                 break;
             default:
-                containersParentPointer = null;
+                return JsonTransformation.builder(jsonBuilderFactory).build();
         }
 
-        return replaceIfPresent(
-                replaceIfPresent(preparedDesc, containersParentPointer, "initContainers", this::dropKnownNulls),
-                containersParentPointer, "containers", this::dropKnownNulls);
-    }
-
-    private JsonValue dropKnownNulls(final JsonObject container) {
-        return dropIfNull(
-                dropNullsCpu(container),
-                // this is important cause there is no default which can inherit the parent otherwise
-                "args", "command");
+        final var builder = JsonTransformation.builder(jsonBuilderFactory);
+        Stream.of("initContainers", "containers").forEach(containers -> {
+            final var container = containersParentPointer + '/' + containers + "/*";
+            Stream.of("requests", "limits").forEach(k -> builder.map(container + "/resources/" + k, this::dropNullCpu));
+            // this is important cause there is no default which can inherit the parent otherwise
+            Stream.of("args", "command").forEach(k -> builder.map(container + '/' + k, this::dropNull));
+        });
+        return builder.build();
     }
 
-    private JsonObject dropIfNull(final JsonObject container, final String... keys) {
-        final var toRemove = Stream.of(keys).filter(it -> {
-            final var jsonValue = container.get(it);
-            return jsonValue != null && jsonValue.getValueType() == JsonValue.ValueType.NULL;
-        }).collect(toList());
-        if (toRemove.isEmpty()) {
-            return container;
-        }
-        return jsonBuilderFactory
-                .createObjectBuilder(container.entrySet().stream()
-                        .filter(it -> !toRemove.contains(it.getKey()))
-                        .collect(toMap(Map.Entry::getKey, Map.Entry::getValue)))
-                .build();
-    }
-
-    private JsonObject dropNullsCpu(final JsonObject container) {
-        final var resources = container.get("resources");
-        if (resources == null) {
-            return container;
-        }
-
-        final var resourcesObj = resources.asJsonObject();
-        if (!resourcesObj.containsKey("requests") && !resourcesObj.containsKey("limits")) {
-            return container;
-        }
-
-        final var builder = jsonBuilderFactory.createObjectBuilder(resourcesObj.entrySet().stream()
-                .filter(it -> !"requests".equals(it.getKey()) && !"limits".equals(it.getKey()))
-                .collect(toMap(Map.Entry::getKey, Map.Entry::getValue)));
-        Stream.of("requests", "limits")
-                .filter(resourcesObj::containsKey)
-                .forEach(k -> {
-                    final var subObj = resourcesObj.get(k).asJsonObject();
-                    if (!JsonValue.NULL.equals(subObj.get("cpu"))) {
-                        builder.add(k, subObj);
-                    } else {
-                        final var value = jsonBuilderFactory.createObjectBuilder(subObj
-                                        .entrySet().stream()
-                                        .filter(it -> !"cpu".equals(it.getKey()))
-                                        .collect(toMap(Map.Entry::getKey, Map.Entry::getValue)))
-                                .build();
-                        if (!value.isEmpty()) {
-                            builder.add(k, value);
-                        }
-                    }
-                });
-        return jsonBuilderFactory.createObjectBuilder(container.entrySet().stream()
-                        .filter(it -> !"resources".equals(it.getKey()))
-                        .collect(toMap(Map.Entry::getKey, Map.Entry::getValue)))
-                .add("resources", builder)
-                .build();
+    private JsonValue dropNull(final JsonValue value) {
+        return value.getValueType() == JsonValue.ValueType.NULL ? null : value;
     }
 
-    private JsonValue dropKnownNulls(final JsonValue jsonValue) {
-        try {
-            return jsonValue.asJsonArray().stream()
-                    .map(JsonValue::asJsonObject)
-                    .map(this::dropKnownNulls)
-                    .collect(Collector.of(jsonBuilderFactory::createArrayBuilder, JsonArrayBuilder::add, JsonArrayBuilder::addAll))
-                    .build();
-        } catch (final RuntimeException re) {
-            log.log(FINEST, re, () -> "Can't check null cpu resources: " + re.getMessage());
-            return jsonValue;
+    private JsonValue dropNullCpu(final JsonValue value) {
+        if (value.getValueType() != JsonValue.ValueType.OBJECT) {
+            return value;
         }
-    }
-
-    private <T extends JsonStructure> T replaceIfPresent(final T source,
-                                                         final String parentPtr, final String name,
-                                                         final Function<JsonValue, JsonValue> fn) {
-        final var rawPtr = parentPtr + '/' + name;
-        final var ptr = jsonProvider.createPointer(rawPtr);
-        try {
-            final var value = ptr.getValue(source);
-            final var changed = fn.apply(value);
-            if (value == changed) {
-                return source;
-            }
-            return ptr.replace(source, changed);
-        } catch (final JsonException je) {
-            log.log(FINEST, je, je::getMessage);
-            return source;
+        final var object = value.asJsonObject();
+        if (!JsonValue.NULL.equals(object.get("cpu"))) {
+            return value;
         }
+        final var filtered = jsonBuilderFactory.createObjectBuilder(object).remove("cpu").build();
+        return filtered.isEmpty() ? null : filtered;
     }
 }
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import javax.enterprise.inject.Vetoed;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipFile;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Collections.list;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Indexed zip: the central directory is indexed when opened and entries are only inflated on first access,
+ * decoded content is kept as UTF-8 bytes.
+ * Archives up to {@code bundlebee.archive.heap.maxSize} bytes (system property) are copied on heap, bigger ones are
+ * memory mapped - a mapping is only released by the GC (and locks the file on Windows) so mapped zips should not be cached.
+ * Zip64 and encrypted archives fallback on an eager {@link ZipFile} read.
+ */
+@Vetoed
+public final class LazyZip {
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long HEAP_MAX_SIZE = Long.getLong("bundlebee.archive.heap.maxSize", 16 * 1024 * 1024);
+
+    private final Path location;
+    private final ByteBuffer content; // null when eagerly loaded
+    private final Map<String, Entry> entries;
+
+    private LazyZip(final Path location, final ByteBuffer content, final Map<String, Entry> entries) {
+        this.location = location;
+        this.content = content;
+        this.entries = entries;
+    }
+
+    /**
+     * @param location the zip to open.
+     * @param filter   which entries to index, other ones are ignored.
+     * @return the indexed zip.
+     */
+    public static LazyZip open(final Path location, final Predicate<String> filter) {
+        return open(location, filter, HEAP_MAX_SIZE);
+    }
+
+    static LazyZip open(final Path location, final Predicate<String> filter, final long heapMaxSize) {
+        final ByteBuffer buffer;
+        try (final var channel = FileChannel.open(location, READ)) {
+            final var size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return eager(location, filter);
+            }
+            if (size <= heapMaxSize) {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // no-op
+                }
+                buffer.flip().order(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        final var entries = index(buffer, filter);
+        return entries == null ? eager(location, filter) : new LazyZip(location, buffer, entries);
+    }
+
+    /**
+     * @return {@code true} if the archive is memory mapped (the file stays open until the zip is garbage collected).
+     */
+    public boolean isMapped() {
+        return content != null && content.isDirect();
+    }
+
+    public Set<String> names() {
+        return entries.keySet();
+    }
+
+    public boolean contains(final String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * @param name the entry name.
+     * @return the entry content (must not be modified) or {@code null} if missing.
+     */
+    public byte[] bytes(final String name) {
+        final var entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        var value = entry.decoded;
+        if (value == null) {
+            synchronized (entry) {
+                value = entry.decoded;
+                if (value == null) {
+                    value = inflate(name, entry);
+                    entry.decoded = value;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param name the entry name.
+     * @return the entry content as text, line endings are normalized to {@code \n} and the final one is dropped.
+     */
+    public String text(final String name) {
+        final var bytes = bytes(name);
+        if (bytes == null) {
+            return null;
+        }
+        final var value = new String(bytes, StandardCharsets.UTF_8);
+        if (value.indexOf('\r') >= 0) {
+            return value.lines().collect(joining("\n"));
+        }
+        return value.endsWith("\n") ? value.substring(0, value.length() - 1) : value;
+    }
+
+    /**
+     * @param filter the entries to keep.
+     * @return a read-only view of the matching entries as text, values are decoded when accessed.
+     */
+    public Map<String, String> texts(final Predicate<String> filter) {
+        final var keys = entries.keySet().stream().filter(filter).collect(toSet());
+        return new AbstractMap<>() {
+            @Override
+            public boolean containsKey(final Object key) {
+                return keys.contains(key);
+            }
+
+            @Override
+            public String get(final Object key) {
+                return keys.contains(key) ? text(String.valueOf(key)) : null;
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+
+            @Override
+            public Set<Map.Entry<String, String>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Map.Entry<String, String>> iterator() {
+                        final var delegate = keys.iterator();
+                        return new Iterator<>() {
+                            @Override
+                            public boolean hasNext() {
+                                return delegate.hasNext();
+                            }
+
+                            @Override
+                            public Map.Entry<String, String> next() {
+                                final var key = delegate.next();
+                                return new SimpleImmutableEntry<>(key, text(key));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return keys.size();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return an estimation of the memory used by this zip once all entries are decoded.
+     */
+    public long weight() {
+        return (content == null ? 0 : content.capacity()) + entries.entrySet().stream()
+                .mapToLong(it -> 2L * it.getKey().length() + it.getValue().size)
+                .sum();
+    }
+
+    private byte[] inflate(final String name, final Entry entry) {
+        final var header = entry.offset;
+        if (content.getInt(header) != LOCAL_FILE_HEADER) {
+            throw new IllegalStateException("Invalid entry '" + name + "' in " + location);
+        }
+        // sizes of the local header can be unset (data descriptor) so use the central directory ones
+        final var start = header + 30 + u16(content, header + 26) + u16(content, header + 28);
+        final var data = content.duplicate().position(start).limit(start + entry.compressedSize).slice();
+        final var out = new byte[entry.size];
+        if (entry.method == STORED) {
+            data.get(out);
+            return out;
+        }
+        final var inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            var read = 0;
+            while (read < out.length && !inflater.finished()) {
+                final var inflated = inflater.inflate(out, read, out.length - read);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += inflated;
+            }
+            if (read != out.length) {
+                throw new IllegalStateException("Truncated entry '" + name + "' in " + location);
+            }
+            return out;
+        } catch (final DataFormatException e) {
+            throw new IllegalStateException("Invalid entry '" + name + "' in " + location, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // returns null if the zip is not supported (zip64, encryption, unknown compression)
+    private static Map<String, Entry> index(final ByteBuffer buffer, final Predicate<String> filter) {
+        final var end = findEndOfCentralDirectory(buffer);
+        if (end < 0) {
+            throw new IllegalStateException("Invalid zip, no central directory");
+        }
+        final var count = u16(buffer, end + 10);
+        final var offset = u32(buffer, end + 16);
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL) { // zip64
+            return null;
+        }
+
+        final var entries = new LinkedHashMap<String, Entry>(count);
+        var position = (int) offset;
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(position) != CENTRAL_DIRECTORY_HEADER) {
+                throw new IllegalStateException("Invalid zip central directory");
+            }
+            final var flags = u16(buffer, position + 8);
+            final var method = u16(buffer, position + 10);
+            final var compressedSize = u32(buffer, position + 20);
+            final var size = u32(buffer, position + 24);
+            final var nameLength = u16(buffer, position + 28);
+            final var extraLength = u16(buffer, position + 30);
+            final var commentLength = u16(buffer, position + 32);
+            final var localOffset = u32(buffer, position + 42);
+
+            final var rawName = new byte[nameLength];
+            buffer.duplicate().position(position + 46).get(rawName);
+            final var name = new String(rawName, StandardCharsets.UTF_8);
+            position += 46 + nameLength + extraLength + commentLength;
+
+            if (name.endsWith("/") || !filter.test(name)) {
+                continue;
+            }
+            if ((flags & 1) != 0 || (method != STORED && method != DEFLATED) ||
+                    compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL) {
+                return null;
+            }
+            entries.put(name, new Entry(method, (int) compressedSize, (int) size, (int) localOffset));
+        }
+        return entries;
+    }
+
+    private static int findEndOfCentralDirectory(final ByteBuffer buffer) {
+        final var min = Math.max(0, buffer.limit() - 22 - 0xFFFF /* max comment length */);
+        for (int i = buffer.limit() - 22; i >= min; i--) {
+            if (buffer.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static LazyZip eager(final Path location, final Predicate<String> filter) {
+        try (final var zip = new ZipFile(location.toFile())) {
+            final var entries = new LinkedHashMap<String, Entry>();
+            for (final var entry : list(zip.entries())) {
+                if (entry.isDirectory() || !filter.test(entry.getName())) {
+                    continue;
+                }
+                try (final var stream = zip.getInputStream(entry)) {
+                    final var bytes = stream.readAllBytes();
+                    final var value = new Entry(STORED, bytes.length, bytes.length, -1);
+                    value.decoded = bytes;
+                    entries.put(entry.getName(), value);
+                }
+            }
+            return new LazyZip(location, null, entries);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int u16(final ByteBuffer buffer, final int index) {
+        return buffer.getShort(index) & 0xFFFF;
+    }
+
+    private static long u32(final ByteBuffer buffer, final int index) {
+        return buffer.getInt(index) & 0xFFFFFFFFL;
+    }
+
+    private static class Entry {
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final int offset;
+        private volatile byte[] decoded;
+
+        private Entry(final int method, final int compressedSize, final int size, final int offset) {
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.core.configuration.Description;
+import io.yupiik.bundlebee.core.descriptor.Manifest;
+import io.yupiik.bundlebee.core.lang.ConfigHolder;
+import io.yupiik.bundlebee.core.qualifier.BundleBee;
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import lombok.Data;
+import lombok.extern.java.Log;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.JsonValue;
+import javax.json.spi.JsonProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Comparator.comparing;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Content addressed cache of resolved manifests (references merged, interpolation flags initialized).
+ * The key is the digest of the interpolated manifest text - so placeholder values are part of it - and its location,
+ * referenced manifests are validated against the digest of their interpolated content.
+ * Manifests are stored in a compact binary form (reflection based on the model fields, the model shape is part of the key)
+ * which avoids the JSON and JSON-B parsing of the manifest and its references on repeated runs.
+ * Model instances shared between the manifest and its references (merged alveoli) are written once so a cache hit
+ * restores the same object graph than a miss.
+ */
+@Log
+@ApplicationScoped
+public class ManifestCache implements ConfigHolder {
+    private static final int MAGIC = 0xBEEC0DE3;
+    private static final String MODEL_PACKAGE = Manifest.class.getPackageName() + '.';
+
+    @Inject
+    @Description("" +
+            "Directory where resolved manifests are cached (binary form, keyed by the digest of the interpolated manifest). " +
+            "`auto` means `<maven local repository>/.bundlebee/manifests` and `none` disables the cache. " +
+            "IMPORTANT: cached manifests are interpolated so they can contain resolved secrets, only enable it on a trusted machine.")
+    @ConfigProperty(name = "bundlebee.manifest.cache.directory", defaultValue = "none")
+    private String directory;
+
+    @Inject
+    @Description("Maximum number of cached manifests, least recently used ones are deleted when it is exceeded.")
+    @ConfigProperty(name = "bundlebee.manifest.cache.maxEntries", defaultValue = "128")
+    private int maxEntries = 128;
+
+    @Inject
+    private Maven maven;
+
+    @Inject
+    private MetricRegistry metrics;
+
+    @Inject
+    @BundleBee
+    private JsonProvider jsonProvider;
+
+    private final Map<Class<?>, List<Field>> fields = new ConcurrentHashMap<>();
+    private volatile String modelFingerprint;
+    private volatile Path root;
+
+    public boolean isEnabled() {
+        return directory != null && !"none".equals(directory);
+    }
+
+    /**
+     * @param location   the manifest location.
+     * @param id         the manifest id (placeholders context).
+     * @param content    the interpolated manifest.
+     * @param references reads the interpolated content of a referenced manifest from its path.
+     * @return the cached manifest and its references or {@code null} if missing or stale.
+     */
+    public Entry load(final String location, final String id, final String content,
+                         final Function<String, String> references) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final var file = file(location, id, content);
+        if (!Files.exists(file)) {
+            count("miss");
+            return null;
+        }
+        try (final var in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Invalid magic");
+            }
+            final int dependencies = in.readInt();
+            for (int i = 0; i < dependencies; i++) {
+                final var path = in.readUTF();
+                final var digest = in.readUTF();
+                if (!digest.equals(digest(references.apply(path)))) {
+                    log.finest(() -> "Reference '" + path + "' changed, ignoring cached manifest " + file);
+                    count("stale");
+                    return null;
+                }
+            }
+            final var reader = new Reader(in);
+            final var manifest = Manifest.class.cast(reader.read());
+            final int referenceCount = in.readInt();
+            final var referenced = new ArrayList<Manifest>(referenceCount);
+            for (int i = 0; i < referenceCount; i++) {
+                referenced.add(Manifest.class.cast(reader.read()));
+            }
+            touch(file);
+            count("hit");
+            return new Entry(manifest, referenced);
+        } catch (final IOException | RuntimeException | ReflectiveOperationException e) {
+            log.log(FINEST, e, () -> "Invalid cached manifest " + file + ": " + e.getMessage());
+            count("stale");
+            return null;
+        }
+    }
+
+    // best effort, if it can't be written the run continues
+    public void store(final String location, final String id, final String content,
+                      final List<Dependency> dependencies, final Manifest manifest, final List<Manifest> references) {
+        if (!isEnabled()) {
+            return;
+        }
+        final var file = file(location, id, content);
+        try {
+            final var bytes = new ByteArrayOutputStream();
+            try (final var out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeInt(dependencies.size());
+                for (final var dependency : dependencies) {
+                    out.writeUTF(dependency.getPath());
+                    out.writeUTF(dependency.getDigest());
+                }
+                final var writer = new Writer(out);
+                writer.write(manifest);
+                out.writeInt(references.size());
+                for (final var reference : references) {
+                    writer.write(reference);
+                }
+            }
+            Files.createDirectories(file.getParent());
+            // temp files are only readable by the owner, interpolated manifests can contain secrets
+            final var tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(tmp, bytes.toByteArray());
+            try {
+                Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, REPLACE_EXISTING);
+            }
+        } catch (final IOException | RuntimeException | IllegalAccessException e) {
+            log.log(WARNING, e, () -> "Can't cache manifest '" + file + "': " + e.getMessage());
+            return;
+        }
+        evict();
+    }
+
+    private void touch(final Path file) { // last modified time is the LRU marker
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (final IOException e) {
+            log.log(FINEST, e, () -> "Can't touch " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void evict() {
+        if (maxEntries <= 0) {
+            return;
+        }
+        final List<Path> entries;
+        try (final var files = Files.find(root(), 2, (path, attributes) -> attributes.isRegularFile() && path.getFileName().toString().endsWith(".bin"))) {
+            entries = files.collect(toList());
+        } catch (final IOException e) {
+            log.log(FINEST, e, () -> "Can't list cached manifests: " + e.getMessage());
+            return;
+        }
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        entries.stream()
+                .sorted(comparing(this::lastModified))
+                .limit(entries.size() - maxEntries)
+                .forEach(it -> {
+                    try {
+                        Files.deleteIfExists(it);
+                        count("evicted");
+                    } catch (final IOException e) {
+                        log.log(FINEST, e, () -> "Can't evict " + it + ": " + e.getMessage());
+                    }
+                });
+    }
+
+    private long lastModified(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (final IOException e) {
+            return 0;
+        }
+    }
+
+    public String digest(final String content) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content.getBytes(StandardCharsets.UTF_8));
+            return toHex(digest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path file(final String location, final String id, final String content) {
+        final var key = digest(modelFingerprint() + '\n' + location + '\n' + id + '\n' + content);
+        return root().resolve(key.substring(0, 2)).resolve(key + ".bin");
+    }
+
+    private Path root() {
+        if (root == null) {
+            root = "auto".equals(directory) ? maven.getM2().resolve(".bundlebee/manifests") : Path.of(directory);
+        }
+        return root;
+    }
+
+    // any change of the model (field added, type changed) invalidates the cache
+    private String modelFingerprint() {
+        if (modelFingerprint == null) {
+            final var out = new StringBuilder();
+            final var visited = new HashSet<Class<?>>();
+            fingerprint(Manifest.class, visited, out);
+            modelFingerprint = digest(out.toString());
+        }
+        return modelFingerprint;
+    }
+
+    private void fingerprint(final Type type, final Set<Class<?>> visited, final StringBuilder out) {
+        if (type instanceof ParameterizedType) {
+            for (final var arg : ParameterizedType.class.cast(type).getActualTypeArguments()) {
+                fingerprint(arg, visited, out);
+            }
+            return;
+        }
+        if (!(type instanceof Class<?>) || !isModel(Class.class.cast(type)) || !visited.add(Class.class.cast(type))) {
+            return;
+        }
+        final var clazz = Class.class.cast(type);
+        out.append(clazz.getName()).append('{');
+        if (clazz.isEnum()) {
+            out.append(Arrays.toString(clazz.getEnumConstants()));
+        } else {
+            for (final var field : fields(clazz)) {
+                out.append(field.getName()).append(':').append(field.getGenericType().getTypeName()).append(';');
+            }
+        }
+        out.append('}');
+        if (!clazz.isEnum()) {
+            for (final var field : fields(clazz)) {
+                fingerprint(field.getGenericType(), visited, out);
+            }
+        }
+    }
+
+    private List<Field> fields(final Class<?> clazz) {
+        return fields.computeIfAbsent(clazz, c -> {
+            final var result = Arrays.stream(c.getDeclaredFields())
+                    .filter(it -> !Modifier.isStatic(it.getModifiers()) && !Modifier.isTransient(it.getModifiers()))
+                    .sorted(comparing(Field::getName))
+                    .collect(toList());
+            result.forEach(it -> it.setAccessible(true));
+            return result;
+        });
+    }
+
+    private boolean isModel(final Class<?> clazz) {
+        return clazz.getName().startsWith(MODEL_PACKAGE);
+    }
+
+    private void count(final String result) {
+        if (metrics != null) {
+            metrics.counter("bundlebee_manifest_cache_requests_total", "Resolved manifest cache lookups.", "result", result).increment();
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final var out = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            out.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return out.toString();
+    }
+
+    @Data
+    public static class Entry {
+        private final Manifest manifest;
+
+        /**
+         * Referenced manifests in the order they were read, enables to replay the read events on a cache hit.
+         */
+        private final List<Manifest> references;
+    }
+
+    @Data
+    public static class Dependency {
+        private final String path;
+        private final String digest;
+    }
+
+    private enum Tag {
+        NULL, STRING, TRUE, FALSE, INT, LONG, DOUBLE, ENUM, LIST, MAP, JSON, OBJECT, REFERENCE
+    }
+
+    // class names and model instances are written once then referenced by index to keep the payload compact
+    private class Writer {
+        private final DataOutputStream out;
+        private final Map<Class<?>, Integer> classes = new HashMap<>();
+        private final Map<Object, Integer> instances = new IdentityHashMap<>();
+
+        private Writer(final DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void write(final Object value) throws IOException, IllegalAccessException {
+            if (value == null) {
+                out.writeByte(Tag.NULL.ordinal());
+            } else if (value instanceof JsonValue) { // first since JsonArray is a list and JsonObject a map
+                out.writeByte(Tag.JSON.ordinal());
+                writeString(value.toString());
+            } else if (value instanceof String) {
+                out.writeByte(Tag.STRING.ordinal());
+                writeString(String.class.cast(value));
+            } else if (value instanceof Boolean) {
+                out.writeByte((Boolean.class.cast(value) ? Tag.TRUE : Tag.FALSE).ordinal());
+            } else if (value instanceof Integer) {
+                out.writeByte(Tag.INT.ordinal());
+                out.writeInt(Integer.class.cast(value));
+            } else if (value instanceof Long) {
+                out.writeByte(Tag.LONG.ordinal());
+                out.writeLong(Long.class.cast(value));
+            } else if (value instanceof Double) {
+                out.writeByte(Tag.DOUBLE.ordinal());
+                out.writeDouble(Double.class.cast(value));
+            } else if (value instanceof Enum<?>) {
+                out.writeByte(Tag.ENUM.ordinal());
+                writeClass(Enum.class.cast(value).getDeclaringClass());
+                out.writeUTF(Enum.class.cast(value).name());
+            } else if (value instanceof List<?>) {
+                final var list = List.class.cast(value);
+                out.writeByte(Tag.LIST.ordinal());
+                out.writeInt(list.size());
+                for (final var item : list) {
+                    write(item);
+                }
+            } else if (value instanceof Map<?, ?>) {
+                final var map = Map.class.cast(value);
+                out.writeByte(Tag.MAP.ordinal());
+                out.writeInt(map.size());
+                for (final var entry : ((Map<?, ?>) map).entrySet()) {
+                    write(entry.getKey());
+                    write(entry.getValue());
+                }
+            } else if (isModel(value.getClass())) {
+                final var index = instances.get(value);
+                if (index != null) {
+                    out.writeByte(Tag.REFERENCE.ordinal());
+                    out.writeInt(index);
+                    return;
+                }
+                instances.put(value, instances.size());
+                out.writeByte(Tag.OBJECT.ordinal());
+                writeClass(value.getClass());
+                for (final var field : fields(value.getClass())) {
+                    write(field.get(value));
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported manifest value: " + value.getClass());
+            }
+        }
+
+        private void writeClass(final Class<?> clazz) throws IOException {
+            final var index = classes.get(clazz);
+            if (index != null) {
+                out.writeInt(index);
+                return;
+            }
+            out.writeInt(-1);
+            out.writeUTF(clazz.getName());
+            classes.put(clazz, classes.size());
+        }
+
+        private void writeString(final String value) throws IOException { // writeUTF is limited to 64k
+            final var bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private class Reader {
+        private final DataInputStream in;
+        private final List<Class<?>> classes = new ArrayList<>();
+        private final List<Object> instances = new ArrayList<>();
+
+        private Reader(final DataInputStream in) {
+            this.in = in;
+        }
+
+        private Object read() throws IOException, ReflectiveOperationException {
+            final var tags = Tag.values();
+            final int tag = in.readUnsignedByte();
+            if (tag >= tags.length) {
+                throw new IOException("Invalid tag: " + tag);
+            }
+            switch (tags[tag]) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return readString();
+                case TRUE:
+                    return true;
+                case FALSE:
+                    return false;
+                case INT:
+                    return in.readInt();
+                case LONG:
+                    return in.readLong();
+                case DOUBLE:
+                    return in.readDouble();
+                case ENUM: {
+                    final var type = readClass();
+                    final var name = in.readUTF();
+                    return Arrays.stream(type.getEnumConstants())
+                            .filter(it -> Enum.class.cast(it).name().equals(name))
+                            .findFirst()
+                            .orElseThrow(() -> new IOException("Unknown constant " + type.getName() + "." + name));
+                }
+                case LIST: {
+                    final int size = in.readInt();
+                    final var list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(read());
+                    }
+                    return list;
+                }
+                case MAP: {
+                    final int size = in.readInt();
+                    final var map = new LinkedHashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        map.put(read(), read());
+                    }
+                    return map;
+                }
+                case JSON:
+                    try (final var reader = jsonProvider.createReader(new StringReader(readString()))) {
+                        return reader.readValue();
+                    }
+                case OBJECT: {
+                    final var type = readClass();
+                    final var constructor = type.getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    final var instance = constructor.newInstance();
+                    instances.add(instance);
+                    for (final var field : fields(type)) {
+                        field.set(instance, read());
+                    }
+                    return instance;
+                }
+                case REFERENCE: {
+                    final int index = in.readInt();
+                    if (index < 0 || index >= instances.size()) {
+                        throw new IOException("Invalid reference: " + index);
+                    }
+                    return instances.get(index);
+                }
+                default:
+                    throw new IOException("Invalid tag: " + tag);
+            }
+        }
+
+        private Class<?> readClass() throws IOException, ClassNotFoundException {
+            final int index = in.readInt();
+            if (index >= 0) {
+                return classes.get(index);
+            }
+            final var name = in.readUTF();
+            if (!name.startsWith(MODEL_PACKAGE)) { // only instantiate model classes
+                throw new IOException("Unexpected class: " + name);
+            }
+            final var clazz = Class.forName(name, false, Manifest.class.getClassLoader());
+            classes.add(clazz);
+            return clazz;
+        }
+
+        private String readString() throws IOException {
+            final var bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
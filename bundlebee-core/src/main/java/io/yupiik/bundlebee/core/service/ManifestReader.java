@@ -34,7 +34,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -56,6 +58,9 @@ public class ManifestReader {
     @Inject
     private Substitutor substitutor;
 
+    @Inject
+    private ManifestCache manifestCache;
+
     @Inject
     private Event<OnManifestRead> onManifestReadEvent;
 
@@ -71,9 +76,36 @@ public class ManifestReader {
     public Manifest readManifest(final String location, final Supplier<InputStream> manifest,
                                  final Function<String, InputStream> relativeResolver,
                                  final String id) {
+        final var content = readContent(location, manifest, id);
+        final var cached = manifestCache.load(location, id, content, path -> readContent(location, () -> relativeResolver.apply(path), id));
+        if (cached != null) { // observers see the same events than without cache
+            cached.getReferences().forEach(it -> onManifestReadEvent.fire(new OnManifestRead(it)));
+            onManifestReadEvent.fire(new OnManifestRead(cached.getManifest()));
+            return cached.getManifest();
+        }
+
+        final var dependencies = new ArrayList<ManifestCache.Dependency>();
+        final var references = new ArrayList<Manifest>();
+        final var mf = parseManifest(location, content, relativeResolver, id, dependencies, references);
+        manifestCache.store(location, id, content, dependencies, mf, references);
+        onManifestReadEvent.fire(new OnManifestRead(mf));
+        return mf;
+    }
+
+    private String readContent(final String location, final Supplier<InputStream> manifest, final String id) {
         try (final BufferedReader reader = new BufferedReader(
                 new InputStreamReader(manifest.get(), StandardCharsets.UTF_8))) {
-            final var content = substitutor.replace(reader.lines().collect(joining("\n")), id);
+            return substitutor.replace(reader.lines().collect(joining("\n")), id);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't read manifest.json: (location=" + location + ")", e);
+        }
+    }
+
+    private Manifest parseManifest(final String location, final String content,
+                                   final Function<String, InputStream> relativeResolver,
+                                   final String id, final List<ManifestCache.Dependency> dependencies,
+                                   final List<Manifest> references) {
+        try {
             final var json = jsonb.fromJson(content, JsonObject.class);
             final Manifest mf;
             if (json.containsKey("bundlebee")) { // it is a wrapped manifest, we enable that to easily enrich manifest.json with custom attributes without breaking jsonschema
@@ -90,11 +122,10 @@ public class ManifestReader {
                         .filter(it -> it.getLocation() == null)
                         .forEach(desc -> desc.setLocation(location));
             }
-            resolveReferences(location, mf, relativeResolver, id);
+            resolveReferences(location, mf, relativeResolver, id, dependencies, references);
             initInterpolateFlags(mf);
-            onManifestReadEvent.fire(new OnManifestRead(mf));
             return mf;
-        } catch (final IOException | JsonException | JsonbException e) {
+        } catch (final JsonException | JsonbException e) {
             throw new IllegalStateException("Can't read manifest.json: (location=" + location + ")", e);
         }
     }
@@ -117,13 +148,18 @@ public class ManifestReader {
 
     private void resolveReferences(final String location, final Manifest main,
                                    final Function<String, InputStream> relativeResolver,
-                                   final String id) {
+                                   final String id, final List<ManifestCache.Dependency> dependencies,
+                                   final List<Manifest> references) {
         if (main.getReferences() == null || main.getReferences().isEmpty()) {
             return;
         }
 
         for (final var ref : main.getReferences()) {
-            final var loaded = readManifest(location, () -> relativeResolver.apply(ref.getPath()), relativeResolver, id);
+            final var content = readContent(location, () -> relativeResolver.apply(ref.getPath()), id);
+            dependencies.add(new ManifestCache.Dependency(ref.getPath(), manifestCache.digest(content)));
+            final var loaded = parseManifest(location, content, relativeResolver, id, dependencies, references);
+            references.add(loaded);
+            onManifestReadEvent.fire(new OnManifestRead(loaded));
             ofNullable(loaded.getAlveoli())
                     .ifPresent(it -> main.setAlveoli(Stream.concat(
                                     ofNullable(main.getAlveoli()).stream().flatMap(Collection::stream),
@@ -16,8 +16,8 @@
 package io.yupiik.bundlebee.core.service;
 
 import io.yupiik.bundlebee.core.configuration.Description;
-import io.yupiik.bundlebee.core.qualifier.BundleBee;
 import io.yupiik.bundlebee.lang.spi.PasswordResolver;
+import io.yupiik.bundlebee.lang.spi.Tracer;
 import io.yupiik.bundlebee.core.lang.ConfigHolder;
 import io.yupiik.tools.codec.simple.SimpleCodec;
 import io.yupiik.tools.codec.simple.SimpleCodecConfiguration;
@@ -42,9 +42,7 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -59,10 +57,10 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Semaphore;
 import java.util.function.BiFunction;
 import java.util.stream.Stream;
 
@@ -75,6 +73,7 @@ import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.function.Function.identity;
 import static java.util.logging.Level.FINEST;
 import static java.util.logging.Level.SEVERE;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static lombok.AccessLevel.PRIVATE;
 
@@ -107,12 +106,12 @@ public class Maven implements ConfigHolder, PasswordResolver {
     private boolean forceCustomSettingsXml;
 
     @Inject
-    @Description("Default release repository.")
+    @Description("Default release repository, a comma separated list can be used to define several repositories (see `bundlebee.maven.repositories.race`).")
     @ConfigProperty(name = "bundlebee.maven.repositories.release", defaultValue = "https://repo.maven.apache.org/maven2/")
     private String releaseRepository;
 
     @Inject
-    @Description("Default snapshot repository, not set by default.")
+    @Description("Default snapshot repository, not set by default. A comma separated list can be used to define several repositories.")
     @ConfigProperty(name = "bundlebee.maven.repositories.snapshot", defaultValue = UNSET)
     private String snapshotRepository;
 
@@ -133,21 +132,33 @@ public class Maven implements ConfigHolder, PasswordResolver {
     private boolean canDownload;
 
     @Inject
-    @BundleBee
-    private HttpClient client;
+    private Tracer tracer;
+
+    @Inject
+    private MavenDownloader downloader;
+
+    @Inject
+    private MavenMetadataCache metadataCache;
+
+    @Inject
+    private MavenRepositories repositories;
 
     @Getter
     private Path m2;
 
     private SAXParserFactory factory;
-    private final ConcurrentMap<String, Semaphore> locks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Path>> inProgress = new ConcurrentHashMap<>();
     private Map<String, Map<String, String>> headers;
+    private List<String> releaseRepositories;
+    private List<String> snapshotRepositories;
 
     @PostConstruct
     private void init() {
         if (UNSET.equals(snapshotRepository)) {
             snapshotRepository = null;
         }
+        releaseRepositories = parseRepositories(releaseRepository);
+        snapshotRepositories = parseRepositories(snapshotRepository);
         m2 = m2Home();
 
         factory = SAXParserFactory.newInstance();
@@ -220,41 +231,60 @@ public class Maven implements ConfigHolder, PasswordResolver {
     }
 
     public CompletionStage<Path> findOrDownload(final String url) {
-        final var lock = locks.computeIfAbsent(url, k -> new Semaphore(1));
-        try {
-            lock.acquire();
-        } catch (final InterruptedException e) {
-            Thread.currentThread().interrupt();
+        // concurrent resolutions of the same artifact share the same download
+        final var created = new CompletableFuture<Path>();
+        final var existing = inProgress.putIfAbsent(url, created);
+        if (existing != null) {
+            return existing;
         }
         try {
-            return doFind(removeRepoIfPresent(url))
-                    .whenComplete((p, e) -> lock.release());
-        } catch (final MalformedURLException e) {
-            lock.release();
-            throw new IllegalArgumentException(e);
+            tracer.trace("maven.resolve", Map.of("coordinates", url), () -> {
+                        try {
+                            return doFind(removeRepoIfPresent(url));
+                        } catch (final MalformedURLException e) {
+                            throw new IllegalArgumentException(e);
+                        }
+                    })
+                    .whenComplete((p, e) -> {
+                        inProgress.remove(url, created);
+                        if (e != null) {
+                            created.completeExceptionally(e);
+                        } else {
+                            created.complete(p);
+                        }
+                    });
+        } catch (final RuntimeException e) {
+            inProgress.remove(url, created);
+            created.completeExceptionally(e);
         }
+        return created;
     }
 
     public CompletionStage<List<String>> findAvailableVersions(final String group, final String artifact) {
-        return findAvailableVersions(releaseRepository, group, artifact).thenApply(Versions::getVersions);
+        return repositories.first(releaseRepositories, (repository, attempt) -> findAvailableVersions(repository, group, artifact, attempt)
+                        .thenApply(versions -> {
+                            if (versions.getVersions().isEmpty()) {
+                                throw new IllegalStateException("No version for " + group + ":" + artifact + " in '" + repository + "'");
+                            }
+                            return versions;
+                        }))
+                .exceptionally(error -> new Versions(null, null, List.of()))
+                .thenApply(Versions::getVersions);
     }
 
     public CompletionStage<Versions> findAvailableVersions(final String repository, final String group, final String artifact) {
+        return findAvailableVersions(repository, group, artifact, new MavenRepositories.Attempt());
+    }
+
+    private CompletionStage<Versions> findAvailableVersions(final String repository, final String group, final String artifact,
+                                                            final MavenRepositories.Attempt attempt) {
         log.finest(() -> "Looking for available version of " + group + ":" + artifact);
         final var uri = URI.create(
                 repository + (repository.endsWith("/") ? "" : "/") +
                         group.replace('.', '/') + '/' + artifact + "/maven-metadata.xml");
-        return client.sendAsync(
-                        newHttpRequest(uri.getHost())
-                                .GET()
-                                .uri(uri)
-                                .build(),
-                        HttpResponse.BodyHandlers.ofByteArray())
-                .thenApply(response -> {
-                    if (response.statusCode() != 200) {
-                        throw new IllegalStateException("Invalid " + uri + " response: " + response);
-                    }
-                    try (final var stream = new ByteArrayInputStream(response.body())) {
+        return fetchMetadata(uri, attempt)
+                .thenApply(metadata -> {
+                    try (final var stream = new ByteArrayInputStream(metadata)) {
                         return extractVersions(stream);
                     } catch (final IOException e) {
                         throw new IllegalStateException(e);
@@ -279,6 +309,11 @@ public class Maven implements ConfigHolder, PasswordResolver {
         }
     }
 
+    private CompletionStage<byte[]> fetchMetadata(final URI uri, final MavenRepositories.Attempt attempt) {
+        return tracer.trace("maven.metadata", Map.of("uri", uri.toASCIIString()), () -> metadataCache.fetch(
+                m2, uri, () -> newHttpRequest(uri.getHost()), attempt));
+    }
+
     private HttpRequest.Builder newHttpRequest(final String host) {
         final var builder = HttpRequest.newBuilder();
         final var staticHeaders = headers.get(host);
@@ -367,36 +402,36 @@ public class Maven implements ConfigHolder, PasswordResolver {
             return completedFuture(file);
         }
 
-        final String repoBase;
         final var sep = raw.lastIndexOf('!');
-        if (sep > 0) {
-            repoBase = raw.substring(0, sep);
-        } else {
-            repoBase = getDefaultRepository(raw);
-        }
-
-        return findVersion(repoBase, group, artifact, version)
-                .thenCompose(actualVersion -> download(
-                        group, artifact, actualVersion, fullClassifier, type,
-                        toRelativePath(repoBase, group, artifact, actualVersion, fullClassifier, type, version),
-                        version));
-    }
-
-    private CompletionStage<String> findVersion(final String repoBase, final String group, final String artifact, final String version) {
+        final var candidates = sep > 0 ? List.of(raw.substring(0, sep)) : getDefaultRepositories(raw);
+        if (candidates.size() == 1) {
+            final var repoBase = candidates.get(0);
+            return findVersion(repoBase, group, artifact, version, new MavenRepositories.Attempt())
+                    .thenCompose(actualVersion -> download(
+                            group, artifact, actualVersion, fullClassifier, type,
+                            toRelativePath(repoBase, group, artifact, actualVersion, fullClassifier, type, version),
+                            version));
+        }
+
+        // find the repository hosting the artifact then download it from this one
+        return repositories.first(candidates, (repoBase, attempt) -> findVersion(repoBase, group, artifact, version, attempt)
+                        .thenCompose(actualVersion -> {
+                            final var uri = URI.create(toRelativePath(repoBase, group, artifact, actualVersion, fullClassifier, type, version));
+                            return repositories.head(uri, () -> newHttpRequest(uri.getHost()), attempt)
+                                    .thenApply(found -> Map.entry(found, actualVersion));
+                        }))
+                .thenCompose(found -> download(
+                        group, artifact, found.getValue(), fullClassifier, type, found.getKey().toASCIIString(), version));
+    }
+
+    private CompletionStage<String> findVersion(final String repoBase, final String group, final String artifact, final String version,
+                                                final MavenRepositories.Attempt attempt) {
         final var base = repoBase == null || repoBase.isEmpty() ? "" : (repoBase + (!repoBase.endsWith("/") ? "/" : ""));
         if (("LATEST".equals(version) || "LATEST-SNAPSHOT".equals(version)) && base.startsWith("http")) {
             final var meta = URI.create(base + group.replace('.', '/') + "/" + artifact + "/maven-metadata.xml");
-            return client.sendAsync(
-                            newHttpRequest(meta.getHost())
-                                    .GET()
-                                    .uri(meta)
-                                    .build(),
-                            HttpResponse.BodyHandlers.ofByteArray())
-                    .thenApply(response -> {
-                        if (response.statusCode() != 200) {
-                            throw new IllegalStateException("Invalid " + meta + " response: " + response);
-                        }
-                        try (final var stream = new ByteArrayInputStream(response.body())) {
+            return fetchMetadata(meta, attempt)
+                    .thenApply(metadata -> {
+                        try (final var stream = new ByteArrayInputStream(metadata)) {
                             return extractRealVersion(version, stream);
                         } catch (final IOException e) {
                             throw new IllegalStateException(e);
@@ -409,17 +444,9 @@ public class Maven implements ConfigHolder, PasswordResolver {
         }
         if (version.endsWith("-SNAPSHOT") && base.startsWith("http")) {
             final var meta = URI.create(base + group.replace('.', '/') + "/" + artifact + "/" + version + "/maven-metadata.xml");
-            return client.sendAsync(
-                            newHttpRequest(meta.getHost())
-                                    .GET()
-                                    .uri(meta)
-                                    .build(),
-                            HttpResponse.BodyHandlers.ofByteArray())
-                    .thenApply(response -> {
-                        if (response.statusCode() != 200) {
-                            throw new IllegalStateException("Invalid " + meta + " response: " + response);
-                        }
-                        try (final var stream = new ByteArrayInputStream(response.body())) {
+            return fetchMetadata(meta, attempt)
+                    .thenApply(metadata -> {
+                        try (final var stream = new ByteArrayInputStream(metadata)) {
                             return extractLastSnapshotVersion(version, stream);
                         } catch (final IOException e) {
                             throw new IllegalStateException(e);
@@ -457,28 +484,26 @@ public class Maven implements ConfigHolder, PasswordResolver {
     }
 
     public CompletionStage<Path> doDownload(final URI uri, final Path target) {
-        return client.sendAsync(
-                        newHttpRequest(uri.getHost())
-                                .GET()
-                                .uri(uri)
-                                .build(),
-                        HttpResponse.BodyHandlers.ofFile(target))
-                .thenApply(it -> {
-                    if (it.statusCode() != 200) {
-                        throw new IllegalStateException("An error occured downloading " + uri);
-                    }
-                    return it.body();
-                });
+        return tracer.trace("maven.download", Map.of("uri", uri.toASCIIString()), () -> downloader.download(
+                uri, target, () -> newHttpRequest(uri.getHost())));
     }
 
-    private String getDefaultRepository(final String raw) {
-        String base;
+    private List<String> getDefaultRepositories(final String raw) {
         if (raw.contains(SNAPSHOT_SUFFIX)) {
-            base = requireNonNull(snapshotRepository, "No snapshot repository set.");
-        } else {
-            base = releaseRepository;
+            requireNonNull(snapshotRepository, "No snapshot repository set.");
+            return snapshotRepositories;
+        }
+        return releaseRepositories;
+    }
+
+    private List<String> parseRepositories(final String value) {
+        if (value == null) {
+            return List.of();
         }
-        return base;
+        return Stream.of(value.split(","))
+                .map(String::strip)
+                .filter(it -> !it.isEmpty())
+                .collect(toList());
     }
 
     private Path m2Home() {
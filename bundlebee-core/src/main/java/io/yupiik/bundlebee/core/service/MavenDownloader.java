@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.core.configuration.Description;
+import io.yupiik.bundlebee.core.lang.ConfigHolder;
+import io.yupiik.bundlebee.core.qualifier.BundleBee;
+import lombok.extern.java.Log;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.logging.Level.FINEST;
+
+/**
+ * Downloads artifacts with a bounded concurrency.
+ * Content is streamed to a {@code .part} file next to the target, verified against the remote {@code .sha256}/{@code .sha1}
+ * and moved in place once complete. A leftover {@code .part} file (interrupted download) is resumed with an HTTP range request
+ * when a checksum can validate the resumed file, otherwise the download restarts from scratch.
+ */
+@Log
+@ApplicationScoped
+public class MavenDownloader implements ConfigHolder {
+    @Inject
+    @Description("How many artifacts can be downloaded concurrently.")
+    @ConfigProperty(name = "bundlebee.maven.downloads.parallelism", defaultValue = "8")
+    private int parallelism;
+
+    @Inject
+    @Description("" +
+            "What to do when the downloaded artifact does not match the remote checksum (`.sha256` or `.sha1`): " +
+            "`fail`, `warn` or `ignore` (checksums are not fetched at all).")
+    @ConfigProperty(name = "bundlebee.maven.downloads.checksumPolicy", defaultValue = "warn")
+    private String checksumPolicy;
+
+    @Inject
+    @BundleBee
+    private HttpClient client;
+
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * @param uri      the artifact to download.
+     * @param target   where to store the artifact.
+     * @param requests request factory (authentication headers for example).
+     * @return the target once downloaded.
+     */
+    public CompletionStage<Path> download(final URI uri, final Path target, final Supplier<HttpRequest.Builder> requests) {
+        final var result = new CompletableFuture<Path>();
+        pending.add(() -> doDownload(uri, target, requests).whenComplete((ok, ko) -> {
+            running.decrementAndGet();
+            drain();
+            if (ko != null) {
+                result.completeExceptionally(ko);
+            } else {
+                result.complete(ok);
+            }
+        }));
+        drain();
+        return result;
+    }
+
+    private void drain() {
+        final var max = Math.max(1, parallelism);
+        while (!pending.isEmpty()) {
+            final var current = running.get();
+            if (current >= max) {
+                return;
+            }
+            if (!running.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            final var task = pending.poll();
+            if (task == null) {
+                running.decrementAndGet();
+                continue;
+            }
+            task.run();
+        }
+    }
+
+    private CompletionStage<Path> doDownload(final URI uri, final Path target, final Supplier<HttpRequest.Builder> requests) {
+        try {
+            final var part = target.resolveSibling(target.getFileName() + ".part");
+            // both lookups are sent together to not pay two round trips when there is no .sha256
+            final var sha256 = fetchChecksum(uri, requests, "sha256", "SHA-256");
+            final var sha1 = fetchChecksum(uri, requests, "sha1", "SHA-1");
+            return sha256
+                    .thenCompose(checksum -> checksum != null ? completedFuture(checksum) : sha1)
+                    .thenCompose(checksum -> fetch(uri, target, part, requests, checksum, true));
+        } catch (final RuntimeException re) {
+            return CompletableFuture.failedFuture(re);
+        }
+    }
+
+    private CompletionStage<Path> fetch(final URI uri, final Path target, final Path part,
+                                        final Supplier<HttpRequest.Builder> requests, final Checksum checksum,
+                                        final boolean resume) {
+        final long existing;
+        try {
+            if (resume && checksum != null && Files.exists(part)) { // a resumed file can only be trusted if verified
+                existing = Files.size(part);
+            } else {
+                Files.deleteIfExists(part);
+                existing = 0;
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final var request = requests.get().GET().uri(uri);
+        if (existing > 0) {
+            log.info(() -> "Resuming download of " + uri + " from byte " + existing);
+            request.header("Range", "bytes=" + existing + "-");
+        }
+        return client.sendAsync(request.build(), info -> {
+                    final boolean append;
+                    if (info.statusCode() == 206 && existing > 0) {
+                        append = true;
+                    } else if (info.statusCode() == 200) {
+                        append = false;
+                    } else {
+                        return HttpResponse.BodySubscribers.<byte[]>replacing(null);
+                    }
+                    final var digest = checksum == null ? null : checksum.newDigest();
+                    if (append && digest != null) {
+                        updateDigest(part, digest);
+                    }
+                    return new FileSubscriber(part, append, digest);
+                })
+                .thenCompose(response -> {
+                    if (response.statusCode() == 416 && existing > 0) { // partial file is not usable, restart
+                        return fetch(uri, target, part, requests, checksum, false);
+                    }
+                    if (response.statusCode() != 200 && response.statusCode() != 206) {
+                        throw new IllegalStateException("An error occured downloading " + uri + " (HTTP " + response.statusCode() + ")");
+                    }
+                    if (checksum != null && !checksum.matches(response.body())) {
+                        if (existing > 0) {
+                            log.warning(() -> "Invalid checksum for resumed " + uri + ", restarting the download");
+                            return fetch(uri, target, part, requests, checksum, false);
+                        }
+                        final var error = "Invalid " + checksum.extension + " for " + uri;
+                        if ("fail".equalsIgnoreCase(checksumPolicy)) {
+                            delete(part);
+                            throw new IllegalStateException(error);
+                        }
+                        log.warning(error);
+                    }
+                    moveInPlace(part, target);
+                    return completedFuture(target);
+                });
+    }
+
+    private CompletionStage<Checksum> fetchChecksum(final URI uri, final Supplier<HttpRequest.Builder> requests,
+                                                    final String extension, final String algorithm) {
+        if ("ignore".equalsIgnoreCase(checksumPolicy)) {
+            return completedFuture(null);
+        }
+        final var checksumUri = URI.create(uri.toASCIIString() + '.' + extension);
+        return client.sendAsync(requests.get().GET().uri(checksumUri).build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> {
+                    if (response.statusCode() != 200 || response.body() == null || response.body().isBlank()) {
+                        return null;
+                    }
+                    // format is either "<hash>" or "<hash>  <filename>"
+                    final var value = response.body().strip().split("\\s+")[0].toLowerCase(Locale.ROOT);
+                    return new Checksum(extension, algorithm, value);
+                })
+                .exceptionally(error -> {
+                    log.log(FINEST, error, () -> "Can't fetch " + checksumUri + ": " + error.getMessage());
+                    return null;
+                });
+    }
+
+    private void updateDigest(final Path part, final MessageDigest digest) {
+        try (final var channel = FileChannel.open(part)) {
+            final var buffer = ByteBuffer.allocate(8192);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void moveInPlace(final Path part, final Path target) {
+        try {
+            try {
+                Files.move(part, target, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(part, target, REPLACE_EXISTING);
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void delete(final Path part) {
+        try {
+            Files.deleteIfExists(part);
+        } catch (final IOException e) {
+            log.log(FINEST, e, e::getMessage);
+        }
+    }
+
+    private static class Checksum {
+        private final String extension;
+        private final String algorithm;
+        private final String expected;
+
+        private Checksum(final String extension, final String algorithm, final String expected) {
+            this.extension = extension;
+            this.algorithm = algorithm;
+            this.expected = expected;
+        }
+
+        private MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private boolean matches(final byte[] digest) {
+            if (digest == null) {
+                return false;
+            }
+            final var actual = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                actual.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return expected.equals(actual.toString());
+        }
+    }
+
+    // streams the body to the part file, the body is the digest of the whole file (null if no checksum is verified)
+    private static class FileSubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private final Path part;
+        private final boolean append;
+        private final MessageDigest digest;
+        private FileChannel channel;
+        private Flow.Subscription subscription;
+
+        private FileSubscriber(final Path part, final boolean append, final MessageDigest digest) {
+            this.part = part;
+            this.append = append;
+            this.digest = digest;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            try {
+                channel = append ? FileChannel.open(part, WRITE, APPEND) : FileChannel.open(part, CREATE, WRITE, TRUNCATE_EXISTING);
+            } catch (final IOException e) {
+                subscription.cancel();
+                result.completeExceptionally(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(final List<ByteBuffer> buffers) {
+            try {
+                for (final var buffer : buffers) {
+                    if (digest != null) {
+                        digest.update(buffer.duplicate());
+                    }
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            } catch (final IOException e) {
+                subscription.cancel();
+                close();
+                result.completeExceptionally(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            close(); // keep the part file, it will be resumed
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            close();
+            result.complete(digest == null ? null : digest.digest());
+        }
+
+        private void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                // no-op
+            }
+        }
+    }
+}
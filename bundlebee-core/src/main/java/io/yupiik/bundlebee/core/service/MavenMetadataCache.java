@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.core.configuration.Description;
+import io.yupiik.bundlebee.core.lang.ConfigHolder;
+import io.yupiik.bundlebee.core.qualifier.BundleBee;
+import lombok.extern.java.Log;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Caches {@code maven-metadata.xml} files (LATEST and SNAPSHOT resolution, available versions) in the local maven repository
+ * ({@code .bundlebee/metadata/<host>/<path>}), stale entries are revalidated with conditional requests.
+ */
+@Log
+@ApplicationScoped
+public class MavenMetadataCache implements ConfigHolder {
+    @Inject
+    @Description("" +
+            "How long (in milliseconds) a cached `maven-metadata.xml` is used without contacting the repository. " +
+            "Once expired, the metadata are revalidated with a conditional request (`If-None-Match`/`If-Modified-Since`). " +
+            "`0` or a negative value disables the cache (nothing is read nor written in the local repository) except in offline mode.")
+    @ConfigProperty(name = "bundlebee.maven.metadata.ttl", defaultValue = "0")
+    private long ttl;
+
+    @Inject
+    @Description("If `true`, cached `maven-metadata.xml` are used whatever their age and the repositories are never contacted.")
+    @ConfigProperty(name = "bundlebee.maven.metadata.offline", defaultValue = "false")
+    private boolean offline;
+
+    @Inject
+    @BundleBee
+    private HttpClient client;
+
+    /**
+     * @param m2       the local maven repository.
+     * @param uri      the metadata to fetch.
+     * @param requests request factory (authentication headers for example).
+     * @return the metadata content.
+     */
+    public CompletionStage<byte[]> fetch(final Path m2, final URI uri, final Supplier<HttpRequest.Builder> requests) {
+        return fetch(m2, uri, requests, new MavenRepositories.Attempt());
+    }
+
+    /**
+     * @param m2       the local maven repository.
+     * @param uri      the metadata to fetch.
+     * @param requests request factory (authentication headers for example).
+     * @param attempt  the repository attempt the request belongs to.
+     * @return the metadata content.
+     */
+    public CompletionStage<byte[]> fetch(final Path m2, final URI uri, final Supplier<HttpRequest.Builder> requests,
+                                         final MavenRepositories.Attempt attempt) {
+        if (ttl <= 0 && !offline) {
+            return attempt.track(client.sendAsync(requests.get().GET().uri(uri).build(), HttpResponse.BodyHandlers.ofByteArray()))
+                    .thenApply(response -> {
+                        if (response.statusCode() != 200) {
+                            throw new IllegalStateException("Invalid " + uri + " response: " + response);
+                        }
+                        return response.body();
+                    });
+        }
+
+        final var location = m2.resolve(".bundlebee/metadata")
+                .resolve(uri.getAuthority() == null ? "local" : uri.getAuthority().replace(':', '_'))
+                .resolve(uri.getPath().replaceFirst("^/+", ""));
+        final var metaLocation = location.resolveSibling(location.getFileName() + ".properties");
+        final byte[] cached;
+        final var meta = new Properties();
+        try {
+            if (Files.exists(location)) {
+                cached = Files.readAllBytes(location);
+                if (Files.exists(metaLocation)) {
+                    try (final var reader = Files.newBufferedReader(metaLocation)) {
+                        meta.load(reader);
+                    }
+                }
+                final var fetchedAt = Long.parseLong(meta.getProperty("fetchedAt", "0"));
+                if (offline || System.currentTimeMillis() - fetchedAt < ttl) {
+                    log.finest(() -> "Using cached " + uri);
+                    return completedFuture(cached);
+                }
+            } else if (offline) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Offline mode and no cached metadata for " + uri));
+            } else {
+                cached = null;
+            }
+        } catch (final IOException | NumberFormatException e) {
+            log.log(FINEST, e, () -> "Invalid cache for " + uri + ": " + e.getMessage());
+            if (offline) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Offline mode and invalid cached metadata for " + uri, e));
+            }
+            return fetch(uri, requests, attempt, null, null, location, metaLocation);
+        }
+        return fetch(uri, requests, attempt, cached, meta, location, metaLocation);
+    }
+
+    private CompletionStage<byte[]> fetch(final URI uri, final Supplier<HttpRequest.Builder> requests,
+                                          final MavenRepositories.Attempt attempt,
+                                          final byte[] cached, final Properties meta,
+                                          final Path location, final Path metaLocation) {
+        final var request = requests.get().GET().uri(uri);
+        if (cached != null) {
+            final var etag = meta.getProperty("etag");
+            if (etag != null) {
+                request.header("If-None-Match", etag);
+            }
+            final var lastModified = meta.getProperty("lastModified");
+            if (lastModified != null) {
+                request.header("If-Modified-Since", lastModified);
+            }
+        }
+        return attempt.track(client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray()))
+                .thenApply(response -> {
+                    if (response.statusCode() == 304 && cached != null) {
+                        log.finest(() -> uri + " not modified");
+                        meta.setProperty("fetchedAt", Long.toString(System.currentTimeMillis()));
+                        store(location, null, metaLocation, meta);
+                        return cached;
+                    }
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Invalid " + uri + " response: " + response);
+                    }
+
+                    final var newMeta = new Properties();
+                    newMeta.setProperty("fetchedAt", Long.toString(System.currentTimeMillis()));
+                    response.headers().firstValue("ETag").ifPresent(v -> newMeta.setProperty("etag", v));
+                    response.headers().firstValue("Last-Modified").ifPresent(v -> newMeta.setProperty("lastModified", v));
+                    store(location, response.body(), metaLocation, newMeta);
+                    return response.body();
+                });
+    }
+
+    // cache is best effort, if it can't be written the run continues
+    private void store(final Path location, final byte[] content, final Path metaLocation, final Properties meta) {
+        try {
+            Files.createDirectories(location.getParent());
+            if (content != null) {
+                final var tmp = Files.createTempFile(location.getParent(), location.getFileName().toString(), ".tmp");
+                Files.write(tmp, content);
+                move(tmp, location);
+            }
+            final var tmp = Files.createTempFile(metaLocation.getParent(), metaLocation.getFileName().toString(), ".tmp");
+            try (final var writer = Files.newBufferedWriter(tmp)) {
+                meta.store(writer, "bundlebee maven metadata cache");
+            }
+            move(tmp, metaLocation);
+        } catch (final IOException | RuntimeException e) {
+            log.log(WARNING, e, () -> "Can't cache '" + location + "': " + e.getMessage());
+        }
+    }
+
+    private void move(final Path from, final Path to) throws IOException {
+        try {
+            Files.move(from, to, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(from, to, REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.core.configuration.Description;
+import io.yupiik.bundlebee.core.lang.ConfigHolder;
+import io.yupiik.bundlebee.core.qualifier.BundleBee;
+import lombok.extern.java.Log;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.logging.Level.FINEST;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Executes a resolution step (metadata fetch, artifact existence check) against an ordered list of repositories.
+ * Sequentially by default (first repository which succeeds wins) or, in race mode, concurrently:
+ * the first successful response wins and other ones are cancelled (with the HTTP exchanges registered in their {@link Attempt}).
+ * In race mode the latency of each repository is remembered and the fastest one gets a head start next time,
+ * repositories without any known latency (never succeeded or failed last time) are tried last.
+ */
+@Log
+@ApplicationScoped
+public class MavenRepositories implements ConfigHolder {
+    private static final double LATENCY_SMOOTHING = .3;
+
+    @Inject
+    @Description("" +
+            "If `true` and several repositories are configured, metadata and artifact existence requests are sent " +
+            "to all repositories concurrently and the first successful one is used. " +
+            "Otherwise repositories are tried in order.")
+    @ConfigProperty(name = "bundlebee.maven.repositories.race", defaultValue = "false")
+    private boolean race;
+
+    @Inject
+    @BundleBee
+    private HttpClient client;
+
+    private final Map<String, Long> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * @param repositories the repositories to use.
+     * @param attempt      the resolution to execute against a repository, a failed stage means the repository can't be used.
+     * @param <T>          the result type.
+     * @return the first successful result.
+     */
+    public <T> CompletionStage<T> first(final List<String> repositories, final Function<String, CompletionStage<T>> attempt) {
+        return first(repositories, (repository, handle) -> attempt.apply(repository));
+    }
+
+    /**
+     * @param repositories the repositories to use.
+     * @param attempt      the resolution to execute against a repository, a failed stage means the repository can't be used.
+     *                     HTTP exchanges should be registered in the {@link Attempt} to be aborted if the repository loses the race.
+     * @param <T>          the result type.
+     * @return the first successful result.
+     */
+    public <T> CompletionStage<T> first(final List<String> repositories, final BiFunction<String, Attempt, CompletionStage<T>> attempt) {
+        if (repositories.size() == 1) {
+            return attempt.apply(repositories.get(0), new Attempt());
+        }
+        return race ? race(repositories, attempt) : sequential(repositories, attempt, 0, null);
+    }
+
+    /**
+     * @param uri      the resource to test.
+     * @param requests request factory (authentication headers for example).
+     * @return a stage failing if the resource does not exist.
+     */
+    public CompletionStage<URI> head(final URI uri, final Supplier<HttpRequest.Builder> requests) {
+        return head(uri, requests, new Attempt());
+    }
+
+    /**
+     * @param uri      the resource to test.
+     * @param requests request factory (authentication headers for example).
+     * @param attempt  the repository attempt the request belongs to.
+     * @return a stage failing if the resource does not exist.
+     */
+    public CompletionStage<URI> head(final URI uri, final Supplier<HttpRequest.Builder> requests, final Attempt attempt) {
+        return attempt.track(client.sendAsync(
+                        requests.get().method("HEAD", HttpRequest.BodyPublishers.noBody()).uri(uri).build(),
+                        HttpResponse.BodyHandlers.discarding()))
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Invalid " + uri + " response: " + response);
+                    }
+                    return uri;
+                });
+    }
+
+    private <T> CompletionStage<T> sequential(final List<String> repositories, final BiFunction<String, Attempt, CompletionStage<T>> attempt,
+                                              final int index, final Throwable previousError) {
+        if (index >= repositories.size()) {
+            return CompletableFuture.failedFuture(previousError);
+        }
+        final var repository = repositories.get(index);
+        return safeApply(attempt, repository, new Attempt())
+                .handle((result, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    log.log(FINEST, error, () -> "Can't use repository '" + repository + "': " + error.getMessage());
+                    if (previousError != null && previousError != error) {
+                        error.addSuppressed(previousError);
+                    }
+                    return sequential(repositories, attempt, index + 1, error);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private <T> CompletionStage<T> race(final List<String> repositories, final BiFunction<String, Attempt, CompletionStage<T>> attempt) {
+        final var result = new CompletableFuture<T>();
+        final var attempts = new CopyOnWriteArrayList<Attempt>();
+        final var remaining = new AtomicInteger(repositories.size());
+        final var won = new AtomicBoolean();
+
+        // fastest known repository first, the other ones start once it had the time to answer
+        final var ordered = repositories.stream()
+                .sorted(Comparator.comparing(it -> latencies.getOrDefault(it, Long.MAX_VALUE)))
+                .collect(toList());
+        final var headStart = latencies.get(ordered.get(0));
+        for (int i = 0; i < ordered.size(); i++) {
+            final var repository = ordered.get(i);
+            final var delay = i == 0 || headStart == null ? 0 : headStart * 2;
+            final var start = new CompletableFuture<Void>();
+            if (delay == 0) {
+                start.complete(null);
+            } else {
+                CompletableFuture.runAsync(() -> start.complete(null), CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+            }
+            final var current = start
+                    .thenCompose(ignored -> {
+                        if (won.get()) {
+                            return CompletableFuture.<T>failedFuture(new IllegalStateException("Repository '" + repository + "' lost the race"));
+                        }
+                        final var begin = System.nanoTime();
+                        final var handle = new Attempt();
+                        final var stage = safeApply(attempt, repository, handle).toCompletableFuture();
+                        handle.track(stage);
+                        attempts.add(handle);
+                        if (won.get()) { // lost while starting
+                            handle.cancel();
+                        }
+                        return stage.whenComplete((ok, ko) -> {
+                            if (ko == null) {
+                                recordLatency(repository, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+                            } else if (!handle.cancelled) { // ranked last until it succeeds again
+                                latencies.remove(repository);
+                            }
+                        });
+                    });
+            current.whenComplete((ok, ko) -> {
+                if (ko == null) {
+                    if (won.compareAndSet(false, true)) {
+                        log.finest(() -> "Repository '" + repository + "' won the race");
+                        attempts.forEach(Attempt::cancel); // no-op for the winner since it is completed
+                        result.complete(ok);
+                    }
+                } else if (remaining.decrementAndGet() == 0) {
+                    result.completeExceptionally(ko);
+                }
+            });
+        }
+        return result;
+    }
+
+    private <T> CompletionStage<T> safeApply(final BiFunction<String, Attempt, CompletionStage<T>> attempt, final String repository,
+                                             final Attempt handle) {
+        try {
+            return attempt.apply(repository, handle);
+        } catch (final RuntimeException re) {
+            return CompletableFuture.failedFuture(re);
+        }
+    }
+
+    private void recordLatency(final String repository, final long latency) {
+        latencies.merge(repository, latency, (previous, current) -> Math.round(previous * (1 - LATENCY_SMOOTHING) + current * LATENCY_SMOOTHING));
+    }
+
+    /**
+     * Tracks the HTTP exchanges of a repository attempt, they are cancelled (aborting the exchange) when it loses a race.
+     */
+    public static class Attempt {
+        private final Collection<Future<?>> exchanges = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        /**
+         * @param exchange the exchange to abort if the attempt is cancelled (future returned by {@code HttpClient#sendAsync} for example).
+         * @param <R>      the exchange result type.
+         * @return the exchange.
+         */
+        public <R> CompletableFuture<R> track(final CompletableFuture<R> exchange) {
+            exchanges.add(exchange);
+            if (cancelled) { // lost before this exchange started
+                exchange.cancel(true);
+            }
+            return exchange;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            exchanges.forEach(it -> it.cancel(true));
+        }
+    }
+}
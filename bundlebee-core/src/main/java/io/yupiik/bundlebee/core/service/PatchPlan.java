@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.core.descriptor.Manifest;
+
+import javax.json.JsonPatch;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.util.Comparator.comparingInt;
+
+/**
+ * Patches of an alveolus context compiled once for all its descriptors:
+ * exact descriptor names are indexed, only wildcard/regex patches are tested against each descriptor
+ * and {@link JsonPatch} instances are built once (the interpolation of a patch does not depend on the descriptor).
+ */
+final class PatchPlan {
+    private final Map<String, List<Entry>> byName = new HashMap<>();
+    private final List<Entry> byPattern = new ArrayList<>();
+
+    PatchPlan(final Map<Predicate<String>, Manifest.Patch> patches, final Function<Manifest.Patch, JsonPatch> factory) {
+        int index = 0;
+        for (final var patch : patches.entrySet()) {
+            final var entry = new Entry(index++, patch.getValue(), patch.getKey(), factory);
+            final var name = patch.getValue().getDescriptorName();
+            if (name != null && !name.contains("*") && !name.startsWith("regex:")) {
+                byName.computeIfAbsent(name, k -> new ArrayList<>(1)).add(entry);
+            } else {
+                byPattern.add(entry);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return byName.isEmpty() && byPattern.isEmpty();
+    }
+
+    /**
+     * @param name      descriptor name.
+     * @param extension descriptor extension, extensions can be implicit in patches so both are tested.
+     * @return the patches to apply on the descriptor in their declaration order.
+     */
+    List<Entry> select(final String name, final String extension) {
+        final var exact = byName.get(name);
+        final var withExtension = byName.get(name + "." + extension);
+        if (byPattern.isEmpty() && withExtension == null) {
+            return exact == null ? List.of() : exact;
+        }
+
+        final var result = new ArrayList<Entry>();
+        if (exact != null) {
+            result.addAll(exact);
+        }
+        if (withExtension != null) {
+            result.addAll(withExtension);
+        }
+        for (final var entry : byPattern) {
+            if (entry.matcher.test(name) || entry.matcher.test(name + "." + extension)) {
+                result.add(entry);
+            }
+        }
+        result.sort(comparingInt(e -> e.index));
+        return result;
+    }
+
+    static final class Entry {
+        private final int index;
+        private final Manifest.Patch patch;
+        private final Predicate<String> matcher;
+        private final Function<Manifest.Patch, JsonPatch> factory;
+        private volatile JsonPatch jsonPatch;
+
+        private Entry(final int index, final Manifest.Patch patch, final Predicate<String> matcher,
+                      final Function<Manifest.Patch, JsonPatch> factory) {
+            this.index = index;
+            this.patch = patch;
+            this.matcher = matcher;
+            this.factory = factory;
+        }
+
+        Manifest.Patch getPatch() {
+            return patch;
+        }
+
+        // lazy since the patch can be skipped (includeIf) and interpolation must run in the alveolus placeholders context
+        JsonPatch getJsonPatch() {
+            if (jsonPatch == null) {
+                jsonPatch = factory.apply(patch);
+            }
+            return jsonPatch;
+        }
+    }
+}
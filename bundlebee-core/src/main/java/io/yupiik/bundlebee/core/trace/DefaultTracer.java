@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.trace;
+
+import io.yupiik.bundlebee.core.configuration.Description;
+import io.yupiik.bundlebee.core.lang.ConfigHolder;
+import io.yupiik.bundlebee.core.qualifier.BundleBee;
+import io.yupiik.bundlebee.lang.spi.Tracer;
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.spi.JsonProvider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.util.logging.Level.SEVERE;
+
+@Log
+@ApplicationScoped
+public class DefaultTracer implements Tracer, ConfigHolder {
+    @Inject
+    @Description("" +
+            "If not `none`, the execution is traced and spans are exported as Chrome trace-event JSON in this file " +
+            "at the end of the command (open it with `chrome://tracing` or Perfetto UI). " +
+            "On the CLI, `--trace-output` is an alias for this option.")
+    @ConfigProperty(name = "bundlebee.trace.output", defaultValue = "none")
+    private String output;
+
+    @Inject
+    @Description("" +
+            "If not `none`, the execution is traced and spans are sent to this OTLP/HTTP JSON endpoint " +
+            "(`http://localhost:4318/v1/traces` for a default local OpenTelemetry collector) at the end of the command.")
+    @ConfigProperty(name = "bundlebee.trace.otlp.endpoint", defaultValue = "none")
+    private String otlpEndpoint;
+
+    @Inject
+    @Description("Max number of spans kept in memory, when reached new spans are dropped (protects long running instances).")
+    @ConfigProperty(name = "bundlebee.trace.maxSpans", defaultValue = "100000")
+    private int maxSpans;
+
+    @Inject
+    @BundleBee
+    private JsonProvider jsonProvider;
+
+    private final ThreadLocal<RecordingSpan> current = new ThreadLocal<>();
+    private final Queue<RecordingSpan> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger recorded = new AtomicInteger();
+
+    // nano precision timestamps for the export, System.currentTimeMillis() is too coarse for kube requests
+    private final long epochNanosBase = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private final long nanoTimeBase = System.nanoTime();
+
+    private boolean enabled;
+
+    @PostConstruct
+    private void init() {
+        enabled = !"none".equals(output) || !"none".equals(otlpEndpoint);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (!enabled || finished.isEmpty()) {
+            return;
+        }
+        final var spans = List.copyOf(finished);
+        finished.clear();
+        final var exporter = new TraceExporter(jsonProvider);
+        if (!"none".equals(output)) {
+            try {
+                final var location = Path.of(output);
+                if (location.getParent() != null) {
+                    Files.createDirectories(location.getParent());
+                }
+                try (final var writer = Files.newBufferedWriter(location)) {
+                    exporter.writeChromeTrace(spans, writer);
+                }
+                log.info(() -> "Wrote " + spans.size() + " spans to '" + location + "'");
+            } catch (final IOException | RuntimeException e) {
+                log.log(SEVERE, e, () -> "Can't write trace to '" + output + "': " + e.getMessage());
+            }
+        }
+        if (!"none".equals(otlpEndpoint)) {
+            try {
+                exporter.sendOtlp(spans, otlpEndpoint);
+            } catch (final RuntimeException e) {
+                log.log(SEVERE, e, () -> "Can't send trace to '" + otlpEndpoint + "': " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Span current() {
+        final var span = current.get();
+        return span == null ? NOOP.current() : span;
+    }
+
+    @Override
+    public Span start(final Span parent, final String name, final Map<String, String> tags) {
+        if (!enabled) {
+            return NOOP.current();
+        }
+        final var actualParent = parent instanceof RecordingSpan ? RecordingSpan.class.cast(parent) : current.get();
+        final var random = ThreadLocalRandom.current();
+        final var span = new RecordingSpan(
+                actualParent == null ? toHex(random.nextLong()) + toHex(random.nextLong()) : actualParent.traceId,
+                toHex(random.nextLong()),
+                actualParent == null ? null : actualParent.spanId,
+                name, Thread.currentThread(), now());
+        if (tags != null) {
+            span.tags.putAll(tags);
+        }
+        return span;
+    }
+
+    @Override
+    public <T> T withSpan(final Span span, final Supplier<T> task) {
+        if (!(span instanceof RecordingSpan)) {
+            return task.get();
+        }
+        final var previous = current.get();
+        current.set(RecordingSpan.class.cast(span));
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    private String toHex(final long value) { // OTLP requires fixed size ids
+        return String.format("%016x", value);
+    }
+
+    private long now() {
+        return epochNanosBase + (System.nanoTime() - nanoTimeBase);
+    }
+
+    @Getter
+    class RecordingSpan implements Span {
+        private final String traceId;
+        private final String spanId;
+        private final String parentId;
+        private final String name;
+        private final String thread;
+        private final long threadId;
+        private final long start;
+        private final Map<String, String> tags = new ConcurrentHashMap<>();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long end;
+        private volatile String error;
+
+        private RecordingSpan(final String traceId, final String spanId, final String parentId,
+                              final String name, final Thread thread, final long start) {
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.parentId = parentId;
+            this.name = name;
+            this.thread = thread.getName();
+            this.threadId = thread.getId();
+            this.start = start;
+        }
+
+        @Override
+        public Span tag(final String key, final String value) {
+            if (key != null && value != null) {
+                tags.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Span error(final Throwable error) {
+            this.error = error == null ? null : String.valueOf(error.getMessage());
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            end = now();
+            if (recorded.incrementAndGet() <= maxSpans) {
+                finished.add(this);
+            } else {
+                recorded.decrementAndGet();
+            }
+        }
+    }
+}
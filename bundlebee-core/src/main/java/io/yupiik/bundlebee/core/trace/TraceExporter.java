@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.trace;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+
+import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonGenerator;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Serializes recorded spans either as Chrome trace-event JSON (async nestable events, one lane per trace)
+ * or as OTLP/HTTP JSON payload.
+ */
+@Log
+@RequiredArgsConstructor
+class TraceExporter {
+    private final JsonProvider jsonProvider;
+
+    void writeChromeTrace(final Collection<DefaultTracer.RecordingSpan> spans, final Writer writer) {
+        try (final var generator = jsonProvider.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.write("displayTimeUnit", "ms");
+            generator.writeStartArray("traceEvents");
+            // tid must be numeric, thread names are attached through metadata events
+            spans.stream()
+                    .collect(toMap(DefaultTracer.RecordingSpan::getThreadId, DefaultTracer.RecordingSpan::getThread, (a, b) -> a, TreeMap::new))
+                    .forEach((id, name) -> writeThreadName(generator, id, name));
+            spans.stream()
+                    .sorted(comparingLong(DefaultTracer.RecordingSpan::getStart))
+                    .forEach(span -> {
+                        writeChromeEvent(generator, span, "b", span.getStart(), true);
+                        writeChromeEvent(generator, span, "e", span.getEnd(), false);
+                    });
+            generator.writeEnd();
+            generator.writeEnd();
+        }
+    }
+
+    void sendOtlp(final Collection<DefaultTracer.RecordingSpan> spans, final String endpoint) {
+        final var payload = toOtlp(spans);
+        final var client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+        try {
+            final var response = client.send(
+                    HttpRequest.newBuilder()
+                            .POST(HttpRequest.BodyPublishers.ofString(payload, StandardCharsets.UTF_8))
+                            .uri(URI.create(endpoint))
+                            .timeout(Duration.ofMinutes(1))
+                            .header("Content-Type", "application/json")
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() < 200 || response.statusCode() > 299) {
+                log.warning(() -> "Invalid OTLP response (HTTP " + response.statusCode() + "): " + response.body());
+            } else {
+                log.info(() -> "Sent " + spans.size() + " spans to '" + endpoint + "'");
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    String toOtlp(final Collection<DefaultTracer.RecordingSpan> spans) {
+        final var out = new StringWriter();
+        try (final var generator = jsonProvider.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStartArray("resourceSpans");
+            generator.writeStartObject();
+            generator.writeStartObject("resource");
+            writeOtlpAttributes(generator, Map.of("service.name", "bundlebee"));
+            generator.writeEnd();
+            generator.writeStartArray("scopeSpans");
+            generator.writeStartObject();
+            generator.writeStartObject("scope");
+            generator.write("name", "io.yupiik.bundlebee");
+            generator.writeEnd();
+            generator.writeStartArray("spans");
+            for (final var span : spans) {
+                generator.writeStartObject();
+                generator.write("traceId", span.getTraceId());
+                generator.write("spanId", span.getSpanId());
+                if (span.getParentId() != null) {
+                    generator.write("parentSpanId", span.getParentId());
+                }
+                generator.write("name", span.getName());
+                generator.write("kind", 1); // internal
+                // int64 are strings in OTLP JSON mapping
+                generator.write("startTimeUnixNano", Long.toString(span.getStart()));
+                generator.write("endTimeUnixNano", Long.toString(span.getEnd()));
+                writeOtlpAttributes(generator, span.getTags());
+                if (span.getError() != null) {
+                    generator.writeStartObject("status");
+                    generator.write("code", 2);
+                    generator.write("message", span.getError());
+                    generator.writeEnd();
+                }
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+            generator.writeEnd();
+            generator.writeEnd();
+            generator.writeEnd();
+            generator.writeEnd();
+            generator.writeEnd();
+        }
+        return out.toString();
+    }
+
+    private void writeChromeEvent(final JsonGenerator generator, final DefaultTracer.RecordingSpan span,
+                                  final String phase, final long timestamp, final boolean withArgs) {
+        generator.writeStartObject();
+        generator.write("name", span.getName());
+        generator.write("cat", "bundlebee");
+        generator.write("ph", phase);
+        generator.write("id", span.getTraceId());
+        generator.write("pid", 1);
+        generator.write("tid", span.getThreadId());
+        generator.write("ts", timestamp / 1_000.); // micros
+        if (withArgs) {
+            generator.writeStartObject("args");
+            generator.write("spanId", span.getSpanId());
+            if (span.getParentId() != null) {
+                generator.write("parentId", span.getParentId());
+            }
+            if (span.getError() != null) {
+                generator.write("error", span.getError());
+            }
+            span.getTags().forEach(generator::write);
+            generator.writeEnd();
+        }
+        generator.writeEnd();
+    }
+
+    private void writeThreadName(final JsonGenerator generator, final long threadId, final String threadName) {
+        generator.writeStartObject();
+        generator.write("name", "thread_name");
+        generator.write("ph", "M");
+        generator.write("pid", 1);
+        generator.write("tid", threadId);
+        generator.writeStartObject("args");
+        generator.write("name", threadName);
+        generator.writeEnd();
+        generator.writeEnd();
+    }
+
+    private void writeOtlpAttributes(final JsonGenerator generator, final Map<String, String> attributes) {
+        generator.writeStartArray("attributes");
+        attributes.forEach((key, value) -> {
+            generator.writeStartObject();
+            generator.write("key", key);
+            generator.writeStartObject("value");
+            generator.write("stringValue", value);
+            generator.writeEnd();
+            generator.writeEnd();
+        });
+        generator.writeEnd();
+    }
+}
@@ -19,11 +19,20 @@ import io.yupiik.bundlebee.core.qualifier.BundleBee;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.composer.ComposerException;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.json.JsonArray;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonStructure;
 import javax.json.JsonValue;
 import javax.json.bind.Jsonb;
+import javax.json.spi.JsonProvider;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static java.util.stream.Collectors.joining;
@@ -38,7 +47,75 @@ public class Yaml2JsonConverter {
     @BundleBee
     private Jsonb jsonb;
 
+    @Inject
+    @BundleBee
+    private JsonProvider jsonProvider;
+
+    @Inject
+    @BundleBee
+    private JsonBuilderFactory jsonBuilderFactory;
+
+    private YamlEventsToJson events;
+
+    @PostConstruct
+    private void init() {
+        events = new YamlEventsToJson(jsonProvider, jsonBuilderFactory);
+    }
+
     public <T> T convert(final Class<T> expected, final String content) {
+        if (expected == JsonValue.class || expected == JsonStructure.class || expected == JsonObject.class || expected == JsonArray.class) {
+            final var direct = convertFromEvents(expected, content);
+            if (direct != null) {
+                return direct;
+            }
+        }
+        return convertFromModel(expected, content);
+    }
+
+    /**
+     * Lazily converts a (potentially multi-document) YAML content, documents are converted one at a time
+     * when the stream is consumed so only the current one is in memory (in addition to the source).
+     *
+     * @param content the yaml content.
+     * @return the documents as JSON values.
+     */
+    public Stream<JsonValue> stream(final String content) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                events.iterate(content, document -> convertFromModel(JsonValue.class, document)),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // fast path: no intermediate java model nor JSON string, returns null if the java model conversion must be used
+    private <T> T convertFromEvents(final Class<T> expected, final String content) {
+        final List<JsonValue> documents;
+        try {
+            documents = events.convert(content);
+        } catch (final YamlEventsToJson.UnsupportedYamlException e) {
+            return null;
+        }
+        final JsonValue value;
+        if (documents.size() == 1) {
+            value = documents.get(0);
+        } else if (documents.size() > 1 && (expected == JsonValue.class || expected == JsonArray.class)) {
+            final var array = jsonBuilderFactory.createArrayBuilder();
+            documents.forEach(array::add);
+            value = array.build();
+        } else { // empty content or multiple documents when not supported, keep the historical behavior
+            return null;
+        }
+        return expected.isInstance(value) ? expected.cast(value) : null;
+    }
+
+    /**
+     * Historical conversion (YAML to java model to JSON string to expected type), it supports any expected type
+     * and any YAML construct but is slower than the event based one used by {@link #convert(Class, String)} for JSON-P types.
+     *
+     * @param expected the expected type.
+     * @param content  the yaml content.
+     * @param <T>      the expected type.
+     * @return the converted content.
+     */
+    public <T> T convertFromModel(final Class<T> expected, final String content) {
         try {
             final var loaded = yaml.load(content);
             return jsonb.fromJson(jsonb.toJson(loaded), expected);
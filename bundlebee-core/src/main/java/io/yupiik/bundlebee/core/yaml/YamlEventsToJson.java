@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.yaml;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.spi.JsonProvider;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Converts YAML to JSON-P directly from the SnakeYAML parser events (no intermediate java model nor JSON string).
+ * Scalars are typed with the SnakeYAML resolver and constructors (YAML 1.1 core schema) so the result matches
+ * {@code Yaml#load} + JSON-B serialization.
+ * Anything without a natural JSON mapping (timestamps, binary, sets, merge keys, complex keys, custom tags, NaN/infinity)
+ * is rejected with {@link UnsupportedYamlException} and the caller must fallback on the java model conversion.
+ */
+class YamlEventsToJson {
+    private static final Set<Tag> SCALAR_TAGS = Set.of(Tag.STR, Tag.INT, Tag.FLOAT, Tag.BOOL, Tag.NULL);
+
+    private final LoaderOptions options = new LoaderOptions();
+    private final Resolver resolver = new Resolver();
+    private final ScalarConstructor constructor = new ScalarConstructor(options);
+    private final JsonProvider provider;
+    private final JsonBuilderFactory factory;
+
+    YamlEventsToJson(final JsonProvider provider, final JsonBuilderFactory factory) {
+        this.provider = provider;
+        this.factory = factory;
+    }
+
+    /**
+     * @param content the yaml content.
+     * @return one JSON value per YAML document.
+     */
+    List<JsonValue> convert(final String content) {
+        final var reader = new DocumentReader(content);
+        final var documents = new ArrayList<JsonValue>();
+        try {
+            while (reader.hasNext()) {
+                documents.add(reader.next());
+            }
+        } catch (final YAMLException e) {
+            throw new UnsupportedYamlException();
+        }
+        return documents;
+    }
+
+    /**
+     * Reads documents one at a time, only the current document is kept in memory.
+     * If a document can't be converted from the events, its source is passed to the fallback.
+     *
+     * @param content  the yaml content.
+     * @param fallback the conversion used for unsupported documents.
+     * @return an iterator over the documents.
+     */
+    Iterator<JsonValue> iterate(final String content, final Function<String, JsonValue> fallback) {
+        final var reader = new DocumentReader(content);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return reader.hasNext();
+            }
+
+            @Override
+            public JsonValue next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return reader.next();
+                } catch (final UnsupportedYamlException e) {
+                    return fallback.apply(reader.skipDocument());
+                }
+            }
+        };
+    }
+
+    private JsonValue toJson(final Object value) {
+        if (value == null) {
+            return JsonValue.NULL;
+        }
+        if (value instanceof String) {
+            return provider.createValue(String.class.cast(value));
+        }
+        if (value instanceof Boolean) {
+            return Boolean.class.cast(value) ? JsonValue.TRUE : JsonValue.FALSE;
+        }
+        if (value instanceof Integer) {
+            return provider.createValue(Integer.class.cast(value));
+        }
+        if (value instanceof Long) {
+            return provider.createValue(Long.class.cast(value));
+        }
+        if (value instanceof BigInteger) {
+            return provider.createValue(BigInteger.class.cast(value));
+        }
+        if (value instanceof Double) {
+            final double number = Double.class.cast(value);
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new UnsupportedYamlException();
+            }
+            return provider.createValue(number);
+        }
+        throw new UnsupportedYamlException();
+    }
+
+    private void checkCollectionTag(final CollectionStartEvent event, final Tag expected) {
+        if (event.getTag() != null && !"!".equals(event.getTag()) && !expected.getValue().equals(event.getTag())) {
+            throw new UnsupportedYamlException(); // !!set, !!omap, custom tags
+        }
+    }
+
+    private class DocumentReader {
+        private final String content;
+        private final ParserImpl parser;
+        private final Map<String, JsonValue> anchors = new HashMap<>();
+        private final Deque<Container> stack = new ArrayDeque<>();
+        private int documentStart;
+        private JsonValue value;
+
+        private DocumentReader(final String content) {
+            this.content = content;
+            this.parser = new ParserImpl(new StreamReader(content), options);
+        }
+
+        private boolean hasNext() {
+            while (true) { // skip stream and document markers to know if there is a value
+                final var event = parser.peekEvent();
+                if (event == null || event.getEventId() == Event.ID.StreamEnd) {
+                    return false;
+                }
+                switch (event.getEventId()) {
+                    case StreamStart:
+                    case DocumentEnd:
+                        parser.getEvent();
+                        break;
+                    case DocumentStart:
+                        parser.getEvent();
+                        documentStart = event.getStartMark().getIndex();
+                        anchors.clear(); // anchors are scoped to their document
+                        break;
+                    default:
+                        return true;
+                }
+            }
+        }
+
+        private JsonValue next() {
+            value = null;
+            stack.clear();
+            try {
+                while (value == null) {
+                    onEvent(parser.getEvent());
+                }
+            } catch (final ArithmeticException | NumberFormatException e) {
+                throw new UnsupportedYamlException();
+            }
+            return value;
+        }
+
+        // skips the rest of the current document and returns its source
+        private String skipDocument() {
+            stack.clear();
+            while (parser.peekEvent() != null && parser.peekEvent().getEventId() != Event.ID.DocumentEnd) {
+                parser.getEvent();
+            }
+            final var end = parser.getEvent().getEndMark().getIndex();
+            // marks are code point indices
+            return content.substring(content.offsetByCodePoints(0, documentStart), content.offsetByCodePoints(0, end));
+        }
+
+        private void onEvent(final Event event) {
+            switch (event.getEventId()) {
+                case Alias: {
+                    final var alias = anchors.get(AliasEvent.class.cast(event).getAnchor());
+                    if (alias == null) { // recursive or unknown alias
+                        throw new UnsupportedYamlException();
+                    }
+                    onValue(alias);
+                    break;
+                }
+                case Scalar:
+                    onScalar(ScalarEvent.class.cast(event));
+                    break;
+                case SequenceStart:
+                    checkCollectionTag(CollectionStartEvent.class.cast(event), Tag.SEQ);
+                    if (!stack.isEmpty() && stack.peek().isExpectingKey()) {
+                        throw new UnsupportedYamlException();
+                    }
+                    stack.push(new Container(NodeEvent.class.cast(event).getAnchor(), factory.createArrayBuilder(), null));
+                    break;
+                case MappingStart:
+                    checkCollectionTag(CollectionStartEvent.class.cast(event), Tag.MAP);
+                    if (!stack.isEmpty() && stack.peek().isExpectingKey()) {
+                        throw new UnsupportedYamlException();
+                    }
+                    stack.push(new Container(NodeEvent.class.cast(event).getAnchor(), null, factory.createObjectBuilder()));
+                    break;
+                case SequenceEnd:
+                case MappingEnd: {
+                    final var container = stack.pop();
+                    final JsonValue built = container.array != null ? container.array.build() : container.object.build();
+                    if (container.anchor != null) {
+                        anchors.put(container.anchor, built);
+                    }
+                    onValue(built);
+                    break;
+                }
+                default:
+                    throw new UnsupportedYamlException();
+            }
+        }
+
+        private void onScalar(final ScalarEvent event) {
+            final var tag = event.getTag() == null || "!".equals(event.getTag()) ?
+                    resolver.resolve(NodeId.scalar, event.getValue(), event.getImplicit().canOmitTagInPlainScalar()) :
+                    new Tag(event.getTag());
+            if (!SCALAR_TAGS.contains(tag)) { // merge key, timestamp, binary, custom tags
+                throw new UnsupportedYamlException();
+            }
+
+            final var constructed = constructor.construct(new ScalarNode(
+                    tag, event.getValue(), event.getStartMark(), event.getEndMark(), DumperOptions.ScalarStyle.PLAIN));
+            if (!stack.isEmpty() && stack.peek().isExpectingKey()) {
+                if (constructed == null) {
+                    throw new UnsupportedYamlException();
+                }
+                stack.peek().key = String.valueOf(constructed);
+                return;
+            }
+
+            final var json = toJson(constructed);
+            if (event.getAnchor() != null) {
+                anchors.put(event.getAnchor(), json);
+            }
+            onValue(json);
+        }
+
+        private void onValue(final JsonValue json) {
+            if (stack.isEmpty()) {
+                value = json;
+                return;
+            }
+            final var parent = stack.peek();
+            if (parent.array != null) {
+                parent.array.add(json);
+            } else if (parent.key == null) { // alias or collection used as a key
+                throw new UnsupportedYamlException();
+            } else {
+                if (json != JsonValue.NULL) { // JSON-B skips null values of maps, keep the same output
+                    parent.object.add(parent.key, json);
+                }
+                parent.key = null;
+            }
+        }
+    }
+
+    private static class Container {
+        private final String anchor;
+        private final JsonArrayBuilder array;
+        private final JsonObjectBuilder object;
+        private String key;
+
+        private Container(final String anchor, final JsonArrayBuilder array, final JsonObjectBuilder object) {
+            this.anchor = anchor;
+            this.array = array;
+            this.object = object;
+        }
+
+        private boolean isExpectingKey() {
+            return object != null && key == null;
+        }
+    }
+
+    // exposes the scalar constructors without the node tracking of constructObject (it would leak since it is never reset)
+    private static class ScalarConstructor extends SafeConstructor {
+        private ScalarConstructor(final LoaderOptions options) {
+            super(options);
+        }
+
+        private Object construct(final ScalarNode node) {
+            return getConstructor(node).construct(node);
+        }
+    }
+
+    static class UnsupportedYamlException extends RuntimeException {
+        UnsupportedYamlException() {
+            super(null, null, false, false);
+        }
+    }
+}
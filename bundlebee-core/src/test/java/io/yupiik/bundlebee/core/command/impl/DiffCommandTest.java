@@ -22,6 +22,7 @@ import io.yupiik.bundlebee.core.test.http.SpyingResponseLocator;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
 import org.talend.sdk.component.junit.http.api.HttpApiHandler;
 import org.talend.sdk.component.junit.http.api.Request;
 import org.talend.sdk.component.junit.http.api.Response;
@@ -29,13 +30,32 @@ import org.talend.sdk.component.junit.http.internal.impl.ResponseImpl;
 import org.talend.sdk.component.junit.http.junit5.HttpApi;
 import org.talend.sdk.component.junit.http.junit5.HttpApiInject;
 
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import java.io.IOException;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Predicate;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import static java.util.logging.Level.INFO;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @HttpApi(useSsl = true)
 class DiffCommandTest {
@@ -105,11 +125,163 @@ class DiffCommandTest {
                 "}\n", logs.replace('\\', '/'));
     }
 
+    @Test
+    void logRecordPerDescriptor(final CommandExecutor executor, final TestInfo info) {
+        handler.setResponseLocator(newSpyingHandler(info));
+
+        final var records = new ArrayList<String>();
+        final var logger = Logger.getLogger(DiffCommand.class.getName());
+        final var recorder = new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                records.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+                // no-op
+            }
+
+            @Override
+            public void close() {
+                flush();
+            }
+        };
+        logger.addHandler(recorder);
+        try {
+            executor.wrap(null, INFO, () -> new BundleBee().launch(
+                    "diff", "--alveolus", "ApplyCommandTest.withdep", "--formatted", "false"));
+        } finally {
+            logger.removeHandler(recorder);
+        }
+        assertEquals(3, records.size(), records::toString);
+        assertEquals("Diff:", records.get(0));
+        assertTrue(records.get(1).startsWith("diff --ApplyCommandTest.apply a/bundlebee/kubernetes/ApplyCommandTest.d1.yaml"), records::toString);
+        assertTrue(records.get(2).startsWith("diff --ApplyCommandTest.withdep a/bundlebee/kubernetes/ApplyCommandTest.d2.yaml"), records::toString);
+    }
+
+    @Test
+    void jsonOutput(final CommandExecutor executor, final TestInfo info) {
+        handler.setResponseLocator(newSpyingHandler(info));
+
+        final var logs = executor.wrap(null, INFO, () -> new BundleBee().launch(
+                "diff", "--alveolus", "ApplyCommandTest.withdep", "--diffType", "JSON"));
+        final JsonObject report;
+        try (final var reader = Json.createReader(new StringReader(logs))) { // fails if not a single well formed document
+            report = reader.readObject();
+        }
+        assertEquals(List.of("ApplyCommandTest.apply", "ApplyCommandTest.withdep"), new ArrayList<>(report.keySet()));
+
+        final var apply = report.getJsonArray("ApplyCommandTest.apply");
+        assertEquals(1, apply.size());
+        assertEquals("bundlebee/kubernetes/ApplyCommandTest.d1.yaml", apply.getJsonObject(0).getString("resource").replace('\\', '/'));
+        assertEquals("https://kubernetes.bundlebee.yupiik.test/api/v1/namespaces/default/services/s", apply.getJsonObject(0).getString("remote"));
+        assertEquals(2, apply.getJsonObject(0).getJsonObject("diff").getJsonArray("clean").size());
+
+        final var withDep = report.getJsonArray("ApplyCommandTest.withdep");
+        assertEquals(1, withDep.size());
+        assertEquals("bundlebee/kubernetes/ApplyCommandTest.d2.yaml", withDep.getJsonObject(0).getString("resource").replace('\\', '/'));
+        assertEquals(JsonValue.EMPTY_JSON_OBJECT, withDep.getJsonObject(0).getJsonObject("actual"));
+    }
+
+    @Test
+    void fileOutput(@TempDir final Path work, final CommandExecutor executor, final TestInfo info) throws IOException {
+        handler.setResponseLocator(newSpyingHandler(info));
+        final var logs = executor.wrap(null, INFO, () -> new BundleBee().launch(
+                "diff", "--alveolus", "ApplyCommandTest.withdep"));
+
+        handler.setResponseLocator(newSpyingHandler(info));
+        final var output = work.resolve("out/diff.txt");
+        final var fileLogs = executor.wrap(null, INFO, () -> new BundleBee().launch(
+                "diff", "--alveolus", "ApplyCommandTest.withdep", "--outputType", "FILE", "--dumpLocation", output.toString()));
+        assertEquals("", fileLogs);
+        // same content than the log output, without the last record line separator
+        assertEquals(logs, Files.readString(output).replace('\\', '/') + '\n');
+    }
+
+    @Test
+    void maxDifferences(@TempDir final Path work, final CommandExecutor executor, final TestInfo info) throws IOException {
+        final var spyingResponseLocator = newSpyingHandler(info);
+        handler.setResponseLocator(spyingResponseLocator);
+
+        final var output = work.resolve("diff.txt");
+        final var error = assertThrows(
+                IllegalStateException.class,
+                () -> executor.wrap(null, INFO, () -> new BundleBee().launch(
+                        "diff", "--alveolus", "ApplyCommandTest.withdep",
+                        "--maxDifferences", "1", "--concurrency", "1",
+                        "--outputType", "FILE", "--dumpLocation", output.toString())));
+        assertEquals("Too much differences: 2 (maxDifferences=1)", error.getMessage());
+
+        // second descriptor is never fetched but the first one is in the report
+        assertEquals(List.of("s"), spyingResponseLocator.fetched);
+        final var report = Files.readString(output).replace('\\', '/');
+        assertTrue(report.startsWith("Diff:\ndiff --ApplyCommandTest.apply a/bundlebee/kubernetes/ApplyCommandTest.d1.yaml"), report);
+        assertFalse(report.contains("ApplyCommandTest.d2.yaml"), report);
+    }
+
+    @Test
+    void boundedReorderBuffer(@TempDir final Path work, final CommandExecutor executor, final TestInfo info) throws IOException {
+        final var names = IntStream.range(0, 6).mapToObj(i -> "svc" + i).collect(toList());
+        final var k8s = Files.createDirectories(work.resolve("bundlebee/kubernetes"));
+        for (final var name : names) {
+            Files.writeString(k8s.resolve(name + ".yaml"), "" +
+                    "apiVersion: v1\n" +
+                    "kind: Service\n" +
+                    "metadata:\n" +
+                    "  name: " + name + "\n" +
+                    "  labels:\n" +
+                    "    app: test\n");
+        }
+        final var manifest = Files.writeString(k8s.getParent().resolve("manifest.json"), "" +
+                "{\"alveoli\":[{\"name\":\"test\",\"descriptors\":[" +
+                names.stream().map(name -> "{\"name\":\"" + name + ".yaml\"}").collect(joining(",")) +
+                "]}]}");
+
+        // first resource is slow, others must not be fetched further than the concurrency while it is pending
+        final var events = new CopyOnWriteArrayList<String>();
+        handler.setResponseLocator(new StoringSpyingResponseLocator(
+                info.getTestClass().orElseThrow().getName() + "_" + info.getTestMethod().orElseThrow().getName()) {
+            @Override
+            protected Optional<Response> doFind(final Request request, final String pref, final ClassLoader loader,
+                                                final Predicate<String> headerFilter, final boolean exactMatching) {
+                if ("GET".equals(request.method())) {
+                    final var name = request.uri().substring(request.uri().lastIndexOf('/') + 1);
+                    events.add(name);
+                    if ("svc0".equals(name)) {
+                        try {
+                            Thread.sleep(500);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        events.add("svc0 done");
+                    }
+                }
+                return super.doFind(request, pref, loader, headerFilter, exactMatching);
+            }
+        });
+
+        final var logs = executor.wrap(null, INFO, () -> new BundleBee().launch(
+                "diff", "--alveolus", "test", "--manifest", manifest.toString(), "--concurrency", "2"));
+        assertTrue(events.indexOf("svc0 done") <= 2, events::toString);
+        assertEquals(names, events.stream().filter(it -> it.startsWith("svc") && !it.endsWith(" done")).sorted().collect(toList()));
+
+        // report is still in items order
+        int last = -1;
+        for (final var name : names) {
+            final int index = logs.indexOf("/services/" + name + "\n");
+            assertTrue(index > last, logs);
+            last = index;
+        }
+    }
+
     private StoringSpyingResponseLocator newSpyingHandler(final TestInfo info) {
         return new StoringSpyingResponseLocator(info.getTestClass().orElseThrow().getName() + "_" + info.getTestMethod().orElseThrow().getName());
     }
 
     private static class StoringSpyingResponseLocator extends SpyingResponseLocator {
+        private final List<String> fetched = new CopyOnWriteArrayList<>();
+
         public StoringSpyingResponseLocator(final String s) {
             super(s);
         }
@@ -122,6 +294,7 @@ class DiffCommandTest {
                     return Optional.empty();
                 case "GET":
                     final var name = request.uri().substring(request.uri().lastIndexOf('/') + 1);
+                    fetched.add(name);
                     if ("s2".equals(name)) {
                         return Optional.of(new ResponseImpl(Map.of(), 404, "missing".getBytes(StandardCharsets.UTF_8)));
                     }
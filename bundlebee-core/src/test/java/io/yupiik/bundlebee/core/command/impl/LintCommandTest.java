@@ -16,19 +16,33 @@
 package io.yupiik.bundlebee.core.command.impl;
 
 import io.yupiik.bundlebee.core.BundleBee;
+import io.yupiik.bundlebee.core.command.impl.lint.LintError;
+import io.yupiik.bundlebee.core.command.impl.lint.LintingCheck;
 import io.yupiik.bundlebee.core.test.BundleBeeExtension;
 import io.yupiik.bundlebee.core.test.CommandExecutor;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
 
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static java.util.concurrent.CompletableFuture.completedStage;
 import static java.util.logging.Level.INFO;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class LintCommandTest {
     @RegisterExtension
@@ -1552,6 +1566,172 @@ class LintCommandTest {
                 Files.readString(report));
     }
 
+    @Test
+    void cache(@TempDir final Path work, final CommandExecutor executor) throws IOException {
+        final var descriptor = "" +
+                "apiVersion: apps/v1\n" +
+                "kind: Deployment\n" +
+                "metadata:\n" +
+                "  name: cached\n" +
+                "spec:\n" +
+                "  template:\n" +
+                "    spec:\n" +
+                "      containers:\n" +
+                "        - name: app\n" +
+                "          securityContext:\n" +
+                "            runAsUser: 0\n";
+        final var lintCommand = writeAlveolus(work, descriptor);
+        final var cache = work.resolve("target/lint-cache.json");
+        final var expected = "There are linting errors:\n[test][desc.yaml] 'runAsUser' is 0\n";
+        assertOutput(executor, lintCommand, expected, "--forcedRules", "run-as-non-root", "--cache", cache.toString());
+        assertTrue(Files.exists(cache));
+
+        // unchanged descriptor, results are replayed from the cache
+        Files.writeString(cache, Files.readString(cache).replace("'runAsUser' is 0", "from cache"));
+        assertOutput(
+                executor, lintCommand,
+                "There are linting errors:\n[test][desc.yaml] from cache\n",
+                "--forcedRules", "run-as-non-root", "--cache", cache.toString());
+
+        // changed rules, cache is not used
+        assertOutput(
+                executor, lintCommand,
+                "There are linting errors:\n[test][desc.yaml] 'runAsUser' is 0\n[test][desc.yaml] No '/spec/replicas' in 'desc.yaml'\n",
+                "--forcedRules", "run-as-non-root,minimum-three-replicas", "--cache", cache.toString());
+
+        // changed descriptor, it is validated again
+        Files.writeString(cache, Files.readString(cache).replace("'runAsUser' is 0", "from cache"));
+        writeAlveolus(work, descriptor.replace("runAsUser: 0", "runAsUser: 1000"));
+        assertOutput(executor, lintCommand, "No linting error.\n", "--forcedRules", "run-as-non-root", "--cache", cache.toString());
+    }
+
+    @Test
+    void cacheContextualErrors(@TempDir final Path work, final CommandExecutor executor) throws IOException {
+        final var deployment = "" +
+                "---\n" +
+                "apiVersion: apps/v1\n" +
+                "kind: Deployment\n" +
+                "spec:\n" +
+                "  template:\n" +
+                "    spec:\n" +
+                "      containers:\n" +
+                "        - name: app\n" +
+                "          env:\n" +
+                "          - name: PORT\n" +
+                "            value: \"8080\"\n" +
+                "          envFrom:\n" +
+                "          - configMapRef:\n" +
+                "              name: \"e\"\n";
+        final var configMap = "" +
+                "---\n" +
+                "apiVersion: v1\n" +
+                "kind: ConfigMap\n" +
+                "metadata:\n" +
+                "  name: e\n" +
+                "data:\n" +
+                "  PORT: 1234\n";
+        final var lintCommand = writeAlveolus(work, deployment + configMap);
+        final var cache = work.resolve("target/lint-cache.json");
+        final var error = "Duplicated environment variables (container=app): [PORT]";
+        assertOutput(
+                executor, lintCommand, "There are linting errors:\n[test][desc.yaml] " + error + "\n",
+                "--forcedRules", "duplicate-env-var", "--cache", cache.toString());
+
+        // unchanged descriptors, afterAll results are replayed from the cache
+        Files.writeString(cache, Files.readString(cache).replace(error, "from cache"));
+        assertOutput(
+                executor, lintCommand, "There are linting errors:\n[test][desc.yaml] from cache\n",
+                "--forcedRules", "duplicate-env-var", "--cache", cache.toString());
+
+        // only the config map changed (the deployment is unchanged), contextual results are computed again
+        writeAlveolus(work, deployment + configMap.replace("PORT: 1234", "HOST: 1234"));
+        assertOutput(
+                executor, lintCommand, "No linting error.\n",
+                "--forcedRules", "duplicate-env-var", "--cache", cache.toString());
+    }
+
+    @Test
+    void checksWithoutKindsSeeAllKinds() {
+        final var any = new KindCheck("any", null);
+        final var index = new LintCommand.ChecksIndex(List.of(any, new KindCheck("deployment", Set.of("Deployment"))));
+        assertEquals(List.of(any), index.forKind("ConfigMap"));
+        assertEquals(List.of(any), index.forKind("CustomResource"));
+        assertEquals(List.of(any), index.forKind(""));
+    }
+
+    @Test
+    void checksRestrictedByKind() {
+        final var any = new KindCheck("any", null);
+        final var deployment = new KindCheck("deployment", Set.of("Deployment"));
+        final var workloads = new KindCheck("workloads", Set.of("Deployment", "StatefulSet"));
+        final var index = new LintCommand.ChecksIndex(List.of(any, deployment, workloads));
+        assertEquals(List.of(any, deployment, workloads), index.forKind("Deployment"));
+        assertEquals(List.of(any, workloads), index.forKind("StatefulSet"));
+        assertEquals(List.of(any), index.forKind("Service"));
+    }
+
+    @Test
+    void parallelOutputIsStable(@TempDir final Path work, final CommandExecutor executor) throws IOException {
+        final var names = IntStream.range(0, 8).mapToObj(i -> "desc" + i + ".yaml").collect(toList());
+        final var k8s = Files.createDirectories(work.resolve("bundlebee/kubernetes"));
+        for (final var name : names) {
+            Files.writeString(k8s.resolve(name), "" +
+                    "apiVersion: apps/v1\n" +
+                    "kind: Deployment\n" +
+                    "metadata:\n" +
+                    "  name: " + name.replace(".yaml", "") + "\n" +
+                    "spec:\n" +
+                    "  template:\n" +
+                    "    spec:\n" +
+                    "      containers:\n" +
+                    "        - name: app\n" +
+                    "          securityContext:\n" +
+                    "            runAsUser: 0\n" +
+                    "            runAsNonRoot: false\n");
+        }
+        final var manifest = Files.writeString(k8s.getParent().resolve("manifest.json"), "" +
+                "{\"alveoli\":[{\"name\":\"test\",\"descriptors\":[" +
+                // reversed to ensure the output order does not depend on the visit one
+                IntStream.range(0, names.size())
+                        .mapToObj(i -> "{\"name\":\"" + names.get(names.size() - 1 - i) + "\"}")
+                        .collect(joining(",")) +
+                "]}]}");
+        final var report = work.resolve("sarif.json");
+        final var expectedLocations = names.stream()
+                .flatMap(name -> Stream.of(name, name))
+                .map(name -> "file://" + k8s.resolve(name))
+                .collect(toList());
+        final var expectedMessages = names.stream()
+                .flatMap(name -> Stream.of("'runAsNonRoot' is false", "'runAsUser' is 0"))
+                .collect(toList());
+        String previous = null;
+        for (int i = 0; i < 5; i++) {
+            executor.wrap(null, INFO, () -> new BundleBee().launch(
+                    "lint", "--failLevel", "OFF", "--alveolus", "test", "--manifest", manifest.toString(),
+                    "--forcedRules", "run-as-non-root", "--threads", "4", "--output", report.toString()));
+            final var sarif = Files.readString(report);
+            final List<JsonObject> results;
+            try (final var reader = Json.createReader(new StringReader(sarif))) {
+                results = reader.readObject()
+                        .getJsonArray("runs").getJsonObject(0)
+                        .getJsonArray("results").stream()
+                        .map(JsonValue::asJsonObject)
+                        .collect(toList());
+            }
+            assertEquals(expectedLocations, results.stream()
+                    .map(it -> it.getJsonArray("locations").getJsonObject(0)
+                            .getJsonObject("physicalLocation").getString("artifactLocation"))
+                    .collect(toList()));
+            assertEquals(expectedMessages, results.stream()
+                    .map(it -> it.getJsonObject("text").getString("text"))
+                    .collect(toList()));
+            if (previous != null) {
+                assertEquals(previous, sarif);
+            }
+            previous = sarif;
+        }
+    }
+
     private void assertOutput(final CommandExecutor executor, final String[] lintCommand, final String expected,
                               final String... customArgs) {
         final var logs = executor.wrap(null, INFO, () -> new BundleBee().launch(
@@ -1573,4 +1753,49 @@ class LintCommandTest {
                 "}");
         return new String[]{"lint", "--failLevel", "OFF", "--alveolus", "test", "--manifest", manifest.toString()};
     }
+
+    private static class KindCheck implements LintingCheck {
+        private final String name;
+        private final Set<String> kinds;
+
+        private KindCheck(final String name, final Set<String> kinds) {
+            this.name = name;
+            this.kinds = kinds;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String description() {
+            return name;
+        }
+
+        @Override
+        public String remediation() {
+            return name;
+        }
+
+        @Override
+        public Set<String> supportedKinds() {
+            return kinds;
+        }
+
+        @Override
+        public boolean accept(final LintableDescriptor descriptor) {
+            return true;
+        }
+
+        @Override
+        public CompletionStage<Stream<LintError>> validate(final LintableDescriptor descriptor) {
+            return completedStage(Stream.empty());
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.jfr;
+
+import io.yupiik.bundlebee.core.BundleBee;
+import io.yupiik.bundlebee.core.test.BundleBeeExtension;
+import io.yupiik.bundlebee.core.test.CommandExecutor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static java.util.logging.Level.INFO;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JfrRecorderTest {
+    @RegisterExtension
+    BundleBeeExtension extension = new BundleBeeExtension();
+
+    @Test
+    void record(final CommandExecutor executor, @TempDir final Path work) throws IOException {
+        final var output = work.resolve("bundlebee.jfr");
+        executor.wrap(null, INFO, () -> new BundleBee()
+                .launch("process",
+                        "--alveolus", "ApplyCommandTest.apply",
+                        "--kubeconfig", "explicit",
+                        "--bundlebee.process.injectTimestamp", "false",
+                        "--bundlebee.jfr.enabled", "true",
+                        "--bundlebee.jfr.output", output.toString()));
+
+        final var events = RecordingFile.readAllEvents(output).stream()
+                .filter(it -> it.getEventType().getName().startsWith("io.yupiik.bundlebee."))
+                .collect(toList());
+        final var prepare = events.stream()
+                .filter(it -> "io.yupiik.bundlebee.DescriptorPrepare".equals(it.getEventType().getName()))
+                .collect(toList());
+        assertEquals(1, prepare.size(), events::toString);
+        assertEquals("ApplyCommandTest.d1", prepare.get(0).getString("descriptor"));
+        assertEquals("ApplyCommandTest.apply", prepare.get(0).getString("alveolus"));
+        assertTrue(events.stream()
+                .map(RecordedEvent::getEventType)
+                .anyMatch(it -> "io.yupiik.bundlebee.Substitution".equals(it.getName())), events::toString);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.json;
+
+import org.junit.jupiter.api.Test;
+
+import javax.json.JsonObject;
+import javax.json.spi.JsonProvider;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StructuralJsonDiffTest {
+    private final JsonProvider provider = JsonProvider.provider();
+    private final StructuralJsonDiff differ = new StructuralJsonDiff(
+            provider.createBuilderFactory(Map.of()), List.of("/metadata/uid", "/status"), List.of("name", "containerPort"), List.of("env"));
+
+    @Test
+    void sameAsJsonPatchForObjects() {
+        assertEquals(
+                "[{\"op\":\"remove\",\"path\":\"/metadata/labels/old\"}," +
+                        "{\"op\":\"replace\",\"path\":\"/metadata/name\",\"value\":\"b\"}," +
+                        "{\"op\":\"add\",\"path\":\"/spec\",\"value\":{\"a\":1,\"b\":{\"c\":true}}}]",
+                differ.diff(
+                        read("{\"metadata\":{\"name\":\"a\",\"uid\":\"1\",\"labels\":{\"old\":\"x\"}},\"status\":{\"ok\":true}}"),
+                        read("{\"metadata\":{\"name\":\"b\",\"labels\":{}},\"spec\":{\"b\":{\"c\":true,\"d\":null},\"a\":1}}"),
+                        null).toString());
+    }
+
+    @Test
+    void ignoredAndNullsAreNotDifferences() {
+        assertEquals("[]", differ.diff(
+                read("{\"metadata\":{\"name\":\"a\",\"uid\":\"1\"},\"spec\":{\"x\":1},\"status\":{\"ok\":true}}"),
+                read("{\"metadata\":{\"name\":\"a\",\"annotations\":null},\"spec\":{\"x\":1}}"),
+                null).toString());
+    }
+
+    @Test
+    void keyedArrays() {
+        assertEquals(
+                "[{\"op\":\"replace\",\"path\":\"/spec/containers/1/env/0/value\",\"value\":\"2\"}," +
+                        "{\"op\":\"remove\",\"path\":\"/spec/containers/0\"}," +
+                        "{\"op\":\"add\",\"path\":\"/spec/containers/-\",\"value\":{\"name\":\"c\"}}]",
+                differ.diff(
+                        read("{\"spec\":{\"containers\":[{\"name\":\"a\"},{\"name\":\"b\",\"env\":[{\"name\":\"E\",\"value\":\"1\"}]}]}}"),
+                        read("{\"spec\":{\"containers\":[{\"name\":\"c\"},{\"name\":\"b\",\"env\":[{\"name\":\"E\",\"value\":\"2\"}]}]}}"),
+                        null).toString());
+    }
+
+    @Test
+    void reorderedKeyedArray() {
+        assertEquals("[]", differ.diff(
+                read("{\"ports\":[{\"containerPort\":80},{\"containerPort\":443}]}"),
+                read("{\"ports\":[{\"containerPort\":443},{\"containerPort\":80}]}"),
+                null).toString());
+        assertEquals( // no key so by index
+                "[{\"op\":\"replace\",\"path\":\"/args/0\",\"value\":\"b\"},{\"op\":\"replace\",\"path\":\"/args/1\",\"value\":\"a\"}]",
+                differ.diff(read("{\"args\":[\"a\",\"b\"]}"), read("{\"args\":[\"b\",\"a\"]}"), null).toString());
+    }
+
+    @Test
+    void orderedArray() {
+        assertEquals(
+                "[{\"op\":\"replace\",\"path\":\"/containers/0/env/0/name\",\"value\":\"B\"}," +
+                        "{\"op\":\"replace\",\"path\":\"/containers/0/env/0/value\",\"value\":\"$(A)\"}," +
+                        "{\"op\":\"replace\",\"path\":\"/containers/0/env/1/name\",\"value\":\"A\"}," +
+                        "{\"op\":\"replace\",\"path\":\"/containers/0/env/1/value\",\"value\":\"a\"}]",
+                differ.diff(
+                        read("{\"containers\":[{\"name\":\"c\",\"env\":[{\"name\":\"A\",\"value\":\"a\"},{\"name\":\"B\",\"value\":\"$(A)\"}]}]}"),
+                        read("{\"containers\":[{\"name\":\"c\",\"env\":[{\"name\":\"B\",\"value\":\"$(A)\"},{\"name\":\"A\",\"value\":\"a\"}]}]}"),
+                        null).toString());
+    }
+
+    @Test
+    void filter() {
+        assertEquals(
+                "[{\"op\":\"add\",\"path\":\"/b\",\"value\":1}]",
+                differ.diff(read("{\"a\":{}}"), read("{\"b\":1}"), (op, source) -> source == null || !source.asJsonObject().isEmpty()).toString());
+    }
+
+    private JsonObject read(final String json) {
+        try (final var reader = provider.createReader(new StringReader(json))) {
+            return reader.readObject();
+        }
+    }
+}
@@ -15,7 +15,9 @@
  */
 package io.yupiik.bundlebee.core.kube;
 
+import io.yupiik.bundlebee.core.descriptor.Manifest;
 import io.yupiik.bundlebee.core.lang.Substitutor;
+import io.yupiik.bundlebee.core.service.AlveolusHandler;
 import io.yupiik.bundlebee.core.test.http.SpyingResponseLocator;
 import org.apache.openwebbeans.junit5.Cdi;
 import org.junit.jupiter.api.Test;
@@ -28,12 +30,27 @@ import org.talend.sdk.component.junit.http.junit5.HttpApi;
 import org.talend.sdk.component.junit.http.junit5.HttpApiInject;
 
 import javax.inject.Inject;
+import javax.json.JsonObject;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toSet;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @HttpApi(useSsl = true)
 @Cdi
@@ -102,6 +119,83 @@ class KubeClientTest {
         assertEquals(201, mocks.get(1).status());
     }
 
+    @Test
+    void parseDescriptorOnce() throws Exception {
+        final var descriptor = new AlveolusHandler.LoadedDescriptor(
+                new Manifest.Descriptor(), "apiVersion: v1\nkind: ConfigMap\nmetadata:\n  name: test-config\n", "yaml", null, null);
+        assertNull(descriptor.getJson());
+
+        final var json = client.toJson(descriptor);
+        assertSame(json, descriptor.getJson());
+        assertSame(json, client.toJson(descriptor));
+        assertEquals(List.of("test-config"), client.forDescriptor(
+                        null, descriptor, it -> completedFuture(it.getJsonObject("metadata").getString("name")))
+                .toCompletableFuture().get());
+        assertEquals(64, descriptor.getDigest().length());
+    }
+
+    @Test
+    void streamingMultiDocuments() throws Exception {
+        // bigger than bundlebee.kube.streaming.threshold default value
+        final var yaml = IntStream.range(0, 4_000)
+                .mapToObj(i -> "" +
+                        "apiVersion: v1\n" +
+                        "kind: ConfigMap\n" +
+                        "metadata:\n" +
+                        "  name: config-" + i + "\n" +
+                        "data:\n" +
+                        "  value: \"" + "x".repeat(256) + "\"\n")
+                .collect(joining("---\n", "", "---\n"));
+        final var names = client.forDescriptor(null, yaml, "yaml",
+                        json -> completedFuture(json.getJsonObject("metadata").getString("name")))
+                .toCompletableFuture().get();
+        assertEquals(4_000, names.size());
+        assertEquals(IntStream.range(0, 4_000).mapToObj(i -> "config-" + i).collect(toSet()), Set.copyOf(names));
+
+        final var json = IntStream.range(0, 4_000)
+                .mapToObj(i -> "{\"kind\":\"ConfigMap\",\"metadata\":{\"name\":\"config-" + i + "\"},\"data\":{\"value\":\"" + "x".repeat(256) + "\"}}")
+                .collect(joining(",", "[", "]"));
+        assertEquals(4_000, client.forDescriptor(null, json, "json", it -> completedFuture(it.getString("kind")))
+                .toCompletableFuture().get().size());
+    }
+
+    @Test
+    void legacyApplyOverride() {
+        assertFalse(KubeClient.overridesLegacyApply(KubeClient.class));
+        assertFalse(KubeClient.overridesLegacyApply(client.getClass()));
+        assertTrue(KubeClient.overridesLegacyApply(LegacyApply.class));
+        assertTrue(KubeClient.overridesLegacyApply(ChildOfLegacyApply.class));
+    }
+
+    @Test
+    void streamingValidatesBeforeHandling() {
+        final var handled = new AtomicInteger();
+        final var yaml = IntStream.range(0, 4_000)
+                .mapToObj(i -> "" +
+                        "apiVersion: v1\n" +
+                        "kind: ConfigMap\n" +
+                        "metadata:\n" +
+                        "  name: config-" + i + "\n" +
+                        "data:\n" +
+                        "  value: \"" + "x".repeat(256) + "\"\n")
+                .collect(joining("---\n", "", "---\n")) +
+                "invalid: [\n"; // late error
+        assertThrows(RuntimeException.class, () -> client.forDescriptor(null, yaml, "yaml", json -> {
+            handled.incrementAndGet();
+            return completedFuture(null);
+        }));
+        assertEquals(0, handled.get());
+
+        final var json = IntStream.range(0, 4_000)
+                .mapToObj(i -> "{\"kind\":\"ConfigMap\",\"metadata\":{\"name\":\"config-" + i + "\"},\"data\":{\"value\":\"" + "x".repeat(256) + "\"}}")
+                .collect(joining(",", "[", ",\"not an object\"]"));
+        assertThrows(IllegalArgumentException.class, () -> client.forDescriptor(null, json, "json", it -> {
+            handled.incrementAndGet();
+            return completedFuture(null);
+        }));
+        assertEquals(0, handled.get());
+    }
+
     @Test
     void customLabels(final TestInfo info) throws Exception {
         final var spyingResponseLocator = new SpyingResponseLocator(
@@ -171,4 +265,16 @@ class KubeClientTest {
                     new String(mocks.get(1).payload(), StandardCharsets.UTF_8));
         }
     }
+
+    private static class LegacyApply extends KubeClient {
+        @Override
+        protected CompletionStage<HttpResponse<String>> doApply(final JsonObject rawDesc, final JsonObject preparedDesc,
+                                                              final String kindLowerCased, final int retry,
+                                                              final boolean skipGet) {
+            return super.doApply(rawDesc, preparedDesc, kindLowerCased, retry, skipGet);
+        }
+    }
+
+    private static class ChildOfLegacyApply extends LegacyApply {
+    }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.kube;
+
+import org.junit.jupiter.api.Test;
+
+import javax.json.JsonObject;
+import javax.json.spi.JsonProvider;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MinimalMergePatchTest {
+    private final JsonProvider provider = JsonProvider.provider();
+    private final MinimalMergePatch patch = new MinimalMergePatch(
+            provider.createBuilderFactory(Map.of()), Set.of("/metadata/labels/bundlebee.timestamp"));
+
+    @Test
+    void onlyChanges() {
+        assertEquals(
+                "{\"spec\":{\"template\":{\"spec\":{\"containers\":[{\"name\":\"app\",\"image\":\"app:2\"}]}}}}",
+                patch.compute(
+                        read("{\"apiVersion\":\"apps/v1\",\"kind\":\"Deployment\"," +
+                                "\"metadata\":{\"name\":\"app\",\"uid\":\"123\",\"resourceVersion\":\"5\"}," +
+                                "\"spec\":{\"replicas\":1.0,\"template\":{\"spec\":{\"containers\":[{\"name\":\"app\",\"image\":\"app:1\"}]}}}," +
+                                "\"status\":{\"replicas\":1}}"),
+                        read("{\"apiVersion\":\"apps/v1\",\"kind\":\"Deployment\"," +
+                                "\"metadata\":{\"name\":\"app\"}," +
+                                "\"spec\":{\"replicas\":1,\"template\":{\"spec\":{\"containers\":[{\"name\":\"app\",\"image\":\"app:2\"}]}}}}"))
+                        .toString());
+    }
+
+    @Test
+    void ignoredPointersAreSent() {
+        assertEquals(
+                "{\"metadata\":{\"labels\":{\"bundlebee.timestamp\":\"1\"}},\"data\":{\"added\":\"true\"}}",
+                patch.compute(
+                        read("{\"metadata\":{\"name\":\"c\",\"labels\":{\"bundlebee.timestamp\":\"1\",\"app\":\"c\"}},\"data\":{\"foo\":\"bar\"}}"),
+                        read("{\"metadata\":{\"name\":\"c\",\"labels\":{\"bundlebee.timestamp\":\"1\",\"app\":\"c\"}}," +
+                                "\"data\":{\"foo\":\"bar\",\"added\":\"true\",\"dropped\":null}}"))
+                        .toString());
+    }
+
+    @Test
+    void noChange() {
+        final var json = read("{\"metadata\":{\"name\":\"c\"},\"data\":{\"foo\":\"bar\"}}");
+        assertEquals("{}", patch.compute(json, json).toString());
+    }
+
+    private JsonObject read(final String json) {
+        try (final var reader = provider.createReader(new StringReader(json))) {
+            return reader.readObject();
+        }
+    }
+}
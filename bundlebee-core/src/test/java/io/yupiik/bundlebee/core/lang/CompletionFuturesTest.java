@@ -15,6 +15,7 @@
  */
 package io.yupiik.bundlebee.core.lang;
 
+import io.yupiik.bundlebee.lang.CompletionFutures;
 import org.junit.jupiter.api.Test;
 
 import java.util.Iterator;
@@ -22,14 +23,18 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import static io.yupiik.bundlebee.lang.CompletionFutures.chain;
 import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class CompletionFuturesTest {
     @Test
@@ -135,4 +140,49 @@ class CompletionFuturesTest {
         ).iterator(), false).toCompletableFuture().get();
         assertEquals(2, counter.get());
     }
+
+    @Test
+    void bounded() throws ExecutionException, InterruptedException {
+        final var running = new AtomicInteger();
+        final var maxRunning = new AtomicInteger();
+        final var tasks = IntStream.range(0, 50)
+                .mapToObj(i -> (Supplier<CompletionStage<Integer>>) () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    return CompletableFuture.supplyAsync(() -> {
+                        running.decrementAndGet();
+                        return i;
+                    }, CompletableFuture.delayedExecutor(1, TimeUnit.MILLISECONDS));
+                })
+                .iterator();
+        final var result = CompletionFutures.bounded(tasks, 4, toList(), true).toCompletableFuture().get();
+        assertEquals(IntStream.range(0, 50).boxed().collect(toList()), result.stream().sorted().collect(toList()));
+        assertTrue(maxRunning.get() <= 4, () -> "max=" + maxRunning.get());
+    }
+
+    @Test
+    void boundedSynchronousDoesNotOverflow() throws ExecutionException, InterruptedException {
+        final var tasks = IntStream.range(0, 100_000)
+                .mapToObj(i -> (Supplier<CompletionStage<Integer>>) () -> completedFuture(i))
+                .iterator();
+        assertEquals(100_000, CompletionFutures.bounded(tasks, 1, toList(), true).toCompletableFuture().get().size());
+    }
+
+    @Test
+    void boundedErrors() {
+        final var counter = new AtomicInteger();
+        final var tasks = IntStream.range(0, 5)
+                .mapToObj(i -> (Supplier<CompletionStage<Integer>>) () -> {
+                    counter.incrementAndGet();
+                    if (i == 1) {
+                        throw new IllegalArgumentException("test error");
+                    }
+                    return completedFuture(i);
+                })
+                .iterator();
+        assertEquals(
+                "test error",
+                assertThrows(ExecutionException.class, () -> CompletionFutures.bounded(tasks, 2, toList(), true)
+                        .toCompletableFuture().get()).getCause().getMessage());
+        assertEquals(5, counter.get()); // like all(), other tasks are still executed
+    }
 }
@@ -36,6 +36,7 @@ import java.lang.annotation.Annotation;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
@@ -181,6 +182,15 @@ class SubstitutorProducerTest {
                 substitutor.getOrDefault("jsr223:'was executed properly';", "failed"));
     }
 
+    @Test
+    void jsr223FreshBindings() {
+        final var placeholder = "{{jsr223:var r = typeof counter === 'undefined' ? 'fresh' : 'leaked'; counter = 1; r;}}";
+        // different executions to bypass memoization, the compiled script is reused with new bindings
+        for (int i = 0; i < 3; i++) {
+            assertEquals("fresh", substitutor.replace(placeholder, "jsr223-" + i));
+        }
+    }
+
     @Test
     void logResolutions() {
         final var logger = Logger.getLogger(SubstitutorProducer.class.getName());
@@ -250,6 +260,24 @@ class SubstitutorProducerTest {
                 substitutor.replace("{{bundlebee-strip-trailing:{{bundlebee-indent:4:{{bundlebee-inline-file:" + file + "}}}}}}", null));
     }
 
+    @Test
+    void memoizedFileInvalidatedByModification(@TempDir final Path root) throws IOException {
+        final var file = root.resolve("memo.txt");
+        Files.writeString(file, "first");
+        final var lastModified = Files.getLastModifiedTime(file);
+        final var placeholder = "{{bundlebee-inline-file:" + file + "}}";
+        assertEquals("first", substitutor.replace(placeholder, "memo"));
+
+        // same timestamp so memoized value is reused
+        Files.writeString(file, "second");
+        Files.setLastModifiedTime(file, lastModified);
+        assertEquals("first", substitutor.replace(placeholder, "memo"));
+        assertEquals("second", substitutor.replace(placeholder, "other-execution"));
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 10_000));
+        assertEquals("second", substitutor.replace(placeholder, "memo"));
+    }
+
     @Test
     void inlineFileFromFile(@TempDir final Path root) throws IOException {
         final var file = root.resolve("test.txt");
@@ -15,6 +15,8 @@
  */
 package io.yupiik.bundlebee.core.lang;
 
+import io.yupiik.bundlebee.core.descriptor.Manifest;
+import io.yupiik.bundlebee.core.service.AlveolusHandler;
 import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.spi.ConfigSource;
 import org.junit.jupiter.api.Disabled;
@@ -22,9 +24,18 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
+import static java.util.Locale.ROOT;
 import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.joining;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class SubstitutorTest {
@@ -123,4 +134,73 @@ class SubstitutorTest {
             }
         }).replace("{{{{name}}.resources.limits.cpu:-{{resources.limits.cpu:-1}}}}", null));
     }
+
+    @Test
+    void manyPlaceholders() {
+        final var source = IntStream.range(0, 500)
+                .mapToObj(i -> "key" + i + ": {{value" + i + ":-default" + i + "}}")
+                .collect(joining("\n"));
+        final var substitutor = new Substitutor(k -> k.endsWith("0") ? k.toUpperCase(ROOT) : null);
+        final var expected = IntStream.range(0, 500)
+                .mapToObj(i -> "key" + i + ": " + (i % 10 == 0 ? "VALUE" + i : "default" + i))
+                .collect(joining("\n"));
+        assertEquals(expected, substitutor.replace(source, null));
+        assertEquals(expected, substitutor.replace(source, null)); // cached template
+    }
+
+    @Test
+    void recursiveValue() {
+        assertEquals("a-b-c", new Substitutor(k -> {
+            switch (k) {
+                case "first":
+                    return "a-{{second}}";
+                case "second":
+                    return "b-{{third:-c}}";
+                default:
+                    return null;
+            }
+        }).replace("{{first}}", null));
+    }
+
+    @Test
+    void unclosed() {
+        assertEquals("foo {{bar replaced", new Substitutor(k -> "key".equals(k) ? "replaced" : null).replace("foo {{bar {{key}}", null));
+        assertEquals("foo {{bar", new Substitutor(k -> null).replace("foo {{bar", null));
+        assertEquals("replaced}", new Substitutor(k -> "key".equals(k) ? "replaced" : null).replace("{{key}}}", null));
+    }
+
+    @Test
+    void handlebars() {
+        final var substitutor = new Substitutor(k -> "key".equals(k) ? "replaced" : null);
+        final var template = "name={{descriptor.name}}, id={{executionId}}, key={{key}}, base64={{base64 executionId}}";
+        for (final var name : List.of("first", "second")) {
+            final var descriptorConfiguration = new Manifest.Descriptor();
+            descriptorConfiguration.setName(name);
+            final var descriptor = new AlveolusHandler.LoadedDescriptor(descriptorConfiguration, template, "hb", null, null);
+            final var alveolus = new Manifest.Alveolus();
+            alveolus.setName("test");
+            assertEquals(
+                    "name=" + name + ", id=" + name + "-id, key=replaced, base64=" + Base64.getEncoder().encodeToString((name + "-id").getBytes(StandardCharsets.UTF_8)),
+                    substitutor.replace(alveolus, descriptor, template, name + "-id"));
+        }
+    }
+
+    @Test
+    void prefetch() throws ExecutionException, InterruptedException {
+        final var resolved = new ConcurrentHashMap<String, String>();
+        final var substitutor = new Substitutor(resolved::get) {
+            @Override
+            protected CompletionStage<?> resolveAsync(final String varName, final String id) {
+                if (!varName.startsWith("remote.")) {
+                    return null;
+                }
+                return CompletableFuture.runAsync(() -> resolved.put(varName, varName.toUpperCase(ROOT)));
+            }
+        };
+        assertEquals(
+                "a=REMOTE.A, b=REMOTE.B, c=c",
+                substitutor.replaceAsync(null, null, "a={{remote.a}}, b={{missing:-{{remote.b}}}}, c={{local:-c}}", "test")
+                        .toCompletableFuture().get());
+        assertEquals(Set.of("remote.a", "remote.b"), resolved.keySet());
+    }
 }
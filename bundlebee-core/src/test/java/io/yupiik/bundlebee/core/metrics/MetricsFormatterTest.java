@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.metrics;
+
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.spi.JsonProvider;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class MetricsFormatterTest {
+    private final MetricsFormatter formatter = new MetricsFormatter(JsonProvider.provider());
+
+    @Test
+    void sameMetricForSameLabels() {
+        final var registry = new MetricRegistry();
+        assertSame(
+                registry.counter("requests", "", "verb", "GET", "kind", "pods"),
+                registry.counter("requests", "", "kind", "pods", "verb", "GET"));
+    }
+
+    @Test
+    void prometheus() {
+        final var registry = new MetricRegistry();
+        registry.counter("bundlebee_requests_total", "Requests.", "verb", "GET").add(3);
+        registry.counter("bundlebee_requests_total", "Requests.", "verb", "POST").increment();
+        registry.gauge("bundlebee_pending", "Pending.").set(2);
+        registry.histogram("bundlebee_duration_microseconds", "Durations.").record(10);
+
+        final var out = new StringWriter();
+        formatter.writePrometheus(registry, out);
+        assertEquals("" +
+                "# HELP bundlebee_duration_microseconds Durations.\n" +
+                "# TYPE bundlebee_duration_microseconds summary\n" +
+                "bundlebee_duration_microseconds{quantile=\"0.5\"} 10\n" +
+                "bundlebee_duration_microseconds{quantile=\"0.9\"} 10\n" +
+                "bundlebee_duration_microseconds{quantile=\"0.99\"} 10\n" +
+                "bundlebee_duration_microseconds_sum 10\n" +
+                "bundlebee_duration_microseconds_count 1\n" +
+                "# HELP bundlebee_pending Pending.\n" +
+                "# TYPE bundlebee_pending gauge\n" +
+                "bundlebee_pending 2\n" +
+                "# HELP bundlebee_requests_total Requests.\n" +
+                "# TYPE bundlebee_requests_total counter\n" +
+                "bundlebee_requests_total{verb=\"GET\"} 3\n" +
+                "bundlebee_requests_total{verb=\"POST\"} 1\n" +
+                "", out.toString());
+    }
+
+    @Test
+    void json() {
+        final var registry = new MetricRegistry();
+        registry.counter("bundlebee_requests_total", "Requests.", "verb", "GET").add(3);
+
+        final var out = new StringWriter();
+        formatter.writeJson(registry, out);
+        final JsonObject json;
+        try (final var reader = Json.createReader(new StringReader(out.toString()))) {
+            json = reader.readObject();
+        }
+        final var metric = json.getJsonArray("metrics").getJsonObject(0);
+        assertEquals("bundlebee_requests_total", metric.getString("name"));
+        assertEquals("counter", metric.getString("type"));
+        assertEquals("GET", metric.getJsonObject("labels").getString("verb"));
+        assertEquals(3, metric.getInt("value"));
+    }
+}
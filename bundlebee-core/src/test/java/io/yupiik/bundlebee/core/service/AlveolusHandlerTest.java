@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.core.configuration.ThreadLocalConfigSource;
+import io.yupiik.bundlebee.core.test.http.SpyingResponseLocator;
+import org.apache.openwebbeans.junit5.Cdi;
+import org.eclipse.microprofile.config.Config;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import org.talend.sdk.component.junit.http.api.HttpApiHandler;
+import org.talend.sdk.component.junit.http.api.Request;
+import org.talend.sdk.component.junit.http.api.Response;
+import org.talend.sdk.component.junit.http.internal.impl.ResponseImpl;
+import org.talend.sdk.component.junit.http.junit5.HttpApi;
+import org.talend.sdk.component.junit.http.junit5.HttpApiInject;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.StreamSupport.stream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@HttpApi(useSsl = true)
+@Cdi
+class AlveolusHandlerTest {
+    @HttpApiInject
+    private HttpApiHandler<?> handler;
+
+    @Inject
+    private AlveolusHandler alveolusHandler;
+
+    @Inject
+    private ArchiveReader archives;
+
+    @Inject
+    private Config config;
+
+    @Test
+    void remotePlaceholdersKeepCallerContext(@TempDir final Path work, final TestInfo info) throws Exception {
+        handler.setResponseLocator(new SpyingResponseLocator(
+                info.getTestClass().orElseThrow().getName() + "_" + info.getTestMethod().orElseThrow().getName()) {
+            @Override
+            protected Optional<Response> doFind(final Request request, final String pref, final ClassLoader loader,
+                                                final Predicate<String> headerFilter, final boolean exactMatching) {
+                if ("CONNECT".equals(request.method())) {
+                    return Optional.empty();
+                }
+                return Optional.of(new ResponseImpl(Map.of(), 404, "{}".getBytes(StandardCharsets.UTF_8)));
+            }
+        });
+
+        final var manifest = writeAlveolus(work);
+        final var threadLocalConfigSource = stream(config.getConfigSources().spliterator(), false)
+                .filter(ThreadLocalConfigSource.class::isInstance)
+                .map(ThreadLocalConfigSource.class::cast)
+                .findFirst()
+                .orElseThrow();
+
+        final var seen = new CopyOnWriteArrayList<String>();
+        threadLocalConfigSource.withContext(Map.of("test.caller", "the-caller"), () -> {
+            try {
+                final var alveoli = alveolusHandler.findRootAlveoli("auto", manifest.toString(), "test", null)
+                        .toCompletableFuture().get();
+                final var it = alveoli.get(0);
+                alveolusHandler.executeOnceOnAlveolus(
+                                null, it.getManifest(), it.getAlveolus(), null,
+                                (ctx, desc) -> {
+                                    seen.add(desc.getContent().strip());
+                                    seen.add(config.getOptionalValue("test.caller", String.class).orElse("missing"));
+                                    return completedFuture(null);
+                                },
+                                archives.newCache(), null, "tested", null)
+                        .toCompletableFuture().get();
+                return null;
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertEquals(List.of("value: fallback-from-alveolus", "the-caller"), seen);
+    }
+
+    private Path writeAlveolus(final Path work) throws IOException {
+        final var k8s = Files.createDirectories(work.resolve("bundlebee/kubernetes"));
+        Files.writeString(k8s.resolve("desc.yaml"), "" +
+                "value: {{kubernetes.default.serviceaccount.missing.secrets.missing.data.token.1:-fallback}}-{{local}}\n");
+        return Files.writeString(k8s.getParent().resolve("manifest.json"), "" +
+                "{\n" +
+                "  \"alveoli\": [\n" +
+                "    {\n" +
+                "      \"name\": \"test\",\n" +
+                "      \"placeholders\": {\"local\": \"from-alveolus\"},\n" +
+                "      \"descriptors\": [{\"name\": \"desc.yaml\", \"interpolate\": true}]\n" +
+                "    }\n" +
+                "  ]\n" +
+                "}");
+    }
+}
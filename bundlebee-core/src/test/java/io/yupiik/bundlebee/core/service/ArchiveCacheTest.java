@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import org.apache.openwebbeans.junit5.Cdi;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+@Cdi
+class ArchiveCacheTest {
+    @Inject
+    private ArchiveReader reader;
+
+    @Inject
+    private ArchiveCache cache;
+
+    @Inject
+    private MetricRegistry metrics;
+
+    @Test
+    void reuseDecodedEntries(@TempDir final Path dir) throws IOException {
+        cache.clear();
+        final var zip = dir.resolve("test.zip");
+        write(zip, "kind: Service");
+        final var hits = count("hit");
+
+        final var first = reader.read("test", zip, null);
+        final var second = reader.read("test", zip, null);
+        assertEquals(hits + 1, count("hit"));
+        assertEquals("kind: Service", second.getDescriptors().get("bundlebee/kubernetes/foo.yaml"));
+        // manifest is still read per call since it depends on the configuration (placeholders)
+        assertNotSame(first.getManifest(), second.getManifest());
+
+        // archive updated, ensure it is reloaded
+        final var stales = count("stale");
+        write(zip, "kind: ConfigMap");
+        Files.setLastModifiedTime(zip, FileTime.fromMillis(Files.getLastModifiedTime(zip).toMillis() + 1_000));
+        assertEquals("kind: ConfigMap", reader.read("test", zip, null).getDescriptors().get("bundlebee/kubernetes/foo.yaml"));
+        assertEquals(stales + 1, count("stale"));
+    }
+
+    private long count(final String result) {
+        return metrics.counter("bundlebee_archive_global_cache_requests_total", "", "result", result).get();
+    }
+
+    private void write(final Path zip, final String descriptor) throws IOException {
+        try (final var out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("bundlebee/manifest.json"));
+            out.write("{\"alveoli\":[{\"name\":\"test\",\"descriptors\":[{\"name\":\"foo\"}]}]}".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("bundlebee/kubernetes/foo.yaml"));
+            out.write(descriptor.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+    }
+}
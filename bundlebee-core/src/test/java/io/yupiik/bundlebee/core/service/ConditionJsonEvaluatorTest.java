@@ -48,6 +48,14 @@ class ConditionJsonEvaluatorTest {
             "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v\",\"value\":\"foo\"}','{\"v\":\"foo\"}',true",
             "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v\",\"value\":\"foo\"}','{\"v\":\"bar\"}',false",
             "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v\",\"value\":\"foo\"}','{}',false",
+            "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v\",\"value\":\"1.0\"}','{\"v\":1}',true",
+            "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v\",\"value\":\"2\"}','{\"v\":1}',false",
+            "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v\",\"value\":\"true\"}','{\"v\":true}',true",
+            "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v\",\"value\":\"true\"}','{\"v\":\"true\"}',true",
+            "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v/1/a~1b\",\"value\":\"x\"}','{\"v\":[{},{\"a/b\":\"x\"}]}',true",
+            "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v/2\",\"value\":\"x\"}','{\"v\":[{}]}',false",
+            "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v\",\"operatorType\":\"NOT_EQUALS\",\"value\":\"foo\"}','{\"v\":\"bar\"}',true",
+            "'{\"type\":\"JSON_POINTER\",\"pointer\":\"/v\",\"operatorType\":\"CONTAINS\",\"value\":\"oo\"}','{\"v\":\"foo\"}',true",
             "'{\"type\":\"STATUS_CONDITION\",\"conditionType\":\"Ready\",\"value\":\"true\"}','{\"status\":{\"conditions\":[{\"type\":\"Ready\",\"status\":true}]}}',true",
             "'{\"type\":\"STATUS_CONDITION\",\"conditionType\":\"Ready\",\"value\":\"true\"}','{\"status\":{\"conditions\":[{\"type\":\"Foo\",\"status\":true},{\"type\":\"Ready\",\"status\":true}]}}',true",
             "'{\"type\":\"STATUS_CONDITION\",\"conditionType\":\"Ready\",\"value\":\"true\"}','{\"status\":{\"conditions\":[{\"type\":\"Foo\",\"status\":true},{\"type\":\"Ready\",\"status\":false}]}}',false",
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LazyZipTest {
+    @Test
+    void read(@TempDir final Path dir) throws IOException {
+        final var location = write(dir.resolve("test.zip"));
+        final var zip = LazyZip.open(location, name -> name.startsWith("bundlebee/"));
+        assertFalse(zip.isMapped());
+        assertEquals(Set.of("bundlebee/manifest.json", "bundlebee/kubernetes/deflated.yaml", "bundlebee/kubernetes/stored.yaml"), zip.names());
+        assertFalse(zip.contains("META-INF/MANIFEST.MF"));
+        assertNull(zip.bytes("META-INF/MANIFEST.MF"));
+
+        assertEquals("{}", new String(zip.bytes("bundlebee/manifest.json"), StandardCharsets.UTF_8));
+        assertSame(zip.bytes("bundlebee/manifest.json"), zip.bytes("bundlebee/manifest.json"));
+        assertDescriptors(zip);
+    }
+
+    @Test
+    void mapped(@TempDir final Path dir) throws IOException {
+        final var zip = LazyZip.open(write(dir.resolve("test.zip")), name -> name.startsWith("bundlebee/"), 0);
+        assertTrue(zip.isMapped());
+        assertDescriptors(zip);
+    }
+
+    private void assertDescriptors(final LazyZip zip) {
+        final var descriptors = zip.texts(name -> name.startsWith("bundlebee/kubernetes/"));
+        assertEquals(Map.of(
+                "bundlebee/kubernetes/deflated.yaml", "kind: Service\n".repeat(100).strip(),
+                "bundlebee/kubernetes/stored.yaml", "kind: ConfigMap\nmetadata: {}"), new TreeMap<>(descriptors));
+        assertNull(descriptors.get("bundlebee/manifest.json"));
+    }
+
+    private Path write(final Path location) throws IOException {
+        try (final var out = new ZipOutputStream(Files.newOutputStream(location))) {
+            out.putNextEntry(new ZipEntry("bundlebee/"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("bundlebee/manifest.json"));
+            out.write("{}".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("bundlebee/kubernetes/deflated.yaml"));
+            out.write("kind: Service\n".repeat(100).getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(stored("bundlebee/kubernetes/stored.yaml", "kind: ConfigMap\r\nmetadata: {}\r\n"));
+            out.write("kind: ConfigMap\r\nmetadata: {}\r\n".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return location;
+    }
+
+    private ZipEntry stored(final String name, final String content) {
+        final var bytes = content.getBytes(StandardCharsets.UTF_8);
+        final var crc = new CRC32();
+        crc.update(bytes);
+
+        final var entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes.length);
+        entry.setCompressedSize(bytes.length);
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+}
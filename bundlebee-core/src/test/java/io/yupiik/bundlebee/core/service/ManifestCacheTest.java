@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.core.descriptor.Manifest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.json.Json;
+import javax.json.spi.JsonProvider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ManifestCacheTest {
+    @Test
+    void roundTrip(@TempDir final Path work) {
+        final var cache = newCache(work);
+        final var manifest = newManifest();
+        cache.store("loc", "id", "{}", List.of(), manifest, List.of());
+
+        final var loaded = cache.load("loc", "id", "{}", path -> {
+            throw new IllegalStateException("no reference");
+        });
+        assertNotSame(manifest, loaded.getManifest());
+        assertEquals(manifest, loaded.getManifest());
+        assertEquals(List.of(), loaded.getReferences());
+    }
+
+    @Test
+    void keyedByContent(@TempDir final Path work) {
+        final var cache = newCache(work);
+        cache.store("loc", "id", "{}", List.of(), newManifest(), List.of());
+        assertNull(cache.load("loc", "id", "{ }", path -> ""));
+        assertNull(cache.load("other", "id", "{}", path -> ""));
+        assertNull(cache.load("loc", null, "{}", path -> ""));
+    }
+
+    @Test
+    void staleReference(@TempDir final Path work) {
+        final var cache = newCache(work);
+        cache.store("loc", "id", "{}", List.of(new ManifestCache.Dependency("ref.json", cache.digest("{\"v\":1}"))), newManifest(), List.of());
+        assertEquals(newManifest(), cache.load("loc", "id", "{}", path -> "{\"v\":1}").getManifest());
+        assertNull(cache.load("loc", "id", "{}", path -> "{\"v\":2}"));
+    }
+
+    @Test
+    void references(@TempDir final Path work) {
+        final var cache = newCache(work);
+        final var reference = newManifest();
+        reference.setInterpolateAlveoli(false);
+        cache.store("loc", "id", "{}", List.of(), newManifest(), List.of(reference));
+        assertEquals(List.of(reference), cache.load("loc", "id", "{}", path -> "").getReferences());
+    }
+
+    @Test
+    void eviction(@TempDir final Path work) throws IOException {
+        final var cache = newCache(work);
+        setField(cache, "maxEntries", 2);
+        cache.store("loc", "id", "{\"v\":1}", List.of(), newManifest(), List.of());
+        cache.store("loc", "id", "{\"v\":2}", List.of(), newManifest(), List.of());
+        try (final var files = Files.find(work, 2, (p, a) -> a.isRegularFile())) { // ensure 1 is the least recently used
+            files.forEach(it -> {
+                try {
+                    Files.setLastModifiedTime(it, FileTime.fromMillis(0));
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        assertNotNull(cache.load("loc", "id", "{\"v\":2}", path -> ""));
+        cache.store("loc", "id", "{\"v\":3}", List.of(), newManifest(), List.of());
+
+        assertNull(cache.load("loc", "id", "{\"v\":1}", path -> ""));
+        assertNotNull(cache.load("loc", "id", "{\"v\":2}", path -> ""));
+        assertNotNull(cache.load("loc", "id", "{\"v\":3}", path -> ""));
+    }
+
+    @Test
+    void disabled(@TempDir final Path work) {
+        final var cache = newCache(work);
+        setField(cache, "directory", "none");
+        cache.store("loc", "id", "{}", List.of(), newManifest(), List.of());
+        assertNull(cache.load("loc", "id", "{}", path -> ""));
+    }
+
+    private Manifest newManifest() {
+        final var descriptor = new Manifest.Descriptor();
+        descriptor.setName("test");
+        descriptor.setLocation("com.company:alveolus:1.0.0");
+        descriptor.setAwait(true);
+        descriptor.initInterpolate(false);
+
+        final var condition = new Manifest.Condition();
+        condition.setType(Manifest.ConditionType.SYSTEM_PROPERTY);
+        condition.setKey("k");
+        final var conditions = new Manifest.Conditions();
+        conditions.setConditions(List.of(condition));
+
+        final var patch = new Manifest.Patch();
+        patch.setDescriptorName("*");
+        patch.setIncludeIf(conditions);
+        patch.setPatch(Json.createArrayBuilder()
+                .add(Json.createObjectBuilder().add("op", "add").add("path", "/metadata/labels/app").add("value", "test"))
+                .build());
+
+        final var alveolus = new Manifest.Alveolus();
+        alveolus.setName("main");
+        alveolus.setDescriptors(List.of(descriptor));
+        alveolus.setPatches(List.of(patch));
+        alveolus.setPlaceholders(Map.of("a", "b"));
+
+        final var manifest = new Manifest();
+        manifest.setInterpolateAlveoli(true);
+        manifest.setAlveoli(List.of(alveolus));
+        return manifest;
+    }
+
+    private ManifestCache newCache(final Path work) {
+        final var cache = new ManifestCache();
+        setField(cache, "directory", work.toString());
+        setField(cache, "jsonProvider", JsonProvider.provider());
+        return cache;
+    }
+
+    private void setField(final ManifestCache cache, final String name, final Object value) {
+        try {
+            final var field = ManifestCache.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(cache, value);
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
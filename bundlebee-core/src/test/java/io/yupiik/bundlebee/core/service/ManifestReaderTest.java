@@ -16,23 +16,36 @@
 package io.yupiik.bundlebee.core.service;
 
 import io.yupiik.bundlebee.core.descriptor.Manifest;
+import io.yupiik.bundlebee.core.event.OnManifestRead;
+import io.yupiik.bundlebee.core.lang.Substitutor;
+import io.yupiik.bundlebee.core.qualifier.BundleBee;
 import org.apache.openwebbeans.junit5.Cdi;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import javax.enterprise.event.Event;
+import javax.enterprise.event.NotificationOptions;
+import javax.enterprise.util.TypeLiteral;
 import javax.inject.Inject;
+import javax.json.bind.Jsonb;
+import javax.json.spi.JsonProvider;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.lang.annotation.Annotation;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 @Cdi
 class ManifestReaderTest {
@@ -42,6 +55,13 @@ class ManifestReaderTest {
     @Inject
     private ArchiveReader archiveReader;
 
+    @Inject
+    @BundleBee
+    private Jsonb jsonb;
+
+    @Inject
+    private Substitutor substitutor;
+
     @Test
     void interpolateInitFromManifest(@TempDir final Path work) throws IOException {
         assertEquals(
@@ -129,6 +149,72 @@ class ManifestReaderTest {
     }
 
 
+    @Test
+    void cacheHitFiresSameEvents(@TempDir final Path work) throws IOException {
+        final var bundlebee = Files.createDirectories(work.resolve("bundlebee"));
+        final var main = Files.writeString(bundlebee.resolve("manifest.json"), "{" +
+                "\"interpolateAlveoli\":true," +
+                "\"references\":[{\"path\":\"ref1.json\"}]," +
+                "\"alveoli\":[{\"name\":\"main\",\"descriptors\":[{\"name\":\"main-desc\"}]}]" +
+                "}");
+        Files.writeString(bundlebee.resolve("ref1.json"), "{" +
+                "\"references\":[{\"path\":\"ref2.json\"}]," +
+                "\"alveoli\":[{\"name\":\"ref1-alveolus\",\"descriptors\":[{\"name\":\"ref1-desc\"}]}]" +
+                "}");
+        Files.writeString(bundlebee.resolve("ref2.json"), "{" +
+                "\"interpolateAlveoli\":false," +
+                "\"alveoli\":[{\"name\":\"ref2-alveolus\",\"descriptors\":[{\"name\":\"ref2-desc\"}]}]" +
+                "}");
+
+        final var events = new ArrayList<String>();
+        final var observed = new ArrayList<Manifest>();
+        final var cache = new ManifestCache();
+        setField(ManifestCache.class, cache, "directory", work.resolve("cache").toString());
+        setField(ManifestCache.class, cache, "jsonProvider", JsonProvider.provider());
+        final var cachingReader = new ManifestReader();
+        setField(ManifestReader.class, cachingReader, "jsonb", jsonb);
+        setField(ManifestReader.class, cachingReader, "substitutor", substitutor);
+        setField(ManifestReader.class, cachingReader, "manifestCache", cache);
+        setField(ManifestReader.class, cachingReader, "onManifestReadEvent", new RecordingEvent(
+                // serialized when fired to capture what an observer sees at that time
+                event -> {
+                    events.add(jsonb.toJson(event.getManifest()));
+                    observed.add(event.getManifest());
+                }));
+
+        final var runs = new ArrayList<List<String>>();
+        for (int i = 0; i < 2; i++) {
+            events.clear();
+            observed.clear();
+            cachingReader.readManifest(null, () -> {
+                try {
+                    return Files.newInputStream(main);
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, n -> {
+                try {
+                    return Files.newInputStream(bundlebee.resolve(n));
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, null);
+            runs.add(List.copyOf(events));
+            // observers keeping the manifests must also see the same graph once the reading is done
+            runs.add(observed.stream().map(jsonb::toJson).collect(toList()));
+            // merged alveoli are the ones of the references (same instances) with and without cache
+            assertSame(observed.get(0).getAlveoli().get(0), observed.get(1).getAlveoli().get(1));
+            assertSame(observed.get(1).getAlveoli().get(0), observed.get(2).getAlveoli().get(1));
+            assertSame(observed.get(0).getAlveoli().get(0), observed.get(2).getAlveoli().get(2));
+        }
+        try (final var files = Files.list(work.resolve("cache"))) { // ensure second run was a hit
+            assertEquals(1, files.count());
+        }
+        assertEquals(3, runs.get(0).size());
+        assertEquals(runs.get(0), runs.get(2));
+        assertEquals(runs.get(1), runs.get(3));
+    }
+
     @Test
     void referencesJar(@TempDir final Path work) throws IOException {
         final var jar = work.resolve("module.jar");
@@ -190,6 +276,16 @@ class ManifestReaderTest {
         assertManifest(manifest);
     }
 
+    private void setField(final Class<?> type, final Object instance, final String name, final Object value) {
+        try {
+            final var field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(instance, value);
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private void assertManifest(final Manifest manifest) {
         assertEquals(1, manifest.getAlveoli().size());
 
@@ -222,4 +318,42 @@ class ManifestReaderTest {
             }
         }, null, null);
     }
+
+    private static class RecordingEvent implements Event<OnManifestRead> {
+        private final Consumer<OnManifestRead> recorder;
+
+        private RecordingEvent(final Consumer<OnManifestRead> recorder) {
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void fire(final OnManifestRead event) {
+            recorder.accept(event);
+        }
+
+        @Override
+        public <U extends OnManifestRead> CompletionStage<U> fireAsync(final U event) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends OnManifestRead> CompletionStage<U> fireAsync(final U event, final NotificationOptions options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Event<OnManifestRead> select(final Annotation... qualifiers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends OnManifestRead> Event<U> select(final Class<U> subtype, final Annotation... qualifiers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends OnManifestRead> Event<U> select(final TypeLiteral<U> subtype, final Annotation... qualifiers) {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
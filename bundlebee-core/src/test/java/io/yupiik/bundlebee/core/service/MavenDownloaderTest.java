@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.openwebbeans.junit5.Cdi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Cdi
+class MavenDownloaderTest {
+    @Inject
+    private MavenDownloader downloader;
+
+    private final byte[] artifact = "bundlebee-artifact-content".repeat(1_000).getBytes(StandardCharsets.UTF_8);
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+
+    @BeforeEach
+    void start() throws IOException, NoSuchAlgorithmException {
+        final var sha1 = MessageDigest.getInstance("SHA-1").digest(artifact);
+        final var hex = new StringBuilder();
+        for (final byte b : sha1) {
+            hex.append(String.format("%02x", b));
+        }
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 16);
+        server.createContext("/", exchange -> {
+            try {
+                switch (exchange.getRequestURI().getPath()) {
+                    case "/repo/artifact.zip.sha1":
+                        final var checksum = (hex + "  artifact.zip").getBytes(StandardCharsets.UTF_8);
+                        exchange.sendResponseHeaders(200, checksum.length);
+                        exchange.getResponseBody().write(checksum);
+                        break;
+                    case "/repo/artifact.zip":
+                    case "/repo/unsigned.zip":
+                        final var range = exchange.getRequestHeaders().getFirst("Range");
+                        if (range != null) {
+                            ranges.add(range);
+                            final var from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                            exchange.sendResponseHeaders(206, artifact.length - from);
+                            exchange.getResponseBody().write(artifact, from, artifact.length - from);
+                        } else {
+                            exchange.sendResponseHeaders(200, artifact.length);
+                            exchange.getResponseBody().write(artifact);
+                        }
+                        break;
+                    default:
+                        exchange.sendResponseHeaders(404, -1);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void download(@TempDir final Path work) throws ExecutionException, InterruptedException {
+        final var target = work.resolve("artifact.zip");
+        assertEquals(target, downloader.download(uri("artifact.zip"), target, HttpRequest::newBuilder).toCompletableFuture().get());
+        assertDownloaded(target);
+        assertEquals(List.of(), ranges);
+    }
+
+    @Test
+    void resume(@TempDir final Path work) throws ExecutionException, InterruptedException, IOException {
+        final var target = work.resolve("artifact.zip");
+        Files.write(work.resolve("artifact.zip.part"), Arrays.copyOf(artifact, 1234));
+        downloader.download(uri("artifact.zip"), target, HttpRequest::newBuilder).toCompletableFuture().get();
+        assertDownloaded(target);
+        assertEquals(List.of("bytes=1234-"), ranges);
+    }
+
+    @Test
+    void noResumeWithoutChecksum(@TempDir final Path work) throws ExecutionException, InterruptedException, IOException {
+        final var target = work.resolve("unsigned.zip");
+        Files.writeString(work.resolve("unsigned.zip.part"), "corrupted");
+        downloader.download(uri("unsigned.zip"), target, HttpRequest::newBuilder).toCompletableFuture().get();
+        assertDownloaded(target);
+        assertEquals(List.of(), ranges);
+    }
+
+    @Test
+    void missing(@TempDir final Path work) {
+        final var target = work.resolve("missing.zip");
+        assertThrows(ExecutionException.class, () -> downloader.download(uri("missing.zip"), target, HttpRequest::newBuilder)
+                .toCompletableFuture().get());
+        assertFalse(Files.exists(target));
+    }
+
+    private void assertDownloaded(final Path target) {
+        try {
+            assertArrayEquals(artifact, Files.readAllBytes(target));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        assertFalse(Files.exists(target.resolveSibling(target.getFileName() + ".part")));
+    }
+
+    private URI uri(final String name) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/repo/" + name);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MavenMetadataCacheTest {
+    private final byte[] metadata = "<metadata><versioning><latest>1.0.1</latest></versioning></metadata>".getBytes(StandardCharsets.UTF_8);
+    private final List<String> conditions = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 16);
+        server.createContext("/", exchange -> {
+            try {
+                final var etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+                conditions.add(String.valueOf(etag));
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                if ("\"v1\"".equals(etag)) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, metadata.length);
+                    exchange.getResponseBody().write(metadata);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void conditionalRequests(@TempDir final Path m2) throws ExecutionException, InterruptedException {
+        final var cache = newCache(1, false);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(new String(metadata, StandardCharsets.UTF_8), new String(
+                    cache.fetch(m2, uri(), HttpRequest::newBuilder).toCompletableFuture().get(), StandardCharsets.UTF_8));
+            Thread.sleep(5); // expire the entry
+        }
+        assertEquals(List.of("null", "\"v1\""), conditions);
+        assertTrue(Files.exists(cached(m2)));
+    }
+
+    @Test
+    void noCacheByDefault(@TempDir final Path m2) throws ExecutionException, InterruptedException {
+        final var cache = newCache(0, false);
+        for (int i = 0; i < 2; i++) {
+            cache.fetch(m2, uri(), HttpRequest::newBuilder).toCompletableFuture().get();
+        }
+        assertEquals(List.of("null", "null"), conditions);
+        assertFalse(Files.exists(m2.resolve(".bundlebee")));
+    }
+
+    @Test
+    void offlineWithoutCache(@TempDir final Path m2) {
+        final var cache = newCache(-1, true);
+        assertThrows(ExecutionException.class, () -> cache.fetch(m2, uri(), HttpRequest::newBuilder).toCompletableFuture().get());
+        assertEquals(List.of(), conditions);
+    }
+
+    private Path cached(final Path m2) {
+        return m2.resolve(".bundlebee/metadata/localhost_" + server.getAddress().getPort() + "/repo/org/foo/bar/maven-metadata.xml");
+    }
+
+    private URI uri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/repo/org/foo/bar/maven-metadata.xml");
+    }
+
+    private MavenMetadataCache newCache(final long ttl, final boolean offline) {
+        final var cache = new MavenMetadataCache();
+        try {
+            for (final var field : Map.of("ttl", ttl, "offline", offline, "client", HttpClient.newHttpClient()).entrySet()) {
+                final var declared = MavenMetadataCache.class.getDeclaredField(field.getKey());
+                declared.setAccessible(true);
+                declared.set(cache, field.getValue());
+            }
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MavenRepositoriesTest {
+    @Test
+    void sequential() throws ExecutionException, InterruptedException {
+        final var repositories = newRepositories(false);
+        assertEquals("b:ok", repositories.first(List.of("a", "b", "c"), this::failOnA).toCompletableFuture().get());
+    }
+
+    @Test
+    void sequentialAllFail() {
+        final var repositories = newRepositories(false);
+        assertThrows(ExecutionException.class, () -> repositories.first(List.of("a", "a"), this::failOnA).toCompletableFuture().get());
+    }
+
+    @Test
+    void race() throws ExecutionException, InterruptedException {
+        final var repositories = newRepositories(true);
+        final var slow = new CompletableFuture<String>();
+        final var result = repositories.first(List.of("slow", "a", "fast"), repository -> {
+            switch (repository) {
+                case "slow":
+                    return slow;
+                case "fast":
+                    return CompletableFuture.supplyAsync(() -> "fast:ok", CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+                default:
+                    return failOnA(repository);
+            }
+        });
+        assertEquals("fast:ok", result.toCompletableFuture().get());
+        assertTrue(slow.isCancelled());
+    }
+
+    @Test
+    void raceCancelsLosingExchanges() throws ExecutionException, InterruptedException {
+        final var repositories = newRepositories(true);
+        final var exchange = new CompletableFuture<String>();
+        final var result = repositories.first(List.of("slow", "fast"), (repository, attempt) -> {
+            if ("slow".equals(repository)) {
+                return attempt.track(exchange).thenApply(it -> it + ":ok");
+            }
+            return CompletableFuture.supplyAsync(() -> "fast:ok", CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+        });
+        assertEquals("fast:ok", result.toCompletableFuture().get());
+        assertTrue(exchange.isCancelled());
+    }
+
+    @Test
+    void raceRanksFailingRepositoriesLast() throws ExecutionException, InterruptedException {
+        final var repositories = newRepositories(true);
+        final var started = new CopyOnWriteArrayList<String>();
+        for (int i = 0; i < 2; i++) {
+            started.clear();
+            assertEquals("b:ok", repositories.first(List.of("a", "b"), repository -> {
+                started.add(repository);
+                return failOnA(repository);
+            }).toCompletableFuture().get());
+        }
+        // "a" never succeeded so it must not get the head start
+        assertEquals("b", started.get(0));
+    }
+
+    private CompletionStage<String> failOnA(final String repository) {
+        if ("a".equals(repository)) {
+            return CompletableFuture.failedFuture(new IllegalStateException("missing"));
+        }
+        return CompletableFuture.completedFuture(repository + ":ok");
+    }
+
+    private MavenRepositories newRepositories(final boolean race) {
+        final var repositories = new MavenRepositories();
+        try {
+            final var field = MavenRepositories.class.getDeclaredField("race");
+            field.setAccessible(true);
+            field.set(repositories, race);
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return repositories;
+    }
+}
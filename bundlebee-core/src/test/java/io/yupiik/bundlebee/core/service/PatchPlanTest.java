@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.service;
+
+import io.yupiik.bundlebee.core.descriptor.Manifest;
+import org.junit.jupiter.api.Test;
+
+import javax.json.JsonValue;
+import javax.json.spi.JsonProvider;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatchPlanTest {
+    @Test
+    void select() {
+        final var patches = new LinkedHashMap<Predicate<String>, Manifest.Patch>();
+        patches.put(Pattern.compile(".*-svc").asMatchPredicate(), patch(".*-svc"));
+        patches.put("app"::equals, patch("app"));
+        patches.put("app.yaml"::equals, patch("app.yaml"));
+        patches.put(s -> true, patch("*"));
+        patches.put("other"::equals, patch("other"));
+
+        final var plan = new PatchPlan(patches, p -> JsonProvider.provider().createPatch(JsonValue.EMPTY_JSON_ARRAY));
+        assertEquals(List.of("app", "app.yaml", "*"), names(plan.select("app", "yaml")));
+        assertEquals(List.of(".*-svc", "*"), names(plan.select("app-svc", "json")));
+        assertEquals(List.of("*", "other"), names(plan.select("other", "yaml")));
+    }
+
+    @Test
+    void exactOnly() {
+        final var patches = new LinkedHashMap<Predicate<String>, Manifest.Patch>();
+        patches.put("app"::equals, patch("app"));
+        final var created = new AtomicInteger();
+        final var plan = new PatchPlan(patches, p -> {
+            created.incrementAndGet();
+            return JsonProvider.provider().createPatch(JsonValue.EMPTY_JSON_ARRAY);
+        });
+        assertTrue(plan.select("missing", "yaml").isEmpty());
+
+        final var entry = plan.select("app", "yaml").get(0);
+        assertEquals(0, created.get());
+        assertSame(entry.getJsonPatch(), plan.select("app", "yaml").get(0).getJsonPatch());
+        assertEquals(1, created.get());
+    }
+
+    private List<String> names(final List<PatchPlan.Entry> entries) {
+        return entries.stream().map(it -> it.getPatch().getDescriptorName()).collect(toList());
+    }
+
+    private Manifest.Patch patch(final String name) {
+        final var patch = new Manifest.Patch();
+        patch.setDescriptorName(name);
+        return patch;
+    }
+}
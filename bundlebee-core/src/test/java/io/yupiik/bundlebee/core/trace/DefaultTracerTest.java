@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.core.trace;
+
+import io.yupiik.bundlebee.core.BundleBee;
+import io.yupiik.bundlebee.core.test.BundleBeeExtension;
+import io.yupiik.bundlebee.core.test.CommandExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.util.logging.Level.INFO;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DefaultTracerTest {
+    @RegisterExtension
+    BundleBeeExtension extension = new BundleBeeExtension();
+
+    @Test
+    void chromeTrace(final CommandExecutor executor, @TempDir final Path work) throws IOException {
+        final var output = work.resolve("trace/bundlebee.json");
+        executor.wrap(null, INFO, () -> new BundleBee().launch("version", "--trace-output", output.toString()));
+
+        final JsonObject trace;
+        try (final var reader = Json.createReader(Files.newBufferedReader(output))) {
+            trace = reader.readObject();
+        }
+        final var events = trace.getJsonArray("traceEvents").stream()
+                .map(JsonObject.class::cast)
+                .collect(toList());
+        assertEquals(3, events.size(), events::toString);
+
+        final var thread = events.get(0);
+        assertEquals("thread_name", thread.getString("name"));
+        assertEquals("M", thread.getString("ph"));
+        assertEquals(Thread.currentThread().getName(), thread.getJsonObject("args").getString("name"));
+
+        final var begin = events.get(1);
+        assertEquals("command", begin.getString("name"));
+        assertEquals("b", begin.getString("ph"));
+        assertEquals("version", begin.getJsonObject("args").getString("name"));
+        assertEquals(32, begin.getString("id").length());
+        assertEquals(thread.getJsonNumber("tid").longValue(), begin.getJsonNumber("tid").longValue());
+
+        final var end = events.get(2);
+        assertEquals("e", end.getString("ph"));
+        assertEquals(begin.getString("id"), end.getString("id"));
+    }
+}
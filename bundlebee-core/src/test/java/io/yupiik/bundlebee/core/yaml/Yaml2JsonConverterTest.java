@@ -17,17 +17,29 @@ package io.yupiik.bundlebee.core.yaml;
 
 import io.yupiik.bundlebee.core.kube.KubeConfig;
 import org.apache.openwebbeans.junit5.Cdi;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import javax.inject.Inject;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonStructure;
+import javax.json.JsonValue;
+import javax.json.spi.JsonProvider;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @Cdi
 class Yaml2JsonConverterTest {
@@ -79,10 +91,104 @@ class Yaml2JsonConverterTest {
         assertEquals(actual, expected);
     }
 
+    @Test
+    void eventsMatchModelConversion() {
+        for (final var yaml : List.of(
+                readYaml(),
+                readYaml("bundlebee/kubernetes/ApplyCommandTest.d0.yaml"),
+                readYaml("helm/test-chart/values.yaml"),
+                "" +
+                        "apiVersion: v1\n" +
+                        "kind: ConfigMap\n" +
+                        "data:\n" +
+                        "  int: 12\n" +
+                        "  hex: 0x1F\n" +
+                        "  big: 123456789012345678901234567890\n" +
+                        "  long: 12345678901\n" +
+                        "  float: 1.5\n" +
+                        "  exp: 1e3\n" +
+                        "  yes: yes\n" +
+                        "  off: off\n" +
+                        "  quoted: \"12\"\n" +
+                        "  tagged: !!str 12\n" +
+                        "  empty:\n" +
+                        "  tilde: ~\n" +
+                        "  12: numeric key\n" +
+                        "  multiline: |\n" +
+                        "    line 1\n" +
+                        "    line 2\n" +
+                        "  list: [a, 1, true, null, {nested: [1, 2]}]\n" +
+                        "  anchored: &ref {a: 1, b: [x, y]}\n" +
+                        "  alias: *ref\n" +
+                        "  duplicated: 1\n" +
+                        "  duplicated: 2\n",
+                "- a\n- b\n",
+                "just a string",
+                "a: 1\n---\nb: 2\n---\n- c\n",
+                // fallbacks
+                "date: 2021-02-02\n",
+                "base: &base {a: 1}\nchild:\n  <<: *base\n  b: 2\n",
+                "nan: .nan\n",
+                "set: !!set {a, b}\n")) {
+            assertEquals(converter.convertFromModel(JsonValue.class, yaml.trim()), converter.convert(JsonValue.class, yaml.trim()), yaml);
+        }
+    }
+
+    @Test
+    void fallbacks() {
+        final var provider = JsonProvider.provider();
+        final var events = new YamlEventsToJson(provider, provider.createBuilderFactory(Map.of()));
+        assertEquals(2, events.convert("a: &a 1\nb: *a\n---\nc: 2").size());
+        for (final var yaml : List.of("date: 2021-02-02", "<<: {a: 1}", "nan: .nan", "set: !!set {a}", "? [a]\n: b", "bin: !!binary AAAA")) {
+            assertThrows(YamlEventsToJson.UnsupportedYamlException.class, () -> events.convert(yaml), yaml);
+        }
+    }
+
+    @Test
+    void stream() {
+        assertEquals(
+                List.of("{\"a\":1}", "{\"date\":\"2021-02-02T00:00:00Z[UTC]\"}", "[\"c\"]"),
+                converter.stream("a: 1\n---\ndate: 2021-02-02\n---\n- c\n").map(JsonValue::toString).collect(toList()));
+    }
+
+    @Test
+    void expectedTypes() {
+        assertEquals(JsonValue.TRUE, converter.convert(JsonObject.class, "a: yes").get("a"));
+        assertEquals(2, converter.convert(JsonArray.class, "- 1\n---\n- 2").size());
+        assertEquals(2, converter.convert(JsonStructure.class, "- 1\n- 2").asJsonArray().size());
+        assertThrows(RuntimeException.class, () -> converter.convert(JsonStructure.class, "a: 1\n---\nb: 2"));
+    }
+
+    @Test
+    @Disabled("manual benchmark of the event based conversion against the java model one")
+    void benchmark() {
+        final var yaml = IntStream.range(0, 200)
+                .mapToObj(i -> readYaml("bundlebee/kubernetes/ApplyCommandTest.d0.yaml"))
+                .collect(joining("\n---\n"));
+        final var logger = Logger.getLogger(getClass().getName());
+        for (int iteration = 0; iteration < 5; iteration++) {
+            final var model = time(() -> converter.convertFromModel(JsonValue.class, yaml));
+            final var events = time(() -> converter.convert(JsonValue.class, yaml));
+            logger.info("model: " + model + "ms, events: " + events + "ms");
+        }
+    }
+
+    private long time(final Runnable task) {
+        final var start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
     private String readYaml() {
+        return readYaml("kubeconfig.minikube.sample");
+    }
+
+    private String readYaml(final String resource) {
         try (final BufferedReader reader = new BufferedReader(new InputStreamReader(Objects.requireNonNull(
                 Thread.currentThread().getContextClassLoader()
-                        .getResourceAsStream("kubeconfig.minikube.sample")), StandardCharsets.UTF_8))) {
+                        .getResourceAsStream(resource)), StandardCharsets.UTF_8))) {
             return reader.lines().collect(joining("\n"));
         } catch (final IOException e) {
             throw new IllegalStateException(e);
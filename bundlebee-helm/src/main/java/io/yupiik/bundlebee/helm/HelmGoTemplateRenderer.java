@@ -43,6 +43,27 @@ public class HelmGoTemplateRenderer {
     }
 
     public String render(final List<HelmGoTemplateNode> nodes, final Map<String, Object> context) {
+        return render(null, nodes, context);
+    }
+
+    public String render(final String template, final List<HelmGoTemplateNode> nodes, final Map<String, Object> context) {
+        final var event = new HelmRenderEvent();
+        if (!event.isEnabled()) {
+            return doRender(nodes, context);
+        }
+        event.begin();
+        final var result = doRender(nodes, context);
+        event.end();
+        if (event.shouldCommit()) {
+            event.template = template;
+            event.nodes = nodes.size();
+            event.outputSize = result.length();
+            event.commit();
+        }
+        return result;
+    }
+
+    private String doRender(final List<HelmGoTemplateNode> nodes, final Map<String, Object> context) {
         scopeStack.clear();
         scopeStack.push(new HashMap<>());
         final var scope = new HashMap<>(context);
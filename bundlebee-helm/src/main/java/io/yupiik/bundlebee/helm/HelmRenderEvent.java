@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.helm;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("io.yupiik.bundlebee.HelmRender")
+@Label("Helm Template Rendering")
+@Category("BundleBee")
+@Description("Rendering of a parsed Helm template.")
+@StackTrace(false)
+class HelmRenderEvent extends jdk.jfr.Event {
+    @Label("Template")
+    String template;
+
+    @Label("Nodes")
+    @Description("Number of root nodes of the template.")
+    int nodes;
+
+    @Label("Output Size")
+    @Description("Rendered content length (characters).")
+    int outputSize;
+}
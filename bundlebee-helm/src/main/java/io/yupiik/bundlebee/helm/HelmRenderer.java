@@ -16,6 +16,7 @@
 package io.yupiik.bundlebee.helm;
 
 import io.yupiik.bundlebee.lang.spi.NamespaceProvider;
+import io.yupiik.bundlebee.lang.spi.Tracer;
 import lombok.extern.java.Log;
 import org.yaml.snakeyaml.Yaml;
 
@@ -46,6 +47,9 @@ public class HelmRenderer {
     @Inject
     private NamespaceProvider namespaceProvider;
 
+    @Inject
+    private Tracer tracer = Tracer.NOOP; // default for standalone usage
+
     private final HelmHookSorter hookSorter = new HelmHookSorter(new Yaml());
 
     /**
@@ -76,7 +80,7 @@ public class HelmRenderer {
     public CompletionStage<List<String>> render(final String chartPath, final Map<String, String> placeholders,
                                                  final String releaseName, final String releaseNamespace,
                                                  final Boolean resolveDependencies, final List<String> ignoredDescriptors) {
-        return chartLoader.load(Path.of(chartPath), null, null, resolveDependencies, ignoredDescriptors, true)
+        return tracer.trace("helm.render", Map.of("chart", chartPath), () -> chartLoader.load(Path.of(chartPath), null, null, resolveDependencies, ignoredDescriptors, true)
                 .thenApply(chart -> {
                     final var functions = functionProducer.getFunctions();
                     final var renderer = new HelmGoTemplateRenderer(functions);
@@ -131,7 +135,7 @@ public class HelmRenderer {
                             continue;
                         }
                         try {
-                            final var rendered = renderer.render(entry.getValue(), context);
+                            final var rendered = renderer.render(entry.getKey(), entry.getValue(), context);
                             final var trimmed = rendered.strip();
                             if (!trimmed.isEmpty()) {
                                 results.add(trimmed);
@@ -142,7 +146,7 @@ public class HelmRenderer {
                     }
 
                     return hookSorter.sort(results);
-                });
+                }));
     }
 
     /**
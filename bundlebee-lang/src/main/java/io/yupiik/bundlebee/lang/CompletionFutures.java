@@ -127,16 +127,132 @@ public final class CompletionFutures {
                     if (!failOnError || errors.getSuppressed().length == 0) {
                         result.complete(finisher.apply(agg));
                     } else {
-                        // recreate the exception to ensure the message is more readable
-                        final var thrown = new IllegalStateException(Stream.of(errors.getSuppressed())
-                                .map(t -> ofNullable(t.getMessage()).orElseGet(() -> t.getClass().getName()))
-                                .collect(joining("\n")), null);
-                        Stream.of(errors.getSuppressed()).forEach(thrown::addSuppressed);
-                        result.completeExceptionally(thrown);
+                        result.completeExceptionally(toReadableError(errors));
                     }
                 }
             }
         }));
         return result;
     }
+
+    /**
+     * Same as {@link #all(Collection, Collector, boolean)} but promises are created lazily, only when one of the
+     * {@code concurrency} slots is available. It enables to bound the memory when each promise holds a lot of data.
+     *
+     * @param promises    the promise factories, iterated under a lock so the iterator does not need to be thread safe.
+     * @param concurrency max number of promises executed concurrently.
+     * @param collector   result collector.
+     * @param failOnError should errors fail the aggregated promise (once all promises completed).
+     * @return the aggregated result.
+     */
+    public static <T, A, R> CompletionStage<R> bounded(final Iterator<Supplier<CompletionStage<T>>> promises,
+                                                       final int concurrency,
+                                                       final Collector<T, A, R> collector,
+                                                       final boolean failOnError) {
+        final var bounded = new Bounded<>(promises, Math.max(1, concurrency), collector, failOnError);
+        bounded.pump();
+        return bounded.result;
+    }
+
+    // recreate the exception to ensure the message is more readable
+    private static IllegalStateException toReadableError(final IllegalStateException errors) {
+        final var thrown = new IllegalStateException(Stream.of(errors.getSuppressed())
+                .map(t -> ofNullable(t.getMessage()).orElseGet(() -> t.getClass().getName()))
+                .collect(joining("\n")), null);
+        Stream.of(errors.getSuppressed()).forEach(thrown::addSuppressed);
+        return thrown;
+    }
+
+    private static class Bounded<T, A, R> {
+        private final Iterator<Supplier<CompletionStage<T>>> promises;
+        private final int concurrency;
+        private final Collector<T, A, R> collector;
+        private final boolean failOnError;
+        private final A agg;
+        private final IllegalStateException errors = new IllegalStateException("Invalid execution");
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private int running;
+        private boolean exhausted;
+        private boolean pumping;
+        private boolean pending;
+
+        private Bounded(final Iterator<Supplier<CompletionStage<T>>> promises, final int concurrency,
+                        final Collector<T, A, R> collector, final boolean failOnError) {
+            this.promises = promises;
+            this.concurrency = concurrency;
+            this.collector = collector;
+            this.failOnError = failOnError;
+            this.agg = collector.supplier().get();
+        }
+
+        // loops instead of recursing from completion callbacks to not overflow the stack with synchronous promises
+        private void pump() {
+            synchronized (this) {
+                if (pumping) {
+                    pending = true;
+                    return;
+                }
+                pumping = true;
+            }
+            while (true) {
+                Supplier<CompletionStage<T>> next = null;
+                boolean done = false;
+                synchronized (this) {
+                    if (!exhausted && running < concurrency) {
+                        try {
+                            if (promises.hasNext()) {
+                                next = promises.next();
+                                running++;
+                            } else {
+                                exhausted = true;
+                            }
+                        } catch (final RuntimeException re) { // parsing error for example, stop there
+                            exhausted = true;
+                            errors.addSuppressed(re);
+                        }
+                    }
+                    if (next == null) {
+                        if (pending) {
+                            pending = false;
+                            continue;
+                        }
+                        pumping = false;
+                        done = exhausted && running == 0;
+                    }
+                }
+                if (next == null) {
+                    if (done) {
+                        complete();
+                    }
+                    return;
+                }
+                handled(next).whenComplete((res, err) -> {
+                    synchronized (this) {
+                        if (err == null) {
+                            collector.accumulator().accept(agg, res);
+                        } else {
+                            LOGGER.log(Level.FINEST, err.getMessage(), err);
+                            errors.addSuppressed(CompletionException.class.isInstance(err) ? err.getCause() : err);
+                        }
+                        running--;
+                    }
+                    pump();
+                });
+            }
+        }
+
+        private void complete() {
+            final boolean failed;
+            final R value;
+            synchronized (this) {
+                failed = failOnError && errors.getSuppressed().length > 0;
+                value = failed ? null : collector.finisher().apply(agg);
+            }
+            if (failed) {
+                result.completeExceptionally(toReadableError(errors));
+            } else {
+                result.complete(value);
+            }
+        }
+    }
 }
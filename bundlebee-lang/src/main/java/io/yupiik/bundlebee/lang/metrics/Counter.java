@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.lang.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter.
+ */
+public class Counter extends BaseMetric {
+    private final LongAdder value = new LongAdder();
+
+    Counter(final String name, final String help, final Map<String, String> labels) {
+        super(name, help, labels);
+    }
+
+    @Override
+    public Type type() {
+        return Type.COUNTER;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(final long delta) {
+        value.add(delta);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.lang.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Gauge, either set explicitly or computed from a supplier when read.
+ */
+public class Gauge extends BaseMetric {
+    private final AtomicLong value = new AtomicLong();
+    private final DoubleSupplier supplier;
+
+    Gauge(final String name, final String help, final Map<String, String> labels, final DoubleSupplier supplier) {
+        super(name, help, labels);
+        this.supplier = supplier;
+    }
+
+    @Override
+    public Type type() {
+        return Type.GAUGE;
+    }
+
+    public void set(final long newValue) {
+        value.set(newValue);
+    }
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void decrement() {
+        value.decrementAndGet();
+    }
+
+    public double get() {
+        return supplier == null ? value.get() : supplier.getAsDouble();
+    }
+}
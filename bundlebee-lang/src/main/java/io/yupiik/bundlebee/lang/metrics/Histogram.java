@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.lang.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram using HDR-like log-linear buckets: values are exact up to {@code 2^PRECISION_BITS}
+ * then each power of two range is split in {@code 2^(PRECISION_BITS-1)} (32) buckets so the worst case relative error
+ * is {@code 1/32} (~3%).
+ * Recording is a few atomic increments so it can be used on hot paths (kube requests for ex).
+ */
+public class Histogram extends BaseMetric {
+    private static final int PRECISION_BITS = 6;
+    private static final int LINEAR_BUCKETS = 1 << PRECISION_BITS;
+    private static final int HALF_BUCKETS = LINEAR_BUCKETS >> 1;
+    private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram(final String name, final String help, final Map<String, String> labels) {
+        super(name, help, labels);
+    }
+
+    @Override
+    public Type type() {
+        return Type.HISTOGRAM;
+    }
+
+    public void record(final long value) {
+        final var actual = Math.max(0, value);
+        counts.incrementAndGet(index(actual));
+        count.increment();
+        sum.add(actual);
+        max.accumulateAndGet(actual, Math::max);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile the quantile to compute (between 0 and 1).
+     * @return the upper bound of the bucket containing the quantile, 0 if there is no recorded value.
+     */
+    public long quantile(final double quantile) {
+        final long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(1., Math.max(0., quantile)) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(max(), upperBound(i));
+            }
+        }
+        return max();
+    }
+
+    static int index(final long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (PRECISION_BITS - 1);
+        return shift * HALF_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long upperBound(final int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        final int shift = index / HALF_BUCKETS - 1;
+        final long mantissa = index % HALF_BUCKETS + HALF_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.lang.metrics;
+
+import java.util.Map;
+
+/**
+ * Base of all metrics, a metric is identified by its name and its labels.
+ */
+public interface Metric {
+    enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    Type type();
+
+    /**
+     * @return the metric name, it should follow prometheus conventions (snake case, unit and {@code _total} suffixes).
+     */
+    String name();
+
+    String help();
+
+    /**
+     * @return the metric labels (sorted by key).
+     */
+    Map<String, String> labels();
+}
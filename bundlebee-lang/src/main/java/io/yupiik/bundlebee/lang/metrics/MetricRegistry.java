@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.lang.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+import static java.util.Comparator.comparing;
+
+/**
+ * Registry of the metrics of an execution.
+ * Metrics are created on first access and then reused so callers can either keep a reference or look them up each time.
+ */
+public class MetricRegistry {
+    private final ConcurrentMap<Key, Metric> metrics = new ConcurrentHashMap<>();
+
+    public Counter counter(final String name, final String help, final String... labels) {
+        return get(name, labels, Counter.class, k -> new Counter(name, help, k.labels));
+    }
+
+    public Gauge gauge(final String name, final String help, final String... labels) {
+        return get(name, labels, Gauge.class, k -> new Gauge(name, help, k.labels, null));
+    }
+
+    public Gauge gauge(final String name, final String help, final DoubleSupplier supplier, final String... labels) {
+        return get(name, labels, Gauge.class, k -> new Gauge(name, help, k.labels, supplier));
+    }
+
+    public Histogram histogram(final String name, final String help, final String... labels) {
+        return get(name, labels, Histogram.class, k -> new Histogram(name, help, k.labels));
+    }
+
+    /**
+     * @return a snapshot of the registered metrics sorted by name and labels.
+     */
+    public Collection<Metric> metrics() {
+        final var out = new ArrayList<>(metrics.values());
+        out.sort(comparing(Metric::name).thenComparing(it -> it.labels().toString()));
+        return out;
+    }
+
+    private <T extends Metric> T get(final String name, final String[] labels, final Class<T> type,
+                                     final Function<Key, Metric> factory) {
+        final var key = new Key(name, toLabels(labels));
+        final var metric = metrics.computeIfAbsent(key, factory);
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric '" + name + "' is already registered as a " + metric.type());
+        }
+        return type.cast(metric);
+    }
+
+    private Map<String, String> toLabels(final String[] labels) {
+        if (labels == null || labels.length == 0) {
+            return Map.of();
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be key/value pairs");
+        }
+        final var out = new TreeMap<String, String>();
+        for (int i = 0; i < labels.length; i += 2) {
+            out.put(labels[i], labels[i + 1] == null ? "" : labels[i + 1]);
+        }
+        return out;
+    }
+
+    private static final class Key {
+        private final String name;
+        private final Map<String, String> labels;
+        private final int hash;
+
+        private Key(final String name, final Map<String, String> labels) {
+            this.name = name;
+            this.labels = labels;
+            this.hash = 31 * name.hashCode() + labels.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final var key = (Key) o;
+            return name.equals(key.name) && labels.equals(key.labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.lang.spi;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Execution tracing facility, spans are hierarchical (alveolus, descriptor, kube request for ex).
+ * Parent span is the current one (thread bound) unless passed explicitly which is required for asynchronous continuations.
+ */
+public interface Tracer {
+    /**
+     * @return {@code true} if spans are recorded, enables to skip attributes computation when disabled.
+     */
+    boolean isEnabled();
+
+    /**
+     * @return the span bound to current thread or a no-op span if none.
+     */
+    Span current();
+
+    /**
+     * @param parent the parent span, if {@code null} the current one is used.
+     * @param name   span name.
+     * @param tags   span attributes.
+     * @return a started span, it must be closed.
+     */
+    Span start(Span parent, String name, Map<String, String> tags);
+
+    /**
+     * Binds a span to the current thread during the synchronous execution of the task.
+     *
+     * @param span the span to make current.
+     * @param task the task to execute.
+     * @param <T>  the task result type.
+     * @return the task result.
+     */
+    <T> T withSpan(Span span, Supplier<T> task);
+
+    default Span start(final String name, final Map<String, String> tags) {
+        return start(null, name, tags);
+    }
+
+    /**
+     * Traces an asynchronous task, the span is current while the stage is created and closed when it completes.
+     *
+     * @param name span name.
+     * @param tags span attributes.
+     * @param task the task to execute.
+     * @param <T>  the stage type.
+     * @return the task stage.
+     */
+    default <T> CompletionStage<T> trace(final String name, final Map<String, String> tags,
+                                         final Supplier<CompletionStage<T>> task) {
+        if (!isEnabled()) {
+            return task.get();
+        }
+        return traceSpan(name, tags, span -> task.get());
+    }
+
+    /**
+     * Same as {@link #trace(String, Map, Supplier)} but passes the span to the task,
+     * it enables to use it as explicit parent in asynchronous continuations.
+     *
+     * @param name span name.
+     * @param tags span attributes.
+     * @param task the task to execute.
+     * @param <T>  the stage type.
+     * @return the task stage.
+     */
+    default <T> CompletionStage<T> traceSpan(final String name, final Map<String, String> tags,
+                                             final Function<Span, CompletionStage<T>> task) {
+        final var span = start(name, tags);
+        final CompletionStage<T> stage;
+        try {
+            stage = withSpan(span, () -> task.apply(span));
+        } catch (final RuntimeException re) {
+            span.error(re).close();
+            throw re;
+        }
+        if (!isEnabled()) {
+            return stage;
+        }
+        return stage.whenComplete((ok, ko) -> {
+            if (ko != null) {
+                span.error(ko);
+            }
+            span.close();
+        });
+    }
+
+    interface Span extends AutoCloseable {
+        Span tag(String key, String value);
+
+        Span error(Throwable error);
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Tracer used when no tracing is available (tests, embedded usages without the core module).
+     */
+    Tracer NOOP = new Tracer() {
+        private final Span span = new Span() {
+            @Override
+            public Span tag(final String key, final String value) {
+                return this;
+            }
+
+            @Override
+            public Span error(final Throwable error) {
+                return this;
+            }
+
+            @Override
+            public void close() {
+                // no-op
+            }
+        };
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public Span current() {
+            return span;
+        }
+
+        @Override
+        public Span start(final Span parent, final String name, final Map<String, String> tags) {
+            return span;
+        }
+
+        @Override
+        public <T> T withSpan(final Span span, final Supplier<T> task) {
+            return task.get();
+        }
+    };
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.lang.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+    @Test
+    void quantiles() {
+        final var histogram = new MetricRegistry().histogram("test", "");
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10_000, histogram.count());
+        assertEquals(50_005_000, histogram.sum());
+        assertEquals(10_000, histogram.max());
+        assertApprox(5_000, histogram.quantile(0.5));
+        assertApprox(9_000, histogram.quantile(0.9));
+        assertApprox(9_900, histogram.quantile(0.99));
+    }
+
+    @Test
+    void relativeError() {
+        for (long value = 1; value < 10_000_000; value = value * 3 + 1) {
+            final var histogram = new MetricRegistry().histogram("test", "");
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE); // ensures quantile is not capped by max
+            final var upperBound = histogram.quantile(0.5);
+            final long expected = value;
+            assertTrue(upperBound >= value && upperBound - value <= value / 32., () -> "value=" + expected + ", bucket=" + upperBound);
+        }
+    }
+
+    private void assertApprox(final long expected, final long actual) {
+        assertTrue(Math.abs(expected - actual) <= expected / 32., () -> "expected ~" + expected + " but got " + actual);
+    }
+}
@@ -15,14 +15,14 @@
  */
 package io.yupiik.bundlebee.operator.configuration;
 
-import org.eclipse.microprofile.config.spi.ConfigSource;
+import io.yupiik.bundlebee.core.configuration.ThreadBoundConfigSource;
 
 import javax.enterprise.inject.Vetoed;
 import java.util.Map;
 import java.util.function.Supplier;
 
 @Vetoed
-public class ThreadLocalConfigSource implements ConfigSource {
+public class ThreadLocalConfigSource implements ThreadBoundConfigSource {
     private final ThreadLocal<Map<String, String>> threadLocal = new ThreadLocal<>();
 
     @Override
@@ -53,4 +53,16 @@ public class ThreadLocalConfigSource implements ConfigSource {
             threadLocal.remove();
         }
     }
+
+    @Override
+    public Runnable propagate(final Runnable task) {
+        final var current = threadLocal.get();
+        if (current == null) {
+            return task;
+        }
+        return () -> forConfiguration(current, () -> {
+            task.run();
+            return null;
+        });
+    }
 }
@@ -19,6 +19,7 @@ import io.yupiik.bundlebee.core.cli.Args;
 import io.yupiik.bundlebee.core.command.Executable;
 import io.yupiik.bundlebee.core.command.impl.ApplyCommand;
 import io.yupiik.bundlebee.core.command.impl.DeleteCommand;
+import io.yupiik.bundlebee.core.lang.SubstitutorProducer;
 import io.yupiik.bundlebee.operator.configuration.ThreadLocalConfigSource;
 import io.yupiik.bundlebee.operator.model.Event;
 
@@ -46,6 +47,9 @@ public class ActionHandler {
     @Inject
     private ThreadLocalConfigSource threadLocalConfigSource;
 
+    @Inject
+    private SubstitutorProducer substitutorProducer;
+
     public void onEvent(final String type, final Event.AlveoliObject obj) {
         switch (type.toUpperCase(ROOT)) {
             case "DELETED":
@@ -78,6 +82,8 @@ public class ActionHandler {
             } catch (final ExecutionException e) {
                 logger.log(SEVERE, e, e::getMessage);
                 throw new IllegalStateException(e);
+            } finally { // next event can use another configuration or cluster state
+                substitutorProducer.clearMemoizedPlaceholders();
             }
         });
     }
@@ -19,6 +19,7 @@ import io.yupiik.bundlebee.core.kube.HttpKubeClient;
 import io.yupiik.bundlebee.core.qualifier.BundleBee;
 import io.yupiik.bundlebee.operator.BundlebeeOperator;
 import io.yupiik.bundlebee.operator.handler.ActionHandler;
+import io.yupiik.bundlebee.operator.metrics.MetricsEndpoint;
 import io.yupiik.bundlebee.operator.model.Event;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
@@ -54,6 +55,9 @@ public class OperatorLoop {
     @Inject
     private ActionHandler actionHandler;
 
+    @Inject
+    private MetricsEndpoint metricsEndpoint;
+
     @Inject
     @BundleBee
     private Jsonb jsonb;
@@ -67,6 +71,7 @@ public class OperatorLoop {
         final var hook = new Thread(() -> running.set(false), BundlebeeOperator.class.getName() + "-shutdown");
         Runtime.getRuntime().addShutdownHook(hook);
         final var pool = createThreadPool();
+        metricsEndpoint.start();
         final var lastResourceVersionLocation = Path.of(stateLocation).resolve("lastResourceVersion");
 
         try {
@@ -169,6 +174,7 @@ public class OperatorLoop {
                 // no-op
             }
             stopPool(pool);
+            metricsEndpoint.close();
         }
     }
 
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2021 - present - Yupiik SAS - https://www.yupiik.com
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.yupiik.bundlebee.operator.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.yupiik.bundlebee.core.metrics.MetricsFormatter;
+import io.yupiik.bundlebee.core.qualifier.BundleBee;
+import io.yupiik.bundlebee.lang.metrics.MetricRegistry;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.spi.JsonProvider;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.logging.Level.SEVERE;
+
+/**
+ * Exposes the metrics over HTTP ({@code /metrics} in prometheus text format and {@code /metrics.json}).
+ * Disabled by default, set {@code bundlebee.operator.metrics.port} to enable it.
+ */
+@ApplicationScoped
+public class MetricsEndpoint implements AutoCloseable {
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    @Inject
+    @ConfigProperty(name = "bundlebee.operator.metrics.port", defaultValue = "-1")
+    private int port;
+
+    @Inject
+    @ConfigProperty(name = "bundlebee.operator.metrics.host", defaultValue = "0.0.0.0")
+    private String host;
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    @BundleBee
+    private JsonProvider jsonProvider;
+
+    private HttpServer server;
+
+    public void start() {
+        if (port < 0) {
+            return;
+        }
+        final var formatter = new MetricsFormatter(jsonProvider);
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 16);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        // exact path matching, /metrics would match /metrics.json otherwise
+        server.createContext("/metrics", exchange -> {
+            if ("/metrics".equals(exchange.getRequestURI().getPath())) {
+                send(exchange, "text/plain; version=0.0.4; charset=utf-8", formatter::writePrometheus);
+            } else if ("/metrics.json".equals(exchange.getRequestURI().getPath())) {
+                send(exchange, "application/json", formatter::writeJson);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        logger.info(() -> "Started metrics endpoint on port " + server.getAddress().getPort());
+    }
+
+    public int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private void send(final HttpExchange exchange, final String contentType,
+                      final BiConsumer<MetricRegistry, Writer> formatter) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            final var payload = new StringWriter();
+            try {
+                formatter.accept(registry, payload);
+            } catch (final RuntimeException re) {
+                logger.log(SEVERE, re, re::getMessage);
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            final var bytes = payload.toString().getBytes(UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (final var out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}